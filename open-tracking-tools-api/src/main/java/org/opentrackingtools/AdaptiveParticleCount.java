@@ -0,0 +1,157 @@
+package org.opentrackingtools;
+
+import gov.sandia.cognition.math.matrix.Vector;
+import gov.sandia.cognition.statistics.distribution.UnivariateGaussian;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.Set;
+
+import org.opentrackingtools.distributions.CountedDataDistribution;
+import org.opentrackingtools.model.GpsObservation;
+import org.opentrackingtools.model.VehicleStateDistribution;
+import org.opentrackingtools.paths.PathState;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Sets;
+
+/**
+ * Chooses the number of particles at each step by KLD-sampling (Fox, 2003):
+ * particles are drawn one at a time until there are enough that, with
+ * probability <code>1 - delta</code>, the KL divergence between the sample and
+ * the true posterior is at most <code>epsilon</code>. That number grows with
+ * the number of bins the drawn particles fall in, so a posterior that's spread
+ * over many edges gets more particles than one that's settled on a single
+ * edge. <br>
+ * On-road particles are binned by graph edge, and off-road particles by a
+ * square grid cell of the ground location.
+ */
+public class AdaptiveParticleCount {
+
+  /**
+   * @return the number of samples needed for a KL divergence of at most
+   *         epsilon, given the number of occupied bins and the upper standard
+   *         normal quantile for the confidence.
+   */
+  public static double getKLDBound(int numBins, double epsilon,
+    double quantile) {
+    if (numBins <= 1) {
+      return 1d;
+    }
+    final double a = 2d / (9d * (numBins - 1));
+    final double b = 1d - a + Math.sqrt(a) * quantile;
+    return (numBins - 1) / (2d * epsilon) * b * b * b;
+  }
+
+  protected final double binSize;
+  protected final double delta;
+  protected final double epsilon;
+  protected final int maxParticles;
+  protected final int minParticles;
+  protected final double quantile;
+
+  /**
+   * @param minParticles
+   *          the fewest particles to keep.
+   * @param maxParticles
+   *          the most particles to keep.
+   * @param epsilon
+   *          the bound on the KL divergence, e.g. 0.05.
+   * @param delta
+   *          the probability that the bound doesn't hold, e.g. 0.01.
+   * @param binSize
+   *          the side of the off-road bins, in meters.
+   */
+  public AdaptiveParticleCount(int minParticles, int maxParticles,
+    double epsilon, double delta, double binSize) {
+    Preconditions.checkArgument(minParticles > 0
+        && minParticles <= maxParticles);
+    Preconditions.checkArgument(epsilon > 0d);
+    Preconditions.checkArgument(delta > 0d && delta < 1d);
+    Preconditions.checkArgument(binSize > 0d);
+    this.minParticles = minParticles;
+    this.maxParticles = maxParticles;
+    this.epsilon = epsilon;
+    this.delta = delta;
+    this.binSize = binSize;
+    this.quantile =
+        UnivariateGaussian.CDF.Inverse.evaluate(1d - delta, 0d, 1d);
+  }
+
+  protected Object getBin(VehicleStateDistribution<?> state) {
+    final PathState pathState = state.getPathStateParam().getValue();
+    if (pathState.isOnRoad()) {
+      return pathState.getEdge().getInferenceGraphSegment().getEdgeId();
+    } else {
+      final Vector groundState = pathState.getGroundState();
+      return Arrays.asList(
+          (long) Math.floor(groundState.getElement(0) / this.binSize),
+          (long) Math.floor(groundState.getElement(2) / this.binSize));
+    }
+  }
+
+  public double getBinSize() {
+    return this.binSize;
+  }
+
+  public double getDelta() {
+    return this.delta;
+  }
+
+  public double getEpsilon() {
+    return this.epsilon;
+  }
+
+  public int getMaxParticles() {
+    return this.maxParticles;
+  }
+
+  public int getMinParticles() {
+    return this.minParticles;
+  }
+
+  /**
+   * @return the number of particles needed for the given number of occupied
+   *         bins, within the minimum and maximum.
+   */
+  public int getNumParticles(int numBins) {
+    final double bound =
+        AdaptiveParticleCount.getKLDBound(numBins, this.epsilon,
+            this.quantile);
+    return (int) Math.max(this.minParticles,
+        Math.min(this.maxParticles, Math.ceil(bound)));
+  }
+
+  /**
+   * Draws particles from the distribution until there are as many as the
+   * occupied bins call for.
+   */
+  public <O extends GpsObservation> ArrayList<VehicleStateDistribution<O>>
+      sample(
+        CountedDataDistribution<VehicleStateDistribution<O>> distribution,
+        Random random) {
+    final ArrayList<VehicleStateDistribution<O>> result =
+        new ArrayList<VehicleStateDistribution<O>>();
+    final Set<Object> bins = Sets.newHashSet();
+    int numParticles = this.minParticles;
+    while (result.size() < numParticles) {
+      final VehicleStateDistribution<O> state =
+          distribution.sample(random);
+      result.add(state);
+      if (bins.add(this.getBin(state))) {
+        numParticles = this.getNumParticles(bins.size());
+      }
+    }
+    return result;
+  }
+
+  @Override
+  public String toString() {
+    return "AdaptiveParticleCount [minParticles=" + this.minParticles
+        + ", maxParticles=" + this.maxParticles + ", epsilon="
+        + this.epsilon + ", delta=" + this.delta + ", binSize="
+        + this.binSize + "]";
+  }
+
+}
@@ -0,0 +1,582 @@
+package org.opentrackingtools;
+
+import gov.sandia.cognition.statistics.DataDistribution;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.opentrackingtools.graph.InferenceGraph;
+import org.opentrackingtools.model.GpsObservation;
+import org.opentrackingtools.model.VehicleStateDistribution;
+import org.opentrackingtools.model.VehicleStateDistribution.VehicleStateDistributionFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Maps;
+
+/**
+ * Tracks many vehicles at once. Observations are routed by their source id to
+ * a per-vehicle particle filter, and vehicle updates are scheduled on a bounded
+ * pool of worker threads. A vehicle is updated by at most one worker at a
+ * time, and its observations are always filtered in the order they were
+ * submitted. All vehicles share the same inference graph, so the graph must
+ * support concurrent reads. <br>
+ * A vehicle's filter is kept until it's removed, so long-running engines
+ * should periodically call {@link #evictIdleVehicles} or {@link #remove}
+ * for vehicles that stop reporting.
+ *
+ * @param <O>
+ * @param <G>
+ */
+public class FleetTrackingEngine<O extends GpsObservation, G extends InferenceGraph> {
+
+  /**
+   * Receives each vehicle's belief after it has been updated with an
+   * observation. Called from worker threads.
+   */
+  public static interface UpdateListener<O extends GpsObservation> {
+
+    public void updated(O obs,
+      DataDistribution<VehicleStateDistribution<O>> belief);
+
+  }
+
+  /**
+   * A snapshot of a vehicle's update statistics.
+   */
+  public static class VehicleStats {
+
+    protected final int backlog;
+    protected final long lastLatencyNanos;
+    protected final long lastUpdateNanos;
+    protected final long maxLatencyNanos;
+    protected final long maxUpdateNanos;
+    protected final long numUpdates;
+    protected final String sourceId;
+    protected final long totalLatencyNanos;
+    protected final long totalUpdateNanos;
+
+    public VehicleStats(String sourceId, long numUpdates,
+      long totalUpdateNanos, long lastUpdateNanos,
+      long maxUpdateNanos, long totalLatencyNanos,
+      long lastLatencyNanos, long maxLatencyNanos, int backlog) {
+      this.sourceId = sourceId;
+      this.numUpdates = numUpdates;
+      this.totalUpdateNanos = totalUpdateNanos;
+      this.lastUpdateNanos = lastUpdateNanos;
+      this.maxUpdateNanos = maxUpdateNanos;
+      this.totalLatencyNanos = totalLatencyNanos;
+      this.lastLatencyNanos = lastLatencyNanos;
+      this.maxLatencyNanos = maxLatencyNanos;
+      this.backlog = backlog;
+    }
+
+    /**
+     * The number of observations waiting to be filtered.
+     */
+    public int getBacklog() {
+      return this.backlog;
+    }
+
+    /**
+     * The time from when the last observation was submitted until it was
+     * filtered, including the time it spent queued.
+     */
+    public long getLastLatencyNanos() {
+      return this.lastLatencyNanos;
+    }
+
+    /**
+     * The time the filter spent on the last observation.
+     */
+    public long getLastUpdateNanos() {
+      return this.lastUpdateNanos;
+    }
+
+    public long getMaxLatencyNanos() {
+      return this.maxLatencyNanos;
+    }
+
+    public long getMaxUpdateNanos() {
+      return this.maxUpdateNanos;
+    }
+
+    public double getMeanLatencyNanos() {
+      return this.numUpdates > 0 ? (double) this.totalLatencyNanos
+          / this.numUpdates : 0d;
+    }
+
+    public double getMeanUpdateNanos() {
+      return this.numUpdates > 0 ? (double) this.totalUpdateNanos
+          / this.numUpdates : 0d;
+    }
+
+    public long getNumUpdates() {
+      return this.numUpdates;
+    }
+
+    public String getSourceId() {
+      return this.sourceId;
+    }
+
+    public long getTotalLatencyNanos() {
+      return this.totalLatencyNanos;
+    }
+
+    public long getTotalUpdateNanos() {
+      return this.totalUpdateNanos;
+    }
+
+    @Override
+    public String toString() {
+      return "VehicleStats [sourceId=" + this.sourceId
+          + ", numUpdates=" + this.numUpdates + ", meanUpdateMs="
+          + this.getMeanUpdateNanos() / 1e6 + ", maxUpdateMs="
+          + this.maxUpdateNanos / 1e6 + ", meanLatencyMs="
+          + this.getMeanLatencyNanos() / 1e6 + ", maxLatencyMs="
+          + this.maxLatencyNanos / 1e6 + ", backlog=" + this.backlog
+          + "]";
+    }
+  }
+
+  /**
+   * An observation waiting to be filtered, with the time it was submitted.
+   */
+  protected static class QueuedObservation<O extends GpsObservation> {
+
+    protected final O obs;
+    protected final long queuedNanos;
+
+    public QueuedObservation(O obs, long queuedNanos) {
+      this.obs = obs;
+      this.queuedNanos = queuedNanos;
+    }
+  }
+
+  /**
+   * The filter, belief and pending observations of one vehicle.
+   */
+  protected class VehicleTracker implements Runnable {
+
+    protected DataDistribution<VehicleStateDistribution<O>> belief =
+        null;
+    protected VehicleStatePLFilter<O, G> filter = null;
+    /*
+     * Guarded by submitLock.
+     */
+    protected boolean isRemoved = false;
+    protected long lastLatencyNanos = 0l;
+    /*
+     * Guarded by submitLock.
+     */
+    protected long lastSubmittedNanos;
+    protected long lastUpdateNanos = 0l;
+    protected long maxLatencyNanos = 0l;
+    protected long maxUpdateNanos = 0l;
+    protected long numUpdates = 0l;
+    protected final Queue<QueuedObservation<O>> pending =
+        new ConcurrentLinkedQueue<QueuedObservation<O>>();
+    protected final AtomicBoolean scheduled = new AtomicBoolean(
+        false);
+    protected final String sourceId;
+    /*
+     * Orders submissions against removal.  It's separate from the
+     * tracker's monitor so that submits don't wait on updates.
+     */
+    protected final Object submitLock = new Object();
+    protected long totalLatencyNanos = 0l;
+    protected long totalUpdateNanos = 0l;
+
+    public VehicleTracker(String sourceId) {
+      this.sourceId = sourceId;
+      this.lastSubmittedNanos = System.nanoTime();
+    }
+
+    /**
+     * Queues the observation, unless the tracker has been removed.
+     * 
+     * @return false if the tracker has been removed
+     */
+    public boolean enqueue(QueuedObservation<O> queued) {
+      synchronized (this.submitLock) {
+        if (this.isRemoved) {
+          return false;
+        }
+        this.pending.add(queued);
+        this.lastSubmittedNanos = queued.queuedNanos;
+        return true;
+      }
+    }
+
+    /**
+     * @return a copy of the belief, which the filter is free to keep
+     *         updating
+     */
+    public synchronized DataDistribution<VehicleStateDistribution<O>>
+        getBelief() {
+      return this.belief != null ? this.belief.clone() : null;
+    }
+
+    public synchronized VehicleStats getStats() {
+      return new VehicleStats(this.sourceId, this.numUpdates,
+          this.totalUpdateNanos, this.lastUpdateNanos,
+          this.maxUpdateNanos, this.totalLatencyNanos,
+          this.lastLatencyNanos, this.maxLatencyNanos,
+          this.pending.size());
+    }
+
+    /**
+     * Marks the tracker as removed when it has nothing queued or being
+     * filtered, and nothing has been submitted since the given time.
+     * Once removed, the tracker accepts no more observations.
+     * 
+     * @return true if the tracker was removed
+     */
+    public boolean removeIfIdleSince(long idleSinceNanos) {
+      synchronized (this.submitLock) {
+        if (!this.pending.isEmpty() || this.scheduled.get()
+            || this.lastSubmittedNanos - idleSinceNanos > 0l) {
+          return false;
+        }
+        this.isRemoved = true;
+        return true;
+      }
+    }
+
+    @Override
+    public void run() {
+      do {
+        QueuedObservation<O> queued;
+        while ((queued = this.pending.poll()) != null) {
+          try {
+            this.update(queued.obs, queued.queuedNanos);
+          } catch (final RuntimeException e) {
+            FleetTrackingEngine._log.error("update failed for vehicle "
+                + this.sourceId + " on " + queued.obs, e);
+          } finally {
+            FleetTrackingEngine.this.finished(1);
+          }
+        }
+        this.scheduled.set(false);
+
+        /*
+         * An observation could have arrived after the last poll, but
+         * before we cleared the flag.  Keep going on this thread rather
+         * than resubmitting, since the executor may be shutting down.
+         */
+      } while (!this.pending.isEmpty()
+          && this.scheduled.compareAndSet(false, true));
+    }
+
+    protected synchronized void update(O obs, long queuedNanos) {
+      final long start = System.nanoTime();
+      if (this.filter == null) {
+        this.filter =
+            FleetTrackingEngine.this.createFilter(this.sourceId, obs);
+        this.belief = this.filter.createInitialLearnedObject();
+      } else {
+        this.filter.update(this.belief, obs);
+      }
+      final long end = System.nanoTime();
+      final long elapsed = end - start;
+      final long latency = end - queuedNanos;
+
+      this.numUpdates++;
+      this.totalUpdateNanos += elapsed;
+      this.lastUpdateNanos = elapsed;
+      this.maxUpdateNanos = Math.max(this.maxUpdateNanos, elapsed);
+      this.totalLatencyNanos += latency;
+      this.lastLatencyNanos = latency;
+      this.maxLatencyNanos = Math.max(this.maxLatencyNanos, latency);
+
+      final UpdateListener<O> listener =
+          FleetTrackingEngine.this.listener;
+      if (listener != null) {
+        listener.updated(obs, this.belief);
+      }
+    }
+  }
+
+  private static final Logger _log = LoggerFactory
+      .getLogger(FleetTrackingEngine.class);
+
+  protected final ExecutorService executor;
+  protected final Condition idle;
+  protected final Lock idleLock = new ReentrantLock();
+  protected final G inferenceGraph;
+  protected final boolean isDebug;
+  protected volatile UpdateListener<O> listener = null;
+  /*
+   * Observations submitted but not yet filtered.  Guarded by idleLock.
+   */
+  protected int numOutstanding = 0;
+  protected final VehicleStateInitialParameters parameters;
+  protected final VehicleStateDistributionFactory<O, G> vehicleStateFactory;
+  protected final ConcurrentMap<String, VehicleTracker> vehicles =
+      new ConcurrentHashMap<String, VehicleTracker>();
+
+  /**
+   * @param inferenceGraph
+   *          the graph shared by all vehicles
+   * @param vehicleStateFactory
+   * @param parameters
+   *          initial parameters used for every vehicle
+   * @param numWorkers
+   *          the number of threads that update vehicles
+   * @param isDebug
+   */
+  public FleetTrackingEngine(G inferenceGraph,
+    VehicleStateDistributionFactory<O, G> vehicleStateFactory,
+    VehicleStateInitialParameters parameters, int numWorkers,
+    boolean isDebug) {
+    Preconditions.checkArgument(numWorkers > 0);
+    this.inferenceGraph = Preconditions.checkNotNull(inferenceGraph);
+    this.vehicleStateFactory = vehicleStateFactory;
+    this.parameters = parameters;
+    this.isDebug = isDebug;
+    this.executor = Executors.newFixedThreadPool(numWorkers);
+    this.idle = this.idleLock.newCondition();
+  }
+
+  /**
+   * Blocks until all submitted observations have been filtered, or the timeout
+   * passes.
+   *
+   * @return true if the engine became idle before the timeout
+   * @throws InterruptedException
+   */
+  public boolean awaitIdle(long timeout, TimeUnit unit)
+      throws InterruptedException {
+    long remaining = unit.toNanos(timeout);
+    this.idleLock.lock();
+    try {
+      while (this.numOutstanding > 0) {
+        if (remaining <= 0l) {
+          return false;
+        }
+        remaining = this.idle.awaitNanos(remaining);
+      }
+      return true;
+    } finally {
+      this.idleLock.unlock();
+    }
+  }
+
+  /**
+   * Creates the filter for a newly seen vehicle. The random number generator
+   * is seeded from the parameters' seed and the vehicle's id, so that a
+   * vehicle's results don't depend on the other vehicles in the fleet.
+   */
+  protected VehicleStatePLFilter<O, G> createFilter(String sourceId,
+    O initialObs) {
+    final Random rng;
+    if (this.parameters.getSeed() != 0) {
+      rng =
+          new Random(this.parameters.getSeed() * 31
+              + sourceId.hashCode());
+    } else {
+      rng = new Random();
+    }
+    return new VehicleStatePLFilter<O, G>(initialObs,
+        this.inferenceGraph, this.vehicleStateFactory,
+        this.parameters, this.isDebug, rng);
+  }
+
+  /**
+   * Removes every vehicle that has had nothing submitted for at least the
+   * given time, and has nothing left to filter. A removed vehicle's filter
+   * and belief are discarded; its next observation starts a new filter.
+   * 
+   * @return the number of vehicles removed
+   */
+  public int evictIdleVehicles(long maxIdleTime, TimeUnit unit) {
+    final long idleSinceNanos =
+        System.nanoTime() - unit.toNanos(maxIdleTime);
+    int numRemoved = 0;
+    for (final VehicleTracker tracker : this.vehicles.values()) {
+      if (tracker.removeIfIdleSince(idleSinceNanos)) {
+        this.vehicles.remove(tracker.sourceId, tracker);
+        numRemoved++;
+      }
+    }
+    return numRemoved;
+  }
+
+  /**
+   * Marks observations as done, either filtered or dropped, and wakes
+   * anyone waiting for the engine to become idle.
+   */
+  protected void finished(int numObservations) {
+    this.idleLock.lock();
+    try {
+      this.numOutstanding -= numObservations;
+      if (this.numOutstanding == 0) {
+        this.idle.signalAll();
+      }
+    } finally {
+      this.idleLock.unlock();
+    }
+  }
+
+  /**
+   * @return the total number of observations waiting to be filtered
+   */
+  public int getBacklog() {
+    int backlog = 0;
+    for (final VehicleTracker tracker : this.vehicles.values()) {
+      backlog += tracker.pending.size();
+    }
+    return backlog;
+  }
+
+  /**
+   * @return a copy of the current belief for the vehicle, or null when it
+   *         hasn't been seen yet
+   */
+  public DataDistribution<VehicleStateDistribution<O>> getBelief(
+    String sourceId) {
+    final VehicleTracker tracker = this.vehicles.get(sourceId);
+    return tracker != null ? tracker.getBelief() : null;
+  }
+
+  public G getInferenceGraph() {
+    return this.inferenceGraph;
+  }
+
+  public UpdateListener<O> getListener() {
+    return this.listener;
+  }
+
+  public int getNumVehicles() {
+    return this.vehicles.size();
+  }
+
+  public VehicleStats getVehicleStats(String sourceId) {
+    final VehicleTracker tracker = this.vehicles.get(sourceId);
+    return tracker != null ? tracker.getStats() : null;
+  }
+
+  public Map<String, VehicleStats> getVehicleStats() {
+    final Map<String, VehicleStats> stats = Maps.newHashMap();
+    for (final VehicleTracker tracker : this.vehicles.values()) {
+      stats.put(tracker.sourceId, tracker.getStats());
+    }
+    return Collections.unmodifiableMap(stats);
+  }
+
+  /**
+   * Removes the vehicle, discarding its filter and belief, if it has nothing
+   * left to filter. Its next observation starts a new filter.
+   * 
+   * @return true if the vehicle was removed, false if it's unknown or still
+   *         has observations to filter
+   */
+  public boolean remove(String sourceId) {
+    final VehicleTracker tracker = this.vehicles.get(sourceId);
+    if (tracker == null || !tracker.removeIfIdleSince(System.nanoTime())) {
+      return false;
+    }
+    this.vehicles.remove(sourceId, tracker);
+    return true;
+  }
+
+  /**
+   * Starts a worker on the vehicle, unless one is already running.
+   * 
+   * @throws RejectedExecutionException
+   *           when the engine has been shut down.  The vehicle's pending
+   *           observations are dropped, since nothing will filter them.
+   */
+  protected void schedule(VehicleTracker tracker) {
+    if (!tracker.scheduled.compareAndSet(false, true)) {
+      return;
+    }
+    try {
+      this.executor.execute(tracker);
+    } catch (final RejectedExecutionException e) {
+      int numDropped = 0;
+      while (tracker.pending.poll() != null) {
+        numDropped++;
+      }
+      tracker.scheduled.set(false);
+      this.finished(numDropped);
+      FleetTrackingEngine._log.warn("dropped " + numDropped
+          + " observations for vehicle " + tracker.sourceId
+          + " after shutdown");
+      throw e;
+    }
+  }
+
+  public void setListener(UpdateListener<O> listener) {
+    this.listener = listener;
+  }
+
+  /**
+   * Stops accepting observations; later calls to submit throw a
+   * RejectedExecutionException. Already submitted observations are still
+   * filtered.
+   */
+  public void shutdown() {
+    this.executor.shutdown();
+  }
+
+  public boolean awaitTermination(long timeout, TimeUnit unit)
+      throws InterruptedException {
+    return this.executor.awaitTermination(timeout, unit);
+  }
+
+  /**
+   * Queues an observation for its vehicle, creating the vehicle's filter on
+   * its first observation.
+   *
+   * @param obs
+   * @throws RejectedExecutionException
+   *           when the engine has been shut down
+   */
+  public void submit(O obs) {
+    final String sourceId =
+        Preconditions.checkNotNull(obs.getSourceId());
+    if (this.executor.isShutdown()) {
+      throw new RejectedExecutionException("engine has been shut down");
+    }
+    this.idleLock.lock();
+    try {
+      this.numOutstanding++;
+    } finally {
+      this.idleLock.unlock();
+    }
+    final QueuedObservation<O> queued =
+        new QueuedObservation<O>(obs, System.nanoTime());
+    VehicleTracker tracker;
+    do {
+      tracker = this.vehicles.get(sourceId);
+      if (tracker == null) {
+        final VehicleTracker newTracker = new VehicleTracker(sourceId);
+        tracker = this.vehicles.putIfAbsent(sourceId, newTracker);
+        if (tracker == null) {
+          tracker = newTracker;
+        }
+      }
+      /*
+       * A tracker that was removed after we looked it up is on its way
+       * out of the map, so look again.
+       */
+    } while (!tracker.enqueue(queued));
+    this.schedule(tracker);
+  }
+
+}
@@ -0,0 +1,130 @@
+package org.opentrackingtools;
+
+import gov.sandia.cognition.math.MutableDouble;
+import gov.sandia.cognition.math.matrix.Vector;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import org.opentrackingtools.distributions.CountedDataDistribution;
+import org.opentrackingtools.model.GpsObservation;
+import org.opentrackingtools.model.VehicleStateDistribution;
+import org.opentrackingtools.paths.PathEdge;
+import org.opentrackingtools.paths.PathState;
+import org.opentrackingtools.util.model.MutableDoubleCount;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Maps;
+
+/**
+ * Merges particles whose path states agree up to the given resolutions: on the
+ * same graph edge, in the same direction, at about the same distance along it
+ * and speed, or, off-road, at about the same ground location and velocity. A
+ * group of merged particles is represented by its first particle, with the sum
+ * of the group's weights and counts, so the filters predict it, and search its
+ * paths, once instead of once per particle. <br>
+ * The filters fan a group back out into one particle per count when they
+ * smooth, so each member still draws its own transition and updated state.
+ * Only the prediction is shared, along with the representative's parameters,
+ * so the resolutions should be well below the observation error.
+ */
+public class ParticleMerger {
+
+  protected final double distanceResolution;
+  protected final double velocityResolution;
+
+  /**
+   * @param distanceResolution
+   *          the size of the location bins, in meters.
+   * @param velocityResolution
+   *          the size of the velocity bins, in meters per second.
+   */
+  public ParticleMerger(double distanceResolution,
+    double velocityResolution) {
+    Preconditions.checkArgument(distanceResolution > 0d);
+    Preconditions.checkArgument(velocityResolution > 0d);
+    this.distanceResolution = distanceResolution;
+    this.velocityResolution = velocityResolution;
+  }
+
+  public double getDistanceResolution() {
+    return this.distanceResolution;
+  }
+
+  /**
+   * @return a key that's equal for states that should be merged: the path
+   *         state, quantized. On-road states are keyed by their graph edge,
+   *         direction, distance from the start of the graph edge and velocity,
+   *         so the key doesn't depend on the path that led there.
+   */
+  public Object getKey(VehicleStateDistribution<?> state) {
+    final PathState pathState = state.getPathStateParam().getValue();
+    if (!pathState.isOnRoad()) {
+      final Vector groundState = pathState.getGroundState();
+      return Arrays.asList(
+          Math.round(groundState.getElement(0) / this.distanceResolution),
+          Math.round(groundState.getElement(1) / this.velocityResolution),
+          Math.round(groundState.getElement(2) / this.distanceResolution),
+          Math.round(groundState.getElement(3) / this.velocityResolution));
+    }
+
+    final PathEdge edge = pathState.getEdge();
+    final Vector edgeState = pathState.getEdgeState();
+    /*
+     * The edge state's distance is from the start of the segment, in the
+     * direction of travel.
+     */
+    final double distanceOnSegment = Math.abs(edgeState.getElement(0));
+    final double distance =
+        edge.getDistFromStartOfGraphEdge()
+            + (edge.isBackward() ? edge.getLength() - distanceOnSegment
+                : distanceOnSegment);
+    return Arrays.asList(edge.getInferenceGraphSegment().getEdgeId(),
+        edge.isBackward(),
+        Math.round(distance / this.distanceResolution),
+        Math.round(edgeState.getElement(1) / this.velocityResolution));
+  }
+
+  public double getVelocityResolution() {
+    return this.velocityResolution;
+  }
+
+  /**
+   * @return a distribution over the first state of each group of mergeable
+   *         states in the given distribution, with the group's total value and
+   *         count. The given distribution isn't changed.
+   */
+  public <O extends GpsObservation>
+      CountedDataDistribution<VehicleStateDistribution<O>> merge(
+        CountedDataDistribution<VehicleStateDistribution<O>> distribution) {
+    final CountedDataDistribution<VehicleStateDistribution<O>> result =
+        new CountedDataDistribution<VehicleStateDistribution<O>>(
+            distribution.getDomainSize(), distribution.isLogScale());
+    final Map<Object, VehicleStateDistribution<O>> representatives =
+        Maps.newHashMap();
+    for (final Entry<VehicleStateDistribution<O>, MutableDouble> entry : distribution
+        .asMap().entrySet()) {
+      final Object key = this.getKey(entry.getKey());
+      VehicleStateDistribution<O> representative =
+          representatives.get(key);
+      if (representative == null) {
+        representative = entry.getKey();
+        representatives.put(key, representative);
+      }
+      final MutableDoubleCount value =
+          (MutableDoubleCount) entry.getValue();
+      result.increment(representative, value.getValue(),
+          value.getCount());
+    }
+    return result;
+  }
+
+  @Override
+  public String toString() {
+    return "ParticleMerger [distanceResolution="
+        + this.distanceResolution + ", velocityResolution="
+        + this.velocityResolution + "]";
+  }
+
+}
@@ -6,6 +6,7 @@ import gov.sandia.cognition.math.matrix.Vector;
 import gov.sandia.cognition.math.matrix.VectorFactory;
 import gov.sandia.cognition.statistics.ClosedFormComputableDistribution;
 import gov.sandia.cognition.statistics.DataDistribution;
+import gov.sandia.cognition.statistics.DistributionWithMean;
 import gov.sandia.cognition.statistics.bayesian.AbstractParticleFilter;
 import gov.sandia.cognition.statistics.distribution.MultivariateGaussian;
 
@@ -15,6 +16,10 @@ import java.util.Comparator;
 import java.util.List;
 import java.util.Map.Entry;
 import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 import org.opentrackingtools.distributions.AdjMultivariateGaussian;
 import org.opentrackingtools.distributions.CountedDataDistribution;
@@ -22,6 +27,7 @@ import org.opentrackingtools.distributions.OnOffEdgeTransDistribution;
 import org.opentrackingtools.distributions.OnOffEdgeTransPriorDistribution;
 import org.opentrackingtools.distributions.PathStateDistribution;
 import org.opentrackingtools.distributions.PathStateMixtureDensityModel;
+import org.opentrackingtools.distributions.ResamplingScheme;
 import org.opentrackingtools.distributions.ScaledInverseGammaCovDistribution;
 import org.opentrackingtools.estimators.MotionStateEstimatorPredictor;
 import org.opentrackingtools.estimators.OnOffEdgeTransitionEstimatorPredictor;
@@ -32,11 +38,14 @@ import org.opentrackingtools.graph.InferenceGraph;
 import org.opentrackingtools.graph.InferenceGraphEdge;
 import org.opentrackingtools.model.GpsObservation;
 import org.opentrackingtools.model.SimpleBayesianParameter;
+import org.opentrackingtools.model.StateHistoryPolicy;
 import org.opentrackingtools.model.VehicleStateDistribution;
 import org.opentrackingtools.model.VehicleStateDistribution.VehicleStateDistributionFactory;
 import org.opentrackingtools.paths.Path;
 import org.opentrackingtools.updater.VehicleStatePLUpdater;
+import org.opentrackingtools.util.ParticleUtils;
 import org.opentrackingtools.util.PathUtils;
+import org.opentrackingtools.util.metrics.Metrics;
 import org.opentrackingtools.util.model.MutableDoubleCount;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -63,6 +72,47 @@ public class VehicleStatePLFilter<O extends GpsObservation, G extends InferenceG
 
   protected VehicleStateDistributionFactory<O, G> vehicleStateFactory;
 
+  /*
+   * When non-null, particles are propagated and updated concurrently
+   * on this executor.  Either way, each particle gets its own random number
+   * generator, seeded from this filter's, so results for a given seed don't
+   * depend on whether or how the work is split.
+   */
+  protected ExecutorService executor = null;
+
+  /*
+   * How much of each particle's history is kept after it's updated.
+   */
+  protected StateHistoryPolicy historyPolicy =
+      StateHistoryPolicy.UNBOUNDED;
+
+  /*
+   * When non-null, the number of particles is chosen at each update
+   * instead of staying fixed.  KLD-sampling decides the count while
+   * drawing the particles one at a time, so it only works with
+   * multinomial resampling.
+   */
+  protected AdaptiveParticleCount adaptiveParticleCount = null;
+
+  /*
+   * How the particles are drawn from the resample distribution.
+   */
+  protected ResamplingScheme resamplingScheme =
+      ResamplingScheme.MULTINOMIAL;
+
+  /*
+   * When non-null, particles that have become near-identical are merged
+   * into one particle with their combined count.
+   */
+  protected ParticleMerger particleMerger = null;
+
+  /*
+   * When non-null, particles are only resampled when the effective sample
+   * size falls below this fraction of the number of particles.  Otherwise,
+   * they keep their weights.
+   */
+  protected Double resampleThreshold = null;
+
   public VehicleStatePLFilter(O obs, G inferredGraph,
     VehicleStateDistributionFactory<O, G> vehicleStateFactory,
     VehicleStateInitialParameters parameters, Boolean isDebug,
@@ -84,6 +134,18 @@ public class VehicleStatePLFilter<O extends GpsObservation, G extends InferenceG
         graphEdge);
   }
 
+  public AdaptiveParticleCount getAdaptiveParticleCount() {
+    return this.adaptiveParticleCount;
+  }
+
+  public ExecutorService getExecutor() {
+    return this.executor;
+  }
+
+  public StateHistoryPolicy getHistoryPolicy() {
+    return this.historyPolicy;
+  }
+
   public Boolean getIsDebug() {
     return this.isDebug;
   }
@@ -93,6 +155,18 @@ public class VehicleStatePLFilter<O extends GpsObservation, G extends InferenceG
     return this.lastResampleDistribution;
   }
 
+  public ParticleMerger getParticleMerger() {
+    return this.particleMerger;
+  }
+
+  public Double getResampleThreshold() {
+    return this.resampleThreshold;
+  }
+
+  public ResamplingScheme getResamplingScheme() {
+    return this.resamplingScheme;
+  }
+
   protected RoadMeasurementCovarianceEstimatorPredictor
       getRoadMeasurementCovarianceEstimatorPredictor(
         VehicleStateDistribution<O> updatedState,
@@ -162,9 +236,11 @@ public class VehicleStatePLFilter<O extends GpsObservation, G extends InferenceG
               measurementPredictionDist,
               predictedPathStateDist.getMotionDistribution()));
 
+      final long likelihoodStart = Metrics.startTimer();
       final double obsLogLikelihood =
           this.getUpdater().computeLogLikelihood(predictedChildState,
               obs);
+      Metrics.stopTimer(Metrics.LIKELIHOOD_TIME, likelihoodStart);
 
       predictedChildState.setParentState(predictedState
           .getParentState());
@@ -198,6 +274,20 @@ public class VehicleStatePLFilter<O extends GpsObservation, G extends InferenceG
    */
   protected VehicleStateDistribution<O> internalUpdate(
     VehicleStateDistribution<O> state, O obs) {
+    return this.internalUpdate(state, obs, this.random);
+  }
+
+  /**
+   * This method performs the Bayes update for a single vehicle state, drawing
+   * all parameter samples from the given random number generator.
+   * 
+   * @param state
+   * @param obs
+   * @param rng
+   * @return
+   */
+  protected VehicleStateDistribution<O> internalUpdate(
+    VehicleStateDistribution<O> state, O obs, Random rng) {
     final VehicleStateDistribution<O> updatedState = state.clone();
     final PathStateDistribution priorPredictivePathStateDist =
         updatedState.getPathStateParam().getParameterPrior().clone();
@@ -257,16 +347,17 @@ public class VehicleStatePLFilter<O extends GpsObservation, G extends InferenceG
     /*
      * Update parameters
      */
-    updatedState.getPathStateParam().setValue(
-        posteriorPathStateDist.getPathState());
-    updatedState.getPathStateParam().setParameterPrior(
-        posteriorPathStateDist);
+    updatedState.setPathStateParam(SimpleBayesianParameter.create(
+        posteriorPathStateDist.getPathState(), updatedState
+            .getPathStateParam().getConditionalDistribution(),
+        posteriorPathStateDist));
 
     Vector newObsStateSample;
 
+    final long covarianceStart = Metrics.startTimer();
     final RoadModelCovarianceEstimatorPredictor modelCovarianceEstimator =
         new RoadModelCovarianceEstimatorPredictor(updatedState,
-            state.getMotionStateEstimatorPredictor(), this.random);
+            state.getMotionStateEstimatorPredictor(), rng);
     final ScaledInverseGammaCovDistribution currentModelCovDistribution =
         (ScaledInverseGammaCovDistribution) (posteriorPathStateDist.getPathState().isOnRoad()
         ? updatedState.getOnRoadModelCovarianceParam()
@@ -282,27 +373,19 @@ public class VehicleStatePLFilter<O extends GpsObservation, G extends InferenceG
      * back and forth, then we'd really only have one.
      */
     if (posteriorPathStateDist.getPathState().isOnRoad()) {
-      updatedState.getOnRoadModelCovarianceParam()
-          .setParameterPrior(currentModelCovDistribution);
       final Matrix stateCovSample =
-          currentModelCovDistribution.sample(this.random);
-      updatedState.getOnRoadModelCovarianceParam().setValue(
-          stateCovSample);
-      updatedState.getOnRoadModelCovarianceParam()
-          .setConditionalDistribution(
+          currentModelCovDistribution.sample(rng);
+      updatedState.setOnRoadModelCovarianceParam(
+          SimpleBayesianParameter.<Matrix, MultivariateGaussian, DistributionWithMean<Matrix>>create(stateCovSample,
               new MultivariateGaussian(VectorFactory.getDefault()
-                  .createVector1D(), stateCovSample));
+                  .createVector1D(), stateCovSample), currentModelCovDistribution));
     } else {
-      updatedState.getOffRoadModelCovarianceParam()
-          .setParameterPrior(currentModelCovDistribution);
       final Matrix stateCovSample =
-          currentModelCovDistribution.sample(this.random);
-      updatedState.getOffRoadModelCovarianceParam().setValue(
-          stateCovSample);
-      updatedState.getOffRoadModelCovarianceParam()
-          .setConditionalDistribution(
+          currentModelCovDistribution.sample(rng);
+      updatedState.setOffRoadModelCovarianceParam(
+          SimpleBayesianParameter.<Matrix, MultivariateGaussian, DistributionWithMean<Matrix>>create(stateCovSample,
               new MultivariateGaussian(VectorFactory.getDefault()
-                  .createVector1D(), stateCovSample));
+                  .createVector1D(), stateCovSample), currentModelCovDistribution));
     }
     newObsStateSample =
         MotionStateEstimatorPredictor.getOg().times(
@@ -318,29 +401,23 @@ public class VehicleStatePLFilter<O extends GpsObservation, G extends InferenceG
     measurementCovarianceEstimator.update(
         currentObsCovDistribution, obs.getProjectedPoint());
 
-    updatedState.getObservationCovarianceParam().setParameterPrior(
-        currentObsCovDistribution);
     final Matrix obsCovSample =
-        currentObsCovDistribution.sample(this.random);
-    updatedState.getObservationCovarianceParam().setValue(
-        obsCovSample);
-    updatedState.getObservationCovarianceParam()
-        .setConditionalDistribution(
+        currentObsCovDistribution.sample(rng);
+    updatedState.setObservationCovarianceParam(
+        SimpleBayesianParameter.<Matrix, MultivariateGaussian, DistributionWithMean<Matrix>>create(obsCovSample,
             new MultivariateGaussian(VectorFactory.getDefault()
                 .createVector(obsCovSample.getNumColumns()),
-                obsCovSample));
+                obsCovSample), currentObsCovDistribution));
+    Metrics.stopTimer(Metrics.COVARIANCE_SAMPLING_TIME, covarianceStart);
 
-    updatedState.getMotionStateParam().setParameterPrior(
-        posteriorPathStateDist.getMotionDistribution());
     final MultivariateGaussian obsMotionDist =
         updatedState.getMotionStateEstimatorPredictor()
             .getObservationDistribution(
                 posteriorPathStateDist.getMotionDistribution(),
                 posteriorPathStateDist.getPathState().getEdge());
-    updatedState.getMotionStateParam().setConditionalDistribution(
-        obsMotionDist);
-    updatedState.getMotionStateParam().setValue(
-        obsMotionDist.getMean());
+    updatedState.setMotionStateParam(SimpleBayesianParameter.create(
+        obsMotionDist.getMean(), obsMotionDist,
+        posteriorPathStateDist.getMotionDistribution()));
 
     final OnOffEdgeTransPriorDistribution updatedEdgeTransPrior =
         updatedState.getEdgeTransitionParam().getParameterPrior()
@@ -432,9 +509,168 @@ public class VehicleStatePLFilter<O extends GpsObservation, G extends InferenceG
     this.lastResampleDistribution = lastResampleDistribution;
   }
 
+  /**
+   * Runs the given tasks on the executor and returns their results in task
+   * order, so that whatever is built from them doesn't depend on thread
+   * scheduling.
+   * 
+   * @param tasks
+   * @return
+   */
+  protected <T> List<T> invokeInOrder(List<Callable<T>> tasks) {
+    final List<T> results = Lists.newArrayList();
+    try {
+      for (final Future<T> future : this.executor.invokeAll(tasks)) {
+        results.add(future.get());
+      }
+    } catch (final InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException(
+          "interrupted while updating particles", e);
+    } catch (final ExecutionException e) {
+      if (e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
+      }
+      throw new IllegalStateException(e.getCause());
+    }
+    return results;
+  }
+
+  /**
+   * Produces the prior predictive state for the given particle, along with its
+   * distribution over transition states.
+   * 
+   * @param state
+   * @param obs
+   * @param rng
+   * @return
+   */
+  protected VehicleStateDistribution<O> propagate(
+    VehicleStateDistribution<O> state, O obs, Random rng) {
+    VehicleStateDistribution<O> predictedState = state.clone();
+    predictedState.setParentState(state);
+    predictedState.setObservation(obs);
+    if (this.updater instanceof VehicleStatePLUpdater<?, ?>) {
+      predictedState =
+          ((VehicleStatePLUpdater<O, G>) this.updater).update(
+              predictedState, rng);
+    } else {
+      /*
+       * Other updaters draw from their own generator, which isn't safe to
+       * share between threads.
+       */
+      Preconditions.checkState(this.executor == null);
+      predictedState = this.updater.update(predictedState);
+    }
+
+    final CountedDataDistribution<VehicleStateDistribution<O>> childDist =
+        this.internalPriorPrediction(predictedState, obs);
+    predictedState.setTransitionStateDistribution(childDist);
+
+    return predictedState;
+  }
+
+  /**
+   * Draws the predictive states to update, and sets the number of particles
+   * when it's adaptive.
+   */
+  protected ArrayList<VehicleStateDistribution<O>> resample(
+    CountedDataDistribution<VehicleStateDistribution<O>> resampleDist) {
+    if (this.adaptiveParticleCount != null) {
+      final ArrayList<VehicleStateDistribution<O>> sampledStates =
+          this.adaptiveParticleCount.sample(resampleDist, this.random);
+      this.setNumParticles(sampledStates.size());
+      return sampledStates;
+    }
+    return resampleDist.sample(this.random, this.getNumParticles(),
+        this.resamplingScheme);
+  }
+
+  /**
+   * Samples a transition state from a resampled predictive state and performs
+   * the Bayes update on it.
+   * 
+   * @param state
+   * @param obs
+   * @param rng
+   * @return
+   */
+  protected VehicleStateDistribution<O> smooth(
+    VehicleStateDistribution<O> state, O obs, Random rng) {
+    final long smoothingStart = Metrics.startTimer();
+    final VehicleStateDistribution<O> sampledTransitionState =
+        state.getTransitionStateDistribution().sample(rng);
+    final VehicleStateDistribution<O> updatedState =
+        this.internalUpdate(sampledTransitionState, obs, rng);
+    if (this.isDebug) {
+      updatedState.setTransitionStateDistribution(state
+          .getTransitionStateDistribution());
+      updatedState.setPriorPredictiveState(sampledTransitionState);
+    }
+    Metrics.stopTimer(Metrics.SMOOTHING_TIME, smoothingStart);
+    return updatedState;
+  }
+
+  /**
+   * @param adaptiveParticleCount
+   *          how to choose the number of particles at each update, or null
+   *          to keep the number fixed. Requires the multinomial resampling
+   *          scheme.
+   */
+  public void setAdaptiveParticleCount(
+    AdaptiveParticleCount adaptiveParticleCount) {
+    Preconditions.checkArgument(adaptiveParticleCount == null
+        || this.resamplingScheme == ResamplingScheme.MULTINOMIAL,
+        "adaptive particle counts need multinomial resampling");
+    this.adaptiveParticleCount = adaptiveParticleCount;
+  }
+
+  public void setExecutor(ExecutorService executor) {
+    this.executor = executor;
+  }
+
+  public void setHistoryPolicy(StateHistoryPolicy historyPolicy) {
+    this.historyPolicy = Preconditions.checkNotNull(historyPolicy);
+  }
+
+  /**
+   * @param particleMerger
+   *          how to merge near-identical particles, or null to keep them
+   *          all.
+   */
+  public void setParticleMerger(ParticleMerger particleMerger) {
+    this.particleMerger = particleMerger;
+  }
+
+  /**
+   * @param resampleThreshold
+   *          the fraction of the number of particles that the effective
+   *          sample size has to fall below for the particles to be resampled,
+   *          or null to resample at every update.
+   */
+  public void setResampleThreshold(Double resampleThreshold) {
+    Preconditions.checkArgument(resampleThreshold == null
+        || (resampleThreshold >= 0d && resampleThreshold <= 1d));
+    this.resampleThreshold = resampleThreshold;
+  }
+
+  /**
+   * @param resamplingScheme
+   *          how particles are drawn. Only the multinomial scheme can be used
+   *          with an adaptive particle count.
+   */
+  public void setResamplingScheme(ResamplingScheme resamplingScheme) {
+    Preconditions.checkArgument(this.adaptiveParticleCount == null
+        || resamplingScheme == ResamplingScheme.MULTINOMIAL,
+        "adaptive particle counts need multinomial resampling");
+    this.resamplingScheme =
+        Preconditions.checkNotNull(resamplingScheme);
+  }
+
   @Override
   public void update(
-    DataDistribution<VehicleStateDistribution<O>> target, O obs) {
+    DataDistribution<VehicleStateDistribution<O>> target, final O obs) {
+    final long updateStart = Metrics.startTimer();
 
     /*
      * Compute predictive distributions, and create a distribution out of those and
@@ -443,30 +679,70 @@ public class VehicleStatePLFilter<O extends GpsObservation, G extends InferenceG
     final CountedDataDistribution<VehicleStateDistribution<O>> resampleDist =
         new CountedDataDistribution<VehicleStateDistribution<O>>(true);
 
-    for (final VehicleStateDistribution<O> state : target.getDomain()) {
+    /*
+     * Particles in the same merge group share one prediction.
+     * They're fanned back out into separate particles when
+     * they're smoothed.
+     */
+    final DataDistribution<VehicleStateDistribution<O>> priors =
+        ParticleUtils.getPriors(target, this.particleMerger);
+
+    final List<VehicleStateDistribution<O>> priorStates =
+        Lists.newArrayList(priors.getDomain());
+    final List<VehicleStateDistribution<O>> predictedStates;
+    if (this.executor == null) {
+      predictedStates = Lists.newArrayList();
+      for (final VehicleStateDistribution<O> state : priorStates) {
+        final Random particleRng = new Random(this.random.nextLong());
+        predictedStates.add(this.propagate(state, obs, particleRng));
+      }
+    } else {
+      final List<Callable<VehicleStateDistribution<O>>> tasks =
+          Lists.newArrayList();
+      for (final VehicleStateDistribution<O> state : priorStates) {
+        final Random particleRng = new Random(this.random.nextLong());
+        tasks.add(new Callable<VehicleStateDistribution<O>>() {
+          @Override
+          public VehicleStateDistribution<O> call() {
+            return VehicleStatePLFilter.this.propagate(state, obs,
+                particleRng);
+          }
+        });
+      }
+      predictedStates = this.invokeInOrder(tasks);
+    }
+
+    /*
+     * Merge in the original particle order, so the resample distribution
+     * is the same however the predictions were computed.
+     */
+    for (int i = 0; i < priorStates.size(); i++) {
+      final VehicleStateDistribution<O> state = priorStates.get(i);
+      final VehicleStateDistribution<O> predictedState =
+          predictedStates.get(i);
 
+      /*
+       * After resampling, a particle's weight is the log of its count.
+       * When resampling was skipped, it's the weight it carried over.
+       */
       final int count;
-      if (target instanceof CountedDataDistribution<?>) {
-        count = ((CountedDataDistribution) target).getCount(state);
+      final double logWeight;
+      if (priors instanceof CountedDataDistribution<?>) {
+        final CountedDataDistribution<VehicleStateDistribution<O>> countedPriors =
+            (CountedDataDistribution<VehicleStateDistribution<O>>) priors;
+        count = countedPriors.getCount(state);
+        logWeight =
+            countedPriors.isLogScale() ? priors.get(state) : Math
+                .log(priors.get(state));
       } else {
         count = 1;
+        logWeight = 0d;
       }
       Preconditions.checkState(count > 0);
 
-      final double logCount = Math.log(count);
-
-      VehicleStateDistribution<O> predictedState = state.clone();
-      predictedState.setParentState(state);
-      predictedState.setObservation(obs);
-      predictedState = this.updater.update(predictedState);
-
-      final CountedDataDistribution<VehicleStateDistribution<O>> childDist =
-          this.internalPriorPrediction(predictedState, obs);
-      predictedState.setTransitionStateDistribution(childDist);
-
-      resampleDist.increment(predictedState, childDist.getTotal()
-          + logCount);
-
+      resampleDist.increment(predictedState, predictedState
+          .getTransitionStateDistribution().getTotal() + logWeight,
+          count);
     }
 
     Preconditions.checkState(!resampleDist.isEmpty());
@@ -475,33 +751,58 @@ public class VehicleStatePLFilter<O extends GpsObservation, G extends InferenceG
       this.lastResampleDistribution = resampleDist;
     }
 
+    final boolean resample =
+        this.resampleThreshold == null
+            || !(target instanceof CountedDataDistribution<?>)
+            || resampleDist.getEffectiveSampleSize() < this.resampleThreshold
+                * resampleDist.getTotalCount();
+
     /*
      * Resample the predictive distributions.  Now we're dealing with the "best" states.
+     * When the weights are still well spread, every predictive state is kept instead.
      */
-    final ArrayList<VehicleStateDistribution<O>> smoothedStates =
-        resampleDist.sample(this.random, this.getNumParticles());
-
-    final List<VehicleStateDistribution<O>> updatedStates =
+    final List<VehicleStateDistribution<O>> smoothedStates =
         Lists.newArrayList();
+    final List<MutableDoubleCount> smoothedWeights = Lists.newArrayList();
+    final long resamplingStart = Metrics.startTimer();
+    ParticleUtils.getSmoothingInputs(resampleDist,
+        resample ? this.resample(resampleDist) : null,
+        this.particleMerger != null, smoothedStates, smoothedWeights);
+    Metrics.stopTimer(Metrics.RESAMPLING_TIME, resamplingStart);
+    Metrics.increment(resample ? Metrics.RESAMPLES
+        : Metrics.RESAMPLES_SKIPPED, 1);
 
     /*
      * Propagate/smooth the best states. 
      */
-    for (final VehicleStateDistribution<O> state : smoothedStates) {
-      final VehicleStateDistribution<O> sampledTransitionState =
-          state.getTransitionStateDistribution().sample(this.random);
-      final VehicleStateDistribution<O> updatedState =
-          this.internalUpdate(sampledTransitionState, obs);
-      if (this.isDebug) {
-        updatedState.setTransitionStateDistribution(state
-            .getTransitionStateDistribution());
-        updatedState.setPriorPredictiveState(sampledTransitionState);
+    final List<VehicleStateDistribution<O>> updatedStates;
+    if (this.executor == null) {
+      updatedStates = Lists.newArrayList();
+      for (final VehicleStateDistribution<O> state : smoothedStates) {
+        final Random particleRng = new Random(this.random.nextLong());
+        updatedStates.add(this.smooth(state, obs, particleRng));
       }
-      updatedStates.add(updatedState);
+    } else {
+      final List<Callable<VehicleStateDistribution<O>>> tasks =
+          Lists.newArrayList();
+      for (final VehicleStateDistribution<O> state : smoothedStates) {
+        final Random particleRng = new Random(this.random.nextLong());
+        tasks.add(new Callable<VehicleStateDistribution<O>>() {
+          @Override
+          public VehicleStateDistribution<O> call() {
+            return VehicleStatePLFilter.this.smooth(state, obs,
+                particleRng);
+          }
+        });
+      }
+      updatedStates = this.invokeInOrder(tasks);
+    }
+
+    for (final VehicleStateDistribution<O> updatedState : updatedStates) {
+      this.historyPolicy.apply(updatedState);
     }
 
-    target.clear();
-    target.incrementAll(updatedStates);
+    ParticleUtils.setPosterior(target, updatedStates, smoothedWeights);
 
     Preconditions.checkState(target.getDomainSize() > 0);
     if (target instanceof CountedDataDistribution<?>) {
@@ -509,6 +810,8 @@ public class VehicleStatePLFilter<O extends GpsObservation, G extends InferenceG
           .getTotalCount() == this.numParticles);
     }
 
+    Metrics.record(Metrics.PARTICLES, this.numParticles);
+    Metrics.stopTimer(Metrics.UPDATE_TIME, updateStart);
   }
 
-}
\ No newline at end of file
+}
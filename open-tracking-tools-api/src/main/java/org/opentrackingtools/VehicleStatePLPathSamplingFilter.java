@@ -28,6 +28,7 @@ import org.opentrackingtools.distributions.OnOffEdgeTransPriorDistribution;
 import org.opentrackingtools.distributions.OnOffEdgeTransProbabilityFunction;
 import org.opentrackingtools.distributions.PathStateDistribution;
 import org.opentrackingtools.distributions.PathStateMixtureDensityModel;
+import org.opentrackingtools.distributions.ResamplingScheme;
 import org.opentrackingtools.distributions.ScaledInverseGammaCovDistribution;
 import org.opentrackingtools.estimators.MotionStateEstimatorPredictor;
 import org.opentrackingtools.estimators.OnOffEdgeTransitionEstimatorPredictor;
@@ -38,10 +39,12 @@ import org.opentrackingtools.graph.InferenceGraph;
 import org.opentrackingtools.graph.InferenceGraphEdge;
 import org.opentrackingtools.model.GpsObservation;
 import org.opentrackingtools.model.SimpleBayesianParameter;
+import org.opentrackingtools.model.StateHistoryPolicy;
 import org.opentrackingtools.model.VehicleStateDistribution;
 import org.opentrackingtools.model.VehicleStateDistribution.VehicleStateDistributionFactory;
 import org.opentrackingtools.paths.Path;
 import org.opentrackingtools.updater.VehicleStatePLPathSamplingUpdater;
+import org.opentrackingtools.util.ParticleUtils;
 import org.opentrackingtools.util.PathUtils;
 import org.opentrackingtools.util.model.MutableDoubleCount;
 import org.slf4j.Logger;
@@ -70,6 +73,39 @@ public class VehicleStatePLPathSamplingFilter<O extends GpsObservation, G extend
   protected VehicleStateDistributionFactory<O, G> vehicleStateFactory;
   protected VehicleStateInitialParameters parameters;
 
+  /*
+   * How much of each particle's history is kept after it's updated.
+   */
+  protected StateHistoryPolicy historyPolicy =
+      StateHistoryPolicy.UNBOUNDED;
+
+  /*
+   * When non-null, the number of particles is chosen at each update
+   * instead of staying fixed.  KLD-sampling decides the count while
+   * drawing the particles one at a time, so it only works with
+   * multinomial resampling.
+   */
+  protected AdaptiveParticleCount adaptiveParticleCount = null;
+
+  /*
+   * How the particles are drawn from the resample distribution.
+   */
+  protected ResamplingScheme resamplingScheme =
+      ResamplingScheme.MULTINOMIAL;
+
+  /*
+   * When non-null, particles that have become near-identical are merged
+   * into one particle with their combined count.
+   */
+  protected ParticleMerger particleMerger = null;
+
+  /*
+   * When non-null, particles are only resampled when the effective sample
+   * size falls below this fraction of the number of particles.  Otherwise,
+   * they keep their weights.
+   */
+  protected Double resampleThreshold = null;
+
   public VehicleStatePLPathSamplingFilter(O obs, G inferredGraph,
     VehicleStateDistributionFactory<O, G> vehicleStateFactory,
     VehicleStateInitialParameters parameters, Boolean isDebug,
@@ -84,6 +120,14 @@ public class VehicleStatePLPathSamplingFilter<O extends GpsObservation, G extend
     this.setRandom(rng);
   }
 
+  public AdaptiveParticleCount getAdaptiveParticleCount() {
+    return this.adaptiveParticleCount;
+  }
+
+  public StateHistoryPolicy getHistoryPolicy() {
+    return this.historyPolicy;
+  }
+
   public Boolean getIsDebug() {
     return this.isDebug;
   }
@@ -93,6 +137,18 @@ public class VehicleStatePLPathSamplingFilter<O extends GpsObservation, G extend
     return this.lastResampleDistribution;
   }
 
+  public ParticleMerger getParticleMerger() {
+    return this.particleMerger;
+  }
+
+  public Double getResampleThreshold() {
+    return this.resampleThreshold;
+  }
+
+  public ResamplingScheme getResamplingScheme() {
+    return this.resamplingScheme;
+  }
+
   /**
    * This method takes a prior predictive vehicle state distribution and returns
    * a distribution over its possible transition states, with prior predictive
@@ -272,10 +328,10 @@ public class VehicleStatePLPathSamplingFilter<O extends GpsObservation, G extend
     /*
      * Update parameters
      */
-    updatedState.getPathStateParam().setValue(
-        posteriorPathStateDist.getPathState());
-    updatedState.getPathStateParam().setParameterPrior(
-        posteriorPathStateDist);
+    updatedState.setPathStateParam(SimpleBayesianParameter.create(
+        posteriorPathStateDist.getPathState(), updatedState
+            .getPathStateParam().getConditionalDistribution(),
+        posteriorPathStateDist));
 
     Vector newObsStateSample;
     
@@ -351,29 +407,22 @@ public class VehicleStatePLPathSamplingFilter<O extends GpsObservation, G extend
     measurementCovarianceEstimator.update(
         currentObsCovDistribution, obs.getProjectedPoint());
 
-    updatedState.getObservationCovarianceParam().setParameterPrior(
-        currentObsCovDistribution);
     final Matrix obsCovSample =
         currentObsCovDistribution.sample(this.random);
-    updatedState.getObservationCovarianceParam().setValue(
-        obsCovSample);
-    updatedState.getObservationCovarianceParam()
-        .setConditionalDistribution(
+    updatedState.setObservationCovarianceParam(
+        SimpleBayesianParameter.<Matrix, MultivariateGaussian, DistributionWithMean<Matrix>>create(obsCovSample,
             new MultivariateGaussian(VectorFactory.getDefault()
                 .createVector(obsCovSample.getNumColumns()),
-                obsCovSample));
+                obsCovSample), currentObsCovDistribution));
 
-    updatedState.getMotionStateParam().setParameterPrior(
-        posteriorPathStateDist.getMotionDistribution());
     final MultivariateGaussian obsMotionDist =
         updatedState.getMotionStateEstimatorPredictor()
             .getObservationDistribution(
                 posteriorPathStateDist.getMotionDistribution(),
                 posteriorPathStateDist.getPathState().getEdge());
-    updatedState.getMotionStateParam().setConditionalDistribution(
-        obsMotionDist);
-    updatedState.getMotionStateParam().setValue(
-        obsMotionDist.getMean());
+    updatedState.setMotionStateParam(SimpleBayesianParameter.create(
+        obsMotionDist.getMean(), obsMotionDist,
+        posteriorPathStateDist.getMotionDistribution()));
 
     final InferenceGraphEdge fromEdge =
         updatedState.getParentState().getPathStateParam().getValue()
@@ -458,6 +507,74 @@ public class VehicleStatePLPathSamplingFilter<O extends GpsObservation, G extend
     }
   }
 
+  /**
+   * Draws the predictive states to update, and sets the number of particles
+   * when it's adaptive.
+   */
+  protected ArrayList<VehicleStateDistribution<O>> resample(
+    CountedDataDistribution<VehicleStateDistribution<O>> resampleDist) {
+    if (this.adaptiveParticleCount != null) {
+      final ArrayList<VehicleStateDistribution<O>> sampledStates =
+          this.adaptiveParticleCount.sample(resampleDist, this.random);
+      this.setNumParticles(sampledStates.size());
+      return sampledStates;
+    }
+    return resampleDist.sample(this.random, this.getNumParticles(),
+        this.resamplingScheme);
+  }
+
+  /**
+   * @param adaptiveParticleCount
+   *          how to choose the number of particles at each update, or null
+   *          to keep the number fixed. Requires the multinomial resampling
+   *          scheme.
+   */
+  public void setAdaptiveParticleCount(
+    AdaptiveParticleCount adaptiveParticleCount) {
+    Preconditions.checkArgument(adaptiveParticleCount == null
+        || this.resamplingScheme == ResamplingScheme.MULTINOMIAL,
+        "adaptive particle counts need multinomial resampling");
+    this.adaptiveParticleCount = adaptiveParticleCount;
+  }
+
+  public void setHistoryPolicy(StateHistoryPolicy historyPolicy) {
+    this.historyPolicy = Preconditions.checkNotNull(historyPolicy);
+  }
+
+  /**
+   * @param particleMerger
+   *          how to merge near-identical particles, or null to keep them
+   *          all.
+   */
+  public void setParticleMerger(ParticleMerger particleMerger) {
+    this.particleMerger = particleMerger;
+  }
+
+  /**
+   * @param resampleThreshold
+   *          the fraction of the number of particles that the effective
+   *          sample size has to fall below for the particles to be resampled,
+   *          or null to resample at every update.
+   */
+  public void setResampleThreshold(Double resampleThreshold) {
+    Preconditions.checkArgument(resampleThreshold == null
+        || (resampleThreshold >= 0d && resampleThreshold <= 1d));
+    this.resampleThreshold = resampleThreshold;
+  }
+
+  /**
+   * @param resamplingScheme
+   *          how particles are drawn. Only the multinomial scheme can be used
+   *          with an adaptive particle count.
+   */
+  public void setResamplingScheme(ResamplingScheme resamplingScheme) {
+    Preconditions.checkArgument(this.adaptiveParticleCount == null
+        || resamplingScheme == ResamplingScheme.MULTINOMIAL,
+        "adaptive particle counts need multinomial resampling");
+    this.resamplingScheme =
+        Preconditions.checkNotNull(resamplingScheme);
+  }
+
   public
       void
       setLastResampleDistribution(
@@ -476,18 +593,35 @@ public class VehicleStatePLPathSamplingFilter<O extends GpsObservation, G extend
     final CountedDataDistribution<VehicleStateDistribution<O>> resampleDist =
         new CountedDataDistribution<VehicleStateDistribution<O>>(true);
 
-    for (final VehicleStateDistribution<O> state : target.getDomain()) {
+    /*
+     * Particles in the same merge group share one prediction.
+     * They're fanned back out into separate particles when
+     * they're smoothed.
+     */
+    final DataDistribution<VehicleStateDistribution<O>> priors =
+        ParticleUtils.getPriors(target, this.particleMerger);
+
+    for (final VehicleStateDistribution<O> state : priors.getDomain()) {
 
+      /*
+       * After resampling, a particle's weight is the log of its count.
+       * When resampling was skipped, it's the weight it carried over.
+       */
       final int count;
-      if (target instanceof CountedDataDistribution<?>) {
-        count = ((CountedDataDistribution) target).getCount(state);
+      final double logWeight;
+      if (priors instanceof CountedDataDistribution<?>) {
+        final CountedDataDistribution<VehicleStateDistribution<O>> countedPriors =
+            (CountedDataDistribution<VehicleStateDistribution<O>>) priors;
+        count = countedPriors.getCount(state);
+        logWeight =
+            countedPriors.isLogScale() ? priors.get(state) : Math
+                .log(priors.get(state));
       } else {
         count = 1;
+        logWeight = 0d;
       }
       Preconditions.checkState(count > 0);
 
-      final double logCount = Math.log(count);
-
       VehicleStateDistribution<O> predictedState = state.clone();
       predictedState.setParentState(state);
       predictedState.setObservation(obs);
@@ -498,7 +632,7 @@ public class VehicleStatePLPathSamplingFilter<O extends GpsObservation, G extend
       predictedState.setTransitionStateDistribution(childDist);
 
       resampleDist.increment(predictedState, childDist.getTotal()
-          + logCount);
+          + logWeight, count);
 
     }
 
@@ -508,11 +642,22 @@ public class VehicleStatePLPathSamplingFilter<O extends GpsObservation, G extend
       this.lastResampleDistribution = resampleDist;
     }
 
+    final boolean resample =
+        this.resampleThreshold == null
+            || !(target instanceof CountedDataDistribution<?>)
+            || resampleDist.getEffectiveSampleSize() < this.resampleThreshold
+                * resampleDist.getTotalCount();
+
     /*
      * Resample the predictive distributions.  Now we're dealing with the "best" states.
+     * When the weights are still well spread, every predictive state is kept instead.
      */
-    final ArrayList<VehicleStateDistribution<O>> smoothedStates =
-        resampleDist.sample(this.random, this.getNumParticles());
+    final List<VehicleStateDistribution<O>> smoothedStates =
+        Lists.newArrayList();
+    final List<MutableDoubleCount> smoothedWeights = Lists.newArrayList();
+    ParticleUtils.getSmoothingInputs(resampleDist,
+        resample ? this.resample(resampleDist) : null,
+        this.particleMerger != null, smoothedStates, smoothedWeights);
 
     final List<VehicleStateDistribution<O>> updatedStates =
         Lists.newArrayList();
@@ -532,14 +677,16 @@ public class VehicleStatePLPathSamplingFilter<O extends GpsObservation, G extend
       } else {
         updatedState.setTransitionStateDistribution(null);
         updatedState.setPriorPredictiveState(null);
-        updatedState.getPathStateParam().setConditionalDistribution(null);
-        // TODO perhaps remove parent's parent here.
+        updatedState.setPathStateParam(SimpleBayesianParameter.create(
+            updatedState.getPathStateParam().getValue(),
+            (PathStateMixtureDensityModel) null, updatedState
+                .getPathStateParam().getParameterPrior()));
       }
+      this.historyPolicy.apply(updatedState);
       updatedStates.add(updatedState);
     }
 
-    target.clear();
-    target.incrementAll(updatedStates);
+    ParticleUtils.setPosterior(target, updatedStates, smoothedWeights);
 
     Preconditions.checkState(target.getDomainSize() > 0);
     if (target instanceof CountedDataDistribution<?>) {
@@ -0,0 +1,107 @@
+package org.opentrackingtools.distributions;
+
+import java.util.Random;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Walker's alias table for a fixed set of weights, built with Vose's method.
+ * Building the table is O(n); after that each draw takes one uniform index and
+ * one uniform comparison, whatever the number of weights.
+ */
+public class AliasTable {
+
+  protected final int[] alias;
+  protected final double[] probability;
+
+  /**
+   * @param weights
+   *          non-negative, unnormalized weights, at least one of which is
+   *          positive.
+   */
+  public AliasTable(double[] weights) {
+    this(weights, weights.length);
+  }
+
+  /**
+   * @param weights
+   *          non-negative, unnormalized weights, at least one of which is
+   *          positive.
+   * @param size
+   *          the number of weights to use, from the start of the array.
+   */
+  public AliasTable(double[] weights, int size) {
+    Preconditions.checkArgument(size > 0 && size <= weights.length);
+
+    double total = 0d;
+    for (int i = 0; i < size; i++) {
+      Preconditions.checkArgument(weights[i] >= 0d);
+      total += weights[i];
+    }
+    Preconditions.checkArgument(total > 0d
+        && !Double.isInfinite(total));
+
+    this.alias = new int[size];
+    this.probability = new double[size];
+
+    /*
+     * Scale the weights so that their mean is 1, then pair each
+     * under-full column with an over-full one that tops it up.
+     */
+    final double[] scaled = new double[size];
+    final int[] small = new int[size];
+    final int[] large = new int[size];
+    int numSmall = 0;
+    int numLarge = 0;
+    for (int i = 0; i < size; i++) {
+      scaled[i] = weights[i] * size / total;
+      if (scaled[i] < 1d) {
+        small[numSmall++] = i;
+      } else {
+        large[numLarge++] = i;
+      }
+    }
+
+    while (numSmall > 0 && numLarge > 0) {
+      final int less = small[--numSmall];
+      final int more = large[--numLarge];
+      this.probability[less] = scaled[less];
+      this.alias[less] = more;
+      scaled[more] = (scaled[more] + scaled[less]) - 1d;
+      if (scaled[more] < 1d) {
+        small[numSmall++] = more;
+      } else {
+        large[numLarge++] = more;
+      }
+    }
+
+    /*
+     * Whatever is left is full, up to rounding error.
+     */
+    while (numLarge > 0) {
+      final int index = large[--numLarge];
+      this.probability[index] = 1d;
+      this.alias[index] = index;
+    }
+    while (numSmall > 0) {
+      final int index = small[--numSmall];
+      this.probability[index] = 1d;
+      this.alias[index] = index;
+    }
+  }
+
+  /**
+   * @return the index of a weight, drawn with probability proportional to
+   *         the weight.
+   */
+  public int sample(Random random) {
+    final int column = random.nextInt(this.probability.length);
+    return random.nextDouble() < this.probability[column] ? column
+        : this.alias[column];
+  }
+
+  public int size() {
+    return this.probability.length;
+  }
+
+}
@@ -10,7 +10,6 @@ import gov.sandia.cognition.statistics.AbstractDataDistribution;
 import gov.sandia.cognition.statistics.DataDistribution;
 import gov.sandia.cognition.statistics.DistributionEstimator;
 import gov.sandia.cognition.statistics.DistributionWeightedEstimator;
-import gov.sandia.cognition.statistics.ProbabilityMassFunctionUtil;
 import gov.sandia.cognition.util.AbstractCloneableSerializable;
 import gov.sandia.cognition.util.ArgumentChecker;
 import gov.sandia.cognition.util.WeightedValue;
@@ -285,6 +284,22 @@ public class CountedDataDistribution<KeyType> extends
 
   }
 
+  /**
+   * The keys of a distribution, in iteration order, and an alias table over
+   * their weights.
+   */
+  protected static class Sampler<KeyType> {
+
+    protected final ArrayList<KeyType> domain;
+    protected final AliasTable table;
+
+    protected Sampler(ArrayList<KeyType> domain, AliasTable table) {
+      this.domain = domain;
+      this.table = table;
+    }
+
+  }
+
   /**
    * Default initial capacity, {@value} .
    */
@@ -297,6 +312,13 @@ public class CountedDataDistribution<KeyType> extends
 
   protected boolean isLogScale = false;
 
+  /*
+   * Built on the first draw after a change, and dropped by anything that
+   * changes a value.  Filters sample the same distribution from several
+   * threads, so this is only ever replaced, never modified.
+   */
+  protected transient volatile Sampler<KeyType> sampler = null;
+
   /**
    * Total of the counts in the distribution
    */
@@ -358,6 +380,7 @@ public class CountedDataDistribution<KeyType> extends
 
   @Override
   public void clear() {
+    this.sampler = null;
     super.clear();
     this.total = this.isLogScale ? Double.NEGATIVE_INFINITY : 0d;
   }
@@ -396,6 +419,7 @@ public class CountedDataDistribution<KeyType> extends
 
   @Override
   public double decrement(KeyType key, double value) {
+    this.sampler = null;
     return super.decrement(key, value);
   }
 
@@ -423,6 +447,30 @@ public class CountedDataDistribution<KeyType> extends
     return super.getDomainSize();
   }
 
+  /**
+   * Computes the effective sample size, 1 / sum(w^2) for the normalized
+   * weights w of the elements. An element's count is taken to split its
+   * value evenly between that many elements.
+   *
+   * @return the effective sample size, which is between 1 and the total count
+   *         when the distribution isn't empty.
+   */
+  public double getEffectiveSampleSize() {
+    final double total = this.getTotal();
+    double sumOfSquares = 0d;
+    for (final MutableDouble value : this.map.values()) {
+      final MutableDoubleCount count = (MutableDoubleCount) value;
+      if (count.getCount() == 0) {
+        continue;
+      }
+      final double weight =
+          this.isLogScale ? Math.exp(count.getValue() - total) : count
+              .getValue() / total;
+      sumOfSquares += weight * weight / count.getCount();
+    }
+    return sumOfSquares > 0d ? 1d / sumOfSquares : 0d;
+  }
+
   @Override
   public double getEntropy() {
     final double identity =
@@ -501,6 +549,19 @@ public class CountedDataDistribution<KeyType> extends
         this.isLogScale);
   }
 
+  protected Sampler<KeyType> getSampler() {
+    Sampler<KeyType> sampler = this.sampler;
+    if (sampler == null) {
+      final ArrayList<KeyType> domain =
+          new ArrayList<KeyType>(this.getDomainSize());
+      sampler =
+          new Sampler<KeyType>(domain, new AliasTable(
+              this.getWeights(domain)));
+      this.sampler = sampler;
+    }
+    return sampler;
+  }
+
   @Override
   public double getTotal() {
     return this.total;
@@ -518,6 +579,32 @@ public class CountedDataDistribution<KeyType> extends
     return total;
   }
 
+  /**
+   * Adds the keys to domain, in iteration order, and returns their
+   * unnormalized weights on a linear scale.
+   */
+  protected double[] getWeights(ArrayList<KeyType> domain) {
+    final double[] weights = new double[this.getDomainSize()];
+    double maxValue = Double.NEGATIVE_INFINITY;
+    int index = 0;
+    for (final ScalarMap.Entry<KeyType> entry : this.entrySet()) {
+      domain.add(entry.getKey());
+      weights[index] = entry.getValue();
+      maxValue = Math.max(maxValue, weights[index]);
+      index++;
+    }
+    if (this.isLogScale) {
+      /*
+       * Relative to the largest, so that nothing overflows and the
+       * largest weight can't underflow.
+       */
+      for (int i = 0; i < weights.length; i++) {
+        weights[i] = Math.exp(weights[i] - maxValue);
+      }
+    }
+    return weights;
+  }
+
   @Override
   public double increment(KeyType key) {
     return this.increment(key, this.isLogScale ? 0d : 1d);
@@ -539,6 +626,7 @@ public class CountedDataDistribution<KeyType> extends
    * @return
    */
   public double increment(KeyType key, final double value, int count) {
+    this.sampler = null;
     // TODO FIXME terrible hack!
     final MutableDoubleCount entry =
         (MutableDoubleCount) this.map.get(key);
@@ -593,44 +681,46 @@ public class CountedDataDistribution<KeyType> extends
 
   @Override
   public KeyType sample(Random random) {
-    if (this.isLogScale) {
-      double w = random.nextDouble();
-      for (final ScalarMap.Entry<KeyType> entry : this.entrySet()) {
-        w -= this.getFraction(entry.getKey());
-        if (w <= 0d) {
-          return entry.getKey();
-        }
-      }
+    if (this.isEmpty()) {
       return null;
-    } else {
-      return super.sample(random);
     }
+    final Sampler<KeyType> sampler = this.getSampler();
+    return sampler.domain.get(sampler.table.sample(random));
   }
 
+  /**
+   * Draws multinomially, using an alias table.
+   */
   @Override
   public ArrayList<KeyType> sample(Random random, int numSamples) {
-    if (this.isLogScale) {
-      // Compute the cumulative weights
-      final int size = this.getDomainSize();
-      final double[] cumulativeWeights = new double[size];
-      double cumulativeSum = 0d;
-      final ArrayList<KeyType> domain = new ArrayList<KeyType>(size);
-      int index = 0;
-      for (final ScalarMap.Entry<KeyType> entry : this.entrySet()) {
-        domain.add(entry.getKey());
-        final double value = entry.getValue();
-        cumulativeSum += Math.exp(value);
-        cumulativeWeights[index] = cumulativeSum;
-        index++;
-      }
-
-      return ProbabilityMassFunctionUtil.sampleMultiple(
-          cumulativeWeights, cumulativeSum, domain, random,
-          numSamples);
+    return this.sample(random, numSamples,
+        ResamplingScheme.MULTINOMIAL);
+  }
 
+  /**
+   * Draws <code>numSamples</code> keys, with repeats, according to the given
+   * scheme.
+   */
+  public ArrayList<KeyType> sample(Random random, int numSamples,
+    ResamplingScheme scheme) {
+    Preconditions.checkState(!this.isEmpty());
+    final ArrayList<KeyType> result =
+        new ArrayList<KeyType>(numSamples);
+    if (scheme == ResamplingScheme.MULTINOMIAL) {
+      final Sampler<KeyType> sampler = this.getSampler();
+      for (int i = 0; i < numSamples; i++) {
+        result.add(sampler.domain.get(sampler.table.sample(random)));
+      }
     } else {
-      return super.sample(random, numSamples);
+      final ArrayList<KeyType> domain =
+          new ArrayList<KeyType>(this.getDomainSize());
+      final double[] weights = this.getWeights(domain);
+      for (final int index : scheme.sample(weights, weights.length,
+          random, numSamples)) {
+        result.add(domain.get(index));
+      }
     }
+    return result;
   }
 
   @Override
@@ -652,6 +742,7 @@ public class CountedDataDistribution<KeyType> extends
   public void set(final KeyType key, final double totalValue,
     final int count) {
 
+    this.sampler = null;
     // TODO FIXME terrible hack!
     final MutableDoubleCount entry =
         (MutableDoubleCount) this.map.get(key);
@@ -0,0 +1,147 @@
+package org.opentrackingtools.distributions;
+
+import java.util.Random;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Ways of drawing a fixed number of samples from a set of weights. All of them
+ * give each index an expected number of draws proportional to its weight; they
+ * differ in the variance of that number.
+ * <ul>
+ * <li>{@link #MULTINOMIAL}: independent draws. This has the most variance.</li>
+ * <li>{@link #STRATIFIED}: one draw from each of <code>numSamples</code> equal
+ * strata of the cumulative weights.</li>
+ * <li>{@link #SYSTEMATIC}: like stratified, but with the same offset in every
+ * stratum. This has the least variance and needs a single uniform.</li>
+ * <li>{@link #RESIDUAL}: each index gets the integer part of its expected
+ * number of draws, and the rest are drawn multinomially from what's left.</li>
+ * </ul>
+ * The stratified and systematic schemes return their indices in increasing
+ * order.
+ */
+public enum ResamplingScheme {
+
+  MULTINOMIAL {
+    @Override
+    public int[] sample(double[] weights, int size, Random random,
+      int numSamples) {
+      final AliasTable table = new AliasTable(weights, size);
+      final int[] result = new int[numSamples];
+      for (int i = 0; i < numSamples; i++) {
+        result[i] = table.sample(random);
+      }
+      return result;
+    }
+  },
+
+  RESIDUAL {
+    @Override
+    public int[] sample(double[] weights, int size, Random random,
+      int numSamples) {
+      final double total = ResamplingScheme.getTotal(weights, size);
+      final int[] result = new int[numSamples];
+      final double[] residuals = new double[size];
+      int numDrawn = 0;
+      for (int i = 0; i < size; i++) {
+        final double expected = weights[i] * numSamples / total;
+        final int copies =
+            Math.min((int) expected, numSamples - numDrawn);
+        for (int j = 0; j < copies; j++) {
+          result[numDrawn++] = i;
+        }
+        residuals[i] = Math.max(expected - copies, 0d);
+      }
+
+      if (numDrawn < numSamples) {
+        final AliasTable table = new AliasTable(residuals, size);
+        while (numDrawn < numSamples) {
+          result[numDrawn++] = table.sample(random);
+        }
+      }
+      return result;
+    }
+  },
+
+  STRATIFIED {
+    @Override
+    public int[] sample(double[] weights, int size, Random random,
+      int numSamples) {
+      final double[] offsets = new double[numSamples];
+      for (int i = 0; i < numSamples; i++) {
+        offsets[i] = random.nextDouble();
+      }
+      return ResamplingScheme.sampleOrdered(weights, size, offsets,
+          numSamples);
+    }
+  },
+
+  SYSTEMATIC {
+    @Override
+    public int[] sample(double[] weights, int size, Random random,
+      int numSamples) {
+      final double[] offsets = new double[numSamples];
+      final double offset = random.nextDouble();
+      for (int i = 0; i < numSamples; i++) {
+        offsets[i] = offset;
+      }
+      return ResamplingScheme.sampleOrdered(weights, size, offsets,
+          numSamples);
+    }
+  };
+
+  private static double getTotal(double[] weights, int size) {
+    Preconditions.checkArgument(size > 0 && size <= weights.length);
+    double total = 0d;
+    for (int i = 0; i < size; i++) {
+      Preconditions.checkArgument(weights[i] >= 0d);
+      total += weights[i];
+    }
+    Preconditions.checkArgument(total > 0d
+        && !Double.isInfinite(total));
+    return total;
+  }
+
+  /**
+   * Walks the cumulative weights once, taking the i-th sample at (i +
+   * offsets[i]) / numSamples of the total.
+   */
+  private static int[] sampleOrdered(double[] weights, int size,
+    double[] offsets, int numSamples) {
+    final double total = ResamplingScheme.getTotal(weights, size);
+
+    /*
+     * Rounding can leave the last few points past the end of the
+     * cumulative weights, so they go to the last positive weight.
+     */
+    int last = size - 1;
+    while (weights[last] <= 0d) {
+      last--;
+    }
+
+    final int[] result = new int[numSamples];
+    int index = 0;
+    double cumulative = weights[0] / total;
+    for (int i = 0; i < numSamples; i++) {
+      final double point = (i + offsets[i]) / numSamples;
+      while (point >= cumulative && index < last) {
+        index++;
+        cumulative += weights[index] / total;
+      }
+      result[i] = index;
+    }
+    return result;
+  }
+
+  /**
+   * @param weights
+   *          non-negative, unnormalized weights, at least one of which is
+   *          positive.
+   * @param size
+   *          the number of weights to use, from the start of the array.
+   * @return the indices of the drawn weights, with repeats.
+   */
+  public abstract int[] sample(double[] weights, int size,
+    Random random, int numSamples);
+
+}
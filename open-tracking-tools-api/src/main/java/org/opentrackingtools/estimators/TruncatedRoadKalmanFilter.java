@@ -4,6 +4,7 @@ import gov.sandia.cognition.learning.algorithm.AbstractBatchAndIncrementalLearne
 import gov.sandia.cognition.math.matrix.Matrix;
 import gov.sandia.cognition.math.matrix.MatrixFactory;
 import gov.sandia.cognition.math.matrix.Vector;
+import gov.sandia.cognition.math.matrix.VectorFactory;
 import gov.sandia.cognition.math.matrix.decomposition.AbstractSingularValueDecomposition;
 import gov.sandia.cognition.math.matrix.mtj.decomposition.SingularValueDecompositionMTJ;
 import gov.sandia.cognition.math.signals.LinearDynamicalSystem;
@@ -13,6 +14,7 @@ import gov.sandia.cognition.util.ObjectUtil;
 
 import org.opentrackingtools.distributions.AdjMultivariateGaussian;
 import org.opentrackingtools.distributions.TruncatedRoadGaussian;
+import org.opentrackingtools.util.GaussianKernels;
 import org.opentrackingtools.util.SimpleSingularValueDecomposition;
 import org.opentrackingtools.util.StatisticsUtil;
 import org.opentrackingtools.util.SvdMatrix;
@@ -151,6 +153,68 @@ public class TruncatedRoadKalmanFilter
     return this.modelCovariance;
   }
 
+  /**
+   * Computes the posterior mean of the measurement update.  The fixed-size
+   * kernels handle the usual 2D and 4D states, working in the current thread's
+   * workspace, and the general SVD route is kept for anything else, or a
+   * singular innovation covariance.
+   */
+  protected Vector getPosteriorMean(MultivariateGaussian belief,
+    Vector observation) {
+    final Matrix F = this.model.getC();
+    final int dim = belief.getInputDimensionality();
+    final int obsDim = F.getNumRows();
+    if (GaussianKernels.isSupported(dim) && obsDim <= 2
+        && observation.getDimensionality() == obsDim
+        && this.measurementCovariance.getNumRows() == obsDim) {
+      final GaussianKernels.Workspace workspace =
+          GaussianKernels.getWorkspace();
+      GaussianKernels.copy(belief.getMean(), workspace.mean);
+      GaussianKernels.copy(belief.getCovariance(), workspace.cov);
+      GaussianKernels.copy(F, workspace.h);
+      GaussianKernels.copy(this.measurementCovariance, workspace.r);
+      GaussianKernels.copy(observation, workspace.z);
+
+      if (GaussianKernels.update(workspace.mean, workspace.cov,
+          workspace.h, workspace.r, workspace.z, dim, obsDim,
+          workspace.out, null)) {
+        final Vector postMean =
+            VectorFactory.getDefault().createVector(dim);
+        for (int i = 0; i < dim; i++) {
+          postMean.setElement(i, workspace.out[i]);
+        }
+        return postMean;
+      }
+    }
+
+    final SvdMatrix Q =
+        StatisticsUtil.symmetricSvdAdd(
+            (SvdMatrix) belief.getCovariance(),
+            this.measurementCovariance, F);
+    final Matrix Qinv =
+        Q.getSvd()
+            .getU()
+            .times(
+                StatisticsUtil.diagonalInverse(Q.getSvd().getS(),
+                    1e-7)).times(Q.getSvd().getU().transpose());
+    Preconditions.checkArgument(StatisticsUtil
+        .isPosSemiDefinite(Qinv));
+    final Vector e = observation.minus(F.times(belief.getMean()));
+
+    final Matrix A =
+        belief.getCovariance().times(F.transpose()).times(Qinv);
+//    /*
+//     * Note: for exact location/velocity correlation, the velocity
+//     * term(s) in A should be <= 1/30. 
+//     * DEBUG REMOVE
+//     */
+//    if (A.getNumColumns() == 1 && A.getElement(1, 0) > 1d / 30d) {
+//      System.out.println("amplifying velocity noise!");
+//    }
+
+    return belief.getMean().plus(A.times(e));
+  }
+
   @Override
   public int hashCode() {
     final int prime = 31;
@@ -219,32 +283,7 @@ public class TruncatedRoadKalmanFilter
     Preconditions.checkArgument(StatisticsUtil
         .isPosSemiDefinite(UcNew.times(S).times(UcNew.transpose())));
 
-    final SvdMatrix Q =
-        StatisticsUtil.symmetricSvdAdd(
-            (SvdMatrix) belief.getCovariance(),
-            this.measurementCovariance, F);
-    final Matrix Qinv =
-        Q.getSvd()
-            .getU()
-            .times(
-                StatisticsUtil.diagonalInverse(Q.getSvd().getS(),
-                    1e-7)).times(Q.getSvd().getU().transpose());
-    Preconditions.checkArgument(StatisticsUtil
-        .isPosSemiDefinite(Qinv));
-    final Vector e = observation.minus(F.times(belief.getMean()));
-
-    final Matrix A =
-        belief.getCovariance().times(F.transpose()).times(Qinv);
-//    /*
-//     * Note: for exact location/velocity correlation, the velocity
-//     * term(s) in A should be <= 1/30. 
-//     * DEBUG REMOVE
-//     */
-//    if (A.getNumColumns() == 1 && A.getElement(1, 0) > 1d / 30d) {
-//      System.out.println("amplifying velocity noise!");
-//    }
-
-    final Vector postMean = belief.getMean().plus(A.times(e));
+    final Vector postMean = this.getPosteriorMean(belief, observation);
 
     //      final Vector a = belief.getMean();
     //      final Matrix R = belief.getCovariance();
@@ -0,0 +1,252 @@
+package org.opentrackingtools.graph;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+import org.opentrackingtools.util.metrics.Metrics;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+
+/**
+ * A one-to-many shortest path search, by edge length, from a single source
+ * vertex. The search stops once every target vertex has been reached, once the
+ * closest unreached vertex is further than the distance limit, or once a given
+ * number of vertices have been expanded, so that paths to all targets come out
+ * of one pass over the neighbourhood and the cost of a search in a dense part
+ * of the graph is capped.<br>
+ * Subclasses adapt a graph type by providing its adjacency and edge lengths.
+ * They can also provide a lower bound on the distance left to the closest
+ * target, which turns the search into an A* search; the bound must be
+ * consistent, e.g. a straight-line distance in the same units as the edge
+ * lengths. <br>
+ * The search state is kept between searches and cleared at the start of each,
+ * so one instance should be reused for many searches, but only by one thread
+ * at a time.
+ *
+ * @param <V>
+ *          the vertex type
+ * @param <E>
+ *          the edge type
+ */
+public abstract class BoundedPathFinder<V, E> {
+
+  protected static class QueueEntry<V> implements
+      Comparable<QueueEntry<V>> {
+
+    final double distance;
+    final double estimate;
+    final long order;
+    final V vertex;
+
+    public QueueEntry(V vertex, double distance, double estimate,
+      long order) {
+      this.vertex = vertex;
+      this.distance = distance;
+      this.estimate = estimate;
+      this.order = order;
+    }
+
+    @Override
+    public int compareTo(QueueEntry<V> o) {
+      final int result = Double.compare(this.estimate, o.estimate);
+      if (result != 0) {
+        return result;
+      }
+      /*
+       * Break ties by insertion order, so that results don't depend on
+       * the queue's internal ordering.
+       */
+      return this.order < o.order ? -1 : (this.order == o.order ? 0
+          : 1);
+    }
+  }
+
+  protected final Map<V, Double> distances = Maps.newHashMap();
+  protected boolean isBudgetExhausted = false;
+  protected final Map<V, E> parentEdges = Maps.newHashMap();
+  protected final PriorityQueue<QueueEntry<V>> queue =
+      new PriorityQueue<QueueEntry<V>>();
+  protected final Set<V> remainingTargets = Sets.newHashSet();
+  protected final Set<V> settled = Sets.newHashSet();
+  protected V source = null;
+  protected final List<V> targets = Lists.newArrayList();
+
+  /**
+   * Runs a new search, replacing the results of the last one.
+   *
+   * @param source
+   * @param targets
+   * @param maxDistance
+   *          the largest path length, from the source, that will be searched
+   * @param maxExpandedVertices
+   *          the largest number of vertices that will be expanded
+   */
+  public void calculate(V source, Collection<? extends V> targets,
+    double maxDistance, int maxExpandedVertices) {
+    Preconditions.checkArgument(maxDistance >= 0d);
+    Preconditions.checkArgument(maxExpandedVertices > 0);
+    this.reset();
+    this.source = Preconditions.checkNotNull(source);
+    for (final V target : targets) {
+      if (this.remainingTargets.add(target)) {
+        this.targets.add(target);
+      }
+    }
+
+    long order = 0;
+    this.distances.put(source, 0d);
+    this.queue.add(new QueueEntry<V>(source, 0d, this
+        .getRemainingDistance(source), order++));
+
+    while (!this.queue.isEmpty() && !this.remainingTargets.isEmpty()) {
+      final QueueEntry<V> current = this.queue.poll();
+
+      /*
+       * The estimate never overstates the length of a path to
+       * a target, so once it's beyond the limit no target can
+       * be reached.
+       */
+      if (current.estimate > maxDistance) {
+        break;
+      }
+
+      /*
+       * Skip stale entries for vertices we've already settled
+       * at a shorter distance.
+       */
+      if (!this.settled.add(current.vertex)) {
+        continue;
+      }
+      this.remainingTargets.remove(current.vertex);
+
+      if (this.settled.size() >= maxExpandedVertices) {
+        this.isBudgetExhausted = !this.remainingTargets.isEmpty();
+        break;
+      }
+
+      for (final E edge : this.getOutgoingEdges(current.vertex)) {
+        final V next = this.getToVertex(edge);
+        if (this.settled.contains(next)) {
+          continue;
+        }
+
+        final double nextDistance =
+            current.distance + this.getLength(edge);
+        final Double prevDistance = this.distances.get(next);
+        if (prevDistance == null || nextDistance < prevDistance) {
+          this.distances.put(next, nextDistance);
+          this.parentEdges.put(next, edge);
+          this.queue.add(new QueueEntry<V>(next, nextDistance,
+              nextDistance + this.getRemainingDistance(next), order++));
+        }
+      }
+    }
+
+    Metrics.increment(Metrics.NODES_EXPANDED, this.settled.size());
+    if (this.isBudgetExhausted) {
+      Metrics.increment(Metrics.PATH_SEARCH_BUDGET_EXHAUSTED, 1);
+    }
+  }
+
+  /**
+   * @return the path length from the source to the vertex, or null if the
+   *         vertex wasn't reached.
+   */
+  public Double getDistance(V vertex) {
+    return this.settled.contains(vertex) ? this.distances.get(vertex)
+        : null;
+  }
+
+  /**
+   * @return the vertex the edge leaves.
+   */
+  protected abstract V getFromVertex(E edge);
+
+  /**
+   * @return the length of the edge, in the same units as the distance limit.
+   */
+  protected abstract double getLength(E edge);
+
+  /**
+   * @return the edges that can be traversed from the vertex.
+   */
+  protected abstract Iterable<E> getOutgoingEdges(V vertex);
+
+  /**
+   * @return the edges from the source to the target, in travel order, or null
+   *         if the target wasn't reached. The path to the source itself is
+   *         empty.
+   */
+  public List<E> getPathEdges(V target) {
+    if (!this.settled.contains(target)) {
+      return null;
+    }
+    final List<E> edges = Lists.newArrayList();
+    V current = target;
+    while (!current.equals(this.source)) {
+      final E edge = this.parentEdges.get(current);
+      edges.add(edge);
+      current = this.getFromVertex(edge);
+    }
+    Collections.reverse(edges);
+    return edges;
+  }
+
+  /**
+   * @return the targets that were reached, in the order they were given.
+   */
+  public List<V> getReachedTargets() {
+    final List<V> result = Lists.newArrayList();
+    for (final V target : this.targets) {
+      if (this.settled.contains(target)) {
+        result.add(target);
+      }
+    }
+    return result;
+  }
+
+  /**
+   * @return a lower bound on the path length from the vertex to the closest
+   *         target of the current search. Zero, the default, makes this a
+   *         plain Dijkstra search.
+   */
+  protected double getRemainingDistance(V vertex) {
+    return 0d;
+  }
+
+  public V getSource() {
+    return this.source;
+  }
+
+  /**
+   * @return the vertex the edge enters.
+   */
+  protected abstract V getToVertex(E edge);
+
+  /**
+   * @return true if the last search stopped at its expansion limit before
+   *         reaching all of its targets.
+   */
+  public boolean isBudgetExhausted() {
+    return this.isBudgetExhausted;
+  }
+
+  protected void reset() {
+    this.distances.clear();
+    this.isBudgetExhausted = false;
+    this.parentEdges.clear();
+    this.queue.clear();
+    this.remainingTargets.clear();
+    this.settled.clear();
+    this.source = null;
+    this.targets.clear();
+  }
+
+}
@@ -0,0 +1,311 @@
+package org.opentrackingtools.graph;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.vividsolutions.jts.geom.Envelope;
+
+/**
+ * Reads and writes {@link CompactInferenceGraph}s in a binary snapshot format.
+ * A snapshot holds the projected topology, geometry and spatial grid exactly
+ * as the graph keeps them in memory, so loading one memory-maps the arrays
+ * instead of reading or rebuilding anything. Processes that load the same
+ * snapshot share its pages through the OS page cache. <br>
+ * The layout is a fixed header followed by the graph's arrays, each stored as
+ * its element count and then its little-endian elements, starting on an
+ * 8-byte boundary.
+ */
+public class CompactGraphSnapshot {
+
+  /*
+   * "OTTG"
+   */
+  public static final int MAGIC = 0x4F545447;
+
+  public static final int VERSION = 1;
+
+  private static final int CHUNK_SIZE = 1 << 20;
+
+  private static final Logger log = LoggerFactory
+      .getLogger(CompactGraphSnapshot.class);
+
+  private static long align(long position) {
+    return (position + 7) & ~7l;
+  }
+
+  /**
+   * Memory-maps the graph in the given snapshot. The returned graph is ready
+   * to use and only pages in the parts of the snapshot that it touches.
+   *
+   * @param file
+   * @return
+   * @throws IOException
+   */
+  public static CompactInferenceGraph load(File file)
+      throws IOException {
+    final long start = System.currentTimeMillis();
+    final RandomAccessFile raf = new RandomAccessFile(file, "r");
+    try {
+      final FileChannel channel = raf.getChannel();
+      final ByteBuffer header =
+          ByteBuffer.allocate(CompactGraphSnapshot.getHeaderSize())
+              .order(ByteOrder.LITTLE_ENDIAN);
+      CompactGraphSnapshot.readFully(channel, header, 0l);
+      header.flip();
+
+      if (header.getInt() != CompactGraphSnapshot.MAGIC) {
+        throw new IOException(file + " is not a graph snapshot");
+      }
+      final int version = header.getInt();
+      if (version != CompactGraphSnapshot.VERSION) {
+        throw new IOException("unsupported graph snapshot version "
+            + version + " in " + file);
+      }
+
+      final CompactInferenceGraph graph = new CompactInferenceGraph();
+      final double cellSize = header.getDouble();
+      final double gridMinX = header.getDouble();
+      final double gridMinY = header.getDouble();
+      final int gridWidth = header.getInt();
+      final int gridHeight = header.getInt();
+      graph.gpsEnv = CompactGraphSnapshot.readEnvelope(header);
+      graph.projEnv = CompactGraphSnapshot.readEnvelope(header);
+
+      final long[] position =
+          new long[] { CompactGraphSnapshot.getHeaderSize() };
+      graph.nodeCoords =
+          CompactGraphSnapshot.mapDoubles(channel, position);
+      graph.edgeFromNode =
+          CompactGraphSnapshot.mapInts(channel, position);
+      graph.edgeToNode =
+          CompactGraphSnapshot.mapInts(channel, position);
+      graph.outOffsets =
+          CompactGraphSnapshot.mapInts(channel, position);
+      graph.outEdges = CompactGraphSnapshot.mapInts(channel, position);
+      graph.inOffsets =
+          CompactGraphSnapshot.mapInts(channel, position);
+      graph.inEdges = CompactGraphSnapshot.mapInts(channel, position);
+      graph.reverseEdges =
+          CompactGraphSnapshot.mapInts(channel, position);
+      graph.pointOffsets =
+          CompactGraphSnapshot.mapInts(channel, position);
+      graph.coords = CompactGraphSnapshot.mapDoubles(channel, position);
+      graph.pointDistances =
+          CompactGraphSnapshot.mapDoubles(channel, position);
+      final IntBuffer cellOffsets =
+          CompactGraphSnapshot.mapInts(channel, position);
+      final IntBuffer cellSegments =
+          CompactGraphSnapshot.mapInts(channel, position);
+      graph.grid =
+          new SegmentGrid(cellSize, gridMinX, gridMinY, gridWidth,
+              gridHeight, cellOffsets, cellSegments);
+
+      CompactGraphSnapshot.log.info("mapped graph snapshot " + file
+          + " with " + graph.getNumEdges() + " edges in "
+          + (System.currentTimeMillis() - start) + "ms");
+      return graph;
+    } finally {
+      raf.close();
+    }
+  }
+
+  private static int getHeaderSize() {
+    /*
+     * magic, version, cell size, grid origin, grid size and
+     * two envelopes.
+     */
+    return (int) CompactGraphSnapshot.align(4 + 4 + 3 * 8 + 2 * 4 + 2
+        * (4 + 4 * 8));
+  }
+
+  private static DoubleBuffer mapDoubles(FileChannel channel,
+    long[] position) throws IOException {
+    final int length = CompactGraphSnapshot.readLength(channel, position);
+    final DoubleBuffer result =
+        channel.map(MapMode.READ_ONLY, position[0], length * 8l)
+            .order(ByteOrder.LITTLE_ENDIAN).asDoubleBuffer();
+    position[0] = CompactGraphSnapshot.align(position[0] + length * 8l);
+    return result;
+  }
+
+  private static IntBuffer mapInts(FileChannel channel,
+    long[] position) throws IOException {
+    final int length = CompactGraphSnapshot.readLength(channel, position);
+    final IntBuffer result =
+        channel.map(MapMode.READ_ONLY, position[0], length * 4l)
+            .order(ByteOrder.LITTLE_ENDIAN).asIntBuffer();
+    position[0] = CompactGraphSnapshot.align(position[0] + length * 4l);
+    return result;
+  }
+
+  private static Envelope readEnvelope(ByteBuffer buffer) {
+    final boolean isNull = buffer.getInt() != 0;
+    final double minX = buffer.getDouble();
+    final double maxX = buffer.getDouble();
+    final double minY = buffer.getDouble();
+    final double maxY = buffer.getDouble();
+    return isNull ? new Envelope() : new Envelope(minX, maxX, minY,
+        maxY);
+  }
+
+  private static void readFully(FileChannel channel,
+    ByteBuffer buffer, long position) throws IOException {
+    while (buffer.hasRemaining()) {
+      final int read = channel.read(buffer, position);
+      if (read < 0) {
+        throw new IOException("unexpected end of graph snapshot");
+      }
+      position += read;
+    }
+  }
+
+  /**
+   * Reads an array's element count, and moves the position to the start of its
+   * elements.
+   */
+  private static int readLength(FileChannel channel, long[] position)
+      throws IOException {
+    final ByteBuffer buffer =
+        ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN);
+    CompactGraphSnapshot.readFully(channel, buffer, position[0]);
+    buffer.flip();
+    position[0] = CompactGraphSnapshot.align(position[0] + 4);
+    return buffer.getInt();
+  }
+
+  /**
+   * Writes a snapshot of the graph to the given file, replacing it if it
+   * exists.
+   *
+   * @param graph
+   * @param file
+   * @throws IOException
+   */
+  public static void write(CompactInferenceGraph graph, File file)
+      throws IOException {
+    final RandomAccessFile raf = new RandomAccessFile(file, "rw");
+    try {
+      raf.setLength(0l);
+      final FileChannel channel = raf.getChannel();
+
+      final ByteBuffer header =
+          ByteBuffer.allocate(CompactGraphSnapshot.getHeaderSize())
+              .order(ByteOrder.LITTLE_ENDIAN);
+      header.putInt(CompactGraphSnapshot.MAGIC);
+      header.putInt(CompactGraphSnapshot.VERSION);
+      header.putDouble(graph.grid.getCellSize());
+      header.putDouble(graph.grid.getMinX());
+      header.putDouble(graph.grid.getMinY());
+      header.putInt(graph.grid.getWidth());
+      header.putInt(graph.grid.getHeight());
+      CompactGraphSnapshot.writeEnvelope(header, graph.gpsEnv);
+      CompactGraphSnapshot.writeEnvelope(header, graph.projEnv);
+      header.position(0);
+      CompactGraphSnapshot.writeFully(channel, header);
+
+      CompactGraphSnapshot.writeDoubles(channel, graph.nodeCoords);
+      CompactGraphSnapshot.writeInts(channel, graph.edgeFromNode);
+      CompactGraphSnapshot.writeInts(channel, graph.edgeToNode);
+      CompactGraphSnapshot.writeInts(channel, graph.outOffsets);
+      CompactGraphSnapshot.writeInts(channel, graph.outEdges);
+      CompactGraphSnapshot.writeInts(channel, graph.inOffsets);
+      CompactGraphSnapshot.writeInts(channel, graph.inEdges);
+      CompactGraphSnapshot.writeInts(channel, graph.reverseEdges);
+      CompactGraphSnapshot.writeInts(channel, graph.pointOffsets);
+      CompactGraphSnapshot.writeDoubles(channel, graph.coords);
+      CompactGraphSnapshot.writeDoubles(channel, graph.pointDistances);
+      CompactGraphSnapshot.writeInts(channel, graph.grid.getCellOffsets());
+      CompactGraphSnapshot.writeInts(channel, graph.grid.getCellSegments());
+
+      channel.force(false);
+    } finally {
+      raf.close();
+    }
+  }
+
+  private static void writeDoubles(FileChannel channel,
+    DoubleBuffer values) throws IOException {
+    CompactGraphSnapshot.writeLength(channel, values.capacity());
+    final ByteBuffer chunk =
+        ByteBuffer.allocate(CompactGraphSnapshot.CHUNK_SIZE).order(
+            ByteOrder.LITTLE_ENDIAN);
+    for (int i = 0; i < values.capacity(); i++) {
+      if (chunk.remaining() < 8) {
+        chunk.flip();
+        CompactGraphSnapshot.writeFully(channel, chunk);
+        chunk.clear();
+      }
+      chunk.putDouble(values.get(i));
+    }
+    chunk.flip();
+    CompactGraphSnapshot.writeFully(channel, chunk);
+    CompactGraphSnapshot.writePadding(channel);
+  }
+
+  private static void writeEnvelope(ByteBuffer buffer,
+    Envelope envelope) {
+    buffer.putInt(envelope.isNull() ? 1 : 0);
+    buffer.putDouble(envelope.getMinX());
+    buffer.putDouble(envelope.getMaxX());
+    buffer.putDouble(envelope.getMinY());
+    buffer.putDouble(envelope.getMaxY());
+  }
+
+  private static void writeFully(FileChannel channel,
+    ByteBuffer buffer) throws IOException {
+    while (buffer.hasRemaining()) {
+      channel.write(buffer);
+    }
+  }
+
+  private static void writeInts(FileChannel channel, IntBuffer values)
+      throws IOException {
+    CompactGraphSnapshot.writeLength(channel, values.capacity());
+    final ByteBuffer chunk =
+        ByteBuffer.allocate(CompactGraphSnapshot.CHUNK_SIZE).order(
+            ByteOrder.LITTLE_ENDIAN);
+    for (int i = 0; i < values.capacity(); i++) {
+      if (chunk.remaining() < 4) {
+        chunk.flip();
+        CompactGraphSnapshot.writeFully(channel, chunk);
+        chunk.clear();
+      }
+      chunk.putInt(values.get(i));
+    }
+    chunk.flip();
+    CompactGraphSnapshot.writeFully(channel, chunk);
+    CompactGraphSnapshot.writePadding(channel);
+  }
+
+  private static void writeLength(FileChannel channel, int length)
+      throws IOException {
+    final ByteBuffer buffer =
+        ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN);
+    buffer.putInt(length);
+    buffer.flip();
+    CompactGraphSnapshot.writeFully(channel, buffer);
+    CompactGraphSnapshot.writePadding(channel);
+  }
+
+  private static void writePadding(FileChannel channel)
+      throws IOException {
+    final long position = channel.position();
+    final int padding =
+        (int) (CompactGraphSnapshot.align(position) - position);
+    if (padding > 0) {
+      CompactGraphSnapshot.writeFully(channel,
+          ByteBuffer.allocate(padding));
+    }
+  }
+
+}
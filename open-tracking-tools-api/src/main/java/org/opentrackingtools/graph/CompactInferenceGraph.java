@@ -0,0 +1,842 @@
+package org.opentrackingtools.graph;
+
+import gnu.trove.list.array.TDoubleArrayList;
+import gnu.trove.list.array.TIntArrayList;
+import gnu.trove.set.hash.TIntHashSet;
+import gov.sandia.cognition.math.matrix.Matrix;
+import gov.sandia.cognition.math.matrix.Vector;
+import gov.sandia.cognition.statistics.DistributionWithMean;
+import gov.sandia.cognition.statistics.distribution.MultivariateGaussian;
+
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+
+import org.geotools.geometry.jts.JTS;
+import org.geotools.geometry.jts.JTSFactoryFinder;
+import org.opengis.referencing.operation.MathTransform;
+import org.opengis.referencing.operation.TransformException;
+import org.opentrackingtools.estimators.MotionStateEstimatorPredictor;
+import org.opentrackingtools.model.GpsObservation;
+import org.opentrackingtools.model.VehicleStateDistribution;
+import org.opentrackingtools.paths.Path;
+import org.opentrackingtools.paths.PathEdge;
+import org.opentrackingtools.util.GeoUtils;
+import org.opentrackingtools.util.StatisticsUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Preconditions;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.CacheStats;
+import com.google.common.cache.LoadingCache;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.CoordinateSequence;
+import com.vividsolutions.jts.geom.Envelope;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.GeometryFactory;
+import com.vividsolutions.jts.geom.LineString;
+
+/**
+ * An inference graph that keeps its topology in compressed-sparse-row arrays
+ * and its projected geometry in primitive arrays. The arrays are held in
+ * buffers, so that they can also be memory-mapped from a snapshot; see
+ * {@link CompactGraphSnapshot}. Nodes and edges are
+ * identified by their index; an edge's index is also its id and its backing
+ * edge. <br>
+ * Inference graph edges, and their segments, are only created when a query
+ * returns them, and are weakly cached, so only the part of the network that
+ * the filters are currently using is held as objects. Nearby-edge queries use
+ * a {@link SegmentGrid} over the segments, and path searches run directly on
+ * the arrays. <br>
+ * The graph is read-only after construction, so it can be shared between
+ * threads.
+ */
+public class CompactInferenceGraph implements InferenceGraph {
+
+  /**
+   * A line string with a precomputed length.
+   */
+  protected static class FixedLengthLineString extends LineString {
+
+    private static final long serialVersionUID = -3218736204467017536L;
+
+    final double length;
+
+    public FixedLengthLineString(CoordinateSequence points,
+      GeometryFactory factory, double length) {
+      super(points, factory);
+      this.length = length;
+    }
+
+    @Override
+    public double getLength() {
+      return this.length;
+    }
+  }
+
+  /**
+   * A {@link BoundedPathFinder} over the adjacency arrays. Nodes and edges are
+   * their indices, and edge lengths are the lengths of the edges' geometries.
+   */
+  protected class NodePathFinder extends
+      BoundedPathFinder<Integer, Integer> {
+
+    @Override
+    protected Integer getFromVertex(Integer edge) {
+      return CompactInferenceGraph.this.edgeFromNode.get(edge);
+    }
+
+    @Override
+    protected double getLength(Integer edge) {
+      return CompactInferenceGraph.this.getEdgeLength(edge);
+    }
+
+    @Override
+    protected Iterable<Integer> getOutgoingEdges(Integer node) {
+      final int start = CompactInferenceGraph.this.outOffsets.get(node);
+      final int end =
+          CompactInferenceGraph.this.outOffsets.get(node + 1);
+      final List<Integer> edges =
+          Lists.newArrayListWithCapacity(end - start);
+      for (int i = start; i < end; i++) {
+        edges.add(CompactInferenceGraph.this.outEdges.get(i));
+      }
+      return edges;
+    }
+
+    @Override
+    protected Integer getToVertex(Integer edge) {
+      return CompactInferenceGraph.this.edgeToNode.get(edge);
+    }
+  }
+
+  protected static final Logger log = LoggerFactory
+      .getLogger(CompactInferenceGraph.class);
+
+  public static final double DEFAULT_CELL_SIZE = 100d;
+
+  public static final int DEFAULT_MAX_EXPANDED_VERTICES = 10000;
+
+  public static final long DEFAULT_PATH_CACHE_SIZE = 10000l;
+
+  /*
+   * Projected x, y pairs for every point of every edge.
+   */
+  protected DoubleBuffer coords;
+
+  protected IntBuffer edgeFromNode;
+  protected IntBuffer edgeToNode;
+
+  protected final LoadingCache<Integer, InferenceGraphEdge> edgeViews =
+      CacheBuilder.newBuilder().weakValues()
+          .build(new CacheLoader<Integer, InferenceGraphEdge>() {
+            @Override
+            public InferenceGraphEdge load(Integer edge) {
+              return CompactInferenceGraph.this.createEdgeView(edge);
+            }
+          });
+
+  protected final GeometryFactory geometryFactory = JTSFactoryFinder
+      .getGeometryFactory();
+  protected Envelope gpsEnv;
+
+  /*
+   * A segment is identified by the index of its first point.
+   */
+  protected SegmentGrid grid;
+
+  /*
+   * Edges into each node, in CSR form.
+   */
+  protected IntBuffer inEdges;
+  protected IntBuffer inOffsets;
+
+  protected volatile int maxExpandedVertices =
+      CompactInferenceGraph.DEFAULT_MAX_EXPANDED_VERTICES;
+
+  /*
+   * Projected x, y pairs for every node.
+   */
+  protected DoubleBuffer nodeCoords;
+
+  /*
+   * Edges out of each node, in CSR form.
+   */
+  protected IntBuffer outEdges;
+  protected IntBuffer outOffsets;
+
+  protected volatile PathSearchCache pathCache = null;
+
+  /*
+   * Each thread reuses its own search state, since the graph can be shared
+   * between filters on different threads.
+   */
+  protected final ThreadLocal<NodePathFinder> pathFinders =
+      new ThreadLocal<NodePathFinder>() {
+        @Override
+        protected NodePathFinder initialValue() {
+          return new NodePathFinder();
+        }
+      };
+
+  /*
+   * The distance along its edge of every point.
+   */
+  protected DoubleBuffer pointDistances;
+
+  /*
+   * The points of edge i are pointOffsets[i] to pointOffsets[i + 1] - 1.
+   */
+  protected IntBuffer pointOffsets;
+
+  protected Envelope projEnv;
+
+  /*
+   * The edge with the reverse geometry of each edge, or -1.
+   */
+  protected IntBuffer reverseEdges;
+
+  protected CompactInferenceGraph() {
+    this.setPathCacheSize(CompactInferenceGraph.DEFAULT_PATH_CACHE_SIZE);
+  }
+
+  /**
+   * The given collection of lines should be in GPS coordinates, unless
+   * transformShapesToEuclidean is false.
+   *
+   * @param lines
+   * @param transformShapesToEuclidean
+   */
+  public CompactInferenceGraph(Collection<LineString> lines,
+    boolean transformShapesToEuclidean) {
+    this(lines, transformShapesToEuclidean,
+        CompactInferenceGraph.DEFAULT_CELL_SIZE);
+  }
+
+  public CompactInferenceGraph(Collection<LineString> lines,
+    boolean transformShapesToEuclidean, double cellSize) {
+    this();
+    Preconditions.checkArgument(cellSize > 0d);
+    this.createGraphFromLineStrings(lines, transformShapesToEuclidean,
+        cellSize);
+  }
+
+  protected void createGraphFromLineStrings(
+    Collection<LineString> lines, boolean transformShapesToEuclidean,
+    double cellSize) {
+    this.gpsEnv = new Envelope();
+    this.projEnv = new Envelope();
+
+    final Map<Coordinate, Integer> nodeIds = Maps.newHashMap();
+    final TDoubleArrayList nodeCoordList = new TDoubleArrayList();
+    final TIntArrayList fromNodes = new TIntArrayList();
+    final TIntArrayList toNodes = new TIntArrayList();
+    final TIntArrayList pointOffsetList = new TIntArrayList();
+    final TDoubleArrayList coordList = new TDoubleArrayList();
+    final TDoubleArrayList distanceList = new TDoubleArrayList();
+
+    for (final LineString edge : lines) {
+      this.gpsEnv.expandToInclude(edge.getEnvelopeInternal());
+
+      Geometry projectedEdge;
+      if (transformShapesToEuclidean) {
+        final MathTransform transform =
+            GeoUtils.getTransform(edge.getCoordinate());
+        try {
+          projectedEdge = JTS.transform(edge, transform);
+        } catch (final TransformException e) {
+          CompactInferenceGraph.log.warn("skipping edge that couldn't "
+              + "be projected " + edge, e);
+          continue;
+        }
+      } else {
+        projectedEdge = edge;
+      }
+
+      /*
+       * Drop repeated points, so that every point but the last
+       * starts a segment, just like the inference graph edge's
+       * segments.
+       */
+      final Coordinate[] edgeCoords = projectedEdge.getCoordinates();
+      final List<Coordinate> points = Lists.newArrayList();
+      for (final Coordinate coord : edgeCoords) {
+        if (points.isEmpty()
+            || !Iterables.getLast(points).equals2D(coord)) {
+          points.add(coord);
+        }
+      }
+      if (points.size() < 2) {
+        CompactInferenceGraph.log.warn("skipping degenerate edge "
+            + edge);
+        continue;
+      }
+
+      this.projEnv.expandToInclude(projectedEdge
+          .getEnvelopeInternal());
+
+      fromNodes.add(this.getNodeId(nodeIds, nodeCoordList,
+          points.get(0)));
+      toNodes.add(this.getNodeId(nodeIds, nodeCoordList,
+          Iterables.getLast(points)));
+
+      pointOffsetList.add(coordList.size() / 2);
+      double distance = 0d;
+      Coordinate prevCoord = null;
+      for (final Coordinate coord : points) {
+        if (prevCoord != null) {
+          distance += prevCoord.distance(coord);
+        }
+        coordList.add(coord.x);
+        coordList.add(coord.y);
+        distanceList.add(distance);
+        prevCoord = coord;
+      }
+    }
+    pointOffsetList.add(coordList.size() / 2);
+
+    this.nodeCoords = DoubleBuffer.wrap(nodeCoordList.toArray());
+    this.edgeFromNode = IntBuffer.wrap(fromNodes.toArray());
+    this.edgeToNode = IntBuffer.wrap(toNodes.toArray());
+    this.pointOffsets = IntBuffer.wrap(pointOffsetList.toArray());
+    this.coords = DoubleBuffer.wrap(coordList.toArray());
+    this.pointDistances = DoubleBuffer.wrap(distanceList.toArray());
+
+    final int numNodes = this.getNumNodes();
+    final int[] outOffsetArray = new int[numNodes + 1];
+    final int[] outEdgeArray =
+        CompactInferenceGraph.createAdjacency(fromNodes.toArray(),
+            numNodes, outOffsetArray);
+    this.outOffsets = IntBuffer.wrap(outOffsetArray);
+    this.outEdges = IntBuffer.wrap(outEdgeArray);
+    final int[] inOffsetArray = new int[numNodes + 1];
+    this.inEdges =
+        IntBuffer.wrap(CompactInferenceGraph.createAdjacency(
+            toNodes.toArray(), numNodes, inOffsetArray));
+    this.inOffsets = IntBuffer.wrap(inOffsetArray);
+
+    final int[] reverseEdgeArray = new int[this.getNumEdges()];
+    for (int edge = 0; edge < reverseEdgeArray.length; edge++) {
+      reverseEdgeArray[edge] = -1;
+      final int toNode = toNodes.get(edge);
+      for (int i = outOffsetArray[toNode]; i < outOffsetArray[toNode + 1]; i++) {
+        if (this.isReverse(edge, outEdgeArray[i])) {
+          reverseEdgeArray[edge] = outEdgeArray[i];
+          break;
+        }
+      }
+    }
+    this.reverseEdges = IntBuffer.wrap(reverseEdgeArray);
+
+    this.createGrid(cellSize);
+
+    CompactInferenceGraph.log.info("built graph with " + numNodes
+        + " nodes, " + this.getNumEdges() + " edges and "
+        + this.getNumSegments() + " segments");
+  }
+
+  /**
+   * Groups the edges by the given node, in CSR form.
+   *
+   * @return the edge indices, grouped by node
+   */
+  protected static int[] createAdjacency(int[] edgeNodes,
+    int numNodes, int[] offsets) {
+    for (final int node : edgeNodes) {
+      offsets[node + 1]++;
+    }
+    for (int i = 0; i < numNodes; i++) {
+      offsets[i + 1] += offsets[i];
+    }
+    final int[] next = Arrays.copyOf(offsets, numNodes);
+    final int[] result = new int[edgeNodes.length];
+    for (int edge = 0; edge < edgeNodes.length; edge++) {
+      result[next[edgeNodes[edge]]++] = edge;
+    }
+    return result;
+  }
+
+  protected InferenceGraphEdge createEdgeView(int edge) {
+    final int start = this.pointOffsets.get(edge);
+    final int end = this.pointOffsets.get(edge + 1);
+    final Coordinate[] points = new Coordinate[end - start];
+    for (int i = start; i < end; i++) {
+      points[i - start] =
+          new Coordinate(this.coords.get(2 * i), this.coords.get(2 * i + 1));
+    }
+    final LineString line =
+        new FixedLengthLineString(this.geometryFactory
+            .getCoordinateSequenceFactory().create(points),
+            this.geometryFactory, this.pointDistances.get(end - 1));
+    return new InferenceGraphEdge(line, Integer.valueOf(edge), edge,
+        this);
+  }
+
+  protected void createGrid(double cellSize) {
+    final int numSegments = this.getNumSegments();
+    final double[] segmentCoords = new double[4 * numSegments];
+    final int[] segmentIds = new int[numSegments];
+    int i = 0;
+    for (int edge = 0; edge < this.getNumEdges(); edge++) {
+      final int end = this.pointOffsets.get(edge + 1) - 1;
+      for (int p = this.pointOffsets.get(edge); p < end; p++) {
+        for (int j = 0; j < 4; j++) {
+          segmentCoords[4 * i + j] = this.coords.get(2 * p + j);
+        }
+        segmentIds[i++] = p;
+      }
+    }
+    this.grid = SegmentGrid.create(segmentCoords, segmentIds, cellSize);
+  }
+
+  @Override
+  public boolean edgeHasReverse(Geometry edge) {
+    final int index = this.findEdge(edge);
+    return index >= 0 && this.reverseEdges.get(index) >= 0;
+  }
+
+  /**
+   * @return the index of the edge with exactly the given (projected) geometry,
+   *         or -1
+   */
+  protected int findEdge(Geometry geometry) {
+    final Coordinate[] points = geometry.getCoordinates();
+    if (points.length < 2) {
+      return -1;
+    }
+    final int cell =
+        this.grid.getCell(this.grid.getColumn(points[0].x),
+            this.grid.getRow(points[0].y));
+    final int end = this.grid.getCellEnd(cell);
+    for (int i = this.grid.getCellStart(cell); i < end; i++) {
+      final int edge = this.getSegmentEdge(this.grid.getSegment(i));
+      if (this.grid.getSegment(i) != this.pointOffsets.get(edge)
+          || this.pointOffsets.get(edge + 1)
+              - this.pointOffsets.get(edge) != points.length) {
+        continue;
+      }
+      boolean matches = true;
+      for (int j = 0; j < points.length && matches; j++) {
+        final int p = this.pointOffsets.get(edge) + j;
+        matches =
+            this.coords.get(2 * p) == points[j].x
+                && this.coords.get(2 * p + 1) == points[j].y;
+      }
+      if (matches) {
+        return edge;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * @return the edge's view, creating it if it isn't in use
+   */
+  public InferenceGraphEdge getEdge(int edge) {
+    return this.edgeViews.getUnchecked(edge);
+  }
+
+  /**
+   * @return the length of the edge's geometry
+   */
+  protected double getEdgeLength(int edge) {
+    return this.pointDistances.get(this.pointOffsets.get(edge + 1) - 1);
+  }
+
+  @Override
+  public Envelope getGPSGraphExtent() {
+    return this.gpsEnv;
+  }
+
+  @Override
+  public Collection<InferenceGraphEdge> getIncomingTransferableEdges(
+    InferenceGraphEdge infEdge) {
+    final int fromNode =
+        this.edgeFromNode.get((Integer) infEdge.getBackingEdge());
+    final Set<InferenceGraphEdge> result = Sets.newHashSet();
+    for (int i = this.inOffsets.get(fromNode); i < this.inOffsets.get(fromNode + 1); i++) {
+      result.add(this.getEdge(this.inEdges.get(i)));
+    }
+    return result;
+  }
+
+  @Override
+  public InferenceGraphEdge getInferenceGraphEdge(int id) {
+    if (id < 0 || id >= this.getNumEdges()) {
+      return null;
+    }
+    return this.getEdge(id);
+  }
+
+  public int getMaxExpandedVertices() {
+    return this.maxExpandedVertices;
+  }
+
+  @Override
+  public Collection<InferenceGraphSegment> getNearbyEdges(
+    Coordinate toCoord, double radius) {
+    final int minCol = this.grid.getColumn(toCoord.x - radius);
+    final int maxCol = this.grid.getColumn(toCoord.x + radius);
+    final int minRow = this.grid.getRow(toCoord.y - radius);
+    final int maxRow = this.grid.getRow(toCoord.y + radius);
+
+    final TIntHashSet checked = new TIntHashSet();
+    final Set<InferenceGraphSegment> streetEdges = Sets.newHashSet();
+    for (int row = minRow; row <= maxRow; row++) {
+      for (int col = minCol; col <= maxCol; col++) {
+        final int cell = this.grid.getCell(col, row);
+        final int end = this.grid.getCellEnd(cell);
+        for (int i = this.grid.getCellStart(cell); i < end; i++) {
+          final int p = this.grid.getSegment(i);
+          if (!checked.add(p)) {
+            continue;
+          }
+          if (SegmentGrid.segmentDistance(toCoord.x,
+              toCoord.y, this.coords.get(2 * p), this.coords.get(2 * p + 1),
+              this.coords.get(2 * p + 2), this.coords.get(2 * p + 3)) < radius) {
+            final int edge = this.getSegmentEdge(p);
+            streetEdges.add(this.getEdge(edge).getSegments()
+                .get(p - this.pointOffsets.get(edge)));
+          }
+        }
+      }
+    }
+    return streetEdges;
+  }
+
+  @Override
+  public Collection<InferenceGraphSegment> getNearbyEdges(
+    DistributionWithMean<Vector> initialBelief, Matrix covar) {
+
+    Preconditions.checkArgument(initialBelief.getMean()
+        .getDimensionality() == 4);
+
+    final Vector toLoc =
+        MotionStateEstimatorPredictor.getOg().times(
+            initialBelief.getMean());
+    final double varDistance =
+        StatisticsUtil.getLargeNormalCovRadius(covar);
+
+    return this.getNearbyEdges(toLoc, varDistance);
+  }
+
+  @Override
+  public Collection<InferenceGraphSegment> getNearbyEdges(
+    Vector projLocation, double radius) {
+    Preconditions
+        .checkArgument(projLocation.getDimensionality() == 2);
+    return this.getNearbyEdges(GeoUtils.makeCoordinate(projLocation),
+        radius);
+  }
+
+  protected int getNodeId(Map<Coordinate, Integer> nodeIds,
+    TDoubleArrayList nodeCoordList, Coordinate coord) {
+    Integer id = nodeIds.get(coord);
+    if (id == null) {
+      id = nodeCoordList.size() / 2;
+      nodeIds.put(coord, id);
+      nodeCoordList.add(coord.x);
+      nodeCoordList.add(coord.y);
+    }
+    return id;
+  }
+
+  public int getNumEdges() {
+    return this.edgeFromNode.capacity();
+  }
+
+  public int getNumNodes() {
+    return this.nodeCoords.capacity() / 2;
+  }
+
+  public int getNumSegments() {
+    return this.coords.capacity() / 2 - this.getNumEdges();
+  }
+
+  @Override
+  public Collection<InferenceGraphEdge> getOutgoingTransferableEdges(
+    InferenceGraphEdge infEdge) {
+    final int toNode =
+        this.edgeToNode.get((Integer) infEdge.getBackingEdge());
+    final Set<InferenceGraphEdge> result = Sets.newHashSet();
+    for (int i = this.outOffsets.get(toNode); i < this.outOffsets.get(toNode + 1); i++) {
+      result.add(this.getEdge(this.outEdges.get(i)));
+    }
+    return result;
+  }
+
+  /**
+   * Builds a path that starts at the given segment, runs to the end of its
+   * edge, and then follows the given edges.
+   */
+  protected Path getPathFromEdges(List<Integer> edges,
+    InferenceGraphSegment startSegment) {
+    final List<PathEdge> pathEdges = Lists.newArrayList();
+
+    double distance = 0d;
+    for (final InferenceGraphSegment segment : startSegment.getSegments(startSegment.startDistance,
+            Double.POSITIVE_INFINITY)) {
+      pathEdges.add(new PathEdge(segment, distance, false));
+      distance += segment.getLine().getLength();
+    }
+
+    for (final int edge : edges) {
+      for (final InferenceGraphSegment segment : this.getEdge(edge)
+          .getSegments()) {
+
+        Preconditions.checkState(segment.line.p0.equals(Iterables
+            .getLast(pathEdges).getLine().p1));
+
+        pathEdges.add(new PathEdge(segment, distance, false));
+        distance += segment.getLine().getLength();
+      }
+    }
+    if (!pathEdges.isEmpty()) {
+      return new Path(pathEdges, false);
+    } else {
+      return null;
+    }
+  }
+
+  /**
+   * Same as {@link GenericJTSGraph#getPaths}, with the search run over the
+   * adjacency arrays. A search expands at most
+   * {@link #setMaxExpandedVertices(int)} nodes, and results are cached; see
+   * {@link #setPathCacheSize(long)}.
+   */
+  @Override
+  public
+      Set<Path>
+      getPaths(
+        final VehicleStateDistribution<? extends GpsObservation> fromState,
+        final GpsObservation obs) {
+
+    final Set<Path> paths = Sets.newHashSet();
+    paths.add(Path.nullPath);
+
+    final Coordinate toCoord = obs.getObsProjected();
+    final MotionStateEstimatorPredictor motionEstimator =
+        Preconditions.checkNotNull(fromState
+            .getMotionStateEstimatorPredictor());
+    final MultivariateGaussian projectedDist =
+        motionEstimator.createPredictiveDistribution(fromState
+            .getMotionStateParam().getParameterPrior());
+
+    final PathEdge currrentPathEdge =
+        fromState.getPathStateParam().getValue().getEdge();
+    final InferenceGraphSegment startEdge =
+        currrentPathEdge.getInferenceGraphSegment();
+
+    if (startEdge.isNullEdge()) {
+      final MultivariateGaussian obsDist =
+          motionEstimator.getObservationDistribution(projectedDist,
+              PathEdge.nullPathEdge);
+      final double beliefDistance =
+          Math.min(StatisticsUtil.getLargeNormalCovRadius(obsDist
+              .getCovariance()),
+              GenericJTSGraph.MAX_STATE_SNAP_RADIUS);
+
+      for (final InferenceGraphSegment segment : this.getNearbyEdges(
+          obsDist.getMean(), beliefDistance)) {
+        final Path path =
+            new Path(Collections.singletonList(new PathEdge(segment,
+                0d, false)), false);
+        paths.add(path);
+      }
+      return paths;
+    }
+
+    final double obsCovStdDev =
+        StatisticsUtil.getLargeNormalCovRadius(fromState
+            .getObservationCovarianceParam().getValue());
+    final double obsStdDevDistance =
+        Math.max(GenericJTSGraph.MIN_OBS_SNAP_RADIUS, Math.min(
+            obsCovStdDev, GenericJTSGraph.MAX_OBS_SNAP_RADIUS));
+
+    final Collection<InferenceGraphSegment> endLines =
+        this.getNearbyEdges(toCoord, obsStdDevDistance);
+
+    if (endLines.isEmpty()) {
+      return paths;
+    }
+
+    final int source =
+        this.edgeToNode.get((Integer) startEdge.getBackingEdge());
+    final double maxDistance =
+        PathSearchCache.quantize(Math.max(
+            GenericJTSGraph.MAX_DISTANCE_SPEED
+                * motionEstimator.getCurrentTimeDiff(),
+            toCoord.distance(new Coordinate(this.nodeCoords
+                .get(2 * source), this.nodeCoords.get(2 * source + 1))))
+            + obsStdDevDistance);
+
+    final PathSearchCache.Key key =
+        new PathSearchCache.Key(startEdge, ImmutableSet.copyOf(endLines),
+            maxDistance);
+    final PathSearchCache cache = this.pathCache;
+    if (cache != null) {
+      paths.addAll(cache.get(key, new Callable<Set<Path>>() {
+        @Override
+        public Set<Path> call() {
+          return CompactInferenceGraph.this.searchPaths(key);
+        }
+      }));
+    } else {
+      paths.addAll(this.searchPaths(key));
+    }
+
+    return paths;
+  }
+
+  /**
+   * @return the path cache's hit/miss statistics, or null when the cache is
+   *         disabled.
+   */
+  public CacheStats getPathCacheStats() {
+    final PathSearchCache cache = this.pathCache;
+    return cache != null ? cache.getStats() : null;
+  }
+
+  @Override
+  public Envelope getProjGraphExtent() {
+    return this.projEnv;
+  }
+
+  /**
+   * @return the edge that the segment starting at the given point belongs to
+   */
+  protected int getSegmentEdge(int point) {
+    int low = 0;
+    int high = this.getNumEdges() - 1;
+    while (low < high) {
+      final int mid = (low + high + 1) >>> 1;
+      if (this.pointOffsets.get(mid) <= point) {
+        low = mid;
+      } else {
+        high = mid - 1;
+      }
+    }
+    return low;
+  }
+
+  @Override
+  public Collection<InferenceGraphEdge> getTopoEquivEdges(
+    InferenceGraphEdge edge) {
+    final Set<InferenceGraphEdge> result = Sets.newHashSet();
+    result.add(edge);
+    final int reverse =
+        this.reverseEdges.get((Integer) edge.getBackingEdge());
+    if (reverse >= 0) {
+      result.add(this.getEdge(reverse));
+    }
+    return result;
+  }
+
+  /**
+   * @return true if the second edge has the first's points in reverse order
+   */
+  protected boolean isReverse(int edge, int other) {
+    final int start = this.pointOffsets.get(edge);
+    final int end = this.pointOffsets.get(edge + 1);
+    final int otherStart = this.pointOffsets.get(other);
+    if (this.pointOffsets.get(other + 1) - otherStart != end - start) {
+      return false;
+    }
+    for (int i = 0; i < end - start; i++) {
+      final int p = start + i;
+      final int q = this.pointOffsets.get(other + 1) - 1 - i;
+      if (this.coords.get(2 * p) != this.coords.get(2 * q)
+          || this.coords.get(2 * p + 1) != this.coords.get(2 * q + 1)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Finds the paths from the key's start segment to its end segments, within
+   * its distance limit.
+   */
+  protected Set<Path> searchPaths(PathSearchCache.Key key) {
+    final InferenceGraphSegment startEdge = key.getStartSegment();
+    final int source =
+        this.edgeToNode.get((Integer) startEdge.getBackingEdge());
+
+    final Set<Path> paths = Sets.newHashSet();
+    final Set<Integer> targets = Sets.newLinkedHashSet();
+    for (final InferenceGraphSegment endEdge : key.getEndSegments()) {
+      if (startEdge.equals(endEdge)) {
+        final List<PathEdge> currentEdgePathEdges =
+            Lists.newArrayList();
+        double distance = 0d;
+        for (final InferenceGraphSegment segment : startEdge.getSegments(startEdge.startDistance,
+                Double.POSITIVE_INFINITY)) {
+          currentEdgePathEdges.add(new PathEdge(segment, distance,
+              false));
+          distance += segment.getLine().getLength();
+        }
+        paths.add(new Path(currentEdgePathEdges, false));
+        continue;
+      }
+      final int endEdgeIndex = (Integer) endEdge.getBackingEdge();
+      targets.add(this.edgeFromNode.get(endEdgeIndex));
+      targets.add(this.edgeToNode.get(endEdgeIndex));
+    }
+
+    /*
+     * Staying on the start edge is covered above.
+     */
+    targets.remove(source);
+    if (!targets.isEmpty()) {
+      final NodePathFinder pathFinder = this.pathFinders.get();
+      pathFinder.calculate(source, targets, key.getMaxDistance(),
+          this.maxExpandedVertices);
+      for (final Integer target : pathFinder.getReachedTargets()) {
+        final Path newPath =
+            this.getPathFromEdges(pathFinder.getPathEdges(target),
+                startEdge);
+        if (newPath != null) {
+          paths.add(newPath);
+        }
+      }
+    }
+
+    return ImmutableSet.copyOf(paths);
+  }
+
+  /**
+   * @param maxExpandedVertices
+   *          the largest number of nodes a single path search will expand
+   */
+  public void setMaxExpandedVertices(int maxExpandedVertices) {
+    Preconditions.checkArgument(maxExpandedVertices > 0);
+    this.maxExpandedVertices = maxExpandedVertices;
+  }
+
+  /**
+   * Sets the maximum number of path search results that are kept, least
+   * recently used first out. Zero disables the cache. This replaces any
+   * existing cache.
+   * 
+   * @param maximumSize
+   */
+  public void setPathCacheSize(long maximumSize) {
+    Preconditions.checkArgument(maximumSize >= 0);
+    this.pathCache =
+        maximumSize > 0 ? new PathSearchCache(maximumSize) : null;
+  }
+
+}
@@ -0,0 +1,38 @@
+package org.opentrackingtools.graph;
+
+import java.util.List;
+
+import org.geotools.graph.structure.DirectedEdge;
+import org.geotools.graph.structure.DirectedNode;
+
+import com.vividsolutions.jts.geom.LineString;
+
+/**
+ * A {@link BoundedPathFinder} over a GeoTools directed graph whose edges hold
+ * their {@link LineString}s, like {@link GenericJTSGraph}'s. Edge lengths are
+ * the lengths of those lines.
+ */
+public class DirectedGraphPathFinder extends
+    BoundedPathFinder<DirectedNode, DirectedEdge> {
+
+  @Override
+  protected DirectedNode getFromVertex(DirectedEdge edge) {
+    return edge.getInNode();
+  }
+
+  @Override
+  protected double getLength(DirectedEdge edge) {
+    return ((LineString) edge.getObject()).getLength();
+  }
+
+  @Override
+  protected Iterable<DirectedEdge> getOutgoingEdges(DirectedNode vertex) {
+    return (List<DirectedEdge>) vertex.getOutEdges();
+  }
+
+  @Override
+  protected DirectedNode getToVertex(DirectedEdge edge) {
+    return edge.getOutNode();
+  }
+
+}
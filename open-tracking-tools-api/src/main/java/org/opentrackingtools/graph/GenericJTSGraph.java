@@ -7,21 +7,18 @@ import gov.sandia.cognition.statistics.distribution.MultivariateGaussian;
 
 import java.util.Collection;
 import java.util.Collections;
-import java.util.Iterator;
+import java.util.Comparator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
 
 import org.geotools.geometry.jts.JTS;
 import org.geotools.graph.build.line.DirectedLineStringGraphGenerator;
 import org.geotools.graph.structure.DirectedEdge;
 import org.geotools.graph.structure.DirectedNode;
 import org.geotools.graph.structure.Edge;
-import org.geotools.graph.structure.Node;
 import org.geotools.graph.structure.basic.BasicDirectedEdge;
-import org.geotools.graph.structure.basic.BasicDirectedNode;
-import org.geotools.graph.traverse.standard.AStarIterator.AStarFunctions;
-import org.geotools.graph.traverse.standard.AStarIterator.AStarNode;
 import org.opengis.referencing.operation.MathTransform;
 import org.opengis.referencing.operation.TransformException;
 import org.opentrackingtools.estimators.MotionStateEstimatorPredictor;
@@ -35,11 +32,14 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.google.common.base.Preconditions;
+import com.google.common.cache.CacheStats;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
-import com.google.common.primitives.Doubles;
+import com.google.common.primitives.Ints;
 import com.vividsolutions.jts.geom.Coordinate;
 import com.vividsolutions.jts.geom.Envelope;
 import com.vividsolutions.jts.geom.Geometry;
@@ -47,6 +47,12 @@ import com.vividsolutions.jts.geom.LineString;
 import com.vividsolutions.jts.geom.Point;
 import com.vividsolutions.jts.index.strtree.STRtree;
 
+/**
+ * An inference graph built from a collection of line strings. Every inference
+ * graph edge and segment is created when the graph is built, and nothing is
+ * modified afterwards, so a single instance can be shared by filters running
+ * on different threads.
+ */
 public class GenericJTSGraph implements InferenceGraph {
 
   /**
@@ -91,73 +97,6 @@ public class GenericJTSGraph implements InferenceGraph {
     }
   }
 
-  public static class VehicleStateAStarFunction extends
-      AStarFunctions {
-
-    final double distanceToTravel;
-    final double obsStdDevDistance;
-    final Coordinate toCoord;
-
-    public VehicleStateAStarFunction(Node destination,
-      Coordinate toCoord, double obsStdDevDistance,
-      double distanceToTravel) {
-      super(destination);
-      this.toCoord = toCoord;
-      this.distanceToTravel = distanceToTravel;
-      this.obsStdDevDistance = obsStdDevDistance;
-    }
-
-    @Override
-    public double cost(AStarNode n1, AStarNode n2) {
-      final BasicDirectedNode dn1 = (BasicDirectedNode) n1.getNode();
-      final BasicDirectedNode dn2 = (BasicDirectedNode) n2.getNode();
-
-      /*
-       * TODO are we handling multiple edges correctly?
-       */
-      final List<Edge> edgesBetween = dn1.getOutEdges(dn2);
-
-      /*
-       * Make sure this direction is traversable
-       */
-      if (edgesBetween.isEmpty()) {
-        return Double.POSITIVE_INFINITY;
-      }
-
-      /*
-       * TODO
-       * Compute distance past projected value?
-       */
-      final double[] lengths = new double[edgesBetween.size()];
-      for (int i = 0; i < lengths.length; i++) {
-        lengths[i] =
-            ((LineString) edgesBetween.get(i).getObject())
-                .getLength();
-      }
-      final double totalDistanceTraveled =
-          Doubles.min(lengths) + n1.getG();
-
-      final double cost =
-          Math.abs(Math.min(0, this.distanceToTravel
-              - totalDistanceTraveled));
-      return cost;
-    }
-
-    @Override
-    public double h(Node n) {
-
-      final double distance =
-          ((Point) n.getObject()).getCoordinate().distance(
-              this.toCoord);
-
-      if (distance < this.obsStdDevDistance) {
-        return 0d;
-      }
-
-      return (distance - this.obsStdDevDistance) / 15d; // 15 m/s, ~35 mph, a random driving speed
-    }
-  }
-
   protected static final Logger log = LoggerFactory
       .getLogger(GenericJTSGraph.class);
 
@@ -176,18 +115,44 @@ public class GenericJTSGraph implements InferenceGraph {
 
   public static double MIN_OBS_SNAP_RADIUS = 10d;
 
+  public static long DEFAULT_PATH_CACHE_SIZE = 10000l;
+
   protected STRtree edgeIndex = null;
 
-  Map<Edge, InferenceGraphEdge> edgeToInfEdge = Maps.newHashMap();
+  /*
+   * These maps are filled when the graph is built and are
+   * read-only afterwards.
+   */
+  Map<Edge, InferenceGraphEdge> edgeToInfEdge = ImmutableMap.of();
+
+  /*
+   * Edges by id, so that id lookups don't need to hash.  Ids are
+   * assigned densely, from zero, when the graph is built.
+   */
+  InferenceGraphEdge[] edgesById = new InferenceGraphEdge[0];
+
   protected Envelope gpsEnv = null;
 
   protected DirectedLineStringGraphGenerator graphGenerator = null;
 
-  Map<String, InferenceGraphEdge> idToInfEdge = Maps.newHashMap();
+  protected volatile PathSearchCache pathCache = null;
+
+  /*
+   * Each thread reuses its own search state, since the graph can be shared
+   * between filters on different threads.
+   */
+  protected final ThreadLocal<DirectedGraphPathFinder> pathFinders =
+      new ThreadLocal<DirectedGraphPathFinder>() {
+        @Override
+        protected DirectedGraphPathFinder initialValue() {
+          return new DirectedGraphPathFinder();
+        }
+      };
 
   protected Envelope projEnv = null;
 
   protected GenericJTSGraph() {
+    this.setPathCacheSize(GenericJTSGraph.DEFAULT_PATH_CACHE_SIZE);
   }
 
   /**
@@ -198,6 +163,7 @@ public class GenericJTSGraph implements InferenceGraph {
    */
   public GenericJTSGraph(Collection<LineString> lines,
     boolean transformShapesToEuclidean) {
+    this.setPathCacheSize(GenericJTSGraph.DEFAULT_PATH_CACHE_SIZE);
     this.createGraphFromLineStrings(lines, transformShapesToEuclidean);
   }
 
@@ -238,17 +204,32 @@ public class GenericJTSGraph implements InferenceGraph {
      * the geoms, so that distance calculations won't 
      * slow things down when querying for nearby edges.
      * 
-     * TODO is there some way to do this lazily?  the
-     * general problem is that we might want to query
-     * an edge by it's id, yet it hasn't been initialized,
-     * so it doesn't get into the map (by the way, we
-     * have to keep our own map; the internal graph doesn't
-     * do that).
+     * Every edge is materialized here, and the maps are 
+     * frozen afterwards, so that lookups never write
+     * to shared state (by the way, we have to keep our own 
+     * map; the internal graph doesn't do that).
+     * 
+     * The generator's edge ids needn't be dense, so edges get
+     * their own ids, in the generator's id order.
      */
+    final List<BasicDirectedEdge> edges = Lists.newArrayList();
     for (final Object obj : this.graphGenerator.getGraph().getEdges()) {
-      final BasicDirectedEdge edge = (BasicDirectedEdge) obj;
+      edges.add((BasicDirectedEdge) obj);
+    }
+    Collections.sort(edges, new Comparator<Edge>() {
+      @Override
+      public int compare(Edge o1, Edge o2) {
+        return Ints.compare(o1.getID(), o2.getID());
+      }
+    });
+    final Map<Edge, InferenceGraphEdge> edgeMap = Maps.newHashMap();
+    this.edgesById = new InferenceGraphEdge[edges.size()];
+    for (int id = 0; id < edges.size(); id++) {
+      final BasicDirectedEdge edge = edges.get(id);
       final InferenceGraphEdge infEdge =
-          this.getInferenceGraphEdge(edge);
+          this.createInferenceGraphEdge(edge, id);
+      edgeMap.put(edge, infEdge);
+      this.edgesById[id] = infEdge;
       for (final InferenceGraphSegment segment : infEdge
           .getSegments()) {
         this.edgeIndex.insert(new Envelope(segment.line.p0,
@@ -256,9 +237,17 @@ public class GenericJTSGraph implements InferenceGraph {
       }
 
     }
+    this.edgeToInfEdge = ImmutableMap.copyOf(edgeMap);
     this.edgeIndex.build();
   }
 
+  protected InferenceGraphEdge
+      createInferenceGraphEdge(Edge edge, int id) {
+    final Geometry edgeGeom =
+        Preconditions.checkNotNull((Geometry) edge.getObject());
+    return new InferenceGraphEdge(edgeGeom, edge, id, this);
+  }
+
   @Override
   public boolean edgeHasReverse(Geometry edge) {
     return this.graphGenerator.get(edge.reverse()) != null;
@@ -286,24 +275,15 @@ public class GenericJTSGraph implements InferenceGraph {
   }
 
   private InferenceGraphEdge getInferenceGraphEdge(Edge edge) {
-    InferenceGraphEdge infEdge = this.edgeToInfEdge.get(edge);
-
-    if (infEdge == null) {
-      final Geometry edgeGeom =
-          Preconditions.checkNotNull((Geometry) edge.getObject());
-      final int id = edge.getID();
-      infEdge = new InferenceGraphEdge(edgeGeom, edge, id, this);
-
-      this.edgeToInfEdge.put(edge, infEdge);
-      this.idToInfEdge.put(infEdge.getEdgeId(), infEdge);
-    }
-
-    return infEdge;
+    return Preconditions.checkNotNull(this.edgeToInfEdge.get(edge));
   }
 
   @Override
-  public InferenceGraphEdge getInferenceGraphEdge(String id) {
-    return this.idToInfEdge.get(id);
+  public InferenceGraphEdge getInferenceGraphEdge(int id) {
+    if (id < 0 || id >= this.edgesById.length) {
+      return null;
+    }
+    return this.edgesById[id];
   }
 
   @Override
@@ -368,11 +348,12 @@ public class GenericJTSGraph implements InferenceGraph {
     return result;
   }
 
-  @SuppressWarnings("unchecked")
-  protected Path getPathFromGraph(org.geotools.graph.path.Path path,
-    final DirectedEdge bStartEdge,
-    InferenceGraphSegment startSegment,
-    InferenceGraphSegment endSegment, Set<Node> reachedEndNodes) {
+  /**
+   * Builds a path that starts at the given segment, runs to the end of its
+   * edge, and then follows the given edges.
+   */
+  protected Path getPathFromGraph(List<DirectedEdge> edges,
+    InferenceGraphSegment startSegment) {
     final List<PathEdge> pathEdges = Lists.newArrayList();
 
     /*
@@ -385,14 +366,9 @@ public class GenericJTSGraph implements InferenceGraph {
       distance += segment.getLine().getLength();
     }
 
-    final Iterator<DirectedNode> rNodes = path.riterator();
-    DirectedNode prevNode = rNodes.next();
-    while (rNodes.hasNext()) {
-      final DirectedNode node = rNodes.next();
-      final Edge outEdge =
-          Preconditions.checkNotNull(prevNode.getOutEdge(node));
+    for (final DirectedEdge edge : edges) {
       final InferenceGraphEdge infEdge =
-          this.getInferenceGraphEdge(outEdge);
+          this.getInferenceGraphEdge(edge);
       for (final InferenceGraphSegment segment : infEdge
           .getSegments()) {
 
@@ -402,8 +378,6 @@ public class GenericJTSGraph implements InferenceGraph {
         pathEdges.add(new PathEdge(segment, distance, false));
         distance += segment.getLine().getLength();
       }
-      reachedEndNodes.add(node);
-      prevNode = node;
     }
     if (!pathEdges.isEmpty()) {
       final Path newPath = new Path(pathEdges, false);
@@ -420,6 +394,11 @@ public class GenericJTSGraph implements InferenceGraph {
    * points. Again a search radius is used, and in both cases, the radiuses are
    * proportional to the square root of Frobenius norms of the state and
    * measurement errors of the given vehicle state. <br>
+   * Paths to all of the end edges are found with a single search from the
+   * start edge, which is bounded by the distance the vehicle could have
+   * travelled at {@link #MAX_DISTANCE_SPEED}, or by the straight-line distance
+   * to the observation, whichever is larger. Search results are cached; see
+   * {@link #setPathCacheSize(long)}. <br>
    * Note: the null path, representing off-road travel to the observation is
    * always included in the results.
    * 
@@ -489,68 +468,32 @@ public class GenericJTSGraph implements InferenceGraph {
       return paths;
     }
 
+    final Set<InferenceGraphSegment> endSegments =
+        ImmutableSet.copyOf(endLines);
     for (final InferenceGraphSegment startEdge : startEdges) {
-      final DirectedEdge bStartEdge =
-          ((DirectedEdge) startEdge.getBackingEdge());
-      final Node source = bStartEdge.getOutNode();
-      /*
-       * Use this set to avoid recomputing subpaths of 
-       * our current paths.
-       */
-      final Set<Node> reachedEndNodes = Sets.newHashSet(source);
-      for (final InferenceGraphSegment endEdge : endLines) {
-
-        if (startEdge.equals(endEdge)) {
-          final List<PathEdge> currentEdgePathEdges =
-              Lists.newArrayList();
-          double distance = 0d;
-          for (final InferenceGraphSegment segment : startEdge.getSegments(startEdge.startDistance,
-                  Double.POSITIVE_INFINITY)) {
-            currentEdgePathEdges.add(new PathEdge(segment, distance,
-                false));
-            distance += segment.getLine().getLength();
-          }
-          final Path pathFromStartEdge =
-              new Path(currentEdgePathEdges, false);
-          paths.add(pathFromStartEdge);
-          continue;
-        }
-
-        final DirectedEdge bEdge =
-            ((DirectedEdge) endEdge.getBackingEdge());
-        final List<Node> endNodes = Lists.newArrayList();
-        endNodes.add(bEdge.getNodeA());
-        endNodes.add(bEdge.getNodeB());
-        for (final Node target : endNodes) {
-
-          if (reachedEndNodes.contains(target)) {
-            continue;
-          }
-
-          final AStarFunctions afuncs =
-              new VehicleStateAStarFunction(target, toCoord,
-                  obsStdDevDistance, projectedDist.getMean()
-                      .getElement(0));
-
-          final CustomAStarShortestPathFinder aStarIter =
-              new CustomAStarShortestPathFinder(
-                  this.graphGenerator.getGraph(), source, target,
-                  afuncs);
-          aStarIter.calculate();
-
-          final org.geotools.graph.path.Path path =
-              aStarIter.getPath();
-
-          if (path != null) {
-            final Path newPath =
-                this.getPathFromGraph(path, bStartEdge, startEdge,
-                    endEdge, reachedEndNodes);
-            if (newPath != null) {
-              paths.add(newPath);
-            }
+      final DirectedNode source =
+          ((DirectedEdge) startEdge.getBackingEdge()).getOutNode();
+
+      final double maxDistance =
+          PathSearchCache.quantize(Math.max(
+              GenericJTSGraph.MAX_DISTANCE_SPEED
+                  * motionEstimator.getCurrentTimeDiff(),
+              ((Point) source.getObject()).getCoordinate().distance(
+                  toCoord))
+              + obsStdDevDistance);
+
+      final PathSearchCache.Key key =
+          new PathSearchCache.Key(startEdge, endSegments, maxDistance);
+      final PathSearchCache cache = this.pathCache;
+      if (cache != null) {
+        paths.addAll(cache.get(key, new Callable<Set<Path>>() {
+          @Override
+          public Set<Path> call() {
+            return GenericJTSGraph.this.searchPaths(key);
           }
-          // TODO backward paths? 
-        }
+        }));
+      } else {
+        paths.addAll(this.searchPaths(key));
       }
     }
 
@@ -581,11 +524,94 @@ public class GenericJTSGraph implements InferenceGraph {
     return paths;
   }
 
+  /**
+   * @return the path cache's hit/miss statistics, or null when the cache is
+   *         disabled.
+   */
+  public CacheStats getPathCacheStats() {
+    final PathSearchCache cache = this.pathCache;
+    return cache != null ? cache.getStats() : null;
+  }
+
   @Override
   public Envelope getProjGraphExtent() {
     return this.projEnv;
   }
 
+  /**
+   * Finds the paths from the key's start segment to its end segments, within
+   * its distance limit.
+   */
+  protected Set<Path> searchPaths(PathSearchCache.Key key) {
+    final InferenceGraphSegment startEdge = key.getStartSegment();
+    final DirectedNode source =
+        ((DirectedEdge) startEdge.getBackingEdge()).getOutNode();
+
+    final Set<Path> paths = Sets.newHashSet();
+    final Set<DirectedNode> targets = Sets.newLinkedHashSet();
+    for (final InferenceGraphSegment endEdge : key.getEndSegments()) {
+
+      if (startEdge.equals(endEdge)) {
+        final List<PathEdge> currentEdgePathEdges =
+            Lists.newArrayList();
+        double distance = 0d;
+        for (final InferenceGraphSegment segment : startEdge.getSegments(startEdge.startDistance,
+                Double.POSITIVE_INFINITY)) {
+          currentEdgePathEdges.add(new PathEdge(segment, distance,
+              false));
+          distance += segment.getLine().getLength();
+        }
+        final Path pathFromStartEdge =
+            new Path(currentEdgePathEdges, false);
+        paths.add(pathFromStartEdge);
+        continue;
+      }
+
+      final DirectedEdge bEdge =
+          ((DirectedEdge) endEdge.getBackingEdge());
+      targets.add(bEdge.getInNode());
+      targets.add(bEdge.getOutNode());
+    }
+
+    /*
+     * Staying on the start edge is covered above.
+     */
+    targets.remove(source);
+    if (!targets.isEmpty()) {
+      final DirectedGraphPathFinder pathFinder = this.pathFinders.get();
+      pathFinder.calculate(source, targets, key.getMaxDistance(),
+          Integer.MAX_VALUE);
+
+      for (final DirectedNode target : pathFinder.getReachedTargets()) {
+        final Path newPath =
+            this.getPathFromGraph(pathFinder.getPathEdges(target),
+                startEdge);
+        if (newPath != null) {
+          paths.add(newPath);
+        }
+        // TODO backward paths? 
+      }
+    }
+
+    return ImmutableSet.copyOf(paths);
+  }
+
+  /**
+   * Sets the maximum number of path search results that are kept, least
+   * recently used first out. Zero disables the cache. This replaces any
+   * existing cache.
+   * 
+   * @param maximumSize
+   */
+  public void setPathCacheSize(long maximumSize) {
+    Preconditions.checkArgument(maximumSize >= 0);
+    if (maximumSize > 0) {
+      this.pathCache = new PathSearchCache(maximumSize);
+    } else {
+      this.pathCache = null;
+    }
+  }
+
   @Override
   public Set<InferenceGraphEdge> getTopoEquivEdges(
     InferenceGraphEdge edge) {
@@ -598,10 +624,10 @@ public class GenericJTSGraph implements InferenceGraph {
         this.graphGenerator.getEdge(coords[coords.length - 1],
             coords[0]);
 
-    final InferenceGraphEdge revInfEdge =
-        this.getInferenceGraphEdge(revEdge);
     result.add(edge);
-    result.add(revInfEdge);
+    if (revEdge != null) {
+      result.add(this.getInferenceGraphEdge(revEdge));
+    }
 
     return result;
   }
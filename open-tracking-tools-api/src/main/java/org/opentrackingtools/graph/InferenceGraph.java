@@ -23,7 +23,10 @@ public interface InferenceGraph {
   public Collection<InferenceGraphEdge> getIncomingTransferableEdges(
     InferenceGraphEdge infEdge);
 
-  public InferenceGraphEdge getInferenceGraphEdge(String id);
+  /**
+   * @return the edge with the given id, or null if there isn't one.
+   */
+  public InferenceGraphEdge getInferenceGraphEdge(int id);
 
   public Collection<InferenceGraphSegment> getNearbyEdges(
     Coordinate projLocation, double radius);
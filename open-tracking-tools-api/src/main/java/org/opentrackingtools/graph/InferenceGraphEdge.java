@@ -12,6 +12,7 @@ import org.opentrackingtools.util.GeoUtils;
 
 import com.google.common.base.Preconditions;
 import com.google.common.collect.Lists;
+import com.google.common.primitives.Ints;
 import com.vividsolutions.jts.geom.Coordinate;
 import com.vividsolutions.jts.geom.Geometry;
 import com.vividsolutions.jts.geom.LineSegment;
@@ -22,6 +23,11 @@ import com.vividsolutions.jts.linearref.LocationIndexedLine;
 public class InferenceGraphEdge implements
     Comparable<InferenceGraphEdge> {
 
+  /*
+   * The id of the null edge, which no graph gives to a real edge.
+   */
+  public final static int NULL_EDGE_ID = -1;
+
   /*
    * This is the empty edge, which stands for free movement
    */
@@ -29,7 +35,7 @@ public class InferenceGraphEdge implements
       new InferenceGraphEdge();
 
   protected final Object backingEdge;
-  protected final Integer edgeId;
+  protected final int edgeId;
   protected final Geometry geometry;
   protected final Boolean hasReverse;
   
@@ -40,17 +46,18 @@ public class InferenceGraphEdge implements
   protected InferenceGraphEdge() {
     this.locationIndexedLine = null;
     this.graphSegments = null;
-    this.edgeId = null;
+    this.edgeId = InferenceGraphEdge.NULL_EDGE_ID;
     this.backingEdge = null;
     this.geometry = null;
     this.hasReverse = null;
   }
 
   public InferenceGraphEdge(@Nonnull Geometry geom,
-    @Nonnull Object backingEdge, @Nonnull Integer edgeId,
+    @Nonnull Object backingEdge, int edgeId,
     @Nonnull InferenceGraph graph) {
 
-    this.edgeId = Preconditions.checkNotNull(edgeId);
+    Preconditions.checkArgument(edgeId != InferenceGraphEdge.NULL_EDGE_ID);
+    this.edgeId = edgeId;
     this.backingEdge = Preconditions.checkNotNull(backingEdge);
 
     this.geometry = Preconditions.checkNotNull(geom);
@@ -87,9 +94,22 @@ public class InferenceGraphEdge implements
     this.locationIndexedLine = infEdge.locationIndexedLine;
   }
 
+  /**
+   * Orders by id, then geometry, so that it agrees with {@link #equals}.
+   */
   @Override
   public int compareTo(InferenceGraphEdge o) {
-    return this.getGeometry().compareTo(o.getGeometry());
+    final int result = Ints.compare(this.edgeId, o.edgeId);
+    if (result != 0 || this.geometry == o.geometry) {
+      return result;
+    }
+    if (this.geometry == null) {
+      return -1;
+    }
+    if (o.geometry == null) {
+      return 1;
+    }
+    return this.geometry.compareTo(o.geometry);
   }
 
   @Override
@@ -104,14 +124,21 @@ public class InferenceGraphEdge implements
       return false;
     }
     final InferenceGraphEdge other = (InferenceGraphEdge) obj;
-    if (this.geometry == null) {
-      if (other.geometry != null) {
-        return false;
-      }
-    } else if (!this.geometry.equalsExact(other.geometry)) {
+    /*
+     * Ids are unique within a graph, so they rule out most unequal edges
+     * without comparing coordinates, and edges from the same graph share
+     * their geometry objects.
+     */
+    if (this.edgeId != other.edgeId) {
+      return false;
+    }
+    if (this.geometry == other.geometry) {
+      return true;
+    }
+    if (this.geometry == null || other.geometry == null) {
       return false;
     }
-    return true;
+    return this.geometry.equalsExact(other.geometry);
   }
 
   public Object getBackingEdge() {
@@ -122,8 +149,8 @@ public class InferenceGraphEdge implements
     return this.geometry.getCentroid().getCoordinate();
   }
 
-  public String getEdgeId() {
-    return String.valueOf(this.edgeId);
+  public int getEdgeId() {
+    return this.edgeId;
   }
 
   public Geometry getGeometry() {
@@ -182,10 +209,7 @@ public class InferenceGraphEdge implements
   public int hashCode() {
     final int prime = 31;
     int result = 1;
-    result =
-        prime
-            * result
-            + ((this.geometry == null) ? 0 : this.geometry.hashCode());
+    result = prime * result + this.edgeId;
     return result;
   }
 
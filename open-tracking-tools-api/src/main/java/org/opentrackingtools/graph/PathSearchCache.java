@@ -0,0 +1,131 @@
+package org.opentrackingtools.graph;
+
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+
+import org.opentrackingtools.paths.Path;
+import org.opentrackingtools.util.metrics.Metrics;
+
+import com.google.common.base.Objects;
+import com.google.common.base.Preconditions;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+
+/**
+ * Path search results from on-road states, least recently used first out.
+ * Nearby particles tend to search from the same segment to the same end
+ * segments, so the graphs share results between them. Results must be
+ * immutable, since every particle with the same key gets the same set.
+ */
+public class PathSearchCache {
+
+  /**
+   * Everything a path search from an on-road state depends on: the start
+   * segment, the candidate end segments, and the (quantized) distance limit.
+   */
+  public static class Key {
+
+    final Set<InferenceGraphSegment> endSegments;
+    final double maxDistance;
+    final InferenceGraphSegment startSegment;
+
+    public Key(InferenceGraphSegment startSegment,
+      Set<InferenceGraphSegment> endSegments, double maxDistance) {
+      this.startSegment = startSegment;
+      this.endSegments = endSegments;
+      this.maxDistance = maxDistance;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (this == obj) {
+        return true;
+      }
+      if (!(obj instanceof Key)) {
+        return false;
+      }
+      final Key other = (Key) obj;
+      return this.maxDistance == other.maxDistance
+          && this.startSegment.equals(other.startSegment)
+          && this.endSegments.equals(other.endSegments);
+    }
+
+    public Set<InferenceGraphSegment> getEndSegments() {
+      return this.endSegments;
+    }
+
+    public double getMaxDistance() {
+      return this.maxDistance;
+    }
+
+    public InferenceGraphSegment getStartSegment() {
+      return this.startSegment;
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hashCode(this.startSegment, this.endSegments,
+          this.maxDistance);
+    }
+  }
+
+  /*
+   * Path search distance limits are rounded up to a multiple
+   * of this, so that searches for nearby observations can
+   * share cached results.
+   */
+  public static final double DISTANCE_QUANTUM = 25d;
+
+  /**
+   * @return the distance limit, rounded up to a multiple of
+   *         {@link #DISTANCE_QUANTUM}.
+   */
+  public static double quantize(double maxDistance) {
+    return PathSearchCache.DISTANCE_QUANTUM
+        * Math.ceil(maxDistance / PathSearchCache.DISTANCE_QUANTUM);
+  }
+
+  protected final Cache<Key, Set<Path>> cache;
+
+  /**
+   * @param maximumSize
+   *          the maximum number of search results that are kept
+   */
+  public PathSearchCache(long maximumSize) {
+    Preconditions.checkArgument(maximumSize > 0);
+    this.cache =
+        CacheBuilder.newBuilder().maximumSize(maximumSize)
+            .<Key, Set<Path>> build();
+  }
+
+  /**
+   * @return the cached results for the key, running the search when there
+   *         are none.
+   */
+  public Set<Path> get(Key key, final Callable<Set<Path>> search) {
+    final boolean[] searched = { false };
+    final Callable<Set<Path>> countedSearch = new Callable<Set<Path>>() {
+      @Override
+      public Set<Path> call() throws Exception {
+        searched[0] = true;
+        return search.call();
+      }
+    };
+    final Set<Path> result;
+    try {
+      result = this.cache.get(key, countedSearch);
+    } catch (final ExecutionException e) {
+      throw new IllegalStateException(e.getCause());
+    }
+    Metrics.increment(searched[0] ? Metrics.PATH_CACHE_MISSES
+        : Metrics.PATH_CACHE_HITS, 1);
+    return result;
+  }
+
+  public CacheStats getStats() {
+    return this.cache.stats();
+  }
+
+}
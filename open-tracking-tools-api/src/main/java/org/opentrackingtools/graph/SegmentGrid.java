@@ -0,0 +1,236 @@
+package org.opentrackingtools.graph;
+
+import java.nio.IntBuffer;
+import java.util.Arrays;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * A uniform grid over line segments. Each segment is listed, by its id, in
+ * every cell its bounding box touches, and the cells' lists are kept in
+ * compressed-sparse-row form: the segments in cell i are
+ * cellSegments[cellOffsets[i]] to cellSegments[cellOffsets[i + 1] - 1]. <br>
+ * The grid only holds ids; its users keep the segments' coordinates and
+ * compute exact distances themselves. The lists are held in buffers, so that
+ * they can also be memory-mapped from a snapshot. <br>
+ * The grid is immutable, so it can be shared between threads.
+ */
+public class SegmentGrid {
+
+  /*
+   * The grid's cell size is increased until it has no more
+   * cells than this.
+   */
+  public static final int MAX_CELLS = 1 << 22;
+
+  /**
+   * Builds a grid over the given segments. The grid covers their bounding box.
+   *
+   * @param segmentCoords
+   *          x0, y0, x1, y1 for every segment
+   * @param segmentIds
+   *          the id that's listed for each segment
+   * @param cellSize
+   *          the starting cell size, which is increased until the grid has no
+   *          more than {@link #MAX_CELLS} cells
+   */
+  public static SegmentGrid create(double[] segmentCoords,
+    int[] segmentIds, double cellSize) {
+    Preconditions.checkArgument(cellSize > 0d);
+    Preconditions
+        .checkArgument(segmentCoords.length == 4 * segmentIds.length);
+
+    double minX = Double.POSITIVE_INFINITY;
+    double minY = Double.POSITIVE_INFINITY;
+    double maxX = Double.NEGATIVE_INFINITY;
+    double maxY = Double.NEGATIVE_INFINITY;
+    for (int i = 0; i < segmentCoords.length; i += 2) {
+      minX = Math.min(minX, segmentCoords[i]);
+      maxX = Math.max(maxX, segmentCoords[i]);
+      minY = Math.min(minY, segmentCoords[i + 1]);
+      maxY = Math.max(maxY, segmentCoords[i + 1]);
+    }
+    if (segmentIds.length == 0) {
+      minX = maxX = minY = maxY = 0d;
+    }
+
+    int width;
+    int height;
+    while (true) {
+      width = (int) Math.floor((maxX - minX) / cellSize) + 1;
+      height = (int) Math.floor((maxY - minY) / cellSize) + 1;
+      if ((long) width * height <= SegmentGrid.MAX_CELLS) {
+        break;
+      }
+      cellSize *= 2d;
+    }
+
+    /*
+     * Two passes: count the segments in each cell, then fill them in.
+     */
+    final int[] cellOffsets = new int[width * height + 1];
+    int[] cellSegments = null;
+    for (int pass = 0; pass < 2; pass++) {
+      final int[] next =
+          pass == 1 ? Arrays.copyOf(cellOffsets, cellOffsets.length - 1)
+              : null;
+      for (int i = 0; i < segmentIds.length; i++) {
+        final double x0 = segmentCoords[4 * i];
+        final double y0 = segmentCoords[4 * i + 1];
+        final double x1 = segmentCoords[4 * i + 2];
+        final double y1 = segmentCoords[4 * i + 3];
+        final int minCol =
+            SegmentGrid.getIndex(Math.min(x0, x1), minX, cellSize, width);
+        final int maxCol =
+            SegmentGrid.getIndex(Math.max(x0, x1), minX, cellSize, width);
+        final int minRow =
+            SegmentGrid.getIndex(Math.min(y0, y1), minY, cellSize, height);
+        final int maxRow =
+            SegmentGrid.getIndex(Math.max(y0, y1), minY, cellSize, height);
+        for (int row = minRow; row <= maxRow; row++) {
+          for (int col = minCol; col <= maxCol; col++) {
+            final int cell = row * width + col;
+            if (pass == 0) {
+              cellOffsets[cell + 1]++;
+            } else {
+              cellSegments[next[cell]++] = segmentIds[i];
+            }
+          }
+        }
+      }
+      if (pass == 0) {
+        for (int i = 0; i < cellOffsets.length - 1; i++) {
+          cellOffsets[i + 1] += cellOffsets[i];
+        }
+        cellSegments = new int[cellOffsets[cellOffsets.length - 1]];
+      }
+    }
+    return new SegmentGrid(cellSize, minX, minY, width, height,
+        IntBuffer.wrap(cellOffsets), IntBuffer.wrap(cellSegments));
+  }
+
+  /**
+   * @return the column or row containing the value, clamped to the grid
+   */
+  private static int getIndex(double value, double min,
+    double cellSize, int size) {
+    return Math.max(0,
+        Math.min(size - 1, (int) Math.floor((value - min) / cellSize)));
+  }
+
+  /**
+   * @return the distance from the point (x, y) to the segment (x0, y0), (x1,
+   *         y1)
+   */
+  public static double segmentDistance(double x, double y, double x0,
+    double y0, double x1, double y1) {
+    final double dx = x1 - x0;
+    final double dy = y1 - y0;
+    final double lengthSq = dx * dx + dy * dy;
+    double t = 0d;
+    if (lengthSq > 0d) {
+      t = ((x - x0) * dx + (y - y0) * dy) / lengthSq;
+      t = Math.max(0d, Math.min(1d, t));
+    }
+    final double px = x0 + t * dx - x;
+    final double py = y0 + t * dy - y;
+    return Math.sqrt(px * px + py * py);
+  }
+
+  protected final IntBuffer cellOffsets;
+  protected final IntBuffer cellSegments;
+  protected final double cellSize;
+  protected final int height;
+  protected final double minX;
+  protected final double minY;
+  protected final int width;
+
+  /**
+   * Wraps existing cell lists, e.g. ones read from a snapshot.
+   */
+  public SegmentGrid(double cellSize, double minX, double minY,
+    int width, int height, IntBuffer cellOffsets,
+    IntBuffer cellSegments) {
+    Preconditions.checkArgument(cellSize > 0d);
+    Preconditions.checkArgument(width > 0 && height > 0);
+    this.cellSize = cellSize;
+    this.minX = minX;
+    this.minY = minY;
+    this.width = width;
+    this.height = height;
+    this.cellOffsets = cellOffsets;
+    this.cellSegments = cellSegments;
+  }
+
+  /**
+   * @return the cell in the given column and row
+   */
+  public int getCell(int col, int row) {
+    return row * this.width + col;
+  }
+
+  /**
+   * @return the end, exclusive, of the cell's segments
+   */
+  public int getCellEnd(int cell) {
+    return this.cellOffsets.get(cell + 1);
+  }
+
+  public IntBuffer getCellOffsets() {
+    return this.cellOffsets;
+  }
+
+  public IntBuffer getCellSegments() {
+    return this.cellSegments;
+  }
+
+  public double getCellSize() {
+    return this.cellSize;
+  }
+
+  /**
+   * @return the start of the cell's segments
+   */
+  public int getCellStart(int cell) {
+    return this.cellOffsets.get(cell);
+  }
+
+  /**
+   * @return the column containing x, clamped to the grid
+   */
+  public int getColumn(double x) {
+    return SegmentGrid.getIndex(x, this.minX, this.cellSize, this.width);
+  }
+
+  public int getHeight() {
+    return this.height;
+  }
+
+  public double getMinX() {
+    return this.minX;
+  }
+
+  public double getMinY() {
+    return this.minY;
+  }
+
+  /**
+   * @return the row containing y, clamped to the grid
+   */
+  public int getRow(double y) {
+    return SegmentGrid.getIndex(y, this.minY, this.cellSize, this.height);
+  }
+
+  /**
+   * @return the id of the segment at the given position of the cell lists,
+   *         between a cell's start and end
+   */
+  public int getSegment(int i) {
+    return this.cellSegments.get(i);
+  }
+
+  public int getWidth() {
+    return this.width;
+  }
+
+}
@@ -0,0 +1,224 @@
+package org.opentrackingtools.graph;
+
+import gnu.trove.set.hash.TIntHashSet;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import com.vividsolutions.jts.geom.Coordinate;
+
+/**
+ * A {@link SegmentGrid} over individual inference graph segments, for graphs
+ * that don't keep their own. The segments' end points are kept in a flat
+ * array, so queries compute exact point-to-segment distances without touching
+ * the segment objects or their edges' geometries. <br>
+ * The index is immutable once built, so it can be shared between threads.
+ */
+public class SegmentIndex {
+
+  protected static class Neighbor implements Comparable<Neighbor> {
+
+    final double distance;
+    final int segment;
+
+    public Neighbor(int segment, double distance) {
+      this.segment = segment;
+      this.distance = distance;
+    }
+
+    /**
+     * Farthest first, so a queue of these drops its farthest neighbor.
+     */
+    @Override
+    public int compareTo(Neighbor o) {
+      final int result = Double.compare(o.distance, this.distance);
+      if (result != 0) {
+        return result;
+      }
+      return this.segment < o.segment ? 1 : (this.segment == o.segment
+          ? 0 : -1);
+    }
+  }
+
+  /*
+   * x0, y0, x1, y1 for every segment.
+   */
+  protected final double[] coords;
+
+  /*
+   * Segments are identified by their position in segments.
+   */
+  protected final SegmentGrid grid;
+
+  protected final InferenceGraphSegment[] segments;
+
+  /**
+   * @param segments
+   * @param cellSize
+   *          the starting cell size, which is increased until the grid has no
+   *          more than {@link SegmentGrid#MAX_CELLS} cells.
+   */
+  public SegmentIndex(Collection<InferenceGraphSegment> segments,
+    double cellSize) {
+    Preconditions.checkArgument(cellSize > 0d);
+    this.segments =
+        segments.toArray(new InferenceGraphSegment[segments.size()]);
+    this.coords = new double[4 * this.segments.length];
+    final int[] ids = new int[this.segments.length];
+    for (int i = 0; i < this.segments.length; i++) {
+      final InferenceGraphSegment segment = this.segments[i];
+      this.coords[4 * i] = segment.getLine().p0.x;
+      this.coords[4 * i + 1] = segment.getLine().p0.y;
+      this.coords[4 * i + 2] = segment.getLine().p1.x;
+      this.coords[4 * i + 3] = segment.getLine().p1.y;
+      ids[i] = i;
+    }
+    this.grid = SegmentGrid.create(this.coords, ids, cellSize);
+  }
+
+  public double getCellSize() {
+    return this.grid.getCellSize();
+  }
+
+  /**
+   * @return the k segments closest to the coordinate, and no further than
+   *         maxRadius from it, closest first.
+   */
+  public List<InferenceGraphSegment> getNearest(Coordinate coord, int k,
+    double maxRadius) {
+    Preconditions.checkArgument(k > 0);
+    if (this.segments.length == 0) {
+      return Collections.emptyList();
+    }
+
+    final SegmentGrid grid = this.grid;
+    final PriorityQueue<Neighbor> nearest = new PriorityQueue<Neighbor>();
+    final TIntHashSet checked = new TIntHashSet();
+    final int centerCol = grid.getColumn(coord.x);
+    final int centerRow = grid.getRow(coord.y);
+    for (int ring = 0;; ring++) {
+      final int minCol = centerCol - ring;
+      final int maxCol = centerCol + ring;
+      final int minRow = centerRow - ring;
+      final int maxRow = centerRow + ring;
+      for (int row = Math.max(0, minRow); row <= Math.min(
+          grid.getHeight() - 1, maxRow); row++) {
+        final boolean isEdgeRow = row == minRow || row == maxRow;
+        for (int col = Math.max(0, minCol); col <= Math.min(
+            grid.getWidth() - 1, maxCol); col++) {
+          /*
+           * Only the cells on this ring are new.
+           */
+          if (!isEdgeRow && col != minCol && col != maxCol) {
+            continue;
+          }
+          final int cell = grid.getCell(col, row);
+          final int end = grid.getCellEnd(cell);
+          for (int i = grid.getCellStart(cell); i < end; i++) {
+            final int s = grid.getSegment(i);
+            if (!checked.add(s)) {
+              continue;
+            }
+            final double distance = this.getSegmentDistance(coord, s);
+            if (distance > maxRadius) {
+              continue;
+            }
+            if (nearest.size() < k) {
+              nearest.add(new Neighbor(s, distance));
+            } else if (distance < nearest.peek().distance) {
+              nearest.poll();
+              nearest.add(new Neighbor(s, distance));
+            }
+          }
+        }
+      }
+
+      if (minCol <= 0 && minRow <= 0 && maxCol >= grid.getWidth() - 1
+          && maxRow >= grid.getHeight() - 1) {
+        break;
+      }
+      /*
+       * Anything in a cell outside the searched block is at least this far
+       * away.  Sides of the block that reach the grid's edge have no cells
+       * beyond them.
+       */
+      double bound = Double.POSITIVE_INFINITY;
+      if (minCol > 0) {
+        bound =
+            Math.min(bound, coord.x
+                - (grid.getMinX() + minCol * grid.getCellSize()));
+      }
+      if (maxCol < grid.getWidth() - 1) {
+        bound =
+            Math.min(bound, grid.getMinX() + (maxCol + 1)
+                * grid.getCellSize() - coord.x);
+      }
+      if (minRow > 0) {
+        bound =
+            Math.min(bound, coord.y
+                - (grid.getMinY() + minRow * grid.getCellSize()));
+      }
+      if (maxRow < grid.getHeight() - 1) {
+        bound =
+            Math.min(bound, grid.getMinY() + (maxRow + 1)
+                * grid.getCellSize() - coord.y);
+      }
+      if (bound > maxRadius
+          || (nearest.size() == k && nearest.peek().distance <= bound)) {
+        break;
+      }
+    }
+
+    final List<InferenceGraphSegment> result = Lists.newArrayList();
+    while (!nearest.isEmpty()) {
+      result.add(this.segments[nearest.poll().segment]);
+    }
+    Collections.reverse(result);
+    return result;
+  }
+
+  /**
+   * @return the segments closer than radius to the coordinate.
+   */
+  public Set<InferenceGraphSegment> getNearby(Coordinate coord,
+    double radius) {
+    final int minCol = this.grid.getColumn(coord.x - radius);
+    final int maxCol = this.grid.getColumn(coord.x + radius);
+    final int minRow = this.grid.getRow(coord.y - radius);
+    final int maxRow = this.grid.getRow(coord.y + radius);
+
+    final TIntHashSet checked = new TIntHashSet();
+    final Set<InferenceGraphSegment> result = Sets.newHashSet();
+    for (int row = minRow; row <= maxRow; row++) {
+      for (int col = minCol; col <= maxCol; col++) {
+        final int cell = this.grid.getCell(col, row);
+        final int end = this.grid.getCellEnd(cell);
+        for (int i = this.grid.getCellStart(cell); i < end; i++) {
+          final int s = this.grid.getSegment(i);
+          if (checked.add(s)
+              && this.getSegmentDistance(coord, s) < radius) {
+            result.add(this.segments[s]);
+          }
+        }
+      }
+    }
+    return result;
+  }
+
+  public int getNumSegments() {
+    return this.segments.length;
+  }
+
+  protected double getSegmentDistance(Coordinate coord, int segment) {
+    return SegmentGrid.segmentDistance(coord.x, coord.y,
+        this.coords[4 * segment], this.coords[4 * segment + 1],
+        this.coords[4 * segment + 2], this.coords[4 * segment + 3]);
+  }
+
+}
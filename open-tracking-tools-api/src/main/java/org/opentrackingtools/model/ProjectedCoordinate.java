@@ -22,6 +22,14 @@ public class ProjectedCoordinate extends Coordinate {
     this.refLatLon = refLatLon;
   }
 
+  public ProjectedCoordinate(MathTransform mathTransform, double x,
+    double y, Coordinate refLatLon) {
+    this.transform = mathTransform;
+    this.x = x;
+    this.y = y;
+    this.refLatLon = refLatLon;
+  }
+
   @JsonSerialize
   public String epsgCode() {
     final String epsgCode =
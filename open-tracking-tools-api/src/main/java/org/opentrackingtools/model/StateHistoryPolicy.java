@@ -0,0 +1,116 @@
+package org.opentrackingtools.model;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Decides how much of a particle's history is kept once it has been updated.
+ * Every state links to the state it was propagated from, and clones share
+ * that link, so without a limit each particle keeps its whole trajectory
+ * reachable. The policies are:
+ * <ul>
+ * <li>{@link Mode#UNBOUNDED}: keep every parent state. This is the default.</li>
+ * <li>{@link Mode#NONE}: drop the parent state.</li>
+ * <li>{@link Mode#FIXED_LAG}: keep the last <code>depth</code> parent states.</li>
+ * <li>{@link Mode#COMPACT}: drop the parent state, and keep the last
+ * <code>depth</code> ancestors as {@link StateHistoryRecord}s instead.</li>
+ * </ul>
+ * The filters need a state's parent while updating it, so policies are applied
+ * after the update. <br>
+ * Ancestors are shared between particles, and all the particles in a
+ * population are at the same time step. So truncating a shared ancestor in
+ * place has the same effect for every particle that refers to it.
+ */
+public class StateHistoryPolicy {
+
+  public static enum Mode {
+    COMPACT, FIXED_LAG, NONE, UNBOUNDED
+  }
+
+  public static final StateHistoryPolicy UNBOUNDED =
+      new StateHistoryPolicy(Mode.UNBOUNDED, Integer.MAX_VALUE);
+
+  public static StateHistoryPolicy compact(int depth) {
+    return new StateHistoryPolicy(Mode.COMPACT, depth);
+  }
+
+  public static StateHistoryPolicy fixedLag(int depth) {
+    return new StateHistoryPolicy(Mode.FIXED_LAG, depth);
+  }
+
+  public static StateHistoryPolicy none() {
+    return new StateHistoryPolicy(Mode.NONE, 0);
+  }
+
+  protected final int depth;
+
+  protected final Mode mode;
+
+  protected StateHistoryPolicy(Mode mode, int depth) {
+    Preconditions.checkArgument(depth >= 0);
+    Preconditions.checkArgument(mode != Mode.FIXED_LAG || depth > 0,
+        "use none() to keep no parents");
+    this.mode = Preconditions.checkNotNull(mode);
+    this.depth = depth;
+  }
+
+  /**
+   * Trims the history of a state that has just been updated.
+   */
+  public <O extends GpsObservation> void apply(
+    VehicleStateDistribution<O> state) {
+    switch (this.mode) {
+      case UNBOUNDED:
+        break;
+      case NONE:
+        state.setParentState(null);
+        break;
+      case FIXED_LAG:
+        VehicleStateDistribution<O> ancestor = state;
+        for (int i = 0; i < this.depth && ancestor != null; i++) {
+          ancestor = ancestor.getParentState();
+        }
+        if (ancestor != null) {
+          ancestor.setParentState(null);
+          /*
+           * Debug values can refer to other particles' ancestors.
+           */
+          ancestor.setTransitionStateDistribution(null);
+          ancestor.setPriorPredictiveState(null);
+        }
+        break;
+      case COMPACT:
+        final VehicleStateDistribution<O> parent =
+            state.getParentState();
+        if (parent != null) {
+          final StateHistoryRecord history =
+              this.depth > 0 ? new StateHistoryRecord(parent,
+                  parent.getHistory()) : null;
+          StateHistoryRecord record = history;
+          for (int i = 1; i < this.depth && record != null; i++) {
+            record = record.previous;
+          }
+          if (record != null) {
+            record.previous = null;
+          }
+          state.setHistory(history);
+          state.setParentState(null);
+        }
+        break;
+    }
+  }
+
+  public int getDepth() {
+    return this.depth;
+  }
+
+  public Mode getMode() {
+    return this.mode;
+  }
+
+  @Override
+  public String toString() {
+    return "StateHistoryPolicy [mode=" + this.mode + ", depth="
+        + this.depth + "]";
+  }
+
+}
@@ -0,0 +1,85 @@
+package org.opentrackingtools.model;
+
+import java.util.Date;
+
+import org.opentrackingtools.graph.InferenceGraphSegment;
+import org.opentrackingtools.paths.PathState;
+
+/**
+ * A lightweight summary of a past vehicle state: where it was, in ground
+ * coordinates, which road segment it was on, and which observation it was
+ * conditioned on. Records link to the record of the state before them, so a
+ * state's records form its compacted history. <br>
+ * Records don't refer to the states, paths or observations they summarize, so
+ * keeping them doesn't keep those alive.
+ */
+public class StateHistoryRecord {
+
+  protected final InferenceGraphSegment edge;
+  protected final double[] groundState;
+  protected StateHistoryRecord previous;
+  protected final int recordNumber;
+  protected final long timestamp;
+
+  public StateHistoryRecord(
+    VehicleStateDistribution<? extends GpsObservation> state,
+    StateHistoryRecord previous) {
+    final PathState pathState = state.getPathStateParam().getValue();
+    this.edge =
+        pathState.isOnRoad() ? pathState.getEdge()
+            .getInferenceGraphSegment() : null;
+    this.groundState = pathState.getGroundState().toArray();
+    this.recordNumber = state.getObservation().getRecordNumber();
+    this.timestamp = state.getObservation().getTimestamp().getTime();
+    this.previous = previous;
+  }
+
+  /**
+   * @return the segment the state was on, or null if it was off-road.
+   */
+  public InferenceGraphSegment getEdge() {
+    return this.edge;
+  }
+
+  /**
+   * @return the state's ground coordinates location and velocity, i.e.
+   *         {x, x velocity, y, y velocity}
+   */
+  public double[] getGroundState() {
+    return this.groundState.clone();
+  }
+
+  /**
+   * @return the number of records in this history, including this one.
+   */
+  public int getLength() {
+    int length = 0;
+    for (StateHistoryRecord record = this; record != null; record =
+        record.previous) {
+      length++;
+    }
+    return length;
+  }
+
+  public StateHistoryRecord getPrevious() {
+    return this.previous;
+  }
+
+  public int getRecordNumber() {
+    return this.recordNumber;
+  }
+
+  public Date getTimestamp() {
+    return new Date(this.timestamp);
+  }
+
+  @Override
+  public String toString() {
+    final StringBuilder builder = new StringBuilder();
+    builder.append("StateHistoryRecord [recordNumber=")
+        .append(this.recordNumber).append(", edge=")
+        .append(this.edge).append("]");
+    return builder.toString();
+  }
+
+}
@@ -7,7 +7,6 @@ import gov.sandia.cognition.math.matrix.VectorFactory;
 import gov.sandia.cognition.statistics.DistributionWithMean;
 import gov.sandia.cognition.statistics.distribution.MultivariateGaussian;
 import gov.sandia.cognition.util.AbstractCloneableSerializable;
-import gov.sandia.cognition.util.ObjectUtil;
 
 import java.util.Collections;
 import java.util.Random;
@@ -423,6 +422,12 @@ public class VehicleStateDistribution<Observation extends GpsObservation>
   protected SimpleBayesianParameter<Matrix, MultivariateGaussian, DistributionWithMean<Matrix>> onRoadModelCovarianceParam;
   protected VehicleStateDistribution<Observation> parentState = null;
 
+  /*
+   * Compacted ancestors, kept instead of parent states by
+   * StateHistoryPolicy.Mode.COMPACT.
+   */
+  protected StateHistoryRecord history = null;
+
   protected double pathStateDistLogLikelihood;
 
   /*-
@@ -470,20 +475,20 @@ public class VehicleStateDistribution<Observation extends GpsObservation>
     this.graph = other.graph;
     this.observation = other.observation;
     this.parentState = other.parentState;
+    this.history = other.history;
     this.motionStateEstimatorPredictor =
         other.motionStateEstimatorPredictor;
 
-    this.motionStateParam =
-        ObjectUtil.cloneSmart(other.motionStateParam);
-    this.pathStateParam = ObjectUtil.cloneSmart(other.pathStateParam);
-    this.observationCovarianceParam =
-        ObjectUtil.cloneSmart(other.observationCovarianceParam);
-    this.onRoadModelCovarianceParam =
-        ObjectUtil.cloneSmart(other.onRoadModelCovarianceParam);
+    /*
+     * Parameters are shared, see clone().
+     */
+    this.motionStateParam = other.motionStateParam;
+    this.pathStateParam = other.pathStateParam;
+    this.observationCovarianceParam = other.observationCovarianceParam;
+    this.onRoadModelCovarianceParam = other.onRoadModelCovarianceParam;
     this.offRoadModelCovarianceParam =
-        ObjectUtil.cloneSmart(other.offRoadModelCovarianceParam);
-    this.edgeTransitionParam =
-        ObjectUtil.cloneSmart(other.edgeTransitionParam);
+        other.offRoadModelCovarianceParam;
+    this.edgeTransitionParam = other.edgeTransitionParam;
     this.edgeTransitionLogLikelihood =
         other.edgeTransitionLogLikelihood;
     this.pathStateDistLogLikelihood =
@@ -491,6 +496,12 @@ public class VehicleStateDistribution<Observation extends GpsObservation>
     this.obsLogLikelihood = other.obsLogLikelihood;
   }
 
+  /**
+   * Copies this state. The parameters aren't copied: clones share them, so
+   * that a child state only allocates the parameters it changes. For that
+   * reason a parameter must not be modified once it's set on a state; set a
+   * new one instead.
+   */
   @Override
   public VehicleStateDistribution<Observation> clone() {
     final VehicleStateDistribution<Observation> clone =
@@ -498,20 +509,17 @@ public class VehicleStateDistribution<Observation extends GpsObservation>
     clone.graph = this.graph;
     clone.observation = this.observation;
     clone.parentState = this.parentState;
+    clone.history = this.history;
     clone.motionStateEstimatorPredictor =
         this.motionStateEstimatorPredictor;
 
-    clone.motionStateParam =
-        ObjectUtil.cloneSmart(this.motionStateParam);
-    clone.pathStateParam = ObjectUtil.cloneSmart(this.pathStateParam);
-    clone.observationCovarianceParam =
-        ObjectUtil.cloneSmart(this.observationCovarianceParam);
-    clone.onRoadModelCovarianceParam =
-        ObjectUtil.cloneSmart(this.onRoadModelCovarianceParam);
+    clone.motionStateParam = this.motionStateParam;
+    clone.pathStateParam = this.pathStateParam;
+    clone.observationCovarianceParam = this.observationCovarianceParam;
+    clone.onRoadModelCovarianceParam = this.onRoadModelCovarianceParam;
     clone.offRoadModelCovarianceParam =
-        ObjectUtil.cloneSmart(this.offRoadModelCovarianceParam);
-    clone.edgeTransitionParam =
-        ObjectUtil.cloneSmart(this.edgeTransitionParam);
+        this.offRoadModelCovarianceParam;
+    clone.edgeTransitionParam = this.edgeTransitionParam;
     clone.edgeTransitionLogLikelihood =
         this.edgeTransitionLogLikelihood;
     clone.pathStateDistLogLikelihood =
@@ -563,6 +571,14 @@ public class VehicleStateDistribution<Observation extends GpsObservation>
     return this.graph;
   }
 
+  /**
+   * @return the compacted history of this state's ancestors, most recent
+   *         first, or null if there isn't one.
+   */
+  public StateHistoryRecord getHistory() {
+    return this.history;
+  }
+
   /**
    * Returns ground-coordinate mean location
    * 
@@ -662,6 +678,10 @@ public class VehicleStateDistribution<Observation extends GpsObservation>
     this.graph = graph;
   }
 
+  public void setHistory(StateHistoryRecord history) {
+    this.history = history;
+  }
+
   public void setMotionStateEstimatorPredictor(
     MotionStateEstimatorPredictor motionStateEstimatorPredictor) {
     this.motionStateEstimatorPredictor =
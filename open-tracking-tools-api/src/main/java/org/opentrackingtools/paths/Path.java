@@ -1,7 +1,9 @@
 package org.opentrackingtools.paths;
 
+import gnu.trove.list.array.TIntArrayList;
 import gov.sandia.cognition.util.AbstractCloneableSerializable;
 
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 
@@ -10,8 +12,10 @@ import org.geotools.geometry.jts.JTSFactoryFinder;
 import org.opentrackingtools.estimators.MotionStateEstimatorPredictor;
 
 import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
+import com.vividsolutions.jts.geom.Coordinate;
 import com.vividsolutions.jts.geom.CoordinateArrays;
 import com.vividsolutions.jts.geom.CoordinateList;
 import com.vividsolutions.jts.geom.Geometry;
@@ -35,14 +39,35 @@ public class Path extends AbstractCloneableSerializable implements
 
   private static final long serialVersionUID = -113041668509555507L;
 
-  public List<String> edgeIds = null;
+  /*
+   * The ids of the inference graph edges this path crosses, in order.  Equal
+   * paths have equal ids, so these are compared before the path edges.
+   */
+  public int[] edgeIds = null;
+
+  /*
+   * For each path edge, the length of the path's geometry up to its end, and
+   * the number of edge ids up to it.  Prefixes of a path share these, along
+   * with its edges, so they're never modified after construction.
+   */
+  protected double[] edgeEndDistances = null;
+  protected int[] edgeIdCounts = null;
 
   protected List<? extends PathEdge> edges = null;
 
-  protected Geometry geometry = null;
+  /*
+   * Created on the first call to getGeometry.
+   */
+  protected volatile Geometry geometry = null;
 
   protected Boolean isBackward = null;
 
+  /*
+   * True when this path was made from a single edge, whose line is used as
+   * the geometry, reversed when the edge is backward.
+   */
+  protected boolean isSingleEdgePath = false;
+
   protected Double totalPathDistance = null;
 
   protected Path() {
@@ -59,38 +84,40 @@ public class Path extends AbstractCloneableSerializable implements
     Preconditions.checkState(Iterables.getFirst(edges, null)
         .getDistToStartOfEdge() == 0d);
 
-    this.edges = edges;
+    this.edges = ImmutableList.copyOf(edges);
     this.isBackward = isBackward;
-    this.edgeIds = Lists.newArrayList();
+    this.initializeDistances();
 
-    PathEdge lastEdge = null;
-    final CoordinateList coords = new CoordinateList();
-    for (final PathEdge edge : edges) {
-
-      if (lastEdge != null && !edge.equals(lastEdge)) {
-        Preconditions.checkArgument(lastEdge == null
-            || lastEdge.line.p1.equals(edge.line.p0));
-
-      }
+    final double direction = isBackward ? -1d : 1d;
+    this.totalPathDistance =
+        direction * this.edgeEndDistances[this.edges.size() - 1];
+  }
 
-      final LineSegment geom = edge.getLine();
-      if (geom.getLength() > 1e-4) {
-        coords.add(geom.p0, false);
-        coords.add(geom.p1, false);
-        if (!edge.equals(lastEdge)) {
-          this.edgeIds.add(edge.getInferenceGraphSegment().getEdgeId());
-        }
-      }
+  /**
+   * Produces the path made of the first numEdges edges of the given path,
+   * sharing its edges and distances.
+   * 
+   * @param path
+   * @param numEdges
+   */
+  protected Path(Path path, int numEdges) {
+    Preconditions.checkArgument(!path.edges.get(0).isNullEdge());
+    Preconditions.checkArgument(numEdges > 0
+        && numEdges <= path.edges.size());
 
-      lastEdge = edge;
-    }
+    this.edges = path.edges.subList(0, numEdges);
+    this.isBackward = path.isBackward;
+    this.edgeEndDistances = path.edgeEndDistances;
+    this.edgeIdCounts = path.edgeIdCounts;
 
-    this.geometry =
-        JTSFactoryFinder.getGeometryFactory().createLineString(
-            coords.toCoordinateArray());
+    final int numEdgeIds = this.edgeIdCounts[numEdges - 1];
+    this.edgeIds =
+        numEdgeIds == path.edgeIds.length ? path.edgeIds : Arrays
+            .copyOf(path.edgeIds, numEdgeIds);
 
-    final double direction = isBackward ? -1d : 1d;
-    this.totalPathDistance = direction * this.geometry.getLength();
+    final double direction = this.isBackward ? -1d : 1d;
+    this.totalPathDistance =
+        direction * this.edgeEndDistances[numEdges - 1];
   }
 
   /**
@@ -103,19 +130,12 @@ public class Path extends AbstractCloneableSerializable implements
     Preconditions.checkArgument(edge.getDistToStartOfEdge() == null
         || edge.getDistToStartOfEdge() == 0d);
     this.isBackward = edge.isBackward();
-    this.edges = Collections.singletonList(edge);
+    this.isSingleEdgePath = true;
+    this.edges = ImmutableList.of(edge);
+    this.initializeDistances();
     this.totalPathDistance =
         (this.isBackward == Boolean.TRUE ? -1d : 1d)
             * edge.getLength();
-    this.edgeIds =
-        Lists.newArrayList(edge.getInferenceGraphSegment().getEdgeId());
-    this.geometry =
-        edge.getLine().toGeometry(
-            JTSFactoryFinder.getGeometryFactory());
-
-    if (this.isBackward == Boolean.TRUE) {
-      this.geometry = this.geometry.reverse();
-    }
   }
 
   public double clampToPath(final double distance) {
@@ -134,6 +154,26 @@ public class Path extends AbstractCloneableSerializable implements
     return comparator.toComparison();
   }
 
+  protected Geometry createGeometry() {
+    if (this.isSingleEdgePath) {
+      final Geometry line =
+          this.edges.get(0).getLine()
+              .toGeometry(JTSFactoryFinder.getGeometryFactory());
+      return this.isBackward == Boolean.TRUE ? line.reverse() : line;
+    }
+
+    final CoordinateList coords = new CoordinateList();
+    for (final PathEdge edge : this.edges) {
+      final LineSegment geom = edge.getLine();
+      if (geom.getLength() > 1e-4) {
+        coords.add(geom.p0, false);
+        coords.add(geom.p1, false);
+      }
+    }
+    return JTSFactoryFinder.getGeometryFactory().createLineString(
+        coords.toCoordinateArray());
+  }
+
   @Override
   public boolean equals(Object obj) {
     if (this == obj) {
@@ -146,6 +186,9 @@ public class Path extends AbstractCloneableSerializable implements
       return false;
     }
     final Path other = (Path) obj;
+    if (!Arrays.equals(this.edgeIds, other.edgeIds)) {
+      return false;
+    }
     if (this.edges == null) {
       if (other.edges != null) {
         return false;
@@ -176,12 +219,17 @@ public class Path extends AbstractCloneableSerializable implements
     return null;
   }
 
-  public List<String> getEdgeIds() {
+  public int[] getEdgeIds() {
     return this.edgeIds;
   }
 
   public Geometry getGeometry() {
-    return this.geometry;
+    Geometry result = this.geometry;
+    if (result == null && this.totalPathDistance != null) {
+      result = this.createGeometry();
+      this.geometry = result;
+    }
+    return result;
   }
 
   public List<? extends PathEdge> getPathEdges() {
@@ -206,34 +254,44 @@ public class Path extends AbstractCloneableSerializable implements
     return newPath;
   }
 
+  /**
+   * @return the prefix of this path that ends with the edge containing the
+   *         distance, or the whole path when no edge does. It shares this
+   *         path's edges, so it takes constant time apart from copying edge
+   *         ids.
+   */
   public Path getPathTo(double distance) {
 
-    final List<PathEdge> newEdges = Lists.newArrayList();
     final double direction = this.isBackward ? -1d : 1d;
+    int numEdges = 0;
     for (final PathEdge edge : this.getPathEdges()) {
-      newEdges.add(edge);
+      numEdges++;
       if (direction * distance <= Math.abs(edge.distToStartOfEdge)
           + edge.getLength()) {
         break;
       }
     }
 
-    final Path newPath = new Path(newEdges, this.isBackward);
+    final Path newPath = new Path(this, numEdges);
 
     return newPath;
   }
 
+  /**
+   * @return the prefix of this path that ends with the given edge, or the
+   *         whole path when it doesn't contain the edge.
+   */
   public Path getPathTo(PathEdge edge) {
 
-    final List<PathEdge> newEdges = Lists.newArrayList();
+    int numEdges = 0;
     for (final PathEdge edge1 : this.getPathEdges()) {
-      newEdges.add(edge1);
+      numEdges++;
       if (edge1.equals(edge)) {
         break;
       }
     }
 
-    final Path newPath = new Path(newEdges, this.isBackward);
+    final Path newPath = new Path(this, numEdges);
 
     return newPath;
   }
@@ -246,12 +304,64 @@ public class Path extends AbstractCloneableSerializable implements
   public int hashCode() {
     final int prime = 31;
     int result = 1;
+    result = prime * result + Arrays.hashCode(this.edgeIds);
     result =
-        prime * result
-            + ((this.edges == null) ? 0 : this.edges.hashCode());
+        prime * result + ((this.edges == null) ? 0 : this.edges.size());
     return result;
   }
 
+  /**
+   * Computes the edge ids and the distance to the end of each edge. The
+   * distances are those along the geometry that {@link #createGeometry()}
+   * builds, summed in the same order, so that they match its length exactly.
+   */
+  protected void initializeDistances() {
+    final int numEdges = this.edges.size();
+    final TIntArrayList edgeIds = new TIntArrayList();
+    this.edgeIdCounts = new int[numEdges];
+    this.edgeEndDistances = new double[numEdges];
+
+    PathEdge lastEdge = null;
+    Coordinate lastCoord = null;
+    double distance = 0d;
+    for (int i = 0; i < numEdges; i++) {
+      final PathEdge edge = this.edges.get(i);
+
+      if (lastEdge != null && !edge.equals(lastEdge)) {
+        Preconditions.checkArgument(lastEdge == null
+            || lastEdge.line.p1.equals(edge.line.p0));
+
+      }
+
+      /*
+       * The ids depend only on the edges, which keeps them consistent with
+       * equals.
+       */
+      if (!edge.equals(lastEdge)) {
+        edgeIds.add(edge.getInferenceGraphSegment().getEdgeId());
+      }
+
+      final LineSegment geom = edge.getLine();
+      if (geom.getLength() > 1e-4) {
+        if (lastCoord == null) {
+          lastCoord = geom.p0;
+        } else if (!lastCoord.equals2D(geom.p0)) {
+          distance += geom.p0.distance(lastCoord);
+          lastCoord = geom.p0;
+        }
+        if (!lastCoord.equals2D(geom.p1)) {
+          distance += geom.p1.distance(lastCoord);
+          lastCoord = geom.p1;
+        }
+      }
+
+      this.edgeIdCounts[i] = edgeIds.size();
+      this.edgeEndDistances[i] = distance;
+      lastEdge = edge;
+    }
+    this.edgeIds = edgeIds.toArray();
+  }
+
   public Boolean isBackward() {
     return this.isBackward;
   }
@@ -283,7 +393,8 @@ public class Path extends AbstractCloneableSerializable implements
     if (this.isNullPath()) {
       return "Path [null path]";
     } else {
-      return "Path [edges=" + this.edgeIds + ", totalPathDistance="
+      return "Path [edges=" + Arrays.toString(this.edgeIds)
+          + ", totalPathDistance="
           + this.totalPathDistance + "]";
     }
   }
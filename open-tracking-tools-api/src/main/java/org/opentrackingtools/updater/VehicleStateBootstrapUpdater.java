@@ -15,19 +15,23 @@ import java.util.Random;
 import org.opentrackingtools.VehicleStateInitialParameters;
 import org.opentrackingtools.distributions.CountedDataDistribution;
 import org.opentrackingtools.distributions.OnOffEdgeTransDistribution;
+import org.opentrackingtools.distributions.OnOffEdgeTransPriorDistribution;
 import org.opentrackingtools.distributions.TruncatedRoadGaussian;
 import org.opentrackingtools.estimators.MotionStateEstimatorPredictor;
 import org.opentrackingtools.graph.InferenceGraph;
 import org.opentrackingtools.graph.InferenceGraphEdge;
 import org.opentrackingtools.graph.InferenceGraphSegment;
 import org.opentrackingtools.model.GpsObservation;
+import org.opentrackingtools.model.SimpleBayesianParameter;
 import org.opentrackingtools.model.VehicleStateDistribution;
 import org.opentrackingtools.model.VehicleStateDistribution.VehicleStateDistributionFactory;
 import org.opentrackingtools.paths.Path;
 import org.opentrackingtools.paths.PathEdge;
 import org.opentrackingtools.paths.PathState;
 import org.opentrackingtools.util.PathUtils;
+import org.opentrackingtools.util.StatisticsUtil;
 import org.opentrackingtools.util.SvdMatrix;
+import org.opentrackingtools.util.model.TransitionProbMatrix;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -119,11 +123,12 @@ public class VehicleStateBootstrapUpdater<O extends GpsObservation>
   @Override
   public double computeLogLikelihood(
     VehicleStateDistribution<O> particle, O observation) {
+    final MultivariateGaussian obsDist =
+        particle.getMotionStateParam().getConditionalDistribution();
     double logLikelihood = 0d;
     logLikelihood +=
-        particle.getMotionStateParam().getConditionalDistribution()
-            .getProbabilityFunction()
-            .logEvaluate(observation.getProjectedPoint());
+        StatisticsUtil.logEvaluateNormal(observation.getProjectedPoint(),
+            obsDist.getMean(), obsDist.getCovariance());
     return logLikelihood;
   }
 
@@ -244,6 +249,23 @@ public class VehicleStateBootstrapUpdater<O extends GpsObservation>
     return this.sampledTransitionError;
   }
 
+  /**
+   * Installs a copy of the state's motion state prior with the given mean.
+   * The prior can be shared with the state this one was cloned from, so it
+   * isn't changed in place.
+   */
+  protected void setMotionStatePriorMean(
+    VehicleStateDistribution<O> state, Vector mean) {
+    final SimpleBayesianParameter<Vector, MultivariateGaussian, MultivariateGaussian> motionStateParam =
+        state.getMotionStateParam();
+    final MultivariateGaussian prior =
+        motionStateParam.getParameterPrior().clone();
+    prior.setMean(mean);
+    state.setMotionStateParam(SimpleBayesianParameter.create(
+        motionStateParam.getValue(),
+        motionStateParam.getConditionalDistribution(), prior));
+  }
+
   public void setRandom(Random rng) {
     this.random = rng;
   }
@@ -288,8 +310,8 @@ public class VehicleStateBootstrapUpdater<O extends GpsObservation>
     predictedMotionState.setMean(noisyPredictedState);
     this.sampledTransitionError =
         predictedMotionState.getMean().minus(predictedMean);
-    updatedState.getMotionStateParam().getParameterPrior()
-        .setMean(predictedMotionState.getMean());
+    this.setMotionStatePriorMean(updatedState,
+        predictedMotionState.getMean());
     final PathEdge startEdge =
         updatedState.getPathStateParam().getValue().getEdge();
 
@@ -300,17 +322,28 @@ public class VehicleStateBootstrapUpdater<O extends GpsObservation>
         .getInputDimensionality() == 4
         || predictedMotionState.getMean().getElement(0) >= 0d);
 
-    final OnOffEdgeTransDistribution edgeTransDistribution =
-        updatedState.getEdgeTransitionParam()
-            .getConditionalDistribution();
+    final SimpleBayesianParameter<TransitionProbMatrix, OnOffEdgeTransDistribution, OnOffEdgeTransPriorDistribution> edgeTransitionParam =
+        updatedState.getEdgeTransitionParam();
+    final OnOffEdgeTransDistribution edgeTransDistribution;
 
     /*
      * Need this so that the sampler can tell which possible 
      * on-road edges exist at the new projected location.
+     * The conditional can be shared with the previous state,
+     * so we install an updated copy.
      */
     if (startEdge.isNullEdge()) {
+      edgeTransDistribution =
+          edgeTransitionParam.getConditionalDistribution().clone();
       edgeTransDistribution.setMotionState(predictedMotionState
           .getMean());
+      updatedState.setEdgeTransitionParam(SimpleBayesianParameter
+          .create(edgeTransitionParam.getValue(),
+              edgeTransDistribution,
+              edgeTransitionParam.getParameterPrior()));
+    } else {
+      edgeTransDistribution =
+          edgeTransitionParam.getConditionalDistribution();
     }
 
     /*
@@ -342,8 +375,8 @@ public class VehicleStateBootstrapUpdater<O extends GpsObservation>
             motionStatePredictor.addStateTransitionError(
                 offRoadPredictedMean, this.random);
         predictedMotionState.setMean(offRoadNoisyPredictedState);
-        updatedState.getMotionStateParam().getParameterPrior()
-            .setMean(predictedMotionState.getMean());
+        this.setMotionStatePriorMean(updatedState,
+            predictedMotionState.getMean());
         this.sampledTransitionError =
             offRoadNoisyPredictedState.minus(offRoadPredictedMean);
       }
@@ -405,21 +438,22 @@ public class VehicleStateBootstrapUpdater<O extends GpsObservation>
     final MultivariateGaussian obsDist =
         motionStatePredictor.getObservationDistribution(
             predictedMotionState, newPathState.getEdge());
-    updatedState.getMotionStateParam().setValue(obsDist.getMean());
-    updatedState.getMotionStateParam().setConditionalDistribution(
-        obsDist);
     /*
      * Important: we need the motion state prior to be relative to the edge it's
      * on, otherwise, distance along path will add up indefinitely. 
      */
-    updatedState.getMotionStateParam().setParameterPrior(
-        new TruncatedRoadGaussian(newPathState.getEdgeState(),
-            newPathState.isOnRoad() ? motionStatePredictor
-                .getRoadFilter().getModelCovariance()
-                : motionStatePredictor.getGroundFilter()
-                    .getModelCovariance()));
-
-    updatedState.getPathStateParam().setValue(newPathState);
+    updatedState.setMotionStateParam(SimpleBayesianParameter
+        .<Vector, MultivariateGaussian, MultivariateGaussian> create(
+            obsDist.getMean(), obsDist, new TruncatedRoadGaussian(
+                newPathState.getEdgeState(), newPathState.isOnRoad()
+                    ? motionStatePredictor.getRoadFilter()
+                        .getModelCovariance() : motionStatePredictor
+                        .getGroundFilter().getModelCovariance())));
+
+    updatedState.setPathStateParam(SimpleBayesianParameter.create(
+        newPathState, updatedState.getPathStateParam()
+            .getConditionalDistribution(), updatedState
+            .getPathStateParam().getParameterPrior()));
     updatedState.setParentState(previousState);
 
     return updatedState;
@@ -116,11 +116,12 @@ public class VehicleStatePLPathSamplingUpdater<O extends GpsObservation, G exten
   @Override
   public double computeLogLikelihood(
     VehicleStateDistribution<O> particle, O observation) {
+    final MultivariateGaussian obsDist =
+        particle.getMotionStateParam().getConditionalDistribution();
     double logLikelihood = 0d;
     logLikelihood +=
-        particle.getMotionStateParam().getConditionalDistribution()
-            .getProbabilityFunction()
-            .logEvaluate(observation.getProjectedPoint());
+        StatisticsUtil.logEvaluateNormal(observation.getProjectedPoint(),
+            obsDist.getMean(), obsDist.getCovariance());
     return logLikelihood;
   }
 
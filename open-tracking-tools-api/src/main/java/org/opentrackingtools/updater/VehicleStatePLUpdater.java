@@ -26,6 +26,8 @@ import org.opentrackingtools.model.VehicleStateDistribution.VehicleStateDistribu
 import org.opentrackingtools.paths.Path;
 import org.opentrackingtools.paths.PathEdge;
 import org.opentrackingtools.util.PathUtils;
+import org.opentrackingtools.util.StatisticsUtil;
+import org.opentrackingtools.util.metrics.Metrics;
 
 import com.beust.jcommander.internal.Lists;
 import com.google.common.base.Preconditions;
@@ -80,11 +82,12 @@ public class VehicleStatePLUpdater<O extends GpsObservation, G extends Inference
   @Override
   public double computeLogLikelihood(
     VehicleStateDistribution<O> particle, O observation) {
+    final MultivariateGaussian obsDist =
+        particle.getMotionStateParam().getConditionalDistribution();
     double logLikelihood = 0d;
     logLikelihood +=
-        particle.getMotionStateParam().getConditionalDistribution()
-            .getProbabilityFunction()
-            .logEvaluate(observation.getProjectedPoint());
+        StatisticsUtil.logEvaluateNormal(observation.getProjectedPoint(),
+            obsDist.getMean(), obsDist.getCovariance());
     return logLikelihood;
   }
 
@@ -215,24 +218,42 @@ public class VehicleStatePLUpdater<O extends GpsObservation, G extends Inference
   @Override
   public VehicleStateDistribution<O> update(
     VehicleStateDistribution<O> state) {
+    return this.update(state, this.random);
+  }
+
+  /**
+   * Same as {@link #update(VehicleStateDistribution)}, but any sampling done
+   * for this state uses the given random number generator instead of the
+   * updater's. This lets callers give each particle its own generator.
+   * 
+   * @param state
+   * @param rng
+   * @return
+   */
+  public VehicleStateDistribution<O> update(
+    VehicleStateDistribution<O> state, Random rng) {
     final VehicleStateDistribution<O> predictedState = state.clone();
 
     /*
      * Predict/project the motion state forward.
      */
     final MotionStateEstimatorPredictor motionStateEstimatorPredictor =
-        new MotionStateEstimatorPredictor(state, this.random,
+        new MotionStateEstimatorPredictor(state, rng,
             this.parameters.getInitialObsFreq());
 
     predictedState
         .setMotionStateEstimatorPredictor(motionStateEstimatorPredictor);
 
+    final long pathSearchStart = Metrics.startTimer();
     final Collection<? extends Path> paths =
         this.inferenceGraph.getPaths(predictedState,
             predictedState.getObservation());
+    Metrics.stopTimer(Metrics.PATH_SEARCH_TIME, pathSearchStart);
+    Metrics.record(Metrics.PATHS_PER_PARTICLE, paths.size());
 
     Preconditions.checkState(paths.contains(Path.nullPath));
 
+    final long predictionStart = Metrics.startTimer();
     final List<PathStateDistribution> distributions =
         Lists.newArrayList();
     int numberOfNonZeroPaths = 0;
@@ -352,6 +373,7 @@ public class VehicleStatePLUpdater<O extends GpsObservation, G extends Inference
         state.getPathStateParam().getParameterPrior().getPathState(),
         predictedPathStateDist, state.getPathStateParam()
             .getParameterPrior()));
+    Metrics.stopTimer(Metrics.PREDICTION_TIME, predictionStart);
 
     return predictedState;
   }
@@ -0,0 +1,364 @@
+package org.opentrackingtools.util;
+
+import gov.sandia.cognition.math.matrix.Matrix;
+import gov.sandia.cognition.math.matrix.Vector;
+import gov.sandia.cognition.statistics.distribution.MultivariateGaussian;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Allocation-free Gaussian and Kalman routines for the only state and
+ * observation sizes the motion models use: 1, 2 and 4 dimensions. <br>
+ * Matrices are row-major <code>double</code> arrays, e.g.
+ * <code>a[i * dim + j]</code>, and outputs are written into arrays supplied by
+ * the caller. Outputs must not share storage with the inputs. Callers that
+ * copy matrices in from the Foundry types can use a {@link Workspace} for
+ * those arrays, so that nothing is allocated per call. <br>
+ * The general MTJ routines (LU, SVD, EVD) are still the fallback for other
+ * sizes, and for covariances that aren't positive definite; the methods here
+ * report those cases instead of throwing.
+ */
+public class GaussianKernels {
+
+  /**
+   * Scratch arrays big enough for any supported state and observation size. A
+   * workspace must only be used by one thread at a time.
+   */
+  public static class Workspace {
+
+    public final double[] cov = new double[16];
+    public final double[] h = new double[8];
+    public final double[] l = new double[16];
+    public final double[] mean = new double[4];
+    public final double[] out = new double[4];
+    public final double[] r = new double[4];
+    public final double[] x = new double[4];
+    public final double[] z = new double[2];
+
+  }
+
+  private static final ThreadLocal<Workspace> workspaces =
+      new ThreadLocal<Workspace>() {
+        @Override
+        protected Workspace initialValue() {
+          return new Workspace();
+        }
+      };
+
+  /**
+   * Computes the lower-triangular <code>l</code> s.t.
+   * <code>l * l^T = a</code>.
+   *
+   * @return false if <code>a</code> isn't positive definite, in which case
+   *         <code>l</code> is left in an unspecified state.
+   */
+  public static boolean cholesky(double[] a, int dim, double[] l) {
+    switch (dim) {
+      case 1:
+        if (!(a[0] > 0d)) {
+          return false;
+        }
+        l[0] = Math.sqrt(a[0]);
+        return true;
+      case 2: {
+        if (!(a[0] > 0d)) {
+          return false;
+        }
+        final double l00 = Math.sqrt(a[0]);
+        final double l10 = a[2] / l00;
+        final double d1 = a[3] - l10 * l10;
+        if (!(d1 > 0d)) {
+          return false;
+        }
+        l[0] = l00;
+        l[1] = 0d;
+        l[2] = l10;
+        l[3] = Math.sqrt(d1);
+        return true;
+      }
+      case 4: {
+        if (!(a[0] > 0d)) {
+          return false;
+        }
+        final double l00 = Math.sqrt(a[0]);
+        final double l10 = a[4] / l00;
+        final double l20 = a[8] / l00;
+        final double l30 = a[12] / l00;
+
+        final double d1 = a[5] - l10 * l10;
+        if (!(d1 > 0d)) {
+          return false;
+        }
+        final double l11 = Math.sqrt(d1);
+        final double l21 = (a[9] - l20 * l10) / l11;
+        final double l31 = (a[13] - l30 * l10) / l11;
+
+        final double d2 = a[10] - l20 * l20 - l21 * l21;
+        if (!(d2 > 0d)) {
+          return false;
+        }
+        final double l22 = Math.sqrt(d2);
+        final double l32 = (a[14] - l30 * l20 - l31 * l21) / l22;
+
+        final double d3 = a[15] - l30 * l30 - l31 * l31 - l32 * l32;
+        if (!(d3 > 0d)) {
+          return false;
+        }
+
+        l[0] = l00;
+        l[1] = 0d;
+        l[2] = 0d;
+        l[3] = 0d;
+        l[4] = l10;
+        l[5] = l11;
+        l[6] = 0d;
+        l[7] = 0d;
+        l[8] = l20;
+        l[9] = l21;
+        l[10] = l22;
+        l[11] = 0d;
+        l[12] = l30;
+        l[13] = l31;
+        l[14] = l32;
+        l[15] = Math.sqrt(d3);
+        return true;
+      }
+      default:
+        throw new IllegalArgumentException("unsupported dimension "
+            + dim);
+    }
+  }
+
+  /**
+   * Copies the matrix, row-major, into <code>out</code>.
+   */
+  public static void copy(Matrix matrix, double[] out) {
+    final int numRows = matrix.getNumRows();
+    final int numColumns = matrix.getNumColumns();
+    for (int i = 0; i < numRows; i++) {
+      for (int j = 0; j < numColumns; j++) {
+        out[i * numColumns + j] = matrix.getElement(i, j);
+      }
+    }
+  }
+
+  /**
+   * Copies the vector into <code>out</code>.
+   */
+  public static void copy(Vector vector, double[] out) {
+    final int dim = vector.getDimensionality();
+    for (int i = 0; i < dim; i++) {
+      out[i] = vector.getElement(i);
+    }
+  }
+
+  /**
+   * @return the current thread's workspace, for callers that don't keep their
+   *         own.
+   */
+  public static Workspace getWorkspace() {
+    return GaussianKernels.workspaces.get();
+  }
+
+  public static boolean isSupported(int dim) {
+    return dim == 1 || dim == 2 || dim == 4;
+  }
+
+  /**
+   * Evaluates the log density of a normal distribution at <code>x</code>,
+   * using a Cholesky factorization of the covariance.
+   *
+   * @return the log density, or {@link Double#NaN} if the covariance isn't
+   *         positive definite.
+   */
+  public static double logEvaluateNormal(double[] x, double[] mean,
+    double[] cov, int dim) {
+    double zSquared;
+    double logDet;
+    switch (dim) {
+      case 1: {
+        if (!(cov[0] > 0d)) {
+          return Double.NaN;
+        }
+        final double d0 = x[0] - mean[0];
+        zSquared = d0 * d0 / cov[0];
+        logDet = Math.log(cov[0]);
+        break;
+      }
+      case 2: {
+        if (!(cov[0] > 0d)) {
+          return Double.NaN;
+        }
+        final double l00 = Math.sqrt(cov[0]);
+        final double l10 = cov[2] / l00;
+        final double d1 = cov[3] - l10 * l10;
+        if (!(d1 > 0d)) {
+          return Double.NaN;
+        }
+        final double l11 = Math.sqrt(d1);
+
+        /*
+         * Forward substitution for l * y = x - mean.
+         */
+        final double y0 = (x[0] - mean[0]) / l00;
+        final double y1 = (x[1] - mean[1] - l10 * y0) / l11;
+        zSquared = y0 * y0 + y1 * y1;
+        logDet = 2d * Math.log(l00 * l11);
+        break;
+      }
+      case 4: {
+        if (!(cov[0] > 0d)) {
+          return Double.NaN;
+        }
+        final double l00 = Math.sqrt(cov[0]);
+        final double l10 = cov[4] / l00;
+        final double l20 = cov[8] / l00;
+        final double l30 = cov[12] / l00;
+
+        final double d1 = cov[5] - l10 * l10;
+        if (!(d1 > 0d)) {
+          return Double.NaN;
+        }
+        final double l11 = Math.sqrt(d1);
+        final double l21 = (cov[9] - l20 * l10) / l11;
+        final double l31 = (cov[13] - l30 * l10) / l11;
+
+        final double d2 = cov[10] - l20 * l20 - l21 * l21;
+        if (!(d2 > 0d)) {
+          return Double.NaN;
+        }
+        final double l22 = Math.sqrt(d2);
+        final double l32 = (cov[14] - l30 * l20 - l31 * l21) / l22;
+
+        final double d3 = cov[15] - l30 * l30 - l31 * l31 - l32 * l32;
+        if (!(d3 > 0d)) {
+          return Double.NaN;
+        }
+        final double l33 = Math.sqrt(d3);
+
+        final double y0 = (x[0] - mean[0]) / l00;
+        final double y1 = (x[1] - mean[1] - l10 * y0) / l11;
+        final double y2 = (x[2] - mean[2] - l20 * y0 - l21 * y1) / l22;
+        final double y3 =
+            (x[3] - mean[3] - l30 * y0 - l31 * y1 - l32 * y2) / l33;
+        zSquared = y0 * y0 + y1 * y1 + y2 * y2 + y3 * y3;
+        logDet = 2d * Math.log(l00 * l11 * l22 * l33);
+        break;
+      }
+      default:
+        throw new IllegalArgumentException("unsupported dimension "
+            + dim);
+    }
+    return -0.5d * (dim * MultivariateGaussian.LOG_TWO_PI + logDet + zSquared);
+  }
+
+  /**
+   * Computes the Kalman measurement update of a state with the given mean and
+   * covariance, for the observation <code>z</code> with measurement matrix
+   * <code>h</code> (<code>obsDim x dim</code>) and covariance <code>r</code>.
+   * The observation must have 1 or 2 dimensions.
+   *
+   * @param covOut
+   *          where to write the posterior covariance, or null if only the mean
+   *          is needed.
+   * @return false if the innovation covariance is singular, in which case the
+   *         outputs are left unchanged.
+   */
+  public static boolean update(double[] mean, double[] cov, double[] h,
+    double[] r, double[] z, int dim, int obsDim, double[] meanOut,
+    double[] covOut) {
+    Preconditions.checkArgument(GaussianKernels.isSupported(dim));
+    Preconditions.checkArgument(obsDim == 1 || obsDim == 2);
+
+    /*
+     * Innovation e = z - h * mean, and its covariance s = h * cov * h^T + r.
+     */
+    final double e0 = z[0] - GaussianKernels.rowDot(h, 0, mean, dim);
+    final double e1 =
+        obsDim == 2 ? z[1] - GaussianKernels.rowDot(h, 1, mean, dim) : 0d;
+    final double s00 =
+        GaussianKernels.quadForm(h, 0, cov, h, 0, dim) + r[0];
+    final double si00;
+    final double si01;
+    final double si11;
+    if (obsDim == 1) {
+      if (s00 == 0d) {
+        return false;
+      }
+      si00 = 1d / s00;
+      si01 = 0d;
+      si11 = 0d;
+    } else {
+      final double s01 =
+          GaussianKernels.quadForm(h, 0, cov, h, 1, dim) + r[1];
+      final double s11 =
+          GaussianKernels.quadForm(h, 1, cov, h, 1, dim) + r[3];
+      final double det = s00 * s11 - s01 * s01;
+      if (det == 0d) {
+        return false;
+      }
+      si00 = s11 / det;
+      si01 = -s01 / det;
+      si11 = s00 / det;
+    }
+
+    /*
+     * Gain k = cov * h^T * s^-1, with rows computed as needed from
+     * p = cov * h^T.
+     */
+    for (int i = 0; i < dim; i++) {
+      final double p0 = GaussianKernels.rowDot(cov, i, h, 0, dim);
+      final double p1 =
+          obsDim == 2 ? GaussianKernels.rowDot(cov, i, h, 1, dim) : 0d;
+      final double k0 = p0 * si00 + p1 * si01;
+      final double k1 = p0 * si01 + p1 * si11;
+      meanOut[i] = mean[i] + k0 * e0 + k1 * e1;
+
+      if (covOut != null) {
+        for (int j = 0; j <= i; j++) {
+          final double q0 = GaussianKernels.rowDot(cov, j, h, 0, dim);
+          final double q1 =
+              obsDim == 2 ? GaussianKernels.rowDot(cov, j, h, 1, dim)
+                  : 0d;
+          final double c = cov[i * dim + j] - k0 * q0 - k1 * q1;
+          covOut[i * dim + j] = c;
+          covOut[j * dim + i] = c;
+        }
+      }
+    }
+    return true;
+  }
+
+  /**
+   * @return <code>a[rowA] . (b * c[rowC])</code>, for row-major
+   *         <code>dim</code>-column <code>a</code> and <code>c</code>, and
+   *         <code>dim x dim</code> <code>b</code>.
+   */
+  private static double quadForm(double[] a, int rowA, double[] b,
+    double[] c, int rowC, int dim) {
+    double result = 0d;
+    for (int i = 0; i < dim; i++) {
+      result +=
+          a[rowA * dim + i] * GaussianKernels.rowDot(b, i, c, rowC, dim);
+    }
+    return result;
+  }
+
+  private static double rowDot(double[] a, int row, double[] x, int dim) {
+    double result = 0d;
+    for (int i = 0; i < dim; i++) {
+      result += a[row * dim + i] * x[i];
+    }
+    return result;
+  }
+
+  private static double rowDot(double[] a, int rowA, double[] b,
+    int rowB, int dim) {
+    double result = 0d;
+    for (int i = 0; i < dim; i++) {
+      result += a[rowA * dim + i] * b[rowB * dim + i];
+    }
+    return result;
+  }
+
+}
@@ -4,6 +4,8 @@ import gov.sandia.cognition.math.matrix.Vector;
 import gov.sandia.cognition.math.matrix.VectorFactory;
 
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import org.geotools.geometry.jts.JTS;
 import org.geotools.referencing.CRS;
@@ -27,9 +29,114 @@ import com.vividsolutions.jts.geom.LineString;
 
 public class GeoUtils {
 
+  /**
+   * Set this system property to true to compute UTM projections with
+   * {@link UtmProjection} by default.
+   */
+  public static final String BUILT_IN_PROJECTION_PROPERTY =
+      "opentrackingtools.builtInProjection";
+
+  /**
+   * When true, UTM projections are computed with {@link UtmProjection} instead
+   * of the GeoTools transforms. The transforms are still attached to
+   * {@link ProjectedCoordinate}s, since they identify the zone. Read once from
+   * {@link #BUILT_IN_PROJECTION_PROPERTY}; the methods that take a
+   * useBuiltInProjection argument override it per call.
+   */
+  public static final boolean USE_BUILT_IN_PROJECTION = Boolean
+      .getBoolean(GeoUtils.BUILT_IN_PROJECTION_PROPERTY);
+
+  /*
+   * Authority lookups and transform searches are much more expensive
+   * than the transforms themselves, so we keep one transform, and its
+   * inverse, per UTM zone.  Both are immutable, so they can be shared.
+   */
+  private static final ConcurrentMap<MathTransform, Integer> epsgCodes =
+      new ConcurrentHashMap<MathTransform, Integer>();
+
+  private static final ConcurrentMap<Integer, MathTransform> inverseTransforms =
+      new ConcurrentHashMap<Integer, MathTransform>();
+
+  private static final ConcurrentMap<Integer, MathTransform> transforms =
+      new ConcurrentHashMap<Integer, MathTransform>();
+
+  /**
+   * Projects lat/lon pairs into their UTM zones, in one call per run of
+   * consecutive points in the same zone.
+   * 
+   * @param latLons
+   *          lat/lon pairs, i.e. {lat0, lon0, lat1, lon1, ...}
+   * @return the projected x/y pairs, in the same order
+   * @throws TransformException
+   */
+  public static double[] convertToEuclidean(double[] latLons)
+      throws TransformException {
+    Preconditions.checkArgument(latLons.length % 2 == 0);
+    final double[] result = new double[latLons.length];
+    final int numPoints = latLons.length / 2;
+    int runStart = 0;
+    while (runStart < numPoints) {
+      final int epsgCode =
+          GeoUtils.getEPSGCodefromUTS(latLons[2 * runStart],
+              latLons[2 * runStart + 1]);
+      int runEnd = runStart + 1;
+      while (runEnd < numPoints
+          && GeoUtils.getEPSGCodefromUTS(latLons[2 * runEnd],
+              latLons[2 * runEnd + 1]) == epsgCode) {
+        runEnd++;
+      }
+      if (GeoUtils.USE_BUILT_IN_PROJECTION) {
+        UtmProjection.project(latLons, 2 * runStart, result,
+            2 * runStart, runEnd - runStart, epsgCode);
+      } else {
+        GeoUtils.getTransform(epsgCode).transform(latLons,
+            2 * runStart, result, 2 * runStart, runEnd - runStart);
+      }
+      runStart = runEnd;
+    }
+    return result;
+  }
+
+  /**
+   * Inverts {@link #convertToEuclidean(double[])} for x/y pairs that are all
+   * in the given zone.
+   * 
+   * @param xys
+   *          x/y pairs, i.e. {x0, y0, x1, y1, ...}
+   * @param epsgCode
+   * @return the lat/lon pairs, in the same order
+   * @throws TransformException
+   */
+  public static double[] convertToLatLon(double[] xys, int epsgCode)
+      throws TransformException {
+    Preconditions.checkArgument(xys.length % 2 == 0);
+    final double[] result = new double[xys.length];
+    if (GeoUtils.USE_BUILT_IN_PROJECTION) {
+      UtmProjection.unproject(xys, 0, result, 0, xys.length / 2,
+          epsgCode);
+    } else {
+      GeoUtils.getInverseTransform(epsgCode).transform(xys, 0, result,
+          0, xys.length / 2);
+    }
+    return result;
+  }
+
   public static ProjectedCoordinate convertToEuclidean(
     Coordinate latlon) {
-    final MathTransform transform = GeoUtils.getTransform(latlon);
+    return GeoUtils.convertToEuclidean(latlon,
+        GeoUtils.USE_BUILT_IN_PROJECTION);
+  }
+
+  public static ProjectedCoordinate convertToEuclidean(
+    Coordinate latlon, boolean useBuiltInProjection) {
+    final int epsgCode = GeoUtils.getEPSGCodefromUTS(latlon);
+    final MathTransform transform = GeoUtils.getTransform(epsgCode);
+    if (useBuiltInProjection) {
+      final ProjectedCoordinate result =
+          new ProjectedCoordinate(transform, 0d, 0d, latlon);
+      UtmProjection.project(latlon.x, latlon.y, epsgCode, result);
+      return result;
+    }
     final Coordinate to = new Coordinate();
     try {
       JTS.transform(latlon, to, transform);
@@ -48,8 +155,23 @@ public class GeoUtils {
   public static Coordinate convertToLatLon(MathTransform transform,
     Coordinate xy) throws NoninvertibleTransformException,
       TransformException {
+    return GeoUtils.convertToLatLon(transform, xy,
+        GeoUtils.USE_BUILT_IN_PROJECTION);
+  }
+
+  public static Coordinate convertToLatLon(MathTransform transform,
+    Coordinate xy, boolean useBuiltInProjection)
+      throws NoninvertibleTransformException, TransformException {
+    if (useBuiltInProjection) {
+      final Integer epsgCode = GeoUtils.getEPSGCode(transform);
+      if (epsgCode != null) {
+        final Coordinate latLon = new Coordinate();
+        UtmProjection.unproject(xy.x, xy.y, epsgCode, latLon);
+        return latLon;
+      }
+    }
     final Coordinate to = new Coordinate();
-    JTS.transform(xy, to, transform.inverse());
+    JTS.transform(xy, to, GeoUtils.getInverseTransform(transform));
     return new Coordinate(to.x, to.y);
   }
 
@@ -80,18 +202,30 @@ public class GeoUtils {
    * -lat-long-to-utm
    */
   public static int getEPSGCodefromUTS(Coordinate refLatLon) {
+    return GeoUtils.getEPSGCodefromUTS(refLatLon.x, refLatLon.y);
+  }
+
+  public static int getEPSGCodefromUTS(double lat, double lon) {
     // define base EPSG code value of all UTM zones;
     int epsg_code = 32600;
     // add 100 for all zones in southern hemisphere
-    if (refLatLon.x < 0) {
+    if (lat < 0) {
       epsg_code += 100;
     }
     // finally, add zone number to code
-    epsg_code += GeoUtils.getUTMZoneForLongitude(refLatLon.y);
+    epsg_code += GeoUtils.getUTMZoneForLongitude(lon);
 
     return epsg_code;
   }
 
+  /**
+   * @return the EPSG code of a transform obtained from {@link #getTransform},
+   *         or null if it didn't come from there.
+   */
+  public static Integer getEPSGCode(MathTransform transform) {
+    return GeoUtils.epsgCodes.get(transform);
+  }
+
   public static Vector getEuclideanVectorFromLatLon(
     Coordinate coordinate) {
     final Coordinate resCoord =
@@ -120,7 +254,57 @@ public class GeoUtils {
     return results;
   }
 
+  /**
+   * @return the transform from UTM, in the given zone, to lat/lon.
+   */
+  public static MathTransform getInverseTransform(int epsgCode) {
+    MathTransform inverse =
+        GeoUtils.inverseTransforms.get(epsgCode);
+    if (inverse == null) {
+      final MathTransform transform = GeoUtils.getTransform(epsgCode);
+      if (transform == null) {
+        return null;
+      }
+      try {
+        inverse = transform.inverse();
+      } catch (final NoninvertibleTransformException e) {
+        e.printStackTrace();
+        return null;
+      }
+      final MathTransform prevInverse =
+          GeoUtils.inverseTransforms.putIfAbsent(epsgCode, inverse);
+      if (prevInverse != null) {
+        inverse = prevInverse;
+      }
+    }
+    return inverse;
+  }
+
+  /**
+   * Returns the inverse of the given transform, using the cached inverse when
+   * it's one of our zone transforms.
+   */
+  public static MathTransform getInverseTransform(
+    MathTransform transform) throws NoninvertibleTransformException {
+    final Integer epsgCode = GeoUtils.getEPSGCode(transform);
+    return epsgCode != null ? GeoUtils.getInverseTransform(epsgCode)
+        : transform.inverse();
+  }
+
   public static MathTransform getTransform(Coordinate refLatLon) {
+    return GeoUtils.getTransform(GeoUtils
+        .getEPSGCodefromUTS(refLatLon));
+  }
+
+  /**
+   * @return the transform from lat/lon to UTM in the given zone.
+   */
+  public static MathTransform getTransform(int epsgCode) {
+    final MathTransform cachedTransform =
+        GeoUtils.transforms.get(epsgCode);
+    if (cachedTransform != null) {
+      return cachedTransform;
+    }
 
     try {
       final CRSAuthorityFactory crsAuthorityFactory =
@@ -131,11 +315,18 @@ public class GeoUtils {
 
       final CoordinateReferenceSystem dataCRS =
           crsAuthorityFactory.createCoordinateReferenceSystem("EPSG:"
-              + GeoUtils.getEPSGCodefromUTS(refLatLon));
+              + epsgCode);
 
       final MathTransform transform =
           CRS.findMathTransform(geoCRS, dataCRS);
-      return transform;
+      /*
+       * Record the code first, so that any transform handed out
+       * below can already be looked up.
+       */
+      GeoUtils.epsgCodes.putIfAbsent(transform, epsgCode);
+      final MathTransform prevTransform =
+          GeoUtils.transforms.putIfAbsent(epsgCode, transform);
+      return prevTransform != null ? prevTransform : transform;
     } catch (final NoSuchIdentifierException e) {
       // TODO Auto-generated catch block
       e.printStackTrace();
@@ -186,7 +377,8 @@ public class GeoUtils {
       public void filter(Coordinate coord) {
         final Coordinate to = new Coordinate();
         try {
-          JTS.transform(coord, to, projection.inverse());
+          JTS.transform(coord, to,
+              GeoUtils.getInverseTransform(projection));
         } catch (final NoninvertibleTransformException e) {
           e.printStackTrace();
         } catch (final TransformException e) {
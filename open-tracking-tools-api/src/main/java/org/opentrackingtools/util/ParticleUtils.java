@@ -0,0 +1,117 @@
+package org.opentrackingtools.util;
+
+import gov.sandia.cognition.statistics.DataDistribution;
+
+import java.util.List;
+
+import org.opentrackingtools.ParticleMerger;
+import org.opentrackingtools.distributions.CountedDataDistribution;
+import org.opentrackingtools.model.GpsObservation;
+import org.opentrackingtools.model.VehicleStateDistribution;
+import org.opentrackingtools.util.model.MutableDoubleCount;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * The steps of a particle learning update that are the same in every PL
+ * filter: merging the priors, choosing the predictive states to smooth, and
+ * collecting the smoothed states into the posterior.
+ */
+public class ParticleUtils {
+
+  /**
+   * @return the particles to propagate: the target itself, or, when there's a
+   *         merger and the target has counts, one particle per merge group
+   *         with the group's combined weight and count.
+   */
+  public static <O extends GpsObservation>
+      DataDistribution<VehicleStateDistribution<O>> getPriors(
+        DataDistribution<VehicleStateDistribution<O>> target,
+        ParticleMerger particleMerger) {
+    if (particleMerger == null
+        || !(target instanceof CountedDataDistribution<?>)) {
+      return target;
+    }
+    return particleMerger
+        .merge((CountedDataDistribution<VehicleStateDistribution<O>>) target);
+  }
+
+  /**
+   * Collects the predictive states to smooth, each with the log weight and
+   * count that its smoothed state will get. <br>
+   * Resampled states are smoothed once per draw, with a count of one. When
+   * resampling was skipped, every predictive state is kept, with its weight
+   * scaled so that the weights sum to the number of particles, as the counts
+   * would.
+   *
+   * @param resampledStates
+   *          the resampled states, or null if resampling was skipped
+   * @param fanOut
+   *          when true, a kept state with a count of c is smoothed c times,
+   *          each with a count of one and a c-th of its weight, so that the
+   *          particles it stands for, e.g. a merged group, get their own
+   *          transition samples.
+   */
+  public static <O extends GpsObservation> void getSmoothingInputs(
+    CountedDataDistribution<VehicleStateDistribution<O>> resampleDist,
+    List<VehicleStateDistribution<O>> resampledStates, boolean fanOut,
+    List<VehicleStateDistribution<O>> smoothedStates,
+    List<MutableDoubleCount> smoothedWeights) {
+    if (resampledStates != null) {
+      for (final VehicleStateDistribution<O> state : resampledStates) {
+        smoothedStates.add(state);
+        smoothedWeights.add(new MutableDoubleCount(0d, 1));
+      }
+      return;
+    }
+
+    final double logNumParticles =
+        Math.log(resampleDist.getTotalCount());
+    for (final VehicleStateDistribution<O> state : resampleDist
+        .getDomain()) {
+      final double logWeight =
+          resampleDist.getLogFraction(state) + logNumParticles;
+      final int count = resampleDist.getCount(state);
+      if (fanOut) {
+        final double memberLogWeight = logWeight - Math.log(count);
+        for (int i = 0; i < count; i++) {
+          smoothedStates.add(state);
+          smoothedWeights.add(new MutableDoubleCount(memberLogWeight, 1));
+        }
+      } else {
+        smoothedStates.add(state);
+        smoothedWeights.add(new MutableDoubleCount(logWeight, count));
+      }
+    }
+  }
+
+  /**
+   * Replaces the particles in the target with the smoothed states, with the
+   * given log weights and counts.
+   */
+  public static <O extends GpsObservation> void setPosterior(
+    DataDistribution<VehicleStateDistribution<O>> target,
+    List<VehicleStateDistribution<O>> updatedStates,
+    List<MutableDoubleCount> updatedWeights) {
+    Preconditions.checkArgument(updatedStates.size() == updatedWeights
+        .size());
+    target.clear();
+    if (!(target instanceof CountedDataDistribution<?>)) {
+      for (int i = 0; i < updatedStates.size(); i++) {
+        target.increment(updatedStates.get(i),
+            Math.exp(updatedWeights.get(i).getValue()));
+      }
+      return;
+    }
+
+    final CountedDataDistribution<VehicleStateDistribution<O>> countedTarget =
+        (CountedDataDistribution<VehicleStateDistribution<O>>) target;
+    for (int i = 0; i < updatedStates.size(); i++) {
+      final MutableDoubleCount weight = updatedWeights.get(i);
+      countedTarget.increment(updatedStates.get(i), countedTarget
+          .isLogScale() ? weight.getValue() : Math.exp(weight
+          .getValue()), weight.getCount());
+    }
+  }
+
+}
@@ -131,6 +131,33 @@ public class StatisticsUtil {
    * @return
    */
   public static Matrix getCholR(Matrix matrix) {
+    return StatisticsUtil.getCholR(matrix,
+        GaussianKernels.getWorkspace());
+  }
+
+  /**
+   * As {@link #getCholR(Matrix)}, using the given workspace for the
+   * fixed-size factorization.
+   */
+  public static Matrix getCholR(Matrix matrix,
+    GaussianKernels.Workspace workspace) {
+    final int dim = matrix.getNumRows();
+    if (GaussianKernels.isSupported(dim)) {
+      final double[] a = workspace.cov;
+      final double[] l = workspace.l;
+      GaussianKernels.copy(matrix, a);
+      if (GaussianKernels.cholesky(a, dim, l)) {
+        final Matrix covSqrt =
+            MatrixFactory.getDefault().createMatrix(dim, dim);
+        for (int i = 0; i < dim; i++) {
+          for (int j = 0; j <= i; j++) {
+            covSqrt.setElement(j, i, l[i * dim + j]);
+          }
+        }
+        return covSqrt;
+      }
+    }
+
     final DenseCholesky cholesky =
         DenseCholesky.factorize(DenseMatrixFactoryMTJ.INSTANCE
             .copyMatrix(matrix).getInternalMatrix());
@@ -191,7 +218,20 @@ public class StatisticsUtil {
   public static double getLargeNormalCovRadius(Matrix covar) {
     try {
 
-      if (covar instanceof SvdMatrix) {
+      /*
+       * Don't bother decomposing a 2x2 matrix, unless that's already been
+       * done.
+       */
+      if (covar.getNumRows() == 2
+          && covar.getNumColumns() == 2
+          && !(covar instanceof SvdMatrix && ((SvdMatrix) covar).svd != null)) {
+        final double largestEigenval =
+            StatisticsUtil.getSymmetric2x2Eigenvalues(
+                covar.getElement(0, 0), covar.getElement(0, 1),
+                covar.getElement(1, 1))[0];
+        final double varDistance = 3d * Math.sqrt(largestEigenval);
+        return varDistance;
+      } else if (covar instanceof SvdMatrix) {
 
         final SvdMatrix svdCovar = (SvdMatrix) covar;
         final double largestEigenval =
@@ -280,6 +320,17 @@ public class StatisticsUtil {
     return result;
   }
 
+  /**
+   * Returns the eigenvalues, largest first, of the symmetric matrix
+   * <code>[[a, b], [b, d]]</code> in closed form.
+   */
+  public static double[] getSymmetric2x2Eigenvalues(double a, double b,
+    double d) {
+    final double mean = (a + d) / 2d;
+    final double radius = Math.hypot((a - d) / 2d, b);
+    return new double[] { mean + radius, mean - radius };
+  }
+
   /**
    * Uses the underlying arrays in these vector objects for a hash code.
    */
@@ -315,9 +366,33 @@ public class StatisticsUtil {
 
   public static double logEvaluateNormal(Vector input, Vector mean,
     Matrix cov) {
+    return StatisticsUtil.logEvaluateNormal(input, mean, cov,
+        GaussianKernels.getWorkspace());
+  }
+
+  /**
+   * As {@link #logEvaluateNormal(Vector, Vector, Matrix)}, using the given
+   * workspace for the fixed-size evaluation.
+   */
+  public static double logEvaluateNormal(Vector input, Vector mean,
+    Matrix cov, GaussianKernels.Workspace workspace) {
     Preconditions.checkArgument(input.getDimensionality() == mean
         .getDimensionality());
     final int k = mean.getDimensionality();
+    if (GaussianKernels.isSupported(k)) {
+      final double[] x = workspace.x;
+      final double[] mu = workspace.mean;
+      final double[] sigma = workspace.cov;
+      GaussianKernels.copy(input, x);
+      GaussianKernels.copy(mean, mu);
+      GaussianKernels.copy(cov, sigma);
+      final double result =
+          GaussianKernels.logEvaluateNormal(x, mu, sigma, k);
+      if (!Double.isNaN(result)) {
+        return result;
+      }
+    }
+
     final double logLeadingCoefficient =
         (-0.5 * k * MultivariateGaussian.LOG_TWO_PI)
             + (-0.5 * cov.logDeterminant().getRealPart());
@@ -4,6 +4,7 @@ import gov.sandia.cognition.math.ComplexNumber;
 import gov.sandia.cognition.math.MathUtil;
 import gov.sandia.cognition.math.matrix.Matrix;
 import gov.sandia.cognition.math.matrix.MatrixEntry;
+import gov.sandia.cognition.math.matrix.MatrixFactory;
 import gov.sandia.cognition.math.matrix.Vector;
 import gov.sandia.cognition.math.matrix.decomposition.AbstractSingularValueDecomposition;
 import gov.sandia.cognition.math.matrix.mtj.AbstractMTJMatrix;
@@ -34,24 +35,99 @@ public class SvdMatrix extends AbstractMTJMatrix {
 
   protected AbstractSingularValueDecomposition svd;
 
+  /**
+   * Returns the decomposition of a symmetric positive semi-definite 2x2
+   * matrix, in closed form, or null when the matrix isn't one.
+   */
+  protected static AbstractSingularValueDecomposition
+      createSymmetric2x2Svd(Matrix matrix) {
+    final double a = matrix.getElement(0, 0);
+    final double b = matrix.getElement(0, 1);
+    final double d = matrix.getElement(1, 1);
+    if (b != matrix.getElement(1, 0)) {
+      return null;
+    }
+    final double[] eigenvalues =
+        StatisticsUtil.getSymmetric2x2Eigenvalues(a, b, d);
+    if (eigenvalues[1] < 0d) {
+      /*
+       * Allow for rounding in degenerate covariances.
+       */
+      if (eigenvalues[1] < -1e-12 * Math.abs(eigenvalues[0])) {
+        return null;
+      }
+      eigenvalues[1] = 0d;
+    }
+
+    /*
+     * Use whichever row of (A - l1 * I) v = 0 avoids cancellation.
+     */
+    double v0;
+    double v1;
+    if (b == 0d) {
+      v0 = a >= d ? 1d : 0d;
+      v1 = a >= d ? 0d : 1d;
+    } else if (a >= d) {
+      v0 = eigenvalues[0] - d;
+      v1 = b;
+    } else {
+      v0 = b;
+      v1 = eigenvalues[0] - a;
+    }
+    final double norm = Math.hypot(v0, v1);
+    v0 /= norm;
+    v1 /= norm;
+
+    final Matrix U =
+        MatrixFactory.getDefault().copyArray(
+            new double[][] { { v0, -v1 }, { v1, v0 } });
+    final Matrix S = MatrixFactory.getDefault().createMatrix(2, 2);
+    S.setElement(0, 0, eigenvalues[0]);
+    S.setElement(1, 1, eigenvalues[1]);
+    return new SimpleSingularValueDecomposition(U, S, U.transpose());
+  }
+
+  /**
+   * Returns the values of the given matrix as an MTJ dense matrix, without
+   * copying them when <code>copy</code> is false and the matrix is already
+   * backed by one.
+   */
+  protected static DenseMatrix toDenseMatrix(Matrix matrix,
+    boolean copy) {
+    if (matrix instanceof AbstractMTJMatrix) {
+      final no.uib.cipr.matrix.Matrix internal =
+          ((AbstractMTJMatrix) matrix).getInternalMatrix();
+      if (internal instanceof DenseMatrix) {
+        return copy ? ((DenseMatrix) internal).copy()
+            : (DenseMatrix) internal;
+      }
+      return new DenseMatrix(internal);
+    }
+    return new DenseMatrix(matrix.toArray());
+  }
+
   public SvdMatrix(AbstractSingularValueDecomposition svd) {
-    super(new DenseMatrix(svd.getU().times(svd.getS())
-        .times(svd.getVtranspose()).toArray()));
+    super(SvdMatrix.toDenseMatrix(
+        svd.getU().times(svd.getS()).times(svd.getVtranspose()), false));
     this.svd = svd;
   }
 
+  /**
+   * Copies the values of the given matrix. Its decomposition is shared when it
+   * is an SvdMatrix, and otherwise only computed when it's first needed.
+   */
   public SvdMatrix(Matrix other) {
-    super(new DenseMatrix(other.toArray()));
+    super(SvdMatrix.toDenseMatrix(other, true));
     if (other instanceof SvdMatrix) {
       this.svd = ((SvdMatrix) other).svd;
     } else {
-      this.svd = SingularValueDecompositionMTJ.create(other);
+      this.svd = null;
     }
   }
 
   protected SvdMatrix(Matrix other,
     AbstractSingularValueDecomposition svd) {
-    super(new DenseMatrix(other.toArray()));
+    super(SvdMatrix.toDenseMatrix(other, true));
     this.svd = svd;
   }
 
@@ -168,7 +244,12 @@ public class SvdMatrix extends AbstractMTJMatrix {
 
   public AbstractSingularValueDecomposition getSvd() {
     if (this.svd == null) {
-      this.svd = SingularValueDecompositionMTJ.create(this);
+      if (this.getNumRows() == 2 && this.getNumColumns() == 2) {
+        this.svd = SvdMatrix.createSymmetric2x2Svd(this);
+      }
+      if (this.svd == null) {
+        this.svd = SingularValueDecompositionMTJ.create(this);
+      }
     }
     return this.svd;
   }
@@ -355,8 +436,8 @@ public class SvdMatrix extends AbstractMTJMatrix {
 
   public void setSvd(AbstractSingularValueDecomposition svd) {
     this.svd = svd;
-    this.setInternalMatrix(new DenseMatrix(svd.getU()
-        .times(svd.getS()).times(svd.getVtranspose()).toArray()));
+    this.setInternalMatrix(SvdMatrix.toDenseMatrix(svd.getU()
+        .times(svd.getS()).times(svd.getVtranspose()), false));
   }
 
   @Override
@@ -0,0 +1,200 @@
+package org.opentrackingtools.util;
+
+import com.google.common.base.Preconditions;
+import com.vividsolutions.jts.geom.Coordinate;
+
+/**
+ * WGS84 to UTM projection, and back, computed directly with the 4th order
+ * Kruger series for the transverse Mercator (see Karney, "Transverse Mercator
+ * with an accuracy of a few nanometers", 2011). Within a zone it's accurate
+ * to well under a millimeter, and it doesn't allocate per point, so it's
+ * suited to projecting every observation. <br>
+ * Zones are identified by the same EPSG codes that
+ * {@link GeoUtils#getEPSGCodefromUTS(double, double)} produces, and
+ * coordinates follow the same lat/lon, and easting/northing, order as the
+ * GeoTools transforms.
+ */
+public class UtmProjection {
+
+  /*
+   * WGS84 ellipsoid and UTM parameters.
+   */
+  private static final double a = 6378137d;
+  private static final double f = 1d / 298.257223563d;
+  private static final double k0 = 0.9996d;
+  private static final double falseEasting = 500000d;
+  private static final double falseNorthingSouth = 10000000d;
+
+  private static final double n = UtmProjection.f
+      / (2d - UtmProjection.f);
+  private static final double n2 = UtmProjection.n * UtmProjection.n;
+  private static final double n3 = UtmProjection.n2 * UtmProjection.n;
+  private static final double n4 = UtmProjection.n3 * UtmProjection.n;
+
+  /*
+   * k0 times the rectifying radius.
+   */
+  private static final double k0A = UtmProjection.k0 * UtmProjection.a
+      / (1d + UtmProjection.n)
+      * (1d + UtmProjection.n2 / 4d + UtmProjection.n4 / 64d);
+
+  private static final double eCoeff = 2d * Math.sqrt(UtmProjection.n)
+      / (1d + UtmProjection.n);
+
+  private static final double[] alpha = {
+      UtmProjection.n / 2d - 2d * UtmProjection.n2 / 3d + 5d
+          * UtmProjection.n3 / 16d + 41d * UtmProjection.n4 / 180d,
+      13d * UtmProjection.n2 / 48d - 3d * UtmProjection.n3 / 5d + 557d
+          * UtmProjection.n4 / 1440d,
+      61d * UtmProjection.n3 / 240d - 103d * UtmProjection.n4 / 140d,
+      49561d * UtmProjection.n4 / 161280d };
+
+  private static final double[] beta = {
+      UtmProjection.n / 2d - 2d * UtmProjection.n2 / 3d + 37d
+          * UtmProjection.n3 / 96d - UtmProjection.n4 / 360d,
+      UtmProjection.n2 / 48d + UtmProjection.n3 / 15d - 437d
+          * UtmProjection.n4 / 1440d,
+      17d * UtmProjection.n3 / 480d - 37d * UtmProjection.n4 / 840d,
+      4397d * UtmProjection.n4 / 161280d };
+
+  private static final double[] delta = {
+      2d * UtmProjection.n - 2d * UtmProjection.n2 / 3d - 2d
+          * UtmProjection.n3 + 116d * UtmProjection.n4 / 45d,
+      7d * UtmProjection.n2 / 3d - 8d * UtmProjection.n3 / 5d - 227d
+          * UtmProjection.n4 / 45d,
+      56d * UtmProjection.n3 / 15d - 136d * UtmProjection.n4 / 35d,
+      4279d * UtmProjection.n4 / 630d };
+
+  private static double atanh(double x) {
+    return 0.5d * Math.log((1d + x) / (1d - x));
+  }
+
+  private static double getCentralMeridian(int epsgCode) {
+    return Math.toRadians(UtmProjection.getZone(epsgCode) * 6d - 183d);
+  }
+
+  private static double getFalseNorthing(int epsgCode) {
+    return epsgCode >= 32700 ? UtmProjection.falseNorthingSouth : 0d;
+  }
+
+  private static int getZone(int epsgCode) {
+    final int zone = epsgCode % 100;
+    Preconditions.checkArgument((epsgCode - zone == 32600 || epsgCode
+        - zone == 32700)
+        && zone >= 1 && zone <= 60, "not a UTM zone: %s", epsgCode);
+    return zone;
+  }
+
+  /**
+   * Projects lat/lon pairs into the given zone.
+   *
+   * @param latLons
+   *          lat/lon pairs, in degrees
+   * @param dest
+   *          receives the easting/northing pairs. It can be the source array.
+   */
+  public static void project(double[] latLons, int srcOffset,
+    double[] dest, int destOffset, int numPoints, int epsgCode) {
+    final Coordinate xy = new Coordinate();
+    for (int i = 0; i < 2 * numPoints; i += 2) {
+      UtmProjection.project(latLons[srcOffset + i], latLons[srcOffset
+          + i + 1], epsgCode, xy);
+      dest[destOffset + i] = xy.x;
+      dest[destOffset + i + 1] = xy.y;
+    }
+  }
+
+  /**
+   * Projects a lat/lon, in degrees, into the given zone, and sets dest's x and
+   * y to the easting and northing.
+   */
+  public static void project(double lat, double lon, int epsgCode,
+    Coordinate dest) {
+    final double phi = Math.toRadians(lat);
+    final double lambda =
+        Math.toRadians(lon) - UtmProjection.getCentralMeridian(epsgCode);
+
+    final double sinPhi = Math.sin(phi);
+    final double t =
+        Math.sinh(UtmProjection.atanh(sinPhi) - UtmProjection.eCoeff
+            * UtmProjection.atanh(UtmProjection.eCoeff * sinPhi));
+    final double xiPrime = Math.atan2(t, Math.cos(lambda));
+    final double etaPrime =
+        UtmProjection.atanh(Math.sin(lambda) / Math.sqrt(1d + t * t));
+
+    double xi = xiPrime;
+    double eta = etaPrime;
+    for (int j = 1; j <= UtmProjection.alpha.length; j++) {
+      xi +=
+          UtmProjection.alpha[j - 1] * Math.sin(2d * j * xiPrime)
+              * Math.cosh(2d * j * etaPrime);
+      eta +=
+          UtmProjection.alpha[j - 1] * Math.cos(2d * j * xiPrime)
+              * Math.sinh(2d * j * etaPrime);
+    }
+
+    dest.x = UtmProjection.falseEasting + UtmProjection.k0A * eta;
+    dest.y =
+        UtmProjection.getFalseNorthing(epsgCode) + UtmProjection.k0A
+            * xi;
+  }
+
+  /**
+   * Inverts {@link #project(double[], int, double[], int, int, int)}.
+   *
+   * @param xys
+   *          easting/northing pairs
+   * @param dest
+   *          receives the lat/lon pairs, in degrees. It can be the source
+   *          array.
+   */
+  public static void unproject(double[] xys, int srcOffset,
+    double[] dest, int destOffset, int numPoints, int epsgCode) {
+    final Coordinate latLon = new Coordinate();
+    for (int i = 0; i < 2 * numPoints; i += 2) {
+      UtmProjection.unproject(xys[srcOffset + i],
+          xys[srcOffset + i + 1], epsgCode, latLon);
+      dest[destOffset + i] = latLon.x;
+      dest[destOffset + i + 1] = latLon.y;
+    }
+  }
+
+  /**
+   * Inverts a projection into the given zone, and sets dest's x and y to the
+   * lat and lon, in degrees.
+   */
+  public static void unproject(double x, double y, int epsgCode,
+    Coordinate dest) {
+    final double xi =
+        (y - UtmProjection.getFalseNorthing(epsgCode))
+            / UtmProjection.k0A;
+    final double eta =
+        (x - UtmProjection.falseEasting) / UtmProjection.k0A;
+
+    double xiPrime = xi;
+    double etaPrime = eta;
+    for (int j = 1; j <= UtmProjection.beta.length; j++) {
+      xiPrime -=
+          UtmProjection.beta[j - 1] * Math.sin(2d * j * xi)
+              * Math.cosh(2d * j * eta);
+      etaPrime -=
+          UtmProjection.beta[j - 1] * Math.cos(2d * j * xi)
+              * Math.sinh(2d * j * eta);
+    }
+
+    final double chi =
+        Math.asin(Math.sin(xiPrime) / Math.cosh(etaPrime));
+    double phi = chi;
+    for (int j = 1; j <= UtmProjection.delta.length; j++) {
+      phi += UtmProjection.delta[j - 1] * Math.sin(2d * j * chi);
+    }
+    final double lambda =
+        Math.atan2(Math.sinh(etaPrime), Math.cos(xiPrime));
+
+    dest.x = Math.toDegrees(phi);
+    dest.y =
+        Math.toDegrees(lambda
+            + UtmProjection.getCentralMeridian(epsgCode));
+  }
+
+}
@@ -0,0 +1,170 @@
+package org.opentrackingtools.util.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.List;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.JMException;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.MBeanOperationInfo;
+import javax.management.MBeanParameterInfo;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.ReflectionException;
+
+import com.google.common.collect.Lists;
+
+/**
+ * Keeps the metrics in memory, like {@link SimpleMetricsRegistry}, and exposes
+ * them as the read-only attributes of an MBean: one attribute per counter,
+ * and <code>name.count</code>, <code>name.total</code>,
+ * <code>name.mean</code> and <code>name.max</code> attributes per summary.
+ * The MBean also has a <code>reset</code> operation.
+ */
+public class JmxMetricsRegistry extends SimpleMetricsRegistry
+    implements DynamicMBean {
+
+  public static final String DEFAULT_OBJECT_NAME =
+      "org.opentrackingtools:type=Metrics";
+
+  protected static final String[] SUMMARY_ATTRIBUTES = { "count",
+      "total", "mean", "max" };
+
+  protected ObjectName objectName = null;
+  protected MBeanServer server = null;
+
+  @Override
+  public Object getAttribute(String attribute)
+      throws AttributeNotFoundException {
+    if (this.counters.containsKey(attribute)) {
+      return this.getCounter(attribute);
+    }
+    final int split = attribute.lastIndexOf('.');
+    final Summary summary =
+        split > 0 ? this.getSummary(attribute.substring(0, split))
+            : null;
+    if (summary != null) {
+      final String field = attribute.substring(split + 1);
+      if (field.equals("count")) {
+        return summary.getCount();
+      } else if (field.equals("total")) {
+        return summary.getTotal();
+      } else if (field.equals("mean")) {
+        return summary.getMean();
+      } else if (field.equals("max")) {
+        return summary.getMax();
+      }
+    }
+    throw new AttributeNotFoundException(attribute);
+  }
+
+  @Override
+  public AttributeList getAttributes(String[] attributes) {
+    final AttributeList result = new AttributeList();
+    for (final String attribute : attributes) {
+      try {
+        result.add(new Attribute(attribute, this
+            .getAttribute(attribute)));
+      } catch (final AttributeNotFoundException e) {
+        /*
+         * Missing attributes are left out, as the interface expects.
+         */
+      }
+    }
+    return result;
+  }
+
+  /**
+   * The attributes are listed anew on each call, since metrics appear as
+   * they're first reported.
+   */
+  @Override
+  public MBeanInfo getMBeanInfo() {
+    final List<MBeanAttributeInfo> attributes = Lists.newArrayList();
+    for (final String name : this.getCounterNames()) {
+      attributes.add(new MBeanAttributeInfo(name, "long", "counter",
+          true, false, false));
+    }
+    for (final String name : this.getSummaryNames()) {
+      for (final String field : JmxMetricsRegistry.SUMMARY_ATTRIBUTES) {
+        attributes.add(new MBeanAttributeInfo(name + "." + field, field
+            .equals("mean") ? "double" : "long", "summary " + field,
+            true, false, false));
+      }
+    }
+    return new MBeanInfo(this.getClass().getName(),
+        "Open tracking tools metrics",
+        attributes.toArray(new MBeanAttributeInfo[attributes.size()]),
+        null, new MBeanOperationInfo[] { new MBeanOperationInfo(
+            "reset", "Drops all counters and summaries",
+            new MBeanParameterInfo[0], "void",
+            MBeanOperationInfo.ACTION) }, null);
+  }
+
+  /**
+   * @return the name this is registered under, or null if it isn't.
+   */
+  public ObjectName getObjectName() {
+    return this.objectName;
+  }
+
+  @Override
+  public Object invoke(String actionName, Object[] params,
+    String[] signature) throws ReflectionException {
+    if (actionName.equals("reset")
+        && (params == null || params.length == 0)) {
+      this.reset();
+      return null;
+    }
+    throw new ReflectionException(new NoSuchMethodException(actionName));
+  }
+
+  /**
+   * Registers this with the platform MBean server, under the default name,
+   * replacing anything already registered there.
+   */
+  public void register() throws JMException {
+    this.register(ManagementFactory.getPlatformMBeanServer(),
+        new ObjectName(JmxMetricsRegistry.DEFAULT_OBJECT_NAME));
+  }
+
+  public void register(MBeanServer server, ObjectName name)
+      throws JMException {
+    if (server.isRegistered(name)) {
+      server.unregisterMBean(name);
+    }
+    server.registerMBean(this, name);
+    this.server = server;
+    this.objectName = name;
+  }
+
+  @Override
+  public void setAttribute(Attribute attribute)
+      throws AttributeNotFoundException {
+    throw new AttributeNotFoundException("metrics are read-only: "
+        + attribute.getName());
+  }
+
+  @Override
+  public AttributeList setAttributes(AttributeList attributes) {
+    return new AttributeList();
+  }
+
+  /**
+   * Removes this from the MBean server it was registered with, if any.
+   */
+  public void unregister() throws JMException {
+    if (this.objectName != null) {
+      if (this.server.isRegistered(this.objectName)) {
+        this.server.unregisterMBean(this.objectName);
+      }
+      this.server = null;
+      this.objectName = null;
+    }
+  }
+
+}
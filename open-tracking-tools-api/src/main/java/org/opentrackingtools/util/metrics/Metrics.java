@@ -0,0 +1,150 @@
+package org.opentrackingtools.util.metrics;
+
+import javax.management.JMException;
+
+/**
+ * Where the filters and graphs report their per-stage timings and counts.
+ * Nothing is reported until a registry is set, and, until then, each call
+ * here is a single check of a volatile field. <br>
+ * Setting the system property {@value #ENABLED_PROPERTY} to true starts
+ * reporting to a {@link JmxMetricsRegistry} when this class is loaded.<br>
+ * Timers are summaries of durations in nanoseconds, e.g.
+ * 
+ * <pre>
+ * final long start = Metrics.startTimer();
+ * ...
+ * Metrics.stopTimer(Metrics.PATH_SEARCH_TIME, start);
+ * </pre>
+ */
+public final class Metrics {
+
+  public static final String ENABLED_PROPERTY =
+      "opentrackingtools.metrics";
+
+  /*
+   * Filter stage timers.
+   */
+  public static final String UPDATE_TIME = "filter.update.time";
+  public static final String PREDICTION_TIME = "filter.prediction.time";
+  public static final String LIKELIHOOD_TIME = "filter.likelihood.time";
+  public static final String RESAMPLING_TIME = "filter.resampling.time";
+  public static final String SMOOTHING_TIME = "filter.smoothing.time";
+  public static final String COVARIANCE_SAMPLING_TIME =
+      "filter.covarianceSampling.time";
+
+  /*
+   * Filter counters and summaries.
+   */
+  public static final String PARTICLES = "filter.particles";
+  public static final String RESAMPLES = "filter.resamples";
+  public static final String RESAMPLES_SKIPPED = "filter.resamplesSkipped";
+  public static final String PATHS_PER_PARTICLE =
+      "updater.pathsPerParticle";
+
+  /*
+   * Graph timers and counters.
+   */
+  public static final String PATH_SEARCH_TIME = "graph.pathSearch.time";
+  public static final String NODES_EXPANDED = "graph.nodesExpanded";
+  public static final String PATH_CACHE_HITS = "graph.pathCache.hits";
+  public static final String PATH_CACHE_MISSES =
+      "graph.pathCache.misses";
+  public static final String PATH_SEARCH_BUDGET_EXHAUSTED =
+      "graph.pathSearch.budgetExhausted";
+
+  private static final long TIMER_DISABLED = Long.MIN_VALUE;
+
+  private static volatile MetricsRegistry registry = null;
+
+  static {
+    if (Boolean.getBoolean(Metrics.ENABLED_PROPERTY)) {
+      try {
+        Metrics.enableJmx();
+      } catch (final JMException e) {
+        throw new IllegalStateException(e);
+      }
+    }
+  }
+
+  /**
+   * Stops reporting. If the current registry was registered with JMX by
+   * {@link #enableJmx()}, it's unregistered.
+   */
+  public static void disable() throws JMException {
+    final MetricsRegistry current = Metrics.registry;
+    Metrics.registry = null;
+    if (current instanceof JmxMetricsRegistry) {
+      ((JmxMetricsRegistry) current).unregister();
+    }
+  }
+
+  /**
+   * Starts reporting to a new {@link JmxMetricsRegistry}, registered with the
+   * platform MBean server.
+   * 
+   * @return the new registry
+   */
+  public static JmxMetricsRegistry enableJmx() throws JMException {
+    final JmxMetricsRegistry jmxRegistry = new JmxMetricsRegistry();
+    jmxRegistry.register();
+    Metrics.registry = jmxRegistry;
+    return jmxRegistry;
+  }
+
+  /**
+   * @return the current registry, or null when reporting is disabled.
+   */
+  public static MetricsRegistry getRegistry() {
+    return Metrics.registry;
+  }
+
+  public static void increment(String name, long delta) {
+    final MetricsRegistry current = Metrics.registry;
+    if (current != null) {
+      current.increment(name, delta);
+    }
+  }
+
+  public static boolean isEnabled() {
+    return Metrics.registry != null;
+  }
+
+  public static void record(String name, long value) {
+    final MetricsRegistry current = Metrics.registry;
+    if (current != null) {
+      current.record(name, value);
+    }
+  }
+
+  /**
+   * @param registry
+   *          where to report, or null to stop reporting.
+   */
+  public static void setRegistry(MetricsRegistry registry) {
+    Metrics.registry = registry;
+  }
+
+  /**
+   * @return the start time to pass to {@link #stopTimer}, which is only read
+   *         from the clock when reporting is enabled.
+   */
+  public static long startTimer() {
+    return Metrics.registry != null ? System.nanoTime()
+        : Metrics.TIMER_DISABLED;
+  }
+
+  /**
+   * Records the time since start, unless reporting was disabled when the
+   * timer was started.
+   */
+  public static void stopTimer(String name, long start) {
+    final MetricsRegistry current = Metrics.registry;
+    if (current != null && start != Metrics.TIMER_DISABLED) {
+      current.record(name, System.nanoTime() - start);
+    }
+  }
+
+  private Metrics() {
+  }
+
+}
@@ -0,0 +1,21 @@
+package org.opentrackingtools.util.metrics;
+
+/**
+ * Receives the counts and measurements reported through {@link Metrics}.
+ * Implementations are called from every filter thread, so they must be
+ * thread-safe, and should be cheap, since they're called in the filters'
+ * inner loops.
+ */
+public interface MetricsRegistry {
+
+  /**
+   * Adds delta to the named counter.
+   */
+  public void increment(String name, long delta);
+
+  /**
+   * Adds a measurement, e.g. a duration in nanoseconds, to the named summary.
+   */
+  public void record(String name, long value);
+
+}
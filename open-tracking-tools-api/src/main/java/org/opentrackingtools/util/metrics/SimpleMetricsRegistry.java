@@ -0,0 +1,121 @@
+package org.opentrackingtools.util.metrics;
+
+import java.util.SortedSet;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.common.collect.ImmutableSortedSet;
+import com.google.common.collect.Maps;
+
+/**
+ * Keeps every counter and summary in memory. A summary keeps the number,
+ * total and maximum of its measurements.
+ */
+public class SimpleMetricsRegistry implements MetricsRegistry {
+
+  public static class Summary {
+
+    protected final AtomicLong count = new AtomicLong();
+    protected final AtomicLong max = new AtomicLong(Long.MIN_VALUE);
+    protected final AtomicLong total = new AtomicLong();
+
+    public void add(long value) {
+      this.count.incrementAndGet();
+      this.total.addAndGet(value);
+      long currentMax = this.max.get();
+      while (value > currentMax
+          && !this.max.compareAndSet(currentMax, value)) {
+        currentMax = this.max.get();
+      }
+    }
+
+    public long getCount() {
+      return this.count.get();
+    }
+
+    /**
+     * @return the largest measurement, or zero when there are none.
+     */
+    public long getMax() {
+      final long result = this.max.get();
+      return result == Long.MIN_VALUE ? 0l : result;
+    }
+
+    /**
+     * @return the average measurement, or zero when there are none.
+     */
+    public double getMean() {
+      final long currentCount = this.count.get();
+      return currentCount > 0 ? this.total.get()
+          / (double) currentCount : 0d;
+    }
+
+    public long getTotal() {
+      return this.total.get();
+    }
+
+  }
+
+  protected final ConcurrentMap<String, AtomicLong> counters = Maps
+      .newConcurrentMap();
+  protected final ConcurrentMap<String, Summary> summaries = Maps
+      .newConcurrentMap();
+
+  /**
+   * @return the named counter's value, or zero if it was never incremented.
+   */
+  public long getCounter(String name) {
+    final AtomicLong counter = this.counters.get(name);
+    return counter != null ? counter.get() : 0l;
+  }
+
+  public SortedSet<String> getCounterNames() {
+    return ImmutableSortedSet.copyOf(this.counters.keySet());
+  }
+
+  /**
+   * @return the named summary, or null if nothing was recorded to it.
+   */
+  public Summary getSummary(String name) {
+    return this.summaries.get(name);
+  }
+
+  public SortedSet<String> getSummaryNames() {
+    return ImmutableSortedSet.copyOf(this.summaries.keySet());
+  }
+
+  @Override
+  public void increment(String name, long delta) {
+    AtomicLong counter = this.counters.get(name);
+    if (counter == null) {
+      final AtomicLong newCounter = new AtomicLong();
+      counter = this.counters.putIfAbsent(name, newCounter);
+      if (counter == null) {
+        counter = newCounter;
+      }
+    }
+    counter.addAndGet(delta);
+  }
+
+  @Override
+  public void record(String name, long value) {
+    Summary summary = this.summaries.get(name);
+    if (summary == null) {
+      final Summary newSummary = new Summary();
+      summary = this.summaries.putIfAbsent(name, newSummary);
+      if (summary == null) {
+        summary = newSummary;
+      }
+    }
+    summary.add(value);
+  }
+
+  /**
+   * Drops all counters and summaries.
+   */
+  public void reset() {
+    this.counters.clear();
+    this.summaries.clear();
+  }
+
+}
@@ -0,0 +1,116 @@
+package org.opentrackingtools;
+
+import gov.sandia.cognition.math.matrix.VectorFactory;
+
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+
+import org.geotools.geometry.jts.JTSFactoryFinder;
+import org.opentrackingtools.distributions.CountedDataDistribution;
+import org.opentrackingtools.distributions.ResamplingScheme;
+import org.opentrackingtools.graph.GenericJTSGraph;
+import org.opentrackingtools.graph.InferenceGraphSegment;
+import org.opentrackingtools.model.GpsObservation;
+import org.opentrackingtools.model.ProjectedCoordinate;
+import org.opentrackingtools.model.VehicleStateDistribution;
+import org.opentrackingtools.model.VehicleStateDistribution.VehicleStateDistributionFactory;
+import org.opentrackingtools.paths.PathEdge;
+import org.testng.AssertJUnit;
+import org.testng.annotations.Test;
+
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Lists;
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.LineString;
+
+public class AdaptiveParticleCountTest {
+
+  @Test
+  public void testKLDBound() {
+    final double quantile = 2.3263478740408408d;
+    AssertJUnit.assertEquals(1d,
+        AdaptiveParticleCount.getKLDBound(1, 0.05d, quantile), 0d);
+    AssertJUnit.assertEquals(65.8577d,
+        AdaptiveParticleCount.getKLDBound(2, 0.05d, quantile), 1e-4d);
+    AssertJUnit.assertEquals(216.9661d,
+        AdaptiveParticleCount.getKLDBound(10, 0.05d, quantile), 1e-4d);
+
+    final AdaptiveParticleCount particleCount =
+        new AdaptiveParticleCount(10, 500, 0.05d, 0.01d, 10d);
+    AssertJUnit.assertEquals(10, particleCount.getNumParticles(1));
+    AssertJUnit.assertEquals(66, particleCount.getNumParticles(2));
+    AssertJUnit.assertEquals(217, particleCount.getNumParticles(10));
+    AssertJUnit.assertEquals(500, particleCount.getNumParticles(50));
+  }
+
+  /**
+   * Filter along a single straight road, where the particles can't spread over
+   * many bins, and check that the filter keeps the particle count it chose.
+   */
+  @Test
+  public void testFilterUpdate() {
+    final List<LineString> edges = Lists.newArrayList();
+    edges.add(JTSFactoryFinder.getGeometryFactory().createLineString(
+        new Coordinate[] { new Coordinate(0, 0),
+            new Coordinate(100, 0), }));
+    final GenericJTSGraph graph = new GenericJTSGraph(edges, false);
+
+    final VehicleStateInitialParameters parameters =
+        new VehicleStateInitialParameters(VectorFactory.getDefault()
+            .copyArray(new double[] { 0d, 1d, 0d, 0d }),
+            VectorFactory.getDefault().createVector2D(0.02d, 0.02d),
+            Integer.MAX_VALUE, VectorFactory.getDefault()
+                .createVector1D(1e-4d), Integer.MAX_VALUE,
+            VectorFactory.getDefault().createVector2D(1e-4d, 1e-4d),
+            Integer.MAX_VALUE, VectorFactory.getDefault()
+                .createVector2D(1, Double.MAX_VALUE), VectorFactory
+                .getDefault().createVector2D(Double.MAX_VALUE, 1), 50,
+            1, 0);
+
+    final Random rng = new Random(102343292l);
+    GpsObservation obs = this.createObservation(0, null);
+    final VehicleStateDistributionFactory<GpsObservation, GenericJTSGraph> factory =
+        new VehicleStateDistribution.VehicleStateDistributionFactory<GpsObservation, GenericJTSGraph>();
+    final VehicleStatePLFilter<GpsObservation, GenericJTSGraph> filter =
+        new VehicleStatePLFilter<GpsObservation, GenericJTSGraph>(obs,
+            graph, factory, parameters, false, rng);
+    final AdaptiveParticleCount particleCount =
+        new AdaptiveParticleCount(5, 50, 0.05d, 0.01d, 10d);
+    filter.setAdaptiveParticleCount(particleCount);
+    try {
+      filter.setResamplingScheme(ResamplingScheme.SYSTEMATIC);
+      AssertJUnit.fail("adaptive counts should need multinomial resampling");
+    } catch (final IllegalArgumentException e) {
+      /* expected */
+    }
+
+    final InferenceGraphSegment startLine =
+        Iterables.getOnlyElement(graph.getNearbyEdges(new Coordinate(
+            0, 0), 0.5d));
+    final CountedDataDistribution<VehicleStateDistribution<GpsObservation>> particles =
+        new CountedDataDistribution<VehicleStateDistribution<GpsObservation>>(
+            Collections.singletonList(factory.createInitialVehicleState(
+                parameters, graph, obs, rng, new PathEdge(startLine, 0d,
+                    false))), true);
+    for (int i = 1; i <= 10; i++) {
+      obs = this.createObservation(i, obs);
+      filter.update(particles, obs);
+
+      AssertJUnit.assertTrue(filter.getNumParticles() >= 5);
+      AssertJUnit.assertTrue(filter.getNumParticles() <= 50);
+      AssertJUnit.assertEquals(filter.getNumParticles(),
+          particles.getTotalCount());
+    }
+  }
+
+  private GpsObservation createObservation(int time,
+    GpsObservation prevObs) {
+    final Coordinate coord = new Coordinate(time, 0);
+    return new GpsObservation("test", new Date(time * 1000l), coord,
+        null, null, null, time, prevObs, new ProjectedCoordinate(null,
+            coord, null));
+  }
+
+}
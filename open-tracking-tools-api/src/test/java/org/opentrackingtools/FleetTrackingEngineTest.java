@@ -0,0 +1,117 @@
+package org.opentrackingtools;
+
+import gov.sandia.cognition.math.matrix.VectorFactory;
+import gov.sandia.cognition.statistics.DataDistribution;
+
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.geotools.geometry.jts.JTSFactoryFinder;
+import org.opentrackingtools.FleetTrackingEngine.VehicleStats;
+import org.opentrackingtools.graph.GenericJTSGraph;
+import org.opentrackingtools.model.GpsObservation;
+import org.opentrackingtools.model.ProjectedCoordinate;
+import org.opentrackingtools.model.VehicleStateDistribution;
+import org.opentrackingtools.model.VehicleStateDistribution.VehicleStateDistributionFactory;
+import org.testng.AssertJUnit;
+import org.testng.annotations.Test;
+
+import com.google.common.collect.Lists;
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.LineString;
+
+public class FleetTrackingEngineTest {
+
+  private static GpsObservation createObs(String sourceId, long time,
+    Coordinate coord) {
+    return new GpsObservation(sourceId, new Date(time), coord, null,
+        null, null, 0, null, new ProjectedCoordinate(null, coord, null));
+  }
+
+  /**
+   * Two vehicles on the same graph should each get their own filter, and
+   * every submitted observation should be filtered. The two workers read the
+   * graph concurrently, which GenericJTSGraph supports.
+   */
+  @Test
+  public void testTwoVehicles() throws InterruptedException {
+    final List<LineString> edges = Lists.newArrayList();
+    edges.add(JTSFactoryFinder.getGeometryFactory().createLineString(
+        new Coordinate[] { new Coordinate(0, 0),
+            new Coordinate(10, 0), }));
+    edges.add(JTSFactoryFinder.getGeometryFactory().createLineString(
+        new Coordinate[] { new Coordinate(10, 0),
+            new Coordinate(10, 10), }));
+    final GenericJTSGraph graph = new GenericJTSGraph(edges, false);
+
+    final VehicleStateInitialParameters parameters =
+        new VehicleStateInitialParameters(VectorFactory.getDefault()
+            .copyArray(new double[] { 0d, 1d, 0d, 0d }),
+            VectorFactory.getDefault().createVector2D(0.02d, 0.02d),
+            Integer.MAX_VALUE, VectorFactory.getDefault()
+                .createVector1D(1e-4d), Integer.MAX_VALUE,
+            VectorFactory.getDefault().createVector2D(1e-4d, 1e-4d),
+            Integer.MAX_VALUE, VectorFactory.getDefault()
+                .createVector2D(1, Double.MAX_VALUE), VectorFactory
+                .getDefault().createVector2D(Double.MAX_VALUE, 1), 5,
+            1, 1234l);
+
+    final FleetTrackingEngine<GpsObservation, GenericJTSGraph> engine =
+        new FleetTrackingEngine<GpsObservation, GenericJTSGraph>(
+            graph,
+            new VehicleStateDistributionFactory<GpsObservation, GenericJTSGraph>(),
+            parameters, 2, false);
+
+    for (int i = 0; i < 3; i++) {
+      engine.submit(createObs("bus1", i * 1000l, new Coordinate(i, 0)));
+      engine.submit(createObs("bus2", i * 1000l, new Coordinate(10,
+          i)));
+    }
+
+    AssertJUnit.assertTrue(engine.awaitIdle(60, TimeUnit.SECONDS));
+    engine.shutdown();
+    try {
+      engine.submit(createObs("bus1", 3000l, new Coordinate(3, 0)));
+      AssertJUnit.fail("submit should be rejected after shutdown");
+    } catch (final RejectedExecutionException e) {
+      /* expected */
+    }
+    AssertJUnit.assertTrue(engine.awaitIdle(0, TimeUnit.SECONDS));
+
+    AssertJUnit.assertEquals(2, engine.getNumVehicles());
+    AssertJUnit.assertEquals(0, engine.getBacklog());
+    for (final String sourceId : new String[] { "bus1", "bus2" }) {
+      final VehicleStats stats = engine.getVehicleStats(sourceId);
+      AssertJUnit.assertEquals(3, stats.getNumUpdates());
+      AssertJUnit.assertEquals(0, stats.getBacklog());
+      AssertJUnit.assertTrue(stats.getMaxLatencyNanos() >= stats
+          .getMaxUpdateNanos());
+      final DataDistribution<VehicleStateDistribution<GpsObservation>> belief =
+          engine.getBelief(sourceId);
+      final VehicleStateDistribution<GpsObservation> best =
+          belief.getMaxValueKey();
+      AssertJUnit.assertEquals(sourceId, best.getObservation()
+          .getSourceId());
+
+      /*
+       * The belief is a copy, so changing it leaves the engine's alone.
+       */
+      belief.clear();
+      AssertJUnit.assertFalse(engine.getBelief(sourceId).isEmpty());
+    }
+
+    /*
+     * Both vehicles are idle, but not for an hour.
+     */
+    AssertJUnit.assertEquals(0,
+        engine.evictIdleVehicles(1, TimeUnit.HOURS));
+    AssertJUnit.assertTrue(engine.remove("bus1"));
+    AssertJUnit.assertFalse(engine.remove("bus1"));
+    AssertJUnit.assertNull(engine.getBelief("bus1"));
+    AssertJUnit.assertEquals(1,
+        engine.evictIdleVehicles(0, TimeUnit.SECONDS));
+    AssertJUnit.assertEquals(0, engine.getNumVehicles());
+  }
+}
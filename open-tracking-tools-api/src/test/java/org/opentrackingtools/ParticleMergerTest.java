@@ -0,0 +1,142 @@
+package org.opentrackingtools;
+
+import gov.sandia.cognition.math.matrix.VectorFactory;
+
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+
+import org.geotools.geometry.jts.JTSFactoryFinder;
+import org.opentrackingtools.distributions.CountedDataDistribution;
+import org.opentrackingtools.graph.GenericJTSGraph;
+import org.opentrackingtools.graph.InferenceGraphSegment;
+import org.opentrackingtools.model.GpsObservation;
+import org.opentrackingtools.model.ProjectedCoordinate;
+import org.opentrackingtools.model.VehicleStateDistribution;
+import org.opentrackingtools.model.VehicleStateDistribution.VehicleStateDistributionFactory;
+import org.opentrackingtools.paths.PathEdge;
+import org.testng.AssertJUnit;
+import org.testng.annotations.Test;
+
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Lists;
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.LineString;
+
+public class ParticleMergerTest {
+
+  private final GenericJTSGraph graph;
+  private final GpsObservation initialObs;
+  private final VehicleStateInitialParameters parameters;
+  private final VehicleStateDistributionFactory<GpsObservation, GenericJTSGraph> factory =
+      new VehicleStateDistribution.VehicleStateDistributionFactory<GpsObservation, GenericJTSGraph>();
+  private final InferenceGraphSegment startLine;
+
+  public ParticleMergerTest() {
+    final List<LineString> edges = Lists.newArrayList();
+    edges.add(JTSFactoryFinder.getGeometryFactory().createLineString(
+        new Coordinate[] { new Coordinate(0, 0),
+            new Coordinate(100, 0), }));
+    this.graph = new GenericJTSGraph(edges, false);
+    this.startLine =
+        Iterables.getOnlyElement(this.graph.getNearbyEdges(
+            new Coordinate(0, 0), 0.5d));
+
+    this.parameters =
+        new VehicleStateInitialParameters(VectorFactory.getDefault()
+            .copyArray(new double[] { 0d, 1d, 0d, 0d }),
+            VectorFactory.getDefault().createVector2D(0.02d, 0.02d),
+            Integer.MAX_VALUE, VectorFactory.getDefault()
+                .createVector1D(1e-4d), Integer.MAX_VALUE,
+            VectorFactory.getDefault().createVector2D(1e-4d, 1e-4d),
+            Integer.MAX_VALUE, VectorFactory.getDefault()
+                .createVector2D(1, Double.MAX_VALUE), VectorFactory
+                .getDefault().createVector2D(Double.MAX_VALUE, 1), 20,
+            1, 0);
+
+    final Coordinate initialObsCoord = new Coordinate(0, 0);
+    this.initialObs =
+        new GpsObservation("test", new Date(0l), initialObsCoord,
+            null, null, null, 0, null, new ProjectedCoordinate(null,
+                initialObsCoord, null));
+  }
+
+  private VehicleStateDistribution<GpsObservation> createState(
+    PathEdge pathEdge, Random rng) {
+    return this.factory.createInitialVehicleState(this.parameters,
+        this.graph, this.initialObs, rng, pathEdge);
+  }
+
+  /**
+   * States at the start of the same edge merge into the first of them, with
+   * their combined value and count. The off-road state stays on its own.
+   */
+  @Test
+  public void testMerge() {
+    final Random rng = new Random(102343292l);
+    final VehicleStateDistribution<GpsObservation> onRoad1 =
+        this.createState(new PathEdge(this.startLine, 0d, false), rng);
+    final VehicleStateDistribution<GpsObservation> onRoad2 =
+        this.createState(new PathEdge(this.startLine, 0d, false), rng);
+    final VehicleStateDistribution<GpsObservation> offRoad =
+        this.createState(PathEdge.nullPathEdge, rng);
+
+    final CountedDataDistribution<VehicleStateDistribution<GpsObservation>> particles =
+        new CountedDataDistribution<VehicleStateDistribution<GpsObservation>>(
+            true);
+    particles.set(onRoad1, Math.log(2d), 2);
+    particles.set(onRoad2, Math.log(3d), 3);
+    particles.set(offRoad, Math.log(5d), 5);
+
+    final ParticleMerger merger = new ParticleMerger(1d, 1d);
+    AssertJUnit.assertEquals(merger.getKey(onRoad1),
+        merger.getKey(onRoad2));
+
+    final CountedDataDistribution<VehicleStateDistribution<GpsObservation>> merged =
+        merger.merge(particles);
+    AssertJUnit.assertEquals(2, merged.getDomainSize());
+    AssertJUnit.assertEquals(10, merged.getTotalCount());
+    AssertJUnit.assertEquals(particles.getTotal(), merged.getTotal(),
+        1e-7);
+    AssertJUnit.assertEquals(5, merged.getCount(onRoad1));
+    AssertJUnit.assertEquals(Math.log(5d), merged.get(onRoad1), 1e-7);
+    AssertJUnit.assertEquals(0, merged.getCount(onRoad2));
+    AssertJUnit.assertEquals(5, merged.getCount(offRoad));
+  }
+
+  /**
+   * With a merger, the particles in a group share one prediction, but they're
+   * smoothed separately, so the filter keeps its particle count and its
+   * particles don't collapse into one.
+   */
+  @Test
+  public void testFilterUpdate() {
+    final Random rng = new Random(102343292l);
+    final VehicleStatePLFilter<GpsObservation, GenericJTSGraph> filter =
+        new VehicleStatePLFilter<GpsObservation, GenericJTSGraph>(
+            this.initialObs, this.graph, this.factory, this.parameters,
+            true, rng);
+    filter.setParticleMerger(new ParticleMerger(100d, 100d));
+
+    final CountedDataDistribution<VehicleStateDistribution<GpsObservation>> particles =
+        (CountedDataDistribution<VehicleStateDistribution<GpsObservation>>) filter
+            .getUpdater().createInitialParticles(20);
+    AssertJUnit.assertEquals(20, particles.getTotalCount());
+
+    GpsObservation obs = this.initialObs;
+    for (int i = 1; i <= 5; i++) {
+      final Coordinate obsCoord = new Coordinate(i, 0);
+      obs =
+          new GpsObservation("test", new Date(i * 1000l), obsCoord, null,
+              null, null, i, obs, new ProjectedCoordinate(null, obsCoord,
+                  null));
+      filter.update(particles, obs);
+
+      AssertJUnit.assertTrue(filter.getLastResampleDistribution()
+          .getDomainSize() < 20);
+      AssertJUnit.assertEquals(20, particles.getTotalCount());
+      AssertJUnit.assertTrue(particles.getDomainSize() > 1);
+    }
+  }
+
+}
@@ -6,6 +6,8 @@ import java.util.Collections;
 import java.util.Date;
 import java.util.List;
 import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import org.geotools.geometry.jts.JTSFactoryFinder;
 import org.opentrackingtools.distributions.CountedDataDistribution;
@@ -29,6 +31,29 @@ import com.vividsolutions.jts.geom.LineString;
 
 public class VehicleStatePLFilterTest {
 
+  private static void assertSameParticles(
+    CountedDataDistribution<VehicleStateDistribution<GpsObservation>> expected,
+    CountedDataDistribution<VehicleStateDistribution<GpsObservation>> actual) {
+    AssertJUnit.assertEquals(expected.getTotalCount(),
+        actual.getTotalCount());
+    AssertJUnit.assertEquals(expected.getDomainSize(),
+        actual.getDomainSize());
+    final List<VehicleStateDistribution<GpsObservation>> expectedStates =
+        Lists.newArrayList(expected.getDomain());
+    final List<VehicleStateDistribution<GpsObservation>> actualStates =
+        Lists.newArrayList(actual.getDomain());
+    for (int i = 0; i < expectedStates.size(); i++) {
+      ArrayAsserts.assertArrayEquals(expectedStates.get(i)
+          .getPathStateParam().getParameterPrior().getMean()
+          .toArray(), actualStates.get(i).getPathStateParam()
+          .getParameterPrior().getMean().toArray(), 0d);
+      ArrayAsserts.assertArrayEquals(expectedStates.get(i)
+          .getObservationCovarianceParam().getValue().toArray()[0],
+          actualStates.get(i).getObservationCovarianceParam()
+              .getValue().toArray()[0], 0d);
+    }
+  }
+
   /**
    * Starting on the first edge, check that the best state is the one that's 4m
    * forward on the last edge (the observation is the last point on that edge).
@@ -130,6 +155,158 @@ public class VehicleStatePLFilterTest {
             .getMotionState().toArray(), 1e-1);
   }
 
+  /**
+   * Updated states share their parameters with the states they were cloned
+   * from, so an update has to replace parameters rather than change them.
+   * Check that the prior state's parameters are left as they were.
+   */
+  @Test
+  public void updateLeavesPriorState() {
+    final List<LineString> edges = Lists.newArrayList();
+    edges.add(JTSFactoryFinder.getGeometryFactory().createLineString(
+        new Coordinate[] { new Coordinate(0, 0),
+            new Coordinate(10, 0), }));
+    final GenericJTSGraph graph = new GenericJTSGraph(edges, false);
+    final InferenceGraphSegment startLine =
+        Iterables.getOnlyElement(graph.getNearbyEdges(edges.get(0)
+            .getCoordinate(), 0.5d));
+
+    final Random rng = new Random(102343292l);
+
+    final VehicleStateInitialParameters parameters =
+        new VehicleStateInitialParameters(VectorFactory.getDefault()
+            .copyArray(new double[] { 0d, 1d, 0d, 0d }),
+            VectorFactory.getDefault().createVector2D(0.02d, 0.02d),
+            Integer.MAX_VALUE, VectorFactory.getDefault()
+                .createVector1D(1e-4d), Integer.MAX_VALUE,
+            VectorFactory.getDefault().createVector2D(1e-4d, 1e-4d),
+            Integer.MAX_VALUE, VectorFactory.getDefault()
+                .createVector2D(1, Double.MAX_VALUE), VectorFactory
+                .getDefault().createVector2D(Double.MAX_VALUE, 1), 5,
+            4, 0);
+
+    final Coordinate initialObsCoord = new Coordinate(0, 0);
+    final GpsObservation initialObs =
+        new GpsObservation("test", new Date(0l), initialObsCoord,
+            null, null, null, 0, null, new ProjectedCoordinate(null,
+                initialObsCoord, null));
+
+    final VehicleStateDistributionFactory<GpsObservation, GenericJTSGraph> factory =
+        new VehicleStateDistribution.VehicleStateDistributionFactory<GpsObservation, GenericJTSGraph>();
+    final VehicleStateDistribution<GpsObservation> currentState =
+        factory.createInitialVehicleState(parameters, graph,
+            initialObs, rng, new PathEdge(startLine, 0d, false));
+    final VehicleStateDistribution<GpsObservation> priorState =
+        currentState.clone();
+    final double[] priorPathMotionState =
+        currentState.getPathStateParam().getValue().getMotionState()
+            .toArray();
+
+    final VehicleStatePLFilter<GpsObservation, GenericJTSGraph> filter =
+        new VehicleStatePLFilter<GpsObservation, GenericJTSGraph>(
+            initialObs, graph, factory, parameters, true, rng);
+
+    final Coordinate newObsCoord = new Coordinate(4, 0);
+    final GpsObservation newObs =
+        new GpsObservation("test", new Date(4l), newObsCoord, null,
+            null, null, 1, initialObs, new ProjectedCoordinate(null,
+                newObsCoord, null));
+    final CountedDataDistribution<VehicleStateDistribution<GpsObservation>> particles =
+        new CountedDataDistribution<VehicleStateDistribution<GpsObservation>>(
+            Collections.singletonList(currentState), true);
+    filter.update(particles, newObs);
+
+    AssertJUnit.assertSame(priorState.getMotionStateParam(),
+        currentState.getMotionStateParam());
+    AssertJUnit.assertSame(priorState.getPathStateParam(),
+        currentState.getPathStateParam());
+    AssertJUnit.assertSame(priorState.getObservationCovarianceParam(),
+        currentState.getObservationCovarianceParam());
+    AssertJUnit.assertSame(priorState.getEdgeTransitionParam(),
+        currentState.getEdgeTransitionParam());
+    ArrayAsserts.assertArrayEquals(priorPathMotionState, currentState
+        .getPathStateParam().getValue().getMotionState().toArray(), 0d);
+
+    for (final VehicleStateDistribution<GpsObservation> updatedState : particles
+        .getDomain()) {
+      AssertJUnit.assertNotSame(currentState.getPathStateParam(),
+          updatedState.getPathStateParam());
+      AssertJUnit.assertNotSame(currentState.getMotionStateParam(),
+          updatedState.getMotionStateParam());
+    }
+  }
+
+  /**
+   * With a resample threshold of zero the particles are never resampled, so
+   * each one should come out of an update once, with its count, and weighted
+   * by its predictive likelihood.
+   */
+  @Test
+  public void updateWithoutResampling() {
+    final List<LineString> edges = Lists.newArrayList();
+    edges.add(JTSFactoryFinder.getGeometryFactory().createLineString(
+        new Coordinate[] { new Coordinate(0, 0),
+            new Coordinate(1, 0), }));
+    edges.add(JTSFactoryFinder.getGeometryFactory().createLineString(
+        new Coordinate[] { new Coordinate(1, 0),
+            new Coordinate(1, 1), }));
+    final GenericJTSGraph graph = new GenericJTSGraph(edges, false);
+    final InferenceGraphSegment startLine =
+        Iterables.getOnlyElement(graph.getNearbyEdges(edges.get(0)
+            .getCoordinate(), 0.5d));
+
+    final Random rng = new Random(102343292l);
+
+    final VehicleStateInitialParameters parameters =
+        new VehicleStateInitialParameters(VectorFactory.getDefault()
+            .copyArray(new double[] { 0d, 1d, 0d, 0d }),
+            VectorFactory.getDefault().createVector2D(0.02d, 0.02d),
+            Integer.MAX_VALUE, VectorFactory.getDefault()
+                .createVector1D(1e-4d), Integer.MAX_VALUE,
+            VectorFactory.getDefault().createVector2D(1e-4d, 1e-4d),
+            Integer.MAX_VALUE, VectorFactory.getDefault()
+                .createVector2D(1, Double.MAX_VALUE), VectorFactory
+                .getDefault().createVector2D(Double.MAX_VALUE, 1), 20,
+            1, 0);
+
+    final Coordinate initialObsCoord = new Coordinate(0, 0);
+    final GpsObservation initialObs =
+        new GpsObservation("test", new Date(0l), initialObsCoord,
+            null, null, null, 0, null, new ProjectedCoordinate(null,
+                initialObsCoord, null));
+
+    final VehicleStateDistributionFactory<GpsObservation, GenericJTSGraph> factory =
+        new VehicleStateDistribution.VehicleStateDistributionFactory<GpsObservation, GenericJTSGraph>();
+    final CountedDataDistribution<VehicleStateDistribution<GpsObservation>> particles =
+        new CountedDataDistribution<VehicleStateDistribution<GpsObservation>>(
+            true);
+    particles.set(factory.createInitialVehicleState(parameters, graph,
+        initialObs, rng, new PathEdge(startLine, 0d, false)), Math
+        .log(10d), 10);
+    particles.set(factory.createInitialVehicleState(parameters, graph,
+        initialObs, rng, PathEdge.nullPathEdge), Math.log(10d), 10);
+
+    final VehicleStatePLFilter<GpsObservation, GenericJTSGraph> filter =
+        new VehicleStatePLFilter<GpsObservation, GenericJTSGraph>(
+            initialObs, graph, factory, parameters, false, rng);
+    filter.setResampleThreshold(0d);
+
+    final Coordinate newObsCoord = new Coordinate(1, 0);
+    final GpsObservation newObs =
+        new GpsObservation("test", new Date(1000l), newObsCoord, null,
+            null, null, 1, initialObs, new ProjectedCoordinate(null,
+                newObsCoord, null));
+    filter.update(particles, newObs);
+
+    AssertJUnit.assertEquals(2, particles.getDomainSize());
+    AssertJUnit.assertEquals(20, particles.getTotalCount());
+    AssertJUnit.assertEquals(Math.log(20d), particles.getTotal(), 1e-7);
+    for (final VehicleStateDistribution<GpsObservation> state : particles
+        .getDomain()) {
+      AssertJUnit.assertEquals(10, particles.getCount(state));
+    }
+  }
+
   /**
    * Starting off-road, check that the best state is the one that's 4m forward
    * on the last edge (the observation is the last point on that edge). The
@@ -225,4 +402,122 @@ public class VehicleStatePLFilterTest {
         bestVehicleState.getPathStateParam().getValue()
             .getMotionState().toArray(), 1e-1);
   }
+
+  /**
+   * Runs the update1 scenario with a given number of worker threads (zero for
+   * the sequential path) and returns the resulting particles.
+   */
+  private CountedDataDistribution<VehicleStateDistribution<GpsObservation>>
+      runUpdate1(int numThreads) {
+    final List<LineString> edges = Lists.newArrayList();
+    edges.add(JTSFactoryFinder.getGeometryFactory().createLineString(
+        new Coordinate[] { new Coordinate(0, 0),
+            new Coordinate(1, 0), }));
+    edges.add(JTSFactoryFinder.getGeometryFactory().createLineString(
+        new Coordinate[] { new Coordinate(1, 0),
+            new Coordinate(1, 1), }));
+    edges.add(JTSFactoryFinder.getGeometryFactory().createLineString(
+        new Coordinate[] { new Coordinate(1, 0),
+            new Coordinate(1, -1), }));
+    edges.add(JTSFactoryFinder.getGeometryFactory().createLineString(
+        new Coordinate[] { new Coordinate(1, 1),
+            new Coordinate(1, 2), }));
+    edges.add(JTSFactoryFinder.getGeometryFactory().createLineString(
+        new Coordinate[] { new Coordinate(1, 2),
+            new Coordinate(1, 3), }));
+    final GenericJTSGraph graph = new GenericJTSGraph(edges, false);
+    final InferenceGraphSegment startLine =
+        Iterables.getOnlyElement(graph.getNearbyEdges(edges.get(0)
+            .getCoordinate(), 0.5d));
+
+    final Random rng = new Random(102343292l);
+
+    final VehicleStateInitialParameters parameters =
+        new VehicleStateInitialParameters(VectorFactory.getDefault()
+            .copyArray(new double[] { 0d, 1d, 0d, 0d }),
+            VectorFactory.getDefault().createVector2D(0.02d, 0.02d),
+            Integer.MAX_VALUE, VectorFactory.getDefault()
+                .createVector1D(1e-4d), Integer.MAX_VALUE,
+            VectorFactory.getDefault().createVector2D(1e-4d, 1e-4d),
+            Integer.MAX_VALUE, VectorFactory.getDefault()
+                .createVector2D(1, Double.MAX_VALUE), VectorFactory
+                .getDefault().createVector2D(Double.MAX_VALUE, 1), 20,
+            4, 0);
+
+    final PathEdge startPathEdge = new PathEdge(startLine, 0d, false);
+
+    final Coordinate initialObsCoord = new Coordinate(0, 0);
+    final GpsObservation initialObs =
+        new GpsObservation("test", new Date(0l), initialObsCoord,
+            null, null, null, 0, null, new ProjectedCoordinate(null,
+                initialObsCoord, null));
+
+    final VehicleStateDistributionFactory<GpsObservation, GenericJTSGraph> factory =
+        new VehicleStateDistribution.VehicleStateDistributionFactory<GpsObservation, GenericJTSGraph>();
+    final VehicleStateDistribution<GpsObservation> currentState =
+        factory.createInitialVehicleState(parameters, graph,
+            initialObs, rng, startPathEdge);
+
+    final VehicleStatePLFilter<GpsObservation, GenericJTSGraph> filter =
+        new VehicleStatePLFilter<GpsObservation, GenericJTSGraph>(
+            initialObs, graph, factory, parameters, false, rng);
+
+    final ExecutorService executor =
+        numThreads > 0 ? Executors.newFixedThreadPool(numThreads)
+            : null;
+    filter.setExecutor(executor);
+
+    final Coordinate newObsCoord = new Coordinate(1, 3);
+    final GpsObservation newObs =
+        new GpsObservation("test", new Date(4l), newObsCoord, null,
+            null, null, 0, null, new ProjectedCoordinate(null,
+                newObsCoord, null));
+    final CountedDataDistribution<VehicleStateDistribution<GpsObservation>> particles =
+        new CountedDataDistribution<VehicleStateDistribution<GpsObservation>>(
+            Collections.singletonList(currentState), true);
+    try {
+      filter.update(particles, newObs);
+    } finally {
+      if (executor != null) {
+        executor.shutdown();
+      }
+    }
+    return particles;
+  }
+
+  /**
+   * The parallel update should find the same best state as the sequential one,
+   * and it should produce identical particles for a given seed no matter how
+   * many threads are used.
+   */
+  @Test
+  public void updateParallel() {
+    final CountedDataDistribution<VehicleStateDistribution<GpsObservation>> particles1 =
+        this.runUpdate1(1);
+    final CountedDataDistribution<VehicleStateDistribution<GpsObservation>> particles4 =
+        this.runUpdate1(4);
+
+    AssertJUnit.assertEquals(20, particles4.getTotalCount());
+
+    final VehicleStateDistribution<GpsObservation> bestVehicleState =
+        particles4.getMaxValueKey();
+    AssertJUnit.assertEquals(new LineSegment(new Coordinate(1, 2),
+        new Coordinate(1, 3)), bestVehicleState.getPathStateParam()
+        .getParameterPrior().getPathState().getEdge().getLine());
+    ArrayAsserts.assertArrayEquals(new double[] { 4d, 1d },
+        bestVehicleState.getPathStateParam().getParameterPrior()
+            .getMean().toArray(), 1e-1);
+
+    VehicleStatePLFilterTest.assertSameParticles(particles1, particles4);
+  }
+
+  /**
+   * Running without an executor should draw the same per-particle random
+   * numbers as running with one, so a given seed gives identical particles.
+   */
+  @Test
+  public void updateParallelMatchesSequential() {
+    VehicleStatePLFilterTest.assertSameParticles(this.runUpdate1(0),
+        this.runUpdate1(4));
+  }
 }
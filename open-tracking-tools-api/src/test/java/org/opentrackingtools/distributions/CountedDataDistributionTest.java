@@ -1,8 +1,10 @@
 package org.opentrackingtools.distributions;
 
+import java.util.List;
 import java.util.Random;
 
 import org.testng.AssertJUnit;
+import org.testng.annotations.DataProvider;
 import org.testng.annotations.Test;
 
 public class CountedDataDistributionTest {
@@ -149,4 +151,110 @@ public class CountedDataDistributionTest {
     AssertJUnit.assertEquals(testDist.getTotalCount(),
         testDistClone.getTotalCount());
   }
+  @DataProvider
+  public Object[][] resamplingSchemeData() {
+    final Object[][] data =
+        new Object[ResamplingScheme.values().length][];
+    for (int i = 0; i < data.length; i++) {
+      data[i] = new Object[] { ResamplingScheme.values()[i] };
+    }
+    return data;
+  }
+
+  /**
+   * Every scheme should draw each key in proportion to its weight, on
+   * average. The systematic scheme should never be more than one draw away
+   * from the expected number.
+   */
+  @Test(dataProvider = "resamplingSchemeData")
+  public void testResamplingSchemes(ResamplingScheme scheme) {
+    final CountedDataDistribution<String> testDist =
+        new CountedDataDistribution<String>(true);
+    testDist.set("item1", Math.log(5d), 1);
+    testDist.set("item2", Math.log(15d), 1);
+    testDist.set("item3", Math.log(30d), 1);
+    testDist.set("item4", Math.log(50d), 1);
+
+    final Random rng = new Random(1234533l);
+    final int numSamples = 30;
+    final int numRepeats = 10000;
+    final CountedDataDistribution<String> sampleDist =
+        new CountedDataDistribution<String>(true);
+    for (int i = 0; i < numRepeats; i++) {
+      final List<String> samples =
+          testDist.sample(rng, numSamples, scheme);
+      AssertJUnit.assertEquals(numSamples, samples.size());
+
+      final CountedDataDistribution<String> repeatDist =
+          new CountedDataDistribution<String>(true);
+      for (final String val : samples) {
+        repeatDist.increment(val);
+        sampleDist.increment(val);
+      }
+      if (scheme == ResamplingScheme.SYSTEMATIC) {
+        for (final String key : testDist.getDomain()) {
+          AssertJUnit.assertEquals(testDist.getFraction(key)
+              * numSamples, repeatDist.getCount(key), 1d);
+        }
+      }
+    }
+
+    AssertJUnit.assertEquals(numSamples * numRepeats,
+        sampleDist.getTotalCount());
+    for (final String key : testDist.getDomain()) {
+      AssertJUnit.assertEquals(testDist.getLogFraction(key),
+          sampleDist.getLogFraction(key), 2e-2);
+    }
+  }
+
+  /**
+   * Draws use a table that's built once, so check that changes to the
+   * distribution show up in later draws.
+   */
+  @Test
+  public void testSampleAfterChange() {
+    final CountedDataDistribution<String> testDist =
+        new CountedDataDistribution<String>(true);
+    testDist.increment("item1", 0d);
+
+    final Random rng = new Random(1234533l);
+    AssertJUnit.assertEquals("item1", testDist.sample(rng));
+
+    testDist.increment("item2", Math.log(1e9));
+    for (final String val : testDist.sample(rng, 10)) {
+      AssertJUnit.assertEquals("item2", val);
+    }
+
+    testDist.clear();
+    AssertJUnit.assertNull(testDist.sample(rng));
+    testDist.increment("item3");
+    AssertJUnit.assertEquals("item3", testDist.sample(rng));
+  }
+  @Test
+  public void testEffectiveSampleSize() {
+    final CountedDataDistribution<String> testDist =
+        new CountedDataDistribution<String>(true);
+    testDist.set("item1", Math.log(10d), 1);
+    testDist.set("item2", Math.log(10d), 1);
+    testDist.set("item3", Math.log(10d), 1);
+    testDist.set("item4", Math.log(10d), 1);
+    AssertJUnit.assertEquals(4d, testDist.getEffectiveSampleSize(), 1e-7);
+
+    /*
+     * A count splits the value between that many elements.
+     */
+    testDist.set("item1", Math.log(20d), 2);
+    testDist.set("item2", Math.log(10d), 1);
+    AssertJUnit.assertEquals(5d, testDist.getEffectiveSampleSize(), 1e-7);
+
+    testDist.set("item1", Math.log(1e6d), 1);
+    AssertJUnit.assertEquals(1d, testDist.getEffectiveSampleSize(), 1e-3);
+
+    final CountedDataDistribution<String> linearDist =
+        new CountedDataDistribution<String>(false);
+    linearDist.increment("item1", 1d);
+    linearDist.increment("item2", 3d);
+    AssertJUnit.assertEquals(1d / (1d / 16d + 9d / 16d),
+        linearDist.getEffectiveSampleSize(), 1e-7);
+  }
 }
@@ -0,0 +1,231 @@
+package org.opentrackingtools.graph;
+
+import gov.sandia.cognition.math.matrix.VectorFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.geotools.geometry.jts.JTSFactoryFinder;
+import org.opentrackingtools.VehicleStateInitialParameters;
+import org.opentrackingtools.model.GpsObservation;
+import org.opentrackingtools.model.ProjectedCoordinate;
+import org.opentrackingtools.model.VehicleStateDistribution;
+import org.opentrackingtools.model.VehicleStateDistribution.VehicleStateDistributionFactory;
+import org.opentrackingtools.paths.Path;
+import org.opentrackingtools.paths.PathEdge;
+import org.testng.AssertJUnit;
+import org.testng.annotations.Test;
+
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.LineSegment;
+import com.vividsolutions.jts.geom.LineString;
+
+public class CompactInferenceGraphTest {
+
+  private static List<LineString> createEdges() {
+    final List<LineString> graphEdges = Lists.newArrayList();
+    graphEdges.add(JTSFactoryFinder.getGeometryFactory()
+        .createLineString(
+            new Coordinate[] { new Coordinate(0, 0),
+                new Coordinate(5, 0), new Coordinate(10, 0) }));
+    graphEdges.add(JTSFactoryFinder.getGeometryFactory()
+        .createLineString(
+            new Coordinate[] { new Coordinate(10, 0),
+                new Coordinate(20, 0) }));
+    graphEdges.add(JTSFactoryFinder.getGeometryFactory()
+        .createLineString(
+            new Coordinate[] { new Coordinate(20, 0),
+                new Coordinate(10, 0) }));
+    graphEdges.add(JTSFactoryFinder.getGeometryFactory()
+        .createLineString(
+            new Coordinate[] { new Coordinate(10, 0),
+                new Coordinate(10, 10), new Coordinate(20, 10) }));
+    graphEdges.add(JTSFactoryFinder.getGeometryFactory()
+        .createLineString(
+            new Coordinate[] { new Coordinate(20, 10),
+                new Coordinate(20, 0) }));
+    return graphEdges;
+  }
+
+  private static Set<List<Coordinate>> getPathCoords(
+    Collection<Path> paths) {
+    final Set<List<Coordinate>> result = Sets.newHashSet();
+    for (final Path path : paths) {
+      result.add(path.isNullPath() ? null : Arrays.asList(path
+          .getGeometry().getCoordinates()));
+    }
+    return result;
+  }
+
+  private static Set<LineSegment> getSegmentLines(
+    Collection<InferenceGraphSegment> segments) {
+    final Set<LineSegment> result = Sets.newHashSet();
+    for (final InferenceGraphSegment segment : segments) {
+      result.add(segment.getLine());
+    }
+    return result;
+  }
+
+  private static Set<Path> getPaths(InferenceGraph graph,
+    Coordinate startCoord, Coordinate obsCoord) {
+    final InferenceGraphSegment startLine =
+        Iterables.getOnlyElement(graph
+            .getNearbyEdges(startCoord, 0.5d));
+
+    final GpsObservation obs =
+        new GpsObservation("test", new Date(0l), obsCoord, null,
+            null, null, 0, null, new ProjectedCoordinate(null,
+                obsCoord, null));
+
+    final VehicleStateInitialParameters parameters =
+        new VehicleStateInitialParameters(VectorFactory.getDefault()
+            .copyArray(new double[] { 0d, 1d, 0d, 0d }),
+            VectorFactory.getDefault().createVector2D(1d, 1d),
+            Integer.MAX_VALUE, VectorFactory.getDefault()
+                .createVector1D(1e-4d), Integer.MAX_VALUE,
+            VectorFactory.getDefault().createVector2D(1e-4d, 1e-4d),
+            Integer.MAX_VALUE, VectorFactory.getDefault()
+                .createVector2D(1, Double.MAX_VALUE), VectorFactory
+                .getDefault().createVector2D(Double.MAX_VALUE, 1), 0,
+            2, 0);
+
+    final VehicleStateDistributionFactory<GpsObservation, InferenceGraph> factory =
+        new VehicleStateDistribution.VehicleStateDistributionFactory<GpsObservation, InferenceGraph>();
+    final VehicleStateDistribution<GpsObservation> currentState =
+        factory.createInitialVehicleState(parameters, graph, obs,
+            new Random(102343292l), new PathEdge(startLine, 0d, false));
+
+    return Sets.newHashSet(graph.getPaths(currentState, obs));
+  }
+
+  /**
+   * The compact graph should answer queries the same way as the object graph
+   * built from the same lines.
+   */
+  @Test
+  public void testMatchesGenericGraph() {
+    final List<LineString> graphEdges = createEdges();
+    final GenericJTSGraph genericGraph =
+        new GenericJTSGraph(graphEdges, false);
+    final CompactInferenceGraph compactGraph =
+        new CompactInferenceGraph(graphEdges, false, 3d);
+
+    AssertJUnit.assertEquals(5, compactGraph.getNumEdges());
+    AssertJUnit.assertEquals(4, compactGraph.getNumNodes());
+
+    for (final Coordinate coord : new Coordinate[] {
+        new Coordinate(0, 0), new Coordinate(10, 0),
+        new Coordinate(12, 4), new Coordinate(30, 30) }) {
+      for (final double radius : new double[] { 0.5d, 3d, 11d }) {
+        AssertJUnit.assertEquals(getSegmentLines(genericGraph
+            .getNearbyEdges(coord, radius)),
+            getSegmentLines(compactGraph.getNearbyEdges(coord, radius)));
+      }
+    }
+
+    AssertJUnit.assertEquals(
+        getPathCoords(getPaths(genericGraph, new Coordinate(1, 0),
+            new Coordinate(20, 5))),
+        getPathCoords(getPaths(compactGraph, new Coordinate(1, 0),
+            new Coordinate(20, 5))));
+  }
+
+  /**
+   * Repeated searches should come from the cache, and a search that can only
+   * expand its source node should miss the paths that leave the start edge.
+   */
+  @Test
+  public void testPathSearchLimits() {
+    final CompactInferenceGraph graph =
+        new CompactInferenceGraph(createEdges(), false, 3d);
+
+    final Set<Path> paths =
+        getPaths(graph, new Coordinate(1, 0), new Coordinate(20, 5));
+    AssertJUnit.assertEquals(paths,
+        getPaths(graph, new Coordinate(1, 0), new Coordinate(20, 5)));
+    AssertJUnit.assertEquals(1, graph.getPathCacheStats().missCount());
+    AssertJUnit.assertEquals(1, graph.getPathCacheStats().hitCount());
+
+    graph.setPathCacheSize(0);
+    graph.setMaxExpandedVertices(1);
+    AssertJUnit.assertNull(graph.getPathCacheStats());
+    final Set<Path> limitedPaths =
+        getPaths(graph, new Coordinate(1, 0), new Coordinate(20, 5));
+    AssertJUnit.assertTrue(paths.containsAll(limitedPaths));
+    AssertJUnit.assertTrue(limitedPaths.size() < paths.size());
+  }
+
+  /**
+   * A graph loaded from a snapshot should answer queries just like the graph
+   * it was written from.
+   */
+  @Test
+  public void testSnapshot() throws IOException {
+    final CompactInferenceGraph graph =
+        new CompactInferenceGraph(createEdges(), false, 3d);
+
+    final File file = File.createTempFile("graph", ".snapshot");
+    try {
+      CompactGraphSnapshot.write(graph, file);
+      final CompactInferenceGraph loadedGraph =
+          CompactGraphSnapshot.load(file);
+
+      AssertJUnit.assertEquals(graph.getNumNodes(),
+          loadedGraph.getNumNodes());
+      AssertJUnit.assertEquals(graph.getNumEdges(),
+          loadedGraph.getNumEdges());
+      AssertJUnit.assertEquals(graph.getProjGraphExtent(),
+          loadedGraph.getProjGraphExtent());
+      AssertJUnit.assertEquals(graph.getTopoEquivEdges(graph
+          .getInferenceGraphEdge(1)), loadedGraph
+          .getTopoEquivEdges(loadedGraph.getInferenceGraphEdge(1)));
+      AssertJUnit.assertEquals(getSegmentLines(graph.getNearbyEdges(
+          new Coordinate(12, 4), 11d)), getSegmentLines(loadedGraph
+          .getNearbyEdges(new Coordinate(12, 4), 11d)));
+      AssertJUnit.assertEquals(
+          getPathCoords(getPaths(graph, new Coordinate(1, 0),
+              new Coordinate(20, 5))),
+          getPathCoords(getPaths(loadedGraph, new Coordinate(1, 0),
+              new Coordinate(20, 5))));
+    } finally {
+      file.delete();
+    }
+  }
+
+  @Test
+  public void testEdgeViews() {
+    final CompactInferenceGraph graph =
+        new CompactInferenceGraph(createEdges(), false);
+
+    final InferenceGraphEdge first = graph.getInferenceGraphEdge(0);
+    AssertJUnit.assertEquals(2, first.getSegments().size());
+    AssertJUnit.assertEquals(10d, first.getLength(), 1e-7);
+    AssertJUnit.assertFalse(first.hasReverse());
+    AssertJUnit.assertNull(graph.getInferenceGraphEdge(5));
+
+    /*
+     * Edges 1 and 2 are each other's reverse.
+     */
+    final InferenceGraphEdge second = graph.getInferenceGraphEdge(1);
+    AssertJUnit.assertTrue(second.hasReverse());
+    AssertJUnit.assertEquals(
+        Sets.newHashSet(second, graph.getInferenceGraphEdge(2)),
+        graph.getTopoEquivEdges(second));
+
+    AssertJUnit.assertEquals(
+        Sets.newHashSet(second, graph.getInferenceGraphEdge(3)),
+        graph.getOutgoingTransferableEdges(first));
+    AssertJUnit.assertEquals(
+        Sets.newHashSet(first, graph.getInferenceGraphEdge(2)),
+        graph.getIncomingTransferableEdges(second));
+  }
+}
@@ -4,15 +4,22 @@ import gov.sandia.cognition.math.matrix.VectorFactory;
 
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Random;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.apache.commons.collections.CollectionUtils;
 import org.apache.commons.collections.Transformer;
 import org.geotools.geometry.jts.JTSFactoryFinder;
+import org.geotools.graph.structure.DirectedEdge;
+import org.geotools.graph.structure.DirectedNode;
 import org.opentrackingtools.VehicleStateInitialParameters;
 import org.opentrackingtools.model.GpsObservation;
 import org.opentrackingtools.model.ProjectedCoordinate;
@@ -20,6 +27,7 @@ import org.opentrackingtools.model.VehicleStateDistribution;
 import org.opentrackingtools.model.VehicleStateDistribution.VehicleStateDistributionFactory;
 import org.opentrackingtools.paths.Path;
 import org.opentrackingtools.paths.PathEdge;
+import org.testng.AssertJUnit;
 import org.testng.annotations.Test;
 
 import com.google.common.collect.Iterables;
@@ -241,6 +249,185 @@ public class GenericJTSGraphTest {
     return false;
   }
 
+  /**
+   * A single search should find the shortest path to every target within the
+   * distance limit, and nothing beyond it. A reused finder shouldn't carry
+   * anything over, and should stop at its expansion limit.
+   */
+  @Test
+  public void testBoundedPathFinder() {
+
+    final List<LineString> graphEdges = Lists.newArrayList();
+    graphEdges.add(JTSFactoryFinder.getGeometryFactory()
+        .createLineString(
+            new Coordinate[] { new Coordinate(0, 0),
+                new Coordinate(10, 0) }));
+    graphEdges.add(JTSFactoryFinder.getGeometryFactory()
+        .createLineString(
+            new Coordinate[] { new Coordinate(10, 0),
+                new Coordinate(20, 0) }));
+    graphEdges.add(JTSFactoryFinder.getGeometryFactory()
+        .createLineString(
+            new Coordinate[] { new Coordinate(10, 0),
+                new Coordinate(10, 10), new Coordinate(20, 10),
+                new Coordinate(20, 0) }));
+    graphEdges.add(JTSFactoryFinder.getGeometryFactory()
+        .createLineString(
+            new Coordinate[] { new Coordinate(20, 0),
+                new Coordinate(100, 0) }));
+
+    final GenericJTSGraph graph =
+        new GenericJTSGraph(graphEdges, false);
+
+    final DirectedEdge startEdge =
+        (DirectedEdge) Iterables.getOnlyElement(
+            graph.getNearbyEdges(new Coordinate(1, 0), 0.5d))
+            .getBackingEdge();
+    final DirectedEdge farEdge =
+        (DirectedEdge) Iterables.getOnlyElement(
+            graph.getNearbyEdges(new Coordinate(50, 0), 0.5d))
+            .getBackingEdge();
+
+    final DirectedNode source = startEdge.getOutNode();
+    final DirectedNode middle = farEdge.getInNode();
+    final DirectedNode end = farEdge.getOutNode();
+
+    final DirectedGraphPathFinder pathFinder =
+        new DirectedGraphPathFinder();
+    pathFinder.calculate(source, Arrays.asList(middle, end), 50d,
+        Integer.MAX_VALUE);
+
+    AssertJUnit.assertEquals(Collections.singletonList(middle),
+        pathFinder.getReachedTargets());
+    AssertJUnit.assertEquals(10d, pathFinder.getDistance(middle),
+        1e-7);
+    AssertJUnit.assertEquals(1, pathFinder.getPathEdges(middle)
+        .size());
+    AssertJUnit.assertNull(pathFinder.getPathEdges(end));
+    AssertJUnit.assertFalse(pathFinder.isBudgetExhausted());
+
+    pathFinder.calculate(source, Arrays.asList(end), 200d,
+        Integer.MAX_VALUE);
+    AssertJUnit.assertEquals(Collections.singletonList(end),
+        pathFinder.getReachedTargets());
+    AssertJUnit.assertEquals(90d, pathFinder.getDistance(end), 1e-7);
+
+    pathFinder.calculate(source, Arrays.asList(end), 200d, 1);
+    AssertJUnit.assertTrue(pathFinder.getReachedTargets().isEmpty());
+    AssertJUnit.assertNull(pathFinder.getDistance(middle));
+    AssertJUnit.assertTrue(pathFinder.isBudgetExhausted());
+  }
+
+  /**
+   * Path searches run from several threads on one graph should all get the
+   * same results as a single search.
+   */
+  @Test
+  public void testSharedGraph() throws Exception {
+
+    final List<LineString> graphEdges = Lists.newArrayList();
+    graphEdges.add(JTSFactoryFinder.getGeometryFactory()
+        .createLineString(
+            new Coordinate[] { new Coordinate(0, 0),
+                new Coordinate(10, 0) }));
+    graphEdges.add(JTSFactoryFinder.getGeometryFactory()
+        .createLineString(
+            new Coordinate[] { new Coordinate(10, 0),
+                new Coordinate(20, 0) }));
+    graphEdges.add(JTSFactoryFinder.getGeometryFactory()
+        .createLineString(
+            new Coordinate[] { new Coordinate(10, 0),
+                new Coordinate(10, 10) }));
+
+    final GenericJTSGraph graph =
+        new GenericJTSGraph(graphEdges, false);
+
+    /*
+     * Every edge is available by a dense id, ordering agrees with
+     * equality, and edges without a reverse are their only topological
+     * equivalent.
+     */
+    AssertJUnit.assertEquals(graph.edgeToInfEdge.size(),
+        graph.edgesById.length);
+    for (final InferenceGraphEdge edge : graph.edgeToInfEdge.values()) {
+      AssertJUnit.assertTrue(edge.getEdgeId() >= 0
+          && edge.getEdgeId() < graph.edgesById.length);
+      AssertJUnit.assertSame(edge,
+          graph.getInferenceGraphEdge(edge.getEdgeId()));
+      AssertJUnit.assertFalse(edge.equals(graph
+          .getInferenceGraphEdge(edge.getEdgeId() + 1)));
+      for (final InferenceGraphEdge other : graph.edgeToInfEdge
+          .values()) {
+        AssertJUnit.assertEquals(edge.equals(other),
+            edge.compareTo(other) == 0);
+      }
+      AssertJUnit.assertEquals(0,
+          edge.compareTo(new InferenceGraphEdge(edge)));
+      AssertJUnit.assertEquals(1, graph.getTopoEquivEdges(edge)
+          .size());
+    }
+
+    final InferenceGraphSegment startLine =
+        Iterables.getOnlyElement(graph.getNearbyEdges(new Coordinate(
+            1, 0), 0.5d));
+
+    final Coordinate obsCoord = new Coordinate(15, 0);
+    final GpsObservation obs =
+        new GpsObservation("test", new Date(0l), obsCoord, null,
+            null, null, 0, null, new ProjectedCoordinate(null,
+                obsCoord, null));
+
+    final VehicleStateInitialParameters parameters =
+        new VehicleStateInitialParameters(VectorFactory.getDefault()
+            .copyArray(new double[] { 0d, 1d, 0d, 0d }),
+            VectorFactory.getDefault().createVector2D(1d, 1d),
+            Integer.MAX_VALUE, VectorFactory.getDefault()
+                .createVector1D(1e-4d), Integer.MAX_VALUE,
+            VectorFactory.getDefault().createVector2D(1e-4d, 1e-4d),
+            Integer.MAX_VALUE, VectorFactory.getDefault()
+                .createVector2D(1, Double.MAX_VALUE), VectorFactory
+                .getDefault().createVector2D(Double.MAX_VALUE, 1), 0,
+            2, 0);
+
+    final VehicleStateDistributionFactory<GpsObservation, GenericJTSGraph> factory =
+        new VehicleStateDistribution.VehicleStateDistributionFactory<GpsObservation, GenericJTSGraph>();
+    final VehicleStateDistribution<GpsObservation> currentState =
+        factory.createInitialVehicleState(parameters, graph, obs,
+            new Random(102343292l), new PathEdge(startLine, 0d, false));
+
+    final Set<Path> expected = graph.getPaths(currentState, obs);
+
+    final ExecutorService executor = Executors.newFixedThreadPool(4);
+    try {
+      final List<Future<Set<Path>>> results = Lists.newArrayList();
+      for (int i = 0; i < 40; i++) {
+        results.add(executor.submit(new Callable<Set<Path>>() {
+          @Override
+          public Set<Path> call() {
+            return graph.getPaths(currentState, obs);
+          }
+        }));
+      }
+      for (final Future<Set<Path>> result : results) {
+        AssertJUnit.assertEquals(expected, result.get());
+      }
+    } finally {
+      executor.shutdown();
+    }
+
+    /*
+     * Only the first search should have missed the cache, and
+     * turning it off shouldn't change the results.
+     */
+    AssertJUnit.assertEquals(1, graph.getPathCacheStats().missCount());
+    AssertJUnit.assertEquals(40, graph.getPathCacheStats().hitCount());
+
+    graph.setPathCacheSize(0);
+    AssertJUnit.assertNull(graph.getPathCacheStats());
+    AssertJUnit.assertEquals(expected,
+        graph.getPaths(currentState, obs));
+  }
+
   @Test
   public void testNoding() {
 
@@ -0,0 +1,114 @@
+package org.opentrackingtools.graph;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import org.geotools.geometry.jts.JTSFactoryFinder;
+import org.testng.AssertJUnit;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.LineString;
+
+public class SegmentIndexTest {
+
+  private GenericJTSGraph graph;
+  private SegmentIndex index;
+  private List<InferenceGraphSegment> segments;
+
+  @BeforeMethod
+  public void setUp() {
+    final Random rng = new Random(1234567);
+    final List<LineString> lines = Lists.newArrayList();
+    for (int i = 0; i < 200; i++) {
+      final Coordinate start =
+          new Coordinate(rng.nextDouble() * 2000d,
+              rng.nextDouble() * 1000d);
+      final Coordinate middle =
+          new Coordinate(start.x + rng.nextGaussian() * 50d, start.y
+              + rng.nextGaussian() * 50d);
+      final Coordinate end =
+          new Coordinate(middle.x + rng.nextGaussian() * 50d,
+              middle.y + rng.nextGaussian() * 50d);
+      lines.add(JTSFactoryFinder.getGeometryFactory().createLineString(
+          new Coordinate[] { start, middle, end }));
+    }
+    this.graph = new GenericJTSGraph(lines, false);
+    this.segments =
+        Lists.newArrayList(this.graph.getNearbyEdges(new Coordinate(
+            1000d, 500d), 1e5d));
+    this.index = new SegmentIndex(this.segments, 25d);
+  }
+
+  /**
+   * The k-nearest query should agree with sorting every segment by distance,
+   * including for points outside the indexed area.
+   */
+  @Test
+  public void testNearest() {
+    final Random rng = new Random(7654321);
+    for (int i = 0; i < 200; i++) {
+      final Coordinate coord =
+          new Coordinate(rng.nextDouble() * 3000d - 500d,
+              rng.nextDouble() * 2000d - 500d);
+      final int k = 1 + rng.nextInt(5);
+      final double maxRadius = rng.nextDouble() * 500d;
+
+      final List<InferenceGraphSegment> sorted =
+          Lists.newArrayList(this.segments);
+      Collections.sort(sorted, new Comparator<InferenceGraphSegment>() {
+        @Override
+        public int compare(InferenceGraphSegment o1,
+          InferenceGraphSegment o2) {
+          return Double.compare(o1.getLine().distance(coord), o2
+              .getLine().distance(coord));
+        }
+      });
+      final List<Double> expected = Lists.newArrayList();
+      for (final InferenceGraphSegment segment : sorted) {
+        final double distance = segment.getLine().distance(coord);
+        if (expected.size() == k || distance > maxRadius) {
+          break;
+        }
+        expected.add(distance);
+      }
+
+      final List<Double> actual = Lists.newArrayList();
+      for (final InferenceGraphSegment segment : this.index.getNearest(
+          coord, k, maxRadius)) {
+        actual.add(segment.getLine().distance(coord));
+      }
+      AssertJUnit.assertEquals(expected.size(), actual.size());
+      for (int j = 0; j < expected.size(); j++) {
+        AssertJUnit.assertEquals(expected.get(j), actual.get(j), 1e-9);
+      }
+    }
+  }
+
+  /**
+   * The radius query should return exactly what the graph's own index does.
+   */
+  @Test
+  public void testNearby() {
+    AssertJUnit.assertEquals(this.segments.size(),
+        this.index.getNumSegments());
+    final Random rng = new Random(7654321);
+    for (int i = 0; i < 200; i++) {
+      final Coordinate coord =
+          new Coordinate(rng.nextDouble() * 2200d - 100d,
+              rng.nextDouble() * 1200d - 100d);
+      final double radius = rng.nextDouble() * 150d;
+      final Collection<InferenceGraphSegment> expected =
+          this.graph.getNearbyEdges(coord, radius);
+      AssertJUnit.assertEquals(Sets.newHashSet(expected),
+          this.index.getNearby(coord, radius));
+    }
+  }
+
+}
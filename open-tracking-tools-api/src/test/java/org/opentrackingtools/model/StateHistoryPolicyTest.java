@@ -0,0 +1,143 @@
+package org.opentrackingtools.model;
+
+import gov.sandia.cognition.math.matrix.VectorFactory;
+
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+
+import org.geotools.geometry.jts.JTSFactoryFinder;
+import org.opentrackingtools.VehicleStateInitialParameters;
+import org.opentrackingtools.graph.GenericJTSGraph;
+import org.opentrackingtools.graph.InferenceGraphSegment;
+import org.opentrackingtools.model.VehicleStateDistribution.VehicleStateDistributionFactory;
+import org.opentrackingtools.paths.PathEdge;
+import org.testng.AssertJUnit;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Lists;
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.LineString;
+
+public class StateHistoryPolicyTest {
+
+  private static final int NUM_OBSERVATIONS = 1000;
+
+  private static int getNumParents(
+    VehicleStateDistribution<GpsObservation> state) {
+    int numParents = 0;
+    for (VehicleStateDistribution<GpsObservation> parent =
+        state.getParentState(); parent != null; parent =
+        parent.getParentState()) {
+      numParents++;
+    }
+    return numParents;
+  }
+
+  private static GpsObservation createObservation(int recordNumber) {
+    final Coordinate coord = new Coordinate(0, 0);
+    return new GpsObservation("test", new Date(recordNumber * 1000l),
+        coord, null, null, null, recordNumber, null,
+        new ProjectedCoordinate(null, coord, null));
+  }
+
+  private static VehicleStateDistribution<GpsObservation>
+      createInitialState() {
+    final List<LineString> edges = Lists.newArrayList();
+    edges.add(JTSFactoryFinder.getGeometryFactory().createLineString(
+        new Coordinate[] { new Coordinate(0, 0),
+            new Coordinate(10, 0) }));
+    final GenericJTSGraph graph = new GenericJTSGraph(edges, false);
+    final InferenceGraphSegment startLine =
+        Iterables.getOnlyElement(graph.getNearbyEdges(new Coordinate(
+            0, 0), 0.5d));
+
+    final VehicleStateInitialParameters parameters =
+        new VehicleStateInitialParameters(VectorFactory.getDefault()
+            .copyArray(new double[] { 0d, 1d, 0d, 0d }),
+            VectorFactory.getDefault().createVector2D(1d, 1d),
+            Integer.MAX_VALUE, VectorFactory.getDefault()
+                .createVector1D(1e-4d), Integer.MAX_VALUE,
+            VectorFactory.getDefault().createVector2D(1e-4d, 1e-4d),
+            Integer.MAX_VALUE, VectorFactory.getDefault()
+                .createVector2D(1, Double.MAX_VALUE), VectorFactory
+                .getDefault().createVector2D(Double.MAX_VALUE, 1), 1,
+            1, 0);
+
+    final VehicleStateDistributionFactory<GpsObservation, GenericJTSGraph> factory =
+        new VehicleStateDistribution.VehicleStateDistributionFactory<GpsObservation, GenericJTSGraph>();
+    return factory.createInitialVehicleState(parameters, graph,
+        StateHistoryPolicyTest.createObservation(0), new Random(
+            102343292l), new PathEdge(startLine, 0d, false));
+  }
+
+  /**
+   * Extends the state's lineage the way the filters do: each new state is a
+   * clone of the last with the last as its parent, and the policy is applied
+   * once it's "updated".
+   */
+  private static VehicleStateDistribution<GpsObservation> propagate(
+    VehicleStateDistribution<GpsObservation> state,
+    StateHistoryPolicy policy, int numSteps) {
+    final int firstRecordNumber =
+        state.getObservation().getRecordNumber() + 1;
+    for (int i = 0; i < numSteps; i++) {
+      final VehicleStateDistribution<GpsObservation> nextState =
+          state.clone();
+      nextState.setParentState(state);
+      nextState.setObservation(StateHistoryPolicyTest
+          .createObservation(firstRecordNumber + i));
+      policy.apply(nextState);
+      state = nextState;
+    }
+    return state;
+  }
+
+  @DataProvider
+  public Object[][] policyData() {
+    return new Object[][] {
+        new Object[] { StateHistoryPolicy.none(), 0, 0 },
+        new Object[] { StateHistoryPolicy.fixedLag(1), 1, 0 },
+        new Object[] { StateHistoryPolicy.fixedLag(5), 5, 0 },
+        new Object[] { StateHistoryPolicy.compact(10), 0, 10 } };
+  }
+
+  @Test
+  public void testCompactHistory() {
+    final VehicleStateDistribution<GpsObservation> state =
+        StateHistoryPolicyTest.propagate(StateHistoryPolicyTest
+            .createInitialState(), StateHistoryPolicy.compact(3), 5);
+
+    final StateHistoryRecord history = state.getHistory();
+    AssertJUnit.assertEquals(3, history.getLength());
+    AssertJUnit.assertEquals(4, history.getRecordNumber());
+    AssertJUnit.assertEquals(3, history.getPrevious().getRecordNumber());
+    AssertJUnit.assertEquals(2, history.getPrevious().getPrevious()
+        .getRecordNumber());
+    AssertJUnit.assertNotNull(history.getEdge());
+    AssertJUnit.assertEquals(4, history.getGroundState().length);
+  }
+
+  /**
+   * No matter how many observations a lineage has seen, it should never hold
+   * more than the policy's depth of ancestors. The heap check for long
+   * lineages is StateHistoryFootprint, in the benchmarks project.
+   */
+  @Test(dataProvider = "policyData")
+  public void testBoundedHistory(StateHistoryPolicy policy,
+    int expectedParents, int expectedRecords) {
+    final VehicleStateDistribution<GpsObservation> state =
+        StateHistoryPolicyTest.propagate(StateHistoryPolicyTest
+            .createInitialState(), policy,
+            StateHistoryPolicyTest.NUM_OBSERVATIONS);
+
+    AssertJUnit.assertEquals(expectedParents,
+        StateHistoryPolicyTest.getNumParents(state));
+    AssertJUnit.assertEquals(expectedRecords,
+        state.getHistory() == null ? 0 : state.getHistory()
+            .getLength());
+  }
+
+}
@@ -162,6 +162,36 @@ public class PathTest {
 
   }
 
+  /**
+   * Prefixes share their path's edges and distances, and should be
+   * indistinguishable from paths built from the same edges.
+   */
+  @Test
+  public void testPathPrefixes() {
+    final Path path =
+        TestUtils.makeTmpPath(this.graph, false, new Coordinate(0, 0),
+            new Coordinate(0, 10), new Coordinate(10, 10), new Coordinate(
+                10, 30));
+
+    for (int i = 0; i < path.getPathEdges().size(); i++) {
+      final PathEdge edge = path.getPathEdges().get(i);
+      final Path prefix = path.getPathTo(edge);
+      final Path expected =
+          new Path(path.getPathEdges().subList(0, i + 1), false);
+
+      AssertJUnit.assertEquals(expected, prefix);
+      AssertJUnit.assertEquals(expected.hashCode(), prefix.hashCode());
+      AssertJUnit.assertEquals(expected.getTotalPathDistance(),
+          prefix.getTotalPathDistance(), 0d);
+      AssertJUnit.assertEquals(expected.getTotalPathDistance(), expected
+          .getGeometry().getLength(), 0d);
+      AssertJUnit.assertTrue(expected.getGeometry().equalsExact(
+          prefix.getGeometry()));
+      AssertJUnit.assertEquals(expected, path.getPathTo(edge
+          .getDistToStartOfEdge() + edge.getLength() / 2d));
+    }
+  }
+
   @Test
   public void testPathStateConvert1() {
     final Path startPath =
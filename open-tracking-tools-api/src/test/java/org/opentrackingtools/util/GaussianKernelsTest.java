@@ -0,0 +1,122 @@
+package org.opentrackingtools.util;
+
+import gov.sandia.cognition.math.matrix.Matrix;
+import gov.sandia.cognition.math.matrix.MatrixFactory;
+import gov.sandia.cognition.math.matrix.Vector;
+import gov.sandia.cognition.math.matrix.VectorFactory;
+import gov.sandia.cognition.statistics.distribution.MultivariateGaussian;
+
+import java.util.Random;
+
+import org.testng.AssertJUnit;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+import org.testng.internal.junit.ArrayAsserts;
+
+public class GaussianKernelsTest {
+
+  @DataProvider
+  private static final Object[][] dimensions() {
+    return new Object[][] { { 1 }, { 2 }, { 4 } };
+  }
+
+  private static Matrix createCovariance(int dim, Random rng) {
+    final Matrix root =
+        MatrixFactory.getDefault().createUniformRandom(dim, dim, -1d,
+            1d, rng);
+    return root.times(root.transpose()).plus(
+        MatrixFactory.getDefault().createIdentity(dim, dim).scale(0.5d));
+  }
+
+  private static double[] toArray(Matrix matrix) {
+    final double[] result =
+        new double[matrix.getNumRows() * matrix.getNumColumns()];
+    GaussianKernels.copy(matrix, result);
+    return result;
+  }
+
+  private static double[] toArray(Vector vector) {
+    final double[] result = new double[vector.getDimensionality()];
+    GaussianKernels.copy(vector, result);
+    return result;
+  }
+
+  @Test(dataProvider = "dimensions")
+  public void testCholesky(int dim) {
+    final Matrix cov =
+        GaussianKernelsTest.createCovariance(dim, new Random(1234l));
+    final double[] l = new double[dim * dim];
+    AssertJUnit.assertTrue(GaussianKernels.cholesky(
+        GaussianKernelsTest.toArray(cov), dim, l));
+
+    final Matrix lMatrix = MatrixFactory.getDefault().createMatrix(dim, dim);
+    for (int i = 0; i < dim; i++) {
+      for (int j = 0; j < dim; j++) {
+        lMatrix.setElement(i, j, l[i * dim + j]);
+      }
+    }
+    AssertJUnit.assertTrue(cov.equals(
+        lMatrix.times(lMatrix.transpose()), 1e-10));
+
+    final double[] singular = new double[dim * dim];
+    AssertJUnit.assertFalse(GaussianKernels.cholesky(singular, dim, l));
+  }
+
+  @Test(dataProvider = "dimensions")
+  public void testLogEvaluateNormal(int dim) {
+    final Random rng = new Random(1234l);
+    final Matrix cov = GaussianKernelsTest.createCovariance(dim, rng);
+    final Vector mean =
+        VectorFactory.getDefault().createUniformRandom(dim, -1d, 1d,
+            rng);
+    final Vector x =
+        VectorFactory.getDefault().createUniformRandom(dim, -1d, 1d,
+            rng);
+
+    final double expected =
+        new MultivariateGaussian(mean, cov).getProbabilityFunction()
+            .logEvaluate(x);
+    AssertJUnit.assertEquals(expected, GaussianKernels
+        .logEvaluateNormal(GaussianKernelsTest.toArray(x),
+            GaussianKernelsTest.toArray(mean),
+            GaussianKernelsTest.toArray(cov), dim), 1e-10);
+    AssertJUnit.assertEquals(expected,
+        StatisticsUtil.logEvaluateNormal(x, mean, cov), 1e-10);
+    AssertJUnit.assertEquals(expected, StatisticsUtil.logEvaluateNormal(x,
+        mean, cov, new GaussianKernels.Workspace()), 1e-10);
+  }
+
+  @Test(dataProvider = "dimensions")
+  public void testUpdate(int dim) {
+    final Random rng = new Random(1234l);
+    final Matrix cov = GaussianKernelsTest.createCovariance(dim, rng);
+    final Vector mean =
+        VectorFactory.getDefault().createUniformRandom(dim, -1d, 1d,
+            rng);
+
+    final int obsDim = Math.min(dim, 2);
+    final Matrix h =
+        MatrixFactory.getDefault().createUniformRandom(obsDim, dim, -1d,
+            1d, rng);
+    final Matrix r = GaussianKernelsTest.createCovariance(obsDim, rng);
+    final Vector z =
+        VectorFactory.getDefault().createUniformRandom(obsDim, -1d, 1d,
+            rng);
+
+    final Matrix gain =
+        cov.times(h.transpose()).times(
+            h.times(cov).times(h.transpose()).plus(r).inverse());
+    final double[] postMean = new double[dim];
+    final double[] postCov = new double[dim * dim];
+    AssertJUnit.assertTrue(GaussianKernels.update(
+        GaussianKernelsTest.toArray(mean),
+        GaussianKernelsTest.toArray(cov), GaussianKernelsTest.toArray(h),
+        GaussianKernelsTest.toArray(r), GaussianKernelsTest.toArray(z),
+        dim, obsDim, postMean, postCov));
+    ArrayAsserts.assertArrayEquals(GaussianKernelsTest.toArray(mean
+        .plus(gain.times(z.minus(h.times(mean))))), postMean, 1e-10);
+    ArrayAsserts.assertArrayEquals(GaussianKernelsTest.toArray(cov
+        .minus(gain.times(h).times(cov))), postCov, 1e-10);
+  }
+
+}
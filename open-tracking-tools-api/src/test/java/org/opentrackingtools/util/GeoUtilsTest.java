@@ -3,6 +3,7 @@ package org.opentrackingtools.util;
 import org.opengis.referencing.operation.MathTransform;
 import org.opengis.referencing.operation.NoninvertibleTransformException;
 import org.opengis.referencing.operation.TransformException;
+import org.testng.AssertJUnit;
 import org.testng.annotations.DataProvider;
 import org.testng.annotations.Test;
 import org.testng.internal.junit.ArrayAsserts;
@@ -26,6 +27,41 @@ public class GeoUtilsTest {
             latLngAgain.x, latLngAgain.y }, 1e-4);
   }
 
+  @Test
+  public void testBatchConversion() throws TransformException {
+    final Object[][] data = this.coordinateData();
+    final double[] latLons = new double[2 * data.length];
+    for (int i = 0; i < data.length; i++) {
+      final Coordinate latLng = (Coordinate) data[i][0];
+      latLons[2 * i] = latLng.x;
+      latLons[2 * i + 1] = latLng.y;
+    }
+
+    final double[] xys = GeoUtils.convertToEuclidean(latLons);
+
+    for (int i = 0; i < data.length; i++) {
+      final Coordinate latLng = (Coordinate) data[i][0];
+      final Coordinate xy = GeoUtils.convertToEuclidean(latLng);
+      ArrayAsserts.assertArrayEquals(new double[] { xy.x, xy.y },
+          new double[] { xys[2 * i], xys[2 * i + 1] }, 1e-7);
+
+      final double[] latLngAgain =
+          GeoUtils.convertToLatLon(
+              new double[] { xys[2 * i], xys[2 * i + 1] },
+              GeoUtils.getEPSGCodefromUTS(latLng));
+      ArrayAsserts.assertArrayEquals(new double[] { latLng.x,
+          latLng.y }, latLngAgain, 1e-4);
+    }
+
+    /*
+     * Transforms are looked up once per zone.
+     */
+    final Coordinate latLng = (Coordinate) data[0][0];
+    AssertJUnit.assertSame(GeoUtils.getTransform(latLng),
+        GeoUtils.getTransform(new Coordinate(latLng.x + 0.1,
+            latLng.y + 0.1)));
+  }
+
   @DataProvider
   public Object[][] coordinateData() {
     return new Object[][] {
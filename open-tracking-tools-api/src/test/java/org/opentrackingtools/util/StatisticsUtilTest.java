@@ -4,8 +4,10 @@ import gov.sandia.cognition.math.matrix.Matrix;
 import gov.sandia.cognition.math.matrix.MatrixFactory;
 import gov.sandia.cognition.math.matrix.Vector;
 import gov.sandia.cognition.math.matrix.VectorFactory;
+import gov.sandia.cognition.math.matrix.decomposition.AbstractSingularValueDecomposition;
 import gov.sandia.cognition.math.matrix.mtj.DenseMatrix;
 import gov.sandia.cognition.math.matrix.mtj.decomposition.CholeskyDecompositionMTJ;
+import gov.sandia.cognition.math.matrix.mtj.decomposition.SingularValueDecompositionMTJ;
 import gov.sandia.cognition.statistics.distribution.InverseWishartDistribution;
 import gov.sandia.cognition.statistics.distribution.MultivariateGaussian;
 
@@ -72,6 +74,39 @@ public class StatisticsUtilTest {
     AssertJUnit.assertTrue(mat.equals(cov1, 1e-5));
   }
 
+  /**
+   * The closed-form 2x2 decomposition should agree with MTJ's, including for
+   * the degenerate covariances of the road states.
+   */
+  @Test
+  public void testSymmetric2x2Svd() {
+    final Matrix[] mats =
+        {
+            MatrixFactory.getDefault().copyArray(
+                new double[][] { { 4d, 1d }, { 1d, 3d } }),
+            MatrixFactory.getDefault().copyArray(
+                new double[][] { { 1d, 2d }, { 2d, 4d } }),
+            MatrixFactory.getDefault().copyArray(
+                new double[][] { { 0.5d, 0d }, { 0d, 2d } }) };
+    for (final Matrix mat : mats) {
+      final SvdMatrix svdMat = new SvdMatrix(mat);
+      AssertJUnit.assertNull(svdMat.svd);
+
+      final AbstractSingularValueDecomposition svd = svdMat.getSvd();
+      final AbstractSingularValueDecomposition mtjSvd =
+          SingularValueDecompositionMTJ.create(mat);
+      AssertJUnit.assertTrue(mtjSvd.getS().equals(svd.getS(), 1e-10));
+      AssertJUnit.assertTrue(mat.equals(
+          svd.getU().times(svd.getS()).times(svd.getVtranspose()),
+          1e-10));
+      AssertJUnit.assertTrue(StatisticsUtil.isPosSemiDefinite(svdMat));
+
+      AssertJUnit.assertEquals(
+          3d * Math.sqrt(mtjSvd.getS().getElement(0, 0)),
+          StatisticsUtil.getLargeNormalCovRadius(mat), 1e-10);
+    }
+  }
+
   @Test
   public void testInvWishartSampling() {
     final Random rng = //new Random();
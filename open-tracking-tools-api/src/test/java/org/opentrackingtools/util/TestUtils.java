@@ -116,6 +116,17 @@ public class TestUtils {
     return edges;
   }
 
+  /*
+   * Edges with different ids are never equal, so every temporary edge over
+   * the same line needs the same id.  Deriving it from the line, rather
+   * than numbering lines as they're seen, keeps tests independent of each
+   * other; lines that happen to share an id are still told apart by their
+   * geometries.
+   */
+  private static int getTmpEdgeId(Coordinate from, Coordinate to) {
+    return Arrays.asList(from, to).hashCode() & Integer.MAX_VALUE;
+  }
+
   public static LineString makeGeometry(Coordinate v0, Coordinate v1) {
     final GeometryFactory gf = new GeometryFactory();
     final Coordinate[] coordinates = new Coordinate[] { v0, v1 };
@@ -142,7 +153,8 @@ public class TestUtils {
         Mockito.stub(graph.edgeHasReverse(geom)).toReturn(false);
 
         final InferenceGraphEdge ie =
-            new InferenceGraphEdge(geom, geom, 1000 + i, graph);
+            new InferenceGraphEdge(geom, geom, TestUtils.getTmpEdgeId(
+                lastCoord, coord), graph);
 
         edges.add(ie);
       }
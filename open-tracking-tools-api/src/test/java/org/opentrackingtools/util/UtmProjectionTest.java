@@ -0,0 +1,82 @@
+package org.opentrackingtools.util;
+
+import org.geotools.geometry.jts.JTS;
+import org.opengis.referencing.operation.MathTransform;
+import org.opengis.referencing.operation.TransformException;
+import org.testng.AssertJUnit;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import com.vividsolutions.jts.geom.Coordinate;
+
+public class UtmProjectionTest {
+
+  @DataProvider
+  public Object[][] coordinateData() {
+    return new Object[][] {
+        new Object[] { new Coordinate(42.017, -87.675) },
+        new Object[] { new Coordinate(40.756, -73.981) },
+        new Object[] { new Coordinate(-28.78, -65.63) },
+        new Object[] { new Coordinate(31.7, 35.0) },
+        new Object[] { new Coordinate(11.4, 122.8) },
+        /*
+         * Near a zone edge, the equator and the poles.
+         */
+        new Object[] { new Coordinate(45.1, -84.01) },
+        new Object[] { new Coordinate(0.0001, 3.2) },
+        new Object[] { new Coordinate(-0.5, 178.9) },
+        new Object[] { new Coordinate(79.5, 20.3) },
+        new Object[] { new Coordinate(-79.5, -170.2) } };
+  }
+
+  /**
+   * The built-in projection should agree with GeoTools to within a centimeter,
+   * since GeoTools' series is less accurate away from the central meridian,
+   * and should invert its own output exactly.
+   */
+  @Test(dataProvider = "coordinateData")
+  public void testAgainstGeoTools(Coordinate latLon)
+      throws TransformException {
+    final int epsgCode = GeoUtils.getEPSGCodefromUTS(latLon);
+    final MathTransform transform = GeoUtils.getTransform(epsgCode);
+    AssertJUnit.assertEquals(Integer.valueOf(epsgCode),
+        GeoUtils.getEPSGCode(transform));
+
+    final Coordinate expectedXy = new Coordinate();
+    JTS.transform(latLon, expectedXy, transform);
+
+    final Coordinate xy = new Coordinate();
+    UtmProjection.project(latLon.x, latLon.y, epsgCode, xy);
+    AssertJUnit.assertEquals(expectedXy.x, xy.x, 1e-2);
+    AssertJUnit.assertEquals(expectedXy.y, xy.y, 1e-2);
+
+    final Coordinate expectedLatLon = new Coordinate();
+    JTS.transform(expectedXy, expectedLatLon,
+        GeoUtils.getInverseTransform(epsgCode));
+
+    final Coordinate latLonAgain = new Coordinate();
+    UtmProjection.unproject(xy.x, xy.y, epsgCode, latLonAgain);
+    AssertJUnit.assertEquals(expectedLatLon.x, latLonAgain.x, 1e-7);
+    AssertJUnit.assertEquals(expectedLatLon.y, latLonAgain.y, 1e-7);
+    AssertJUnit.assertEquals(latLon.x, latLonAgain.x, 1e-8);
+    AssertJUnit.assertEquals(latLon.y, latLonAgain.y, 1e-8);
+  }
+
+  @Test
+  public void testGeoUtilsBuiltInProjection() throws TransformException {
+    final Coordinate latLon = new Coordinate(42.017, -87.675);
+    final Coordinate expectedXy =
+        GeoUtils.convertToEuclidean(latLon, false);
+
+    final Coordinate xy = GeoUtils.convertToEuclidean(latLon, true);
+    AssertJUnit.assertEquals(expectedXy.x, xy.x, 1e-3);
+    AssertJUnit.assertEquals(expectedXy.y, xy.y, 1e-3);
+
+    final Coordinate latLonAgain =
+        GeoUtils.convertToLatLon(GeoUtils.getTransform(latLon), xy,
+            true);
+    AssertJUnit.assertEquals(latLon.x, latLonAgain.x, 1e-8);
+    AssertJUnit.assertEquals(latLon.y, latLonAgain.y, 1e-8);
+  }
+
+}
@@ -0,0 +1,144 @@
+package org.opentrackingtools.util.metrics;
+
+import gov.sandia.cognition.math.matrix.VectorFactory;
+import gov.sandia.cognition.statistics.DataDistribution;
+
+import java.lang.management.ManagementFactory;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.geotools.geometry.jts.JTSFactoryFinder;
+import org.opentrackingtools.VehicleStateInitialParameters;
+import org.opentrackingtools.VehicleStatePLFilter;
+import org.opentrackingtools.graph.GenericJTSGraph;
+import org.opentrackingtools.model.GpsObservation;
+import org.opentrackingtools.model.ProjectedCoordinate;
+import org.opentrackingtools.model.VehicleStateDistribution;
+import org.opentrackingtools.model.VehicleStateDistribution.VehicleStateDistributionFactory;
+import org.testng.AssertJUnit;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.Test;
+
+import com.google.common.collect.Lists;
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.LineString;
+
+public class MetricsTest {
+
+  @AfterMethod
+  public void tearDown() throws Exception {
+    Metrics.disable();
+  }
+
+  @Test
+  public void testDisabled() {
+    Metrics.setRegistry(null);
+    AssertJUnit.assertFalse(Metrics.isEnabled());
+    final long start = Metrics.startTimer();
+    Metrics.increment(Metrics.RESAMPLES, 1);
+
+    /*
+     * A timer started while disabled isn't recorded.
+     */
+    final SimpleMetricsRegistry registry = new SimpleMetricsRegistry();
+    Metrics.setRegistry(registry);
+    Metrics.stopTimer(Metrics.UPDATE_TIME, start);
+    AssertJUnit.assertNull(registry.getSummary(Metrics.UPDATE_TIME));
+    AssertJUnit.assertEquals(0l, registry.getCounter(Metrics.RESAMPLES));
+  }
+
+  @Test
+  public void testFilterUpdate() {
+    final SimpleMetricsRegistry registry = new SimpleMetricsRegistry();
+    Metrics.setRegistry(registry);
+
+    final List<LineString> edges = Lists.newArrayList();
+    edges.add(JTSFactoryFinder.getGeometryFactory().createLineString(
+        new Coordinate[] { new Coordinate(0, 0),
+            new Coordinate(100, 0), }));
+    final GenericJTSGraph graph = new GenericJTSGraph(edges, false);
+    final VehicleStateInitialParameters parameters =
+        new VehicleStateInitialParameters(VectorFactory.getDefault()
+            .copyArray(new double[] { 0d, 1d, 0d, 0d }),
+            VectorFactory.getDefault().createVector2D(0.02d, 0.02d),
+            Integer.MAX_VALUE, VectorFactory.getDefault()
+                .createVector1D(1e-4d), Integer.MAX_VALUE,
+            VectorFactory.getDefault().createVector2D(1e-4d, 1e-4d),
+            Integer.MAX_VALUE, VectorFactory.getDefault()
+                .createVector2D(1, Double.MAX_VALUE), VectorFactory
+                .getDefault().createVector2D(Double.MAX_VALUE, 1), 10,
+            1, 0);
+
+    final Coordinate initialObsCoord = new Coordinate(0, 0);
+    GpsObservation obs =
+        new GpsObservation("test", new Date(0l), initialObsCoord, null,
+            null, null, 0, null, new ProjectedCoordinate(null,
+                initialObsCoord, null));
+    final VehicleStatePLFilter<GpsObservation, GenericJTSGraph> filter =
+        new VehicleStatePLFilter<GpsObservation, GenericJTSGraph>(obs,
+            graph,
+            new VehicleStateDistributionFactory<GpsObservation, GenericJTSGraph>(),
+            parameters, false, new Random(102343292l));
+    final DataDistribution<VehicleStateDistribution<GpsObservation>> particles =
+        filter.getUpdater().createInitialParticles(10);
+
+    for (int i = 1; i <= 5; i++) {
+      final Coordinate obsCoord = new Coordinate(i, 0);
+      obs =
+          new GpsObservation("test", new Date(i * 1000l), obsCoord, null,
+              null, null, i, obs, new ProjectedCoordinate(null, obsCoord,
+                  null));
+      filter.update(particles, obs);
+    }
+
+    AssertJUnit.assertEquals(5l, registry.getSummary(Metrics.UPDATE_TIME)
+        .getCount());
+    AssertJUnit.assertEquals(5l, registry.getCounter(Metrics.RESAMPLES));
+    AssertJUnit.assertEquals(10l, registry.getSummary(Metrics.PARTICLES)
+        .getMax());
+    final long numPredictions =
+        registry.getSummary(Metrics.PATH_SEARCH_TIME).getCount();
+    AssertJUnit.assertTrue(numPredictions >= 5 * 10);
+    AssertJUnit.assertEquals(numPredictions, registry.getSummary(
+        Metrics.PATHS_PER_PARTICLE).getCount());
+    AssertJUnit.assertTrue(registry.getSummary(
+        Metrics.PATHS_PER_PARTICLE).getMax() >= 1);
+    AssertJUnit.assertTrue(registry.getSummary(Metrics.LIKELIHOOD_TIME)
+        .getCount() >= numPredictions);
+    AssertJUnit.assertEquals(5l * 10, registry.getSummary(
+        Metrics.COVARIANCE_SAMPLING_TIME).getCount());
+  }
+
+  @Test
+  public void testJmx() throws Exception {
+    final JmxMetricsRegistry registry = Metrics.enableJmx();
+    Metrics.increment(Metrics.PATH_CACHE_HITS, 3);
+    Metrics.record(Metrics.PATHS_PER_PARTICLE, 2);
+    Metrics.record(Metrics.PATHS_PER_PARTICLE, 4);
+
+    final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+    final ObjectName name =
+        new ObjectName(JmxMetricsRegistry.DEFAULT_OBJECT_NAME);
+    AssertJUnit.assertEquals(name, registry.getObjectName());
+    AssertJUnit.assertEquals(3l,
+        server.getAttribute(name, Metrics.PATH_CACHE_HITS));
+    AssertJUnit.assertEquals(2l, server.getAttribute(name,
+        Metrics.PATHS_PER_PARTICLE + ".count"));
+    AssertJUnit.assertEquals(4l, server.getAttribute(name,
+        Metrics.PATHS_PER_PARTICLE + ".max"));
+    AssertJUnit.assertEquals(3d, server.getAttribute(name,
+        Metrics.PATHS_PER_PARTICLE + ".mean"));
+
+    server.invoke(name, "reset", new Object[0], new String[0]);
+    AssertJUnit.assertEquals(0l,
+        registry.getCounter(Metrics.PATH_CACHE_HITS));
+
+    Metrics.disable();
+    AssertJUnit.assertFalse(server.isRegistered(name));
+  }
+
+}
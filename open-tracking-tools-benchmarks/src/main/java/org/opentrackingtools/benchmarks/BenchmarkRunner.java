@@ -0,0 +1,34 @@
+package org.opentrackingtools.benchmarks;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs all the benchmarks with the GC profiler, which adds allocation rates
+ * (<code>gc.alloc.rate.norm</code> is bytes per operation) to the throughput
+ * numbers, and writes the results as JSON so that runs of different versions
+ * can be compared. Any JMH command-line options override these defaults.
+ */
+public class BenchmarkRunner {
+
+  public static final String DEFAULT_RESULT_FILE = "jmh-results.json";
+
+  public static void main(String[] args)
+      throws CommandLineOptionException, RunnerException {
+    final Options options =
+        new OptionsBuilder()
+            .parent(new CommandLineOptions(args))
+            .include(BenchmarkRunner.class.getPackage().getName()
+                + ".*").addProfiler(GCProfiler.class)
+            .resultFormat(ResultFormatType.JSON)
+            .result(BenchmarkRunner.DEFAULT_RESULT_FILE).build();
+    new Runner(options).run();
+  }
+
+}
@@ -0,0 +1,64 @@
+package org.opentrackingtools.benchmarks;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.opentrackingtools.distributions.CountedDataDistribution;
+import org.opentrackingtools.distributions.ResamplingScheme;
+
+/**
+ * Measures resampling from a log-scale distribution with skewed weights, like
+ * the filters' predictive distributions, for each resampling scheme. A single
+ * draw uses the cached alias table.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Thread)
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+public class CountedDataDistributionBenchmark {
+
+  @Param({ "100", "1000", "10000" })
+  public int domainSize;
+
+  @Param({ "MULTINOMIAL", "RESIDUAL", "STRATIFIED", "SYSTEMATIC" })
+  public ResamplingScheme scheme;
+
+  private CountedDataDistribution<Integer> distribution;
+  private Random random;
+
+  @Benchmark
+  public List<Integer> resample() {
+    return this.distribution.sample(this.random, this.domainSize,
+        this.scheme);
+  }
+
+  @Benchmark
+  public Integer sample() {
+    return this.distribution.sample(this.random);
+  }
+
+  @Setup
+  public void setUp() {
+    final Random weightRandom = new Random(SimulatedTrace.DEFAULT_SEED);
+    this.distribution = new CountedDataDistribution<Integer>(true);
+    for (int i = 0; i < this.domainSize; i++) {
+      this.distribution.increment(i, 5d * weightRandom.nextGaussian(), 1);
+    }
+    this.random = new Random(SimulatedTrace.DEFAULT_SEED);
+  }
+
+}
@@ -0,0 +1,77 @@
+package org.opentrackingtools.benchmarks;
+
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.opentrackingtools.graph.GenericJTSGraph;
+import org.opentrackingtools.graph.InferenceGraphSegment;
+import org.opentrackingtools.paths.Path;
+
+/**
+ * Measures the graph searches made for every particle: path search between
+ * consecutive simulated states, and the nearby-edge lookup around each
+ * observation. The path cache is a parameter, since with it on the path
+ * searches are mostly cache hits after the first pass over the trace.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Thread)
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+public class GenericJTSGraphBenchmark {
+
+  @Param({ "0", "10000" })
+  public long pathCacheSize;
+
+  @Param({ "50" })
+  public double radius;
+
+  private int nearbyIndex;
+  private int pathsIndex;
+  private SimulatedTrace trace;
+
+  @Benchmark
+  public Collection<InferenceGraphSegment> getNearbyEdges() {
+    if (this.nearbyIndex >= this.trace.size()) {
+      this.nearbyIndex = 0;
+    }
+    return this.trace.getGraph().getNearbyEdges(
+        this.trace.getObservation(this.nearbyIndex++)
+            .getObsProjected(), this.radius);
+  }
+
+  @Benchmark
+  public Collection<Path> getPaths() {
+    if (this.pathsIndex >= this.trace.size()) {
+      this.pathsIndex = 1;
+    }
+    final Collection<Path> paths =
+        this.trace.getGraph().getPaths(
+            this.trace.getStates().get(this.pathsIndex - 1),
+            this.trace.getObservation(this.pathsIndex));
+    this.pathsIndex++;
+    return paths;
+  }
+
+  @Setup
+  public void setUp() {
+    this.trace = new SimulatedTrace();
+    final GenericJTSGraph graph = this.trace.getGraph();
+    graph.setPathCacheSize(this.pathCacheSize);
+    this.nearbyIndex = 0;
+    this.pathsIndex = 1;
+  }
+
+}
@@ -0,0 +1,66 @@
+package org.opentrackingtools.benchmarks;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.opentrackingtools.distributions.AdjMultivariateGaussian;
+import org.opentrackingtools.model.GpsObservation;
+import org.opentrackingtools.model.VehicleStateDistribution;
+import org.opentrackingtools.paths.PathState;
+import org.opentrackingtools.util.PathUtils;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+
+/**
+ * Measures the projection of each simulated observation onto its true state's
+ * path, as done in the measurement update of every on-road particle.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Thread)
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+public class PathUtilsBenchmark {
+
+  private int index;
+  private List<VehicleStateDistribution<GpsObservation>> onRoadStates;
+
+  @Benchmark
+  public AdjMultivariateGaussian getRoadObservation() {
+    if (this.index >= this.onRoadStates.size()) {
+      this.index = 0;
+    }
+    final VehicleStateDistribution<GpsObservation> state =
+        this.onRoadStates.get(this.index++);
+    final PathState pathState = state.getPathStateParam().getValue();
+    return PathUtils.getRoadObservation(state.getObservation()
+        .getProjectedPoint(), state.getObservationCovarianceParam()
+        .getValue(), pathState.getPath(), pathState.getEdge());
+  }
+
+  @Setup
+  public void setUp() {
+    this.onRoadStates = Lists.newArrayList();
+    for (final VehicleStateDistribution<GpsObservation> state : new SimulatedTrace()
+        .getStates()) {
+      if (state.getPathStateParam().getValue().isOnRoad()) {
+        this.onRoadStates.add(state);
+      }
+    }
+    Preconditions.checkState(!this.onRoadStates.isEmpty());
+    this.index = 0;
+  }
+
+}
@@ -0,0 +1,146 @@
+package org.opentrackingtools.benchmarks;
+
+import gov.sandia.cognition.math.matrix.VectorFactory;
+
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+import org.geotools.geometry.jts.JTSFactoryFinder;
+import org.opengis.referencing.operation.TransformException;
+import org.opentrackingtools.VehicleStateInitialParameters;
+import org.opentrackingtools.graph.GenericJTSGraph;
+import org.opentrackingtools.model.GpsObservation;
+import org.opentrackingtools.model.VehicleStateDistribution;
+import org.opentrackingtools.util.Simulation;
+import org.opentrackingtools.util.Simulation.SimulationParameters;
+
+import com.google.common.collect.Lists;
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.GeometryFactory;
+import com.vividsolutions.jts.geom.LineString;
+
+/**
+ * A vehicle simulated with {@link Simulation} on a square grid of two-way
+ * roads. Everything is generated from fixed seeds, so every benchmark run, and
+ * every version of the library, sees the same graph and observations.
+ */
+public class SimulatedTrace {
+
+  public static final double DEFAULT_BLOCK_LENGTH = 100d;
+  public static final int DEFAULT_NUM_BLOCKS = 20;
+  public static final int DEFAULT_NUM_OBSERVATIONS = 200;
+  public static final long DEFAULT_SEED = 2159585l;
+
+  /**
+   * Creates the lines of a grid with <code>numBlocks</code> blocks on each
+   * side, starting at the origin, with one line per block side and direction.
+   */
+  public static List<LineString> createGridLines(int numBlocks,
+    double blockLength) {
+    final GeometryFactory factory =
+        JTSFactoryFinder.getGeometryFactory();
+    final List<LineString> lines = Lists.newArrayList();
+    for (int i = 0; i <= numBlocks; i++) {
+      for (int j = 0; j < numBlocks; j++) {
+        final Coordinate[] horizontal =
+            new Coordinate[] {
+                new Coordinate(j * blockLength, i * blockLength),
+                new Coordinate((j + 1) * blockLength, i * blockLength) };
+        final Coordinate[] vertical =
+            new Coordinate[] {
+                new Coordinate(i * blockLength, j * blockLength),
+                new Coordinate(i * blockLength, (j + 1) * blockLength) };
+        lines.add(factory.createLineString(horizontal));
+        lines.add((LineString) factory.createLineString(horizontal)
+            .reverse());
+        lines.add(factory.createLineString(vertical));
+        lines.add((LineString) factory.createLineString(vertical)
+            .reverse());
+      }
+    }
+    return lines;
+  }
+
+  /**
+   * The road-only parameters used by the filter simulation tests.
+   */
+  public static VehicleStateInitialParameters createParameters(
+    int numParticles, long seed) {
+    return new VehicleStateInitialParameters(null, VectorFactory
+        .getDefault().createVector2D(70d, 70d), 20, VectorFactory
+        .getDefault().createVector1D(6.25e-4), 20, VectorFactory
+        .getDefault().createVector2D(6.25e-4, 6.25e-4), 20,
+        VectorFactory.getDefault().createVector2D(1d, Double.MAX_VALUE),
+        VectorFactory.getDefault().createVector2D(Double.MAX_VALUE, 1d),
+        numParticles, 30, seed);
+  }
+
+  protected final GenericJTSGraph graph;
+  protected final VehicleStateInitialParameters parameters;
+  protected final List<VehicleStateDistribution<GpsObservation>> states;
+
+  public SimulatedTrace() {
+    this(SimulatedTrace.DEFAULT_NUM_BLOCKS,
+        SimulatedTrace.DEFAULT_BLOCK_LENGTH,
+        SimulatedTrace.DEFAULT_NUM_OBSERVATIONS, 25,
+        SimulatedTrace.DEFAULT_SEED);
+  }
+
+  public SimulatedTrace(int numBlocks, double blockLength,
+    int numObservations, int numParticles, long seed) {
+    this.graph =
+        new GenericJTSGraph(SimulatedTrace.createGridLines(numBlocks,
+            blockLength), false);
+    this.parameters =
+        SimulatedTrace.createParameters(numParticles, seed);
+
+    final Coordinate startCoord =
+        new Coordinate(numBlocks / 2 * blockLength, numBlocks / 2
+            * blockLength);
+    final SimulationParameters simParameters =
+        new SimulationParameters(startCoord, new Date(0l),
+            numObservations * Math.round(this.parameters
+                .getInitialObsFreq()), this.parameters
+                .getInitialObsFreq(), false, false, this.parameters);
+    final Simulation sim =
+        new Simulation("benchmark-sim", this.graph, simParameters,
+            this.parameters);
+
+    final List<VehicleStateDistribution<GpsObservation>> states =
+        Lists.newArrayListWithCapacity(numObservations);
+    VehicleStateDistribution<GpsObservation> state =
+        sim.computeInitialState();
+    states.add(state);
+    try {
+      while (states.size() < numObservations) {
+        state = sim.stepSimulation(state);
+        states.add(state);
+      }
+    } catch (final TransformException e) {
+      throw new IllegalStateException(e);
+    }
+    this.states = Collections.unmodifiableList(states);
+  }
+
+  public GenericJTSGraph getGraph() {
+    return this.graph;
+  }
+
+  public GpsObservation getObservation(int i) {
+    return this.states.get(i).getObservation();
+  }
+
+  public VehicleStateInitialParameters getParameters() {
+    return this.parameters;
+  }
+
+  public List<VehicleStateDistribution<GpsObservation>> getStates() {
+    return this.states;
+  }
+
+  public int size() {
+    return this.states.size();
+  }
+
+}
@@ -0,0 +1,123 @@
+package org.opentrackingtools.benchmarks;
+
+import java.util.Date;
+
+import org.opentrackingtools.model.GpsObservation;
+import org.opentrackingtools.model.ProjectedCoordinate;
+import org.opentrackingtools.model.StateHistoryPolicy;
+import org.opentrackingtools.model.VehicleStateDistribution;
+
+import com.vividsolutions.jts.geom.Coordinate;
+
+/**
+ * Checks that the bounded {@link StateHistoryPolicy}s keep a long-running
+ * lineage's heap use flat. A single lineage is extended the way the filters
+ * extend each particle, and the used heap is compared after a tenth of the
+ * observations and after all of them. This needs a quiet JVM, so it's run on
+ * its own rather than with the unit tests:
+ *
+ * <pre>
+ * java -cp target/benchmarks.jar org.opentrackingtools.benchmarks.StateHistoryFootprint
+ * </pre>
+ *
+ * Exits with a non-zero status when a policy's heap growth passes the limit.
+ */
+public class StateHistoryFootprint {
+
+  /*
+   * An unbounded lineage of this many states takes hundreds of megabytes,
+   * so this leaves plenty of room for collector noise.
+   */
+  public static final long MAX_HEAP_GROWTH = 16l * 1024l * 1024l;
+
+  public static final int NUM_OBSERVATIONS = 100000;
+
+  private static GpsObservation createObservation(int recordNumber) {
+    final Coordinate coord = new Coordinate(0, 0);
+    return new GpsObservation("footprint", new Date(
+        recordNumber * 1000l), coord, null, null, null, recordNumber,
+        null, new ProjectedCoordinate(null, coord, null));
+  }
+
+  private static long getUsedHeap() {
+    final Runtime runtime = Runtime.getRuntime();
+    for (int i = 0; i < 3; i++) {
+      System.gc();
+    }
+    return runtime.totalMemory() - runtime.freeMemory();
+  }
+
+  /**
+   * @return the number of bytes the heap grew by between the first tenth of
+   *         the observations and the end
+   */
+  public static long measureHeapGrowth(StateHistoryPolicy policy,
+    VehicleStateDistribution<GpsObservation> initialState) {
+    VehicleStateDistribution<GpsObservation> state =
+        StateHistoryFootprint.propagate(initialState, policy,
+            StateHistoryFootprint.NUM_OBSERVATIONS / 10);
+    final long usedHeap = StateHistoryFootprint.getUsedHeap();
+    state =
+        StateHistoryFootprint.propagate(state, policy,
+            StateHistoryFootprint.NUM_OBSERVATIONS * 9 / 10);
+    final long finalUsedHeap = StateHistoryFootprint.getUsedHeap();
+
+    /*
+     * Keep the lineage reachable until the heap has been measured.
+     */
+    if (state.getObservation() == null) {
+      throw new IllegalStateException();
+    }
+    return finalUsedHeap - usedHeap;
+  }
+
+  public static void main(String[] args) {
+    final VehicleStateDistribution<GpsObservation> initialState =
+        new SimulatedTrace().getStates().get(0).clone();
+    initialState.setParentState(null);
+    initialState.setObservation(StateHistoryFootprint
+        .createObservation(0));
+
+    final StateHistoryPolicy[] policies =
+        new StateHistoryPolicy[] { StateHistoryPolicy.none(),
+            StateHistoryPolicy.fixedLag(1),
+            StateHistoryPolicy.fixedLag(5),
+            StateHistoryPolicy.compact(10) };
+    boolean passed = true;
+    for (final StateHistoryPolicy policy : policies) {
+      final long growth =
+          StateHistoryFootprint.measureHeapGrowth(policy, initialState);
+      final boolean withinLimit =
+          growth < StateHistoryFootprint.MAX_HEAP_GROWTH;
+      passed &= withinLimit;
+      System.out.println(policy + ": heap grew by " + growth
+          + " bytes" + (withinLimit ? "" : " (over the limit)"));
+    }
+    if (!passed) {
+      System.exit(1);
+    }
+  }
+
+  /**
+   * Extends the state's lineage the way the filters do: each new state is a
+   * clone of the last with the last as its parent, and the policy is applied
+   * once it's "updated".
+   */
+  private static VehicleStateDistribution<GpsObservation> propagate(
+    VehicleStateDistribution<GpsObservation> state,
+    StateHistoryPolicy policy, int numSteps) {
+    final int firstRecordNumber =
+        state.getObservation().getRecordNumber() + 1;
+    for (int i = 0; i < numSteps; i++) {
+      final VehicleStateDistribution<GpsObservation> nextState =
+          state.clone();
+      nextState.setParentState(state);
+      nextState.setObservation(StateHistoryFootprint
+          .createObservation(firstRecordNumber + i));
+      policy.apply(nextState);
+      state = nextState;
+    }
+    return state;
+  }
+
+}
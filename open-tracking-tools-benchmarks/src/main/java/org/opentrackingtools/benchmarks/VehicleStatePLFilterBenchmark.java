@@ -0,0 +1,92 @@
+package org.opentrackingtools.benchmarks;
+
+import gov.sandia.cognition.statistics.DataDistribution;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.opentrackingtools.VehicleStatePLFilter;
+import org.opentrackingtools.graph.GenericJTSGraph;
+import org.opentrackingtools.model.GpsObservation;
+import org.opentrackingtools.model.VehicleStateDistribution;
+import org.opentrackingtools.model.VehicleStateDistribution.VehicleStateDistributionFactory;
+
+/**
+ * Measures {@link VehicleStatePLFilter#update} along a simulated trace. Each
+ * operation is one observation; when the trace runs out, the filter starts
+ * over from new initial particles, with the same seed, outside of the timed
+ * operation.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Thread)
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+public class VehicleStatePLFilterBenchmark {
+
+  @Param({ "25", "100" })
+  public int numParticles;
+
+  private VehicleStatePLFilter<GpsObservation, GenericJTSGraph> filter;
+  private int obsIndex;
+  private DataDistribution<VehicleStateDistribution<GpsObservation>> particles;
+  private SimulatedTrace trace;
+
+  private void reset() {
+    this.filter =
+        new VehicleStatePLFilter<GpsObservation, GenericJTSGraph>(
+            this.trace.getObservation(0),
+            this.trace.getGraph(),
+            new VehicleStateDistributionFactory<GpsObservation, GenericJTSGraph>(),
+            SimulatedTrace.createParameters(this.numParticles,
+                SimulatedTrace.DEFAULT_SEED), false, new Random(
+                SimulatedTrace.DEFAULT_SEED));
+    this.particles =
+        this.filter.getUpdater().createInitialParticles(
+            this.numParticles);
+    this.obsIndex = 1;
+  }
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    this.trace = new SimulatedTrace();
+  }
+
+  /*
+   * Starting over rebuilds the filter and its particles, which is
+   * setup work, so it's done here rather than in the measured method.
+   */
+  @Setup(Level.Invocation)
+  public void setUpInvocation() {
+    if (this.obsIndex >= this.trace.size()) {
+      this.reset();
+    }
+  }
+
+  @Setup(Level.Iteration)
+  public void setUpIteration() {
+    this.reset();
+  }
+
+  @Benchmark
+  public DataDistribution<VehicleStateDistribution<GpsObservation>>
+      update() {
+    this.filter.update(this.particles,
+        this.trace.getObservation(this.obsIndex++));
+    return this.particles;
+  }
+
+}
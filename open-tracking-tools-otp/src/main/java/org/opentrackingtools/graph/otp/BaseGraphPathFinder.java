@@ -0,0 +1,93 @@
+package org.opentrackingtools.graph.otp;
+
+import java.util.Collection;
+import java.util.List;
+
+import org.opentrackingtools.graph.BoundedPathFinder;
+import org.opentripplanner.common.geometry.DistanceLibrary;
+import org.opentripplanner.routing.graph.Edge;
+import org.opentripplanner.routing.graph.Graph;
+import org.opentripplanner.routing.graph.Vertex;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.Envelope;
+
+/**
+ * A {@link BoundedPathFinder} over the street edges of an OTP base graph.
+ * Only edges with a geometry and a base graph id are followed, since those are
+ * the ones with inference graph edges, and edge lengths are the lengths of
+ * their geometries, the same as the inference graph's. <br>
+ * The search is an A* search, guided by the straight-line distance to the
+ * bounding box of the targets. The base graph is in projected meters, so that
+ * distance is Cartesian, and never more than the length of a path to any
+ * target.
+ */
+public class BaseGraphPathFinder extends
+    BoundedPathFinder<Vertex, Edge> {
+
+  protected final Graph baseGraph;
+  protected final DistanceLibrary distanceLibrary =
+      new CartesianDistanceLibrary();
+  protected final Envelope targetEnvelope = new Envelope();
+
+  public BaseGraphPathFinder(Graph baseGraph) {
+    this.baseGraph = Preconditions.checkNotNull(baseGraph);
+  }
+
+  @Override
+  public void calculate(Vertex source,
+    Collection<? extends Vertex> targets, double maxDistance,
+    int maxExpandedVertices) {
+    this.targetEnvelope.setToNull();
+    for (final Vertex target : targets) {
+      this.targetEnvelope.expandToInclude(target.getCoordinate());
+    }
+    super.calculate(source, targets, maxDistance, maxExpandedVertices);
+  }
+
+  @Override
+  protected Vertex getFromVertex(Edge edge) {
+    return edge.getFromVertex();
+  }
+
+  @Override
+  protected double getLength(Edge edge) {
+    return edge.getGeometry().getLength();
+  }
+
+  @Override
+  protected Iterable<Edge> getOutgoingEdges(Vertex vertex) {
+    final List<Edge> edges = Lists.newArrayList();
+    for (final Edge edge : OtpGraph.filterForStreetEdges(vertex
+        .getOutgoing())) {
+      if (edge.getGeometry() != null
+          && this.baseGraph.getIdForEdge(edge) != null) {
+        edges.add(edge);
+      }
+    }
+    return edges;
+  }
+
+  @Override
+  protected double getRemainingDistance(Vertex vertex) {
+    if (this.targetEnvelope.isNull()) {
+      return 0d;
+    }
+    final Coordinate coord = vertex.getCoordinate();
+    final Coordinate closest =
+        new Coordinate(Math.min(Math.max(coord.x,
+            this.targetEnvelope.getMinX()), this.targetEnvelope
+            .getMaxX()), Math.min(Math.max(coord.y,
+            this.targetEnvelope.getMinY()), this.targetEnvelope
+            .getMaxY()));
+    return this.distanceLibrary.fastDistance(coord, closest);
+  }
+
+  @Override
+  protected Vertex getToVertex(Edge edge) {
+    return edge.getToVertex();
+  }
+
+}
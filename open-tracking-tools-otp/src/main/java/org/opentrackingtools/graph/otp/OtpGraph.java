@@ -3,20 +3,25 @@ package org.opentrackingtools.graph.otp;
 import gov.sandia.cognition.math.matrix.Matrix;
 import gov.sandia.cognition.math.matrix.Vector;
 import gov.sandia.cognition.statistics.DistributionWithMean;
+import gov.sandia.cognition.statistics.distribution.MultivariateGaussian;
 
 import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 import org.netlib.blas.BLAS;
 import org.opentrackingtools.estimators.MotionStateEstimatorPredictor;
 import org.opentrackingtools.graph.InferenceGraph;
 import org.opentrackingtools.graph.InferenceGraphEdge;
 import org.opentrackingtools.graph.InferenceGraphSegment;
+import org.opentrackingtools.graph.SegmentIndex;
 import org.opentrackingtools.model.GpsObservation;
 import org.opentrackingtools.model.VehicleStateDistribution;
 import org.opentrackingtools.paths.Path;
+import org.opentrackingtools.paths.PathEdge;
 import org.opentrackingtools.util.GeoUtils;
 import org.opentrackingtools.util.StatisticsUtil;
 import org.opentripplanner.routing.algorithm.GenericAStar;
@@ -139,6 +144,16 @@ public class OtpGraph implements InferenceGraph {
    */
   private static final double MAX_STATE_SNAP_RADIUS = 350d;
 
+  private static final double MIN_OBS_SNAP_RADIUS = 10d;
+
+  /*
+   * Starting cell size, in projected meters, of the base graph's segment
+   * index.
+   */
+  public static final double DEFAULT_INDEX_CELL_SIZE = 100d;
+
+  public static final int DEFAULT_MAX_EXPANDED_VERTICES = 10000;
+
   public static List<Edge>
       filterForStreetEdges(Collection<Edge> edges) {
     final List<Edge> result = Lists.newArrayList();
@@ -161,6 +176,22 @@ public class OtpGraph implements InferenceGraph {
     return OtpGraph.MAX_DISTANCE_SPEED;
   }
 
+  /**
+   * @return the largest edge id in the graph, or -1 if no edge has one.
+   */
+  private static int getMaxEdgeId(Graph graph) {
+    int maxEdgeId = -1;
+    for (final Vertex v : graph.getVertices()) {
+      for (final Edge e : v.getOutgoing()) {
+        final Integer edgeId = graph.getIdForEdge(e);
+        if (edgeId != null) {
+          maxEdgeId = Math.max(maxEdgeId, edgeId);
+        }
+      }
+    }
+    return maxEdgeId;
+  }
+
   public static double getMaxObsSnapRadius() {
     return OtpGraph.MAX_OBS_SNAP_RADIUS;
   }
@@ -169,6 +200,10 @@ public class OtpGraph implements InferenceGraph {
     return OtpGraph.MAX_STATE_SNAP_RADIUS;
   }
 
+  public static double getMinObsSnapRadius() {
+    return OtpGraph.MIN_OBS_SNAP_RADIUS;
+  }
+
   public static boolean isStreetEdge(Edge pathEdge) {
     if (!(pathEdge instanceof StreetEdge)) {
       return false;
@@ -177,16 +212,16 @@ public class OtpGraph implements InferenceGraph {
     }
   }
 
-  private final STRtree baseEdgeIndex = new STRtree();
-
   /**
    * This is the original (intersection-and-street-segment) graph, used for all
    * inference tasks other than routing.
    */
   private final Graph baseGraph;
 
-  private final Map<VertexPair, InferenceGraphEdge> edgeToInfo = Maps
-      .newConcurrentMap();
+  /*
+   * Inference graph edges by base graph edge id, created as they're needed.
+   */
+  private final AtomicReferenceArray<InferenceGraphEdge> edgesById;
 
   private final Multimap<Geometry, Edge> geomBaseEdgeMap =
       HashMultimap.create();
@@ -196,207 +231,26 @@ public class OtpGraph implements InferenceGraph {
 
   private final GraphServiceImpl gs;
 
-  //  private Set<Path> computePaths(PathKey key) {
-  //
-  //    /*
-  //     * We always consider moving off of an edge, staying on an edge, and
-  //     * whatever else we can find.
-  //     */
-  //    final VehicleState currentState = key.getState();
-  //    final InferenceGraphEdge currentEdge =
-  //        currentState.getBelief().getEdge()
-  //            .getInferenceGraphEdge();
-  //    
-  //    Preconditions.checkArgument(
-  //        currentEdge.isNullEdge()
-  //        || (currentEdge.getBackingEdge() instanceof PlainStreetEdgeWithOSMData));
-  //
-  //    final Coordinate toCoord = key.getEndCoord();
-  //
-  //    final Set<Path> paths =
-  //        Sets.newHashSet(SimplePath.getNullPath());
-  //    final Set<Edge> startEdges = Sets.newHashSet();
-  //
-  //    if (!currentEdge.isNullEdge()) {
-  //
-  //      final PlainStreetEdgeWithOSMData edge =
-  //          (PlainStreetEdgeWithOSMData) currentEdge
-  //              .getBackingEdge();
-  //      /*
-  //       * Make sure we get the non-base edges corresponding to our
-  //       * current edge and the reverse.
-  //       */
-  //      final Collection<Edge> turnEdges =
-  //          geomTurnEdgeMap
-  //              .get(edge.getTurnVertex().geometry);
-  //      // XXX This violates all directionality and graph structure.
-  //      startEdges.addAll(turnEdges);
-  //    } else {
-  //
-  //      final MultivariateGaussian obsBelief =
-  //          currentState.getMovementFilter()
-  //              .getObservationBelief(
-  //                  currentState.getBelief());
-  //
-  //      final double beliefDistance =
-  //          Math.min(
-  //              StatisticsUtil
-  //                  .getLargeNormalCovRadius((DenseMatrix) obsBelief
-  //                      .getCovariance()),
-  //              MAX_STATE_SNAP_RADIUS);
-  //
-  //      final Coordinate fromCoord = key.getStartCoord();
-  //      for (final Object obj : getNearbyOtpEdges(fromCoord,
-  //          beliefDistance)) {
-  //        final PlainStreetEdgeWithOSMData edge =
-  //            (PlainStreetEdgeWithOSMData) obj;
-  //        startEdges.addAll(edge.getTurnVertex()
-  //            .getOutgoing());
-  //      }
-  //    }
-  //
-  //    final Set<Edge> endEdges = Sets.newHashSet();
-  //
-  //    final double obsStdDevDistance =
-  //        Math.min(
-  //            StatisticsUtil
-  //                .getLargeNormalCovRadius((DenseMatrix) currentState
-  //                    .getMovementFilter().getObsCovar()),
-  //            MAX_OBS_SNAP_RADIUS);
-  //
-  //    double maxEndEdgeLength = Double.NEGATIVE_INFINITY;
-  //    for (final StreetEdge obj: getNearbyOtpEdges(toCoord,
-  //        obsStdDevDistance)) {
-  //
-  //      final PlainStreetEdgeWithOSMData edge =
-  //          (PlainStreetEdgeWithOSMData) obj;
-  //      if (edge.getLength() > maxEndEdgeLength)
-  //        maxEndEdgeLength = edge.getLength();
-  //
-  //      final Collection<Edge> turnEdges =
-  //          geomTurnEdgeMap
-  //              .get(edge.getTurnVertex().geometry);
-  //      endEdges.addAll(turnEdges);
-  //    }
-  //
-  //    if (endEdges.isEmpty())
-  //      return paths;
-  //
-  //    /*
-  //     * If we're already on an edge, then we attempt to gauge how
-  //     * far in the opposite direction we are willing to consider.
-  //     */
-  //    final double timeDiff =
-  //        currentState.getMovementFilter()
-  //            .getCurrentTimeDiff();
-  //    final double edgeLength =
-  //        currentEdge.isNullEdge() ? 0d : currentEdge
-  //            .getLength();
-  //    final double distanceMax =
-  //        Math.max(
-  //            MAX_DISTANCE_SPEED * timeDiff,
-  //            currentState.getMeanLocation()
-  //                .euclideanDistance(
-  //                    currentState.getObservation()
-  //                        .getProjectedPoint()))
-  //            + edgeLength + maxEndEdgeLength;
-  //
-  //    for (final Edge startEdge : startEdges) {
-  //      final MultiDestinationAStar forwardAStar =
-  //          new MultiDestinationAStar(turnGraph, endEdges,
-  //              toCoord, obsStdDevDistance, startEdge,
-  //              distanceMax);
-  //
-  //      final ShortestPathTree spt1 =
-  //          forwardAStar.getSPT(false);
-  //
-  ////      final MultiDestinationAStar backwardAStar =
-  ////          new MultiDestinationAStar(turnGraph, endEdges,
-  ////              toCoord, obsStdDevDistance, startEdge,
-  ////              distanceMax);
-  ////      final ShortestPathTree spt2 =
-  ////          backwardAStar.getSPT(true);
-  //
-  //      for (final Edge endEdge : endEdges) {
-  //        final GraphPath forwardPath =
-  //            spt1.getPath(endEdge.getToVertex(), false);
-  //        if (forwardPath != null) {
-  //          /*
-  //           * Just to be safe we check the end location's
-  //           * distance to the obsevation.
-  //           */
-  //          final Path forwardResult =
-  //              copyAStarResults(forwardPath,
-  //                  getBaseEdge(startEdge), false);
-  //          
-  //          if (forwardResult != null) {
-  //            final double distToObs = 
-  //                Iterables.getLast(forwardResult.getPathEdges()).getGeometry().distance(
-  //                    JTSFactoryFinder.getGeometryFactory().createPoint(
-  //                        toCoord));
-  //            if (distToObs - obsStdDevDistance > 0) {
-  //              log.debug("path search did not stop within allowable distance");
-  //            } else {
-  //              paths.add(forwardResult);
-  //            }
-  //          }
-  //        }
-  //
-  ////        if (backwardAStar != null) {
-  ////          final GraphPath backwardPath =
-  ////              spt2.getPath(endEdge.getFromVertex(), false);
-  ////          if (backwardPath != null) {
-  ////            final Path backwardResult =
-  ////                copyAStarResults(backwardPath, startEdge,
-  ////                    true);
-  ////            if (backwardResult != null) {
-  ////            final double distToObs = 
-  ////                Iterables.getLast(backwardResult.getPathEdges()).getGeometry().distance(
-  ////                    JTSFactoryFinder.getGeometryFactory().createPoint(
-  ////                        toCoord));
-  ////              if (distToObs - obsStdDevDistance > 0) {
-  ////                log.info("path search did not stop within allowable distance");
-  ////              } else {
-  ////                paths.add(backwardResult);
-  ////              }
-  ////            }
-  ////          }
-  ////        }
-  //      }
-  //    }
-  //
-  //    return paths;
-  //  }
+  private volatile int maxExpandedVertices =
+      OtpGraph.DEFAULT_MAX_EXPANDED_VERTICES;
 
-  //  private Set<Path> computeUniquePaths(PathKey key) {
-  //    final Set<Path> paths = computePaths(key);
-  //    makeUnique(paths);
-  //    return paths;
-  //  }
-  //
-  //  private Path copyAStarResults(GraphPath gpath,
-  //    Edge startEdge, boolean isReverse) {
-  //    final double direction = isReverse ? -1d : 1d;
-  //    double pathDist = 0d;
-  //    final List<PathEdge> path = Lists.newArrayList();
-  //    if (gpath.edges.isEmpty()) {
-  //      path.add(SimplePathEdge.getEdge(
-  //          this.getInferenceGraphEdge(startEdge), 0d, isReverse));
-  //    } else {
-  //      for (final Edge edge : isReverse ? Lists
-  //          .reverse(gpath.edges) : gpath.edges) {
-  //        final PathEdge pathEdge =
-  //            getValidPathEdge(edge, pathDist, direction,
-  //                path);
-  //        pathDist += direction * pathEdge.getLength();
-  //        path.add(pathEdge);
-  //      }
-  //    }
-  //    if (!path.isEmpty())
-  //      return OtpPath.getPath(path, isReverse);
-  //    else
-  //      return null;
-  //  }
+  /*
+   * Each thread reuses its own search state, since the graph can be shared
+   * between filters on different threads.
+   */
+  private final ThreadLocal<BaseGraphPathFinder> pathFinders =
+      new ThreadLocal<BaseGraphPathFinder>() {
+        @Override
+        protected BaseGraphPathFinder initialValue() {
+          return new BaseGraphPathFinder(OtpGraph.this.baseGraph);
+        }
+      };
+
+  /*
+   * Built on the first nearby-edge query, or while loading when edges are
+   * preloaded.
+   */
+  private volatile SegmentIndex segmentIndex = null;
 
   private final STRtree turnEdgeIndex = new STRtree();
 
@@ -414,6 +268,18 @@ public class OtpGraph implements InferenceGraph {
   private final STRtree turnVertexIndex = new STRtree();
 
   public OtpGraph(String path) {
+    this(path, false);
+  }
+
+  /**
+   * @param path
+   * @param preloadEdges
+   *          when true, an inference graph edge is created for every base edge
+   *          while loading, so that lookups don't have to create and insert
+   *          them later. Use this when one graph is shared between filters on
+   *          different threads.
+   */
+  public OtpGraph(String path, boolean preloadEdges) {
     OtpGraph.log.info("Loading OTP graph...");
     OtpGraph.log.info("Using BLAS: "
         + BLAS.getInstance().getClass().getName());
@@ -436,18 +302,28 @@ public class OtpGraph implements InferenceGraph {
 
     this.baseGraph =
         this.turnGraph.getService(BaseGraph.class).getBaseGraph();
+    this.edgesById =
+        new AtomicReferenceArray<InferenceGraphEdge>(
+            OtpGraph.getMaxEdgeId(this.baseGraph) + 1);
 
-    // FIXME do this now, since adding temp vertices makes
-    // getVertices freak out with ConcurrentModificationExceptions
+    /*
+     * Path searches no longer add temporary vertices, so the graph isn't
+     * modified after this, but the extent is still only computed once.
+     */
     this.turnGraphExtent = this.turnGraph.getExtent();
 
     this.turnIndexService =
         new StreetVertexIndexServiceImpl(this.turnGraph);
-    this.createIndices(this.baseGraph, this.baseEdgeIndex, null,
+    this.createIndices(this.baseGraph, null, null,
         this.geomBaseEdgeMap);
     this.createIndices(this.turnGraph, this.turnEdgeIndex,
         this.turnVertexIndex, this.geomTurnEdgeMap);
 
+    if (preloadEdges) {
+      this.preloadInferenceGraphEdges();
+      this.getSegmentIndex();
+    }
+
     OtpGraph.log.info("Graph loaded..");
   }
 
@@ -472,7 +348,7 @@ public class OtpGraph implements InferenceGraph {
             geomEdgeMap.put(geometry.reverse(), e);
           }
 
-          if (graph.getIdForEdge(e) != null) {
+          if (edgeIndex != null && graph.getIdForEdge(e) != null) {
             final Envelope envelope = geometry.getEnvelopeInternal();
             edgeIndex.insert(envelope, e);
           }
@@ -494,6 +370,27 @@ public class OtpGraph implements InferenceGraph {
     return hasReverseTmp;
   }
 
+  /**
+   * Creates the segment index over every traversable base street edge with an
+   * id.
+   */
+  private SegmentIndex createSegmentIndex() {
+    final List<InferenceGraphSegment> segments = Lists.newArrayList();
+    for (final Vertex v : this.baseGraph.getVertices()) {
+      for (final Edge e : OtpGraph.filterForStreetEdges(v.getOutgoing())) {
+        if (e.getGeometry() != null
+            && this.baseGraph.getIdForEdge(e) != null) {
+          segments.addAll(this.getInferenceGraphEdge(e).getSegments());
+        }
+      }
+    }
+    final SegmentIndex index =
+        new SegmentIndex(segments, OtpGraph.DEFAULT_INDEX_CELL_SIZE);
+    OtpGraph.log.info("Indexed " + index.getNumSegments()
+        + " segments with a cell size of " + index.getCellSize());
+    return index;
+  }
+
   private Edge getBaseEdge(Edge edge) {
     if (edge instanceof TurnEdge) {
       final TurnVertexWithOSMData base =
@@ -507,8 +404,23 @@ public class OtpGraph implements InferenceGraph {
     return this.baseGraph;
   }
 
+  /**
+   * @return the inference graph edges created so far, by their base edges' end
+   *         vertices. The map is a copy, so it doesn't see later edges.
+   * @deprecated edges are now kept by base graph edge id; use
+   *             {@link #getInferenceGraphEdges()} or
+   *             {@link #getInferenceGraphEdge(int)}.
+   */
+  @Deprecated
   public Map<VertexPair, InferenceGraphEdge> getEdgeToInfo() {
-    return this.edgeToInfo;
+    final Map<VertexPair, InferenceGraphEdge> result = Maps.newHashMap();
+    for (final InferenceGraphEdge edgeInfo : this.getInferenceGraphEdges()) {
+      final Edge edge = (Edge) edgeInfo.getBackingEdge();
+      result.put(
+          new VertexPair(edge.getFromVertex(), edge.getToVertex()),
+          edgeInfo);
+    }
+    return result;
   }
 
   public Multimap<Geometry, Edge> getGeomBaseEdgeMap() {
@@ -553,19 +465,18 @@ public class OtpGraph implements InferenceGraph {
 
   public InferenceGraphEdge getInferenceGraphEdge(Edge edge) {
     edge = this.getBaseEdge(edge);
+    final Integer edgeId = this.baseGraph.getIdForEdge(edge);
+    Preconditions.checkArgument(edgeId != null,
+        "edge has no id in the base graph");
+    return this.getInferenceGraphEdge(edgeId, edge);
+  }
 
-    final VertexPair key =
-        new VertexPair(edge.getFromVertex(), edge.getToVertex());
-    InferenceGraphEdge edgeInfo = this.edgeToInfo.get(key);
-
+  private InferenceGraphEdge getInferenceGraphEdge(int id, Edge edge) {
+    final InferenceGraphEdge edgeInfo = this.edgesById.get(id);
     if (edgeInfo == null) {
-      final Integer edgeId = this.baseGraph.getIdForEdge(edge);
-      edgeInfo =
-          new InferenceGraphEdge(edge.getGeometry(), edge, edgeId,
-              this);
-      this.edgeToInfo.put(key, edgeInfo);
+      return this.putInferenceGraphEdge(id, new InferenceGraphEdge(
+          edge.getGeometry(), edge, id, this));
     }
-
     return edgeInfo;
   }
 
@@ -607,56 +518,39 @@ public class OtpGraph implements InferenceGraph {
   //  }
 
   @Override
-  public InferenceGraphEdge getInferenceGraphEdge(String strId) {
-
-    final int id = Integer.parseInt(strId);
+  public InferenceGraphEdge getInferenceGraphEdge(int id) {
+    if (id < 0 || id >= this.edgesById.length()) {
+      return null;
+    }
+    final InferenceGraphEdge edgeInfo = this.edgesById.get(id);
+    if (edgeInfo != null) {
+      return edgeInfo;
+    }
     final Edge edge = this.baseGraph.getEdgeById(id);
-    final VertexPair key =
-        new VertexPair(edge.getFromVertex(), edge.getToVertex());
-    InferenceGraphEdge edgeInfo = this.edgeToInfo.get(key);
-
-    if (edgeInfo == null) {
-      edgeInfo =
-          new InferenceGraphEdge(edge.getGeometry(), edge, id, this);
-      this.edgeToInfo.put(key, edgeInfo);
+    if (edge == null || edge.getGeometry() == null) {
+      return null;
     }
-
-    return edgeInfo;
+    return this.getInferenceGraphEdge(id, this.getBaseEdge(edge));
   }
 
+  /**
+   * @return the inference graph edges created so far.
+   */
   public Collection<InferenceGraphEdge> getInferenceGraphEdges() {
-    return this.edgeToInfo.values();
+    final List<InferenceGraphEdge> result = Lists.newArrayList();
+    for (int i = 0; i < this.edgesById.length(); i++) {
+      final InferenceGraphEdge edgeInfo = this.edgesById.get(i);
+      if (edgeInfo != null) {
+        result.add(edgeInfo);
+      }
+    }
+    return result;
   }
 
   @Override
   public Collection<InferenceGraphSegment> getNearbyEdges(
     Coordinate toCoord, double radius) {
-
-    final Envelope toEnv = new Envelope(toCoord);
-    toEnv.expandBy(radius);
-    final Set<InferenceGraphSegment> streetEdges = Sets.newHashSet();
-    for (final Object obj : this.baseEdgeIndex.query(toEnv)) {
-      final StreetEdge edge = (StreetEdge) obj;
-      if (edge.canTraverse(OtpGraph.defaultOptions)) {
-
-        /*
-         * FIXME we don't want to do this scanning, yet we don't
-         * want to instantiate every inference graph edge.
-         */
-        final InferenceGraphEdge infEdge =
-            this.getInferenceGraphEdge(edge);
-        for (final InferenceGraphSegment segment : infEdge
-            .getSegments()) {
-          //          Preconditions.checkState(segment.getEndIndex()
-          //              .getSegmentIndex()
-          //              - segment.getStartIndex().getSegmentIndex() == 1);
-          if (segment.getLine().distance(toCoord) < radius) {
-            streetEdges.add(segment);
-          }
-        }
-      }
-    }
-    return streetEdges;
+    return this.getSegmentIndex().getNearby(toCoord, radius);
   }
 
   @Override
@@ -723,6 +617,47 @@ public class OtpGraph implements InferenceGraph {
         radius);
   }
 
+  /**
+   * @return the k segments closest to the coordinate, and within maxRadius of
+   *         it, closest first.
+   */
+  public List<InferenceGraphSegment> getNearestEdges(Coordinate toCoord,
+    int k, double maxRadius) {
+    return this.getSegmentIndex().getNearest(toCoord, k, maxRadius);
+  }
+
+  /**
+   * Creates an inference graph edge for every base edge with an id.
+   */
+  private void preloadInferenceGraphEdges() {
+    for (final Vertex v : this.baseGraph.getVertices()) {
+      for (final Edge e : v.getOutgoing()) {
+        if (e.getGeometry() != null
+            && this.baseGraph.getIdForEdge(e) != null) {
+          this.getInferenceGraphEdge(e);
+        }
+      }
+    }
+    OtpGraph.log.info("Preloaded " + this.getInferenceGraphEdges().size()
+        + " inference graph edges");
+  }
+
+  /**
+   * Adds the edge unless another thread got there first, in which case that
+   * thread's edge is returned, so that every caller sees the same instance.
+   */
+  private InferenceGraphEdge putInferenceGraphEdge(int id,
+    InferenceGraphEdge edgeInfo) {
+    if (this.edgesById.compareAndSet(id, null, edgeInfo)) {
+      return edgeInfo;
+    }
+    return this.edgesById.get(id);
+  }
+
+  public int getMaxExpandedVertices() {
+    return this.maxExpandedVertices;
+  }
+
   public RoutingRequest getOptions() {
     return OtpGraph.defaultOptions;
   }
@@ -787,10 +722,150 @@ public class OtpGraph implements InferenceGraph {
     return edgeIds;
   }
 
+  /**
+   * Builds a path that starts at the given segment, runs to the end of its
+   * edge, and then follows the given base edges. Returns null when the edges'
+   * geometries don't join up.
+   */
+  private Path getPathFromBaseEdges(List<Edge> edges,
+    InferenceGraphSegment startSegment) {
+    final List<PathEdge> pathEdges = Lists.newArrayList();
+
+    double distance = 0d;
+    for (final InferenceGraphSegment segment : startSegment.getSegments(
+        startSegment.getStartDistance(), Double.POSITIVE_INFINITY)) {
+      pathEdges.add(new PathEdge(segment, distance, false));
+      distance += segment.getLine().getLength();
+    }
+
+    for (final Edge edge : edges) {
+      for (final InferenceGraphSegment segment : this
+          .getInferenceGraphEdge(edge).getSegments()) {
+        if (!segment.getLine().p0.equals(Iterables.getLast(pathEdges)
+            .getLine().p1)) {
+          OtpGraph.log.debug("skipping path with disjoint edge " + edge);
+          return null;
+        }
+        pathEdges.add(new PathEdge(segment, distance, false));
+        distance += segment.getLine().getLength();
+      }
+    }
+    if (!pathEdges.isEmpty()) {
+      return new Path(pathEdges, false);
+    } else {
+      return null;
+    }
+  }
+
+  /**
+   * Finds paths from the given vehicle state's current edge to the edges within
+   * a radius around the given observation, the same way as
+   * {@link org.opentrackingtools.graph.GenericJTSGraph#getPaths}. Paths to all
+   * of the end edges come from one A* search over the base graph, which
+   * starts at the end of the current edge, never modifies the graph, and
+   * expands at most {@link #getMaxExpandedVertices()} vertices; see
+   * {@link BaseGraphPathFinder}. <br>
+   * Note: the null path, representing off-road travel to the observation is
+   * always included in the results.
+   */
   @Override
-  public Set<Path> getPaths(VehicleStateDistribution fromState,
+  public Set<Path> getPaths(
+    VehicleStateDistribution<? extends GpsObservation> fromState,
     GpsObservation obs) {
-    return null;
+
+    final Set<Path> paths = Sets.newHashSet();
+    paths.add(Path.nullPath);
+
+    final Coordinate toCoord = obs.getObsProjected();
+    final MotionStateEstimatorPredictor motionEstimator =
+        Preconditions.checkNotNull(fromState
+            .getMotionStateEstimatorPredictor());
+
+    final PathEdge currentPathEdge =
+        fromState.getPathStateParam().getValue().getEdge();
+    final InferenceGraphSegment startSegment =
+        currentPathEdge.getInferenceGraphSegment();
+
+    if (startSegment.isNullEdge()) {
+      final MultivariateGaussian projectedDist =
+          motionEstimator.createPredictiveDistribution(fromState
+              .getMotionStateParam().getParameterPrior());
+      final MultivariateGaussian obsDist =
+          motionEstimator.getObservationDistribution(projectedDist,
+              PathEdge.nullPathEdge);
+      final double beliefDistance =
+          Math.min(StatisticsUtil.getLargeNormalCovRadius(obsDist
+              .getCovariance()), OtpGraph.MAX_STATE_SNAP_RADIUS);
+
+      for (final InferenceGraphSegment segment : this.getNearbyEdges(
+          obsDist.getMean(), beliefDistance)) {
+        paths.add(new Path(Collections.singletonList(new PathEdge(
+            segment, 0d, false)), false));
+      }
+      return paths;
+    }
+
+    final double obsCovStdDev =
+        StatisticsUtil.getLargeNormalCovRadius(fromState
+            .getObservationCovarianceParam().getValue());
+    final double obsStdDevDistance =
+        Math.max(OtpGraph.MIN_OBS_SNAP_RADIUS, Math.min(obsCovStdDev,
+            OtpGraph.MAX_OBS_SNAP_RADIUS));
+
+    final Collection<InferenceGraphSegment> endSegments =
+        this.getNearbyEdges(toCoord, obsStdDevDistance);
+    if (endSegments.isEmpty()) {
+      return paths;
+    }
+
+    final Vertex source =
+        ((Edge) startSegment.getBackingEdge()).getToVertex();
+    final Set<Vertex> targets = Sets.newLinkedHashSet();
+    for (final InferenceGraphSegment endSegment : endSegments) {
+      if (startSegment.equals(endSegment)) {
+        final List<PathEdge> currentEdgePathEdges = Lists.newArrayList();
+        double distance = 0d;
+        for (final InferenceGraphSegment segment : startSegment
+            .getSegments(startSegment.getStartDistance(),
+                Double.POSITIVE_INFINITY)) {
+          currentEdgePathEdges.add(new PathEdge(segment, distance, false));
+          distance += segment.getLine().getLength();
+        }
+        paths.add(new Path(currentEdgePathEdges, false));
+        continue;
+      }
+      final Edge endEdge = (Edge) endSegment.getBackingEdge();
+      targets.add(endEdge.getFromVertex());
+      targets.add(endEdge.getToVertex());
+    }
+
+    /*
+     * Staying on the start edge is covered above.
+     */
+    targets.remove(source);
+    if (targets.isEmpty()) {
+      return paths;
+    }
+
+    final double maxDistance =
+        Math.max(OtpGraph.MAX_DISTANCE_SPEED
+            * motionEstimator.getCurrentTimeDiff(), source
+            .getCoordinate().distance(toCoord))
+            + obsStdDevDistance;
+
+    final BaseGraphPathFinder pathFinder = this.pathFinders.get();
+    pathFinder.calculate(source, targets, maxDistance,
+        this.maxExpandedVertices);
+    for (final Vertex target : pathFinder.getReachedTargets()) {
+      final Path newPath =
+          this.getPathFromBaseEdges(pathFinder.getPathEdges(target),
+              startSegment);
+      if (newPath != null) {
+        paths.add(newPath);
+      }
+    }
+
+    return paths;
   }
 
   @Override
@@ -798,6 +873,20 @@ public class OtpGraph implements InferenceGraph {
     return this.getBaseGraph().getExtent();
   }
 
+  public SegmentIndex getSegmentIndex() {
+    SegmentIndex index = this.segmentIndex;
+    if (index == null) {
+      synchronized (this) {
+        index = this.segmentIndex;
+        if (index == null) {
+          index = this.createSegmentIndex();
+          this.segmentIndex = index;
+        }
+      }
+    }
+    return index;
+  }
+
   @Override
   public Set<InferenceGraphEdge> getTopoEquivEdges(
     InferenceGraphEdge edge) {
@@ -822,4 +911,13 @@ public class OtpGraph implements InferenceGraph {
     return this.baseGraph.getVertices().size();
   }
 
+  /**
+   * @param maxExpandedVertices
+   *          the largest number of vertices a single path search will expand
+   */
+  public void setMaxExpandedVertices(int maxExpandedVertices) {
+    Preconditions.checkArgument(maxExpandedVertices > 0);
+    this.maxExpandedVertices = maxExpandedVertices;
+  }
+
 }
@@ -0,0 +1,93 @@
+package org.opentrackingtools.util.tracerunner;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+
+import org.opentrackingtools.model.GpsObservation;
+import org.opentrackingtools.model.ProjectedCoordinate;
+import org.opentrackingtools.util.GeoUtils;
+
+import au.com.bytecode.opencsv.CSVReader;
+
+import com.google.common.collect.AbstractIterator;
+import com.vividsolutions.jts.geom.Coordinate;
+
+/**
+ * Lazily parses the observations in a ';' separated trace file, one row per
+ * call to {@link #next()}. <br>
+ * Each observation links to the one before it, so that the filter can use it
+ * as the previous observation, but the link from that previous observation is
+ * dropped. This way the reader, and anything that keeps only the latest
+ * observation, holds two rows at most, however long the trace is.
+ */
+public class CsvObservationReader extends
+    AbstractIterator<GpsObservation> implements Closeable {
+
+  protected final CSVReader csvReader;
+  protected GpsObservation prevObs = null;
+  protected int recordNumber = 0;
+  protected final SimpleDateFormat sdf = new SimpleDateFormat(
+      "yyyy-MM-dd hh:mm:ss");
+
+  /**
+   * @param reader
+   *          the trace, starting with a header row, which is skipped.
+   * @throws IOException
+   */
+  public CsvObservationReader(Reader reader) throws IOException {
+    this.csvReader = new CSVReader(reader, ';');
+    this.csvReader.readNext();
+  }
+
+  @Override
+  public void close() throws IOException {
+    this.csvReader.close();
+  }
+
+  @Override
+  protected GpsObservation computeNext() {
+    final String[] line;
+    try {
+      line = this.csvReader.readNext();
+    } catch (final IOException e) {
+      throw new IllegalStateException(e);
+    }
+    if (line == null) {
+      return this.endOfData();
+    }
+
+    final String sourceId = line[3];
+    final Date timestamp;
+    try {
+      timestamp = this.sdf.parse(line[6]);
+    } catch (final ParseException e) {
+      throw new IllegalArgumentException("bad timestamp in record "
+          + this.recordNumber, e);
+    }
+    final double velocity = Double.parseDouble(line[7]);
+    final double heading = Double.NaN;
+    final double accuracy = Double.NaN;
+    final Coordinate latLng =
+        new Coordinate(Double.parseDouble(line[4]),
+            Double.parseDouble(line[5]));
+    final ProjectedCoordinate obsPoint =
+        GeoUtils.convertToEuclidean(latLng);
+
+    if (this.prevObs != null) {
+      this.prevObs.reset();
+    }
+    final GpsObservation obs =
+        new GpsObservation(sourceId, timestamp, latLng, velocity,
+            heading, accuracy, this.recordNumber, this.prevObs, obsPoint);
+
+    ++this.recordNumber;
+    this.prevObs = obs;
+
+    return obs;
+  }
+
+}
@@ -6,11 +6,10 @@ import gov.sandia.cognition.statistics.bayesian.ParticleFilter;
 
 import java.io.File;
 import java.io.FileReader;
-import java.text.SimpleDateFormat;
-import java.util.Date;
-import java.util.List;
 import java.util.Random;
 
+import org.codehaus.jackson.JsonEncoding;
+import org.codehaus.jackson.JsonGenerator;
 import org.codehaus.jackson.JsonParser.Feature;
 import org.codehaus.jackson.Version;
 import org.codehaus.jackson.map.ObjectMapper;
@@ -24,19 +23,12 @@ import org.opentrackingtools.model.GpsObservation;
 import org.opentrackingtools.model.VehicleStateDistribution;
 import org.opentrackingtools.model.VehicleStateDistribution.VehicleStateDistributionFactory;
 import org.opentrackingtools.paths.PathState;
-import org.opentrackingtools.util.GeoUtils;
 import org.opentrackingtools.util.tracerunner.JsonUtils.PathStateSerializer;
 import org.opentrackingtools.util.tracerunner.JsonUtils.VectorDeserializer;
 import org.opentrackingtools.util.tracerunner.JsonUtils.VectorSerializer;
 import org.opentrackingtools.util.tracerunner.JsonUtils.VehicleStateInitialParametersDeserializer;
 import org.opentrackingtools.util.tracerunner.JsonUtils.VehicleStateSerializer;
 
-import au.com.bytecode.opencsv.CSVReader;
-
-import com.google.common.collect.Iterables;
-import com.google.common.collect.Lists;
-import com.vividsolutions.jts.geom.Coordinate;
-
 public class TraceRunner {
 
   public static class TraceRunnerConfig {
@@ -67,9 +59,6 @@ public class TraceRunner {
 
   }
 
-  private static final SimpleDateFormat sdf = new SimpleDateFormat(
-      "yyyy-MM-dd hh:mm:ss");
-
   public static void main(String[] args) throws Exception {
 
     /*
@@ -115,56 +104,33 @@ public class TraceRunner {
 
     System.out.println("Loaded config:" + ip);
 
-    final List<GpsObservation> observations = Lists.newArrayList();
-    final CSVReader gpsReader =
-        new CSVReader(new FileReader(config.getTraceFileName()), ';');
+    /*
+     * Observations are parsed as the filter asks for them, and results
+     * are written as they're produced, so memory use doesn't grow with
+     * the length of the trace.
+     */
+    final CsvObservationReader observations =
+        new CsvObservationReader(new FileReader(
+            config.getTraceFileName()));
 
     // TODO take json observations
     //      observations = objectMapper.readValue(
     //          configFile, new TypeReference<List<GpsObservation>>() {});
     //      
 
-    // skip header
-    gpsReader.readNext();
-
-    String[] line = gpsReader.readNext();
-    int recordNumber = 0;
-    GpsObservation prevObs = null;
-    do {
-      final String sourceId = line[3];
-      final Date timestamp = TraceRunner.sdf.parse(line[6]);
-      final double velocity = Double.parseDouble(line[7]);
-      final double heading = Double.NaN;
-      final double accuracy = Double.NaN;
-      final Coordinate latLng =
-          new Coordinate(Double.parseDouble(line[4]),
-              Double.parseDouble(line[5]));
-      final org.opentrackingtools.model.ProjectedCoordinate obsPoint =
-          GeoUtils.convertToEuclidean(latLng);
-
-      final GpsObservation obs =
-          new GpsObservation(sourceId, timestamp, latLng, velocity,
-              heading, accuracy, recordNumber, prevObs, obsPoint);
-
-      observations.add(obs);
-
-      ++recordNumber;
-      prevObs = obs;
-
-    } while ((line = gpsReader.readNext()) != null);
-
-    gpsReader.close();
-
-    System.out.println("Loaded " + observations.size()
-        + " observation(s)");
+    if (!observations.hasNext()) {
+      observations.close();
+      System.out.println("No observations in "
+          + config.getTraceFileName());
+      return;
+    }
 
     /*
      * Create the filter
      */
     final InferenceGraph graph =
         new OtpGraph(config.getOtpGraphLocation());
-    final GpsObservation initialObs =
-        Iterables.getFirst(observations, null);
+    final GpsObservation initialObs = observations.next();
 
     Random rng;
     if (ip.getSeed() != 0) {
@@ -194,23 +160,42 @@ public class TraceRunner {
     final DataDistribution<VehicleStateDistribution<GpsObservation>> priorBelief =
         filter.createInitialLearnedObject();
 
-    final List<VehicleStateDistribution<GpsObservation>> results =
-        Lists.newArrayList();
+    final File outputFile = new File(config.getOutputFileName());
+    final JsonGenerator jgen =
+        objectMapper.getJsonFactory().createJsonGenerator(outputFile,
+            JsonEncoding.UTF8);
+    jgen.useDefaultPrettyPrinter();
+    jgen.writeStartArray();
+
     /*
      * Filter observations
      */
-    for (final GpsObservation obs : Iterables.skip(observations, 1)) {
-      // just the "best" particle for now
-      results.add(priorBelief.getMaxValueKey());
-
-      filter.update(priorBelief, obs);
+    int numObservations = 1;
+    try {
+      while (observations.hasNext()) {
+        final GpsObservation obs = observations.next();
+
+        // just the "best" particle for now
+        objectMapper.writeValue(jgen, priorBelief.getMaxValueKey());
+
+        filter.update(priorBelief, obs);
+        ++numObservations;
+      }
+      jgen.writeEndArray();
+    } finally {
+      /*
+       * Only release resources here; writing anything more could fail
+       * and hide the exception that got us here.
+       */
+      try {
+        observations.close();
+      } finally {
+        jgen.close();
+      }
     }
 
-    System.out.println("Finished processing observations");
-
-    final File outputFile = new File(config.getOutputFileName());
-    objectMapper.writeValue(outputFile, results);
-
+    System.out.println("Finished processing " + numObservations
+        + " observation(s)");
     System.out.println("Output written to "
         + config.getOutputFileName());
   }
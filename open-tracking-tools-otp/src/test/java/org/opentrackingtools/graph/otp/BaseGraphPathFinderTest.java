@@ -0,0 +1,206 @@
+package org.opentrackingtools.graph.otp;
+
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.geotools.geometry.jts.JTSFactoryFinder;
+import org.mockito.Mockito;
+import org.opentrackingtools.graph.InferenceGraph;
+import org.opentrackingtools.graph.InferenceGraphEdge;
+import org.opentrackingtools.graph.InferenceGraphSegment;
+import org.opentrackingtools.graph.SegmentIndex;
+import org.opentripplanner.routing.edgetype.PlainStreetEdge;
+import org.opentripplanner.routing.edgetype.StreetTraversalPermission;
+import org.opentripplanner.routing.graph.Edge;
+import org.opentripplanner.routing.graph.Graph;
+import org.opentripplanner.routing.graph.Vertex;
+import org.opentripplanner.routing.vertextype.IntersectionVertex;
+import org.testng.AssertJUnit;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.LineString;
+
+public class BaseGraphPathFinderTest {
+
+  private static final int GRID_SIZE = 8;
+
+  private static void addStreet(Graph graph, IntersectionVertex from,
+    IntersectionVertex to) {
+    final LineString geometry =
+        JTSFactoryFinder.getGeometryFactory().createLineString(
+            new Coordinate[] { from.getCoordinate(),
+                to.getCoordinate() });
+    new PlainStreetEdge(from, to, geometry, from.getLabel() + "-"
+        + to.getLabel(), geometry.getLength(),
+        StreetTraversalPermission.ALL, false);
+  }
+
+  private Graph graph;
+  private List<Vertex> vertices;
+
+  /**
+   * A grid of two-way streets, about 100 meters apart, with the intersections
+   * moved about a little so that no two paths have the same length.
+   */
+  @BeforeMethod
+  public void setUp() {
+    final Random rng = new Random(1234567);
+    this.graph = new Graph();
+    final int size = BaseGraphPathFinderTest.GRID_SIZE;
+    final IntersectionVertex[][] grid = new IntersectionVertex[size][size];
+    for (int i = 0; i < size; i++) {
+      for (int j = 0; j < size; j++) {
+        grid[i][j] =
+            new IntersectionVertex(this.graph, "v" + i + "_" + j, 100d
+                * i + rng.nextGaussian() * 10d, 100d * j
+                + rng.nextGaussian() * 10d);
+      }
+    }
+    for (int i = 0; i < size; i++) {
+      for (int j = 0; j < size; j++) {
+        if (i + 1 < size) {
+          BaseGraphPathFinderTest.addStreet(this.graph, grid[i][j],
+              grid[i + 1][j]);
+          BaseGraphPathFinderTest.addStreet(this.graph,
+              grid[i + 1][j], grid[i][j]);
+        }
+        if (j + 1 < size) {
+          BaseGraphPathFinderTest.addStreet(this.graph, grid[i][j],
+              grid[i][j + 1]);
+          BaseGraphPathFinderTest.addStreet(this.graph,
+              grid[i][j + 1], grid[i][j]);
+        }
+      }
+    }
+    this.graph.rebuildVertexAndEdgeIndices();
+    this.vertices = Lists.newArrayList(this.graph.getVertices());
+  }
+
+  /**
+   * With too small an expansion budget the search stops early and says so.
+   */
+  @Test
+  public void testBudget() {
+    final BaseGraphPathFinder finder =
+        new BaseGraphPathFinder(this.graph);
+    final Vertex source = this.vertices.get(0);
+    final List<Vertex> targets = Lists.newArrayList(this.vertices);
+    targets.remove(source);
+
+    finder.calculate(source, targets, Double.POSITIVE_INFINITY, 5);
+    AssertJUnit.assertTrue(finder.isBudgetExhausted());
+    AssertJUnit.assertTrue(finder.getReachedTargets().size() < 5);
+
+    finder.calculate(source, targets, Double.POSITIVE_INFINITY,
+        this.vertices.size() + 1);
+    AssertJUnit.assertFalse(finder.isBudgetExhausted());
+    AssertJUnit.assertEquals(targets, finder.getReachedTargets());
+  }
+
+  /**
+   * The A* search should find the same shortest paths as a plain Dijkstra
+   * search, and its paths should join up and add up to their distances.
+   */
+  @Test
+  public void testShortestPaths() {
+    final BaseGraphPathFinder finder =
+        new BaseGraphPathFinder(this.graph);
+    final BaseGraphPathFinder dijkstra =
+        new BaseGraphPathFinder(this.graph) {
+          @Override
+          protected double getRemainingDistance(Vertex vertex) {
+            return 0d;
+          }
+        };
+    final Random rng = new Random(7654321);
+    for (int i = 0; i < 50; i++) {
+      final Vertex source =
+          this.vertices.get(rng.nextInt(this.vertices.size()));
+      final Set<Vertex> targets = Sets.newLinkedHashSet();
+      for (int j = 0; j < 3; j++) {
+        targets.add(this.vertices.get(rng.nextInt(this.vertices.size())));
+      }
+      final double maxDistance = 200d + rng.nextDouble() * 600d;
+
+      finder.calculate(source, targets, maxDistance, 10000);
+      dijkstra.calculate(source, targets, maxDistance, 10000);
+      for (final Vertex target : targets) {
+        final Double expected = dijkstra.getDistance(target);
+        final Double actual = finder.getDistance(target);
+        if (expected == null || expected > maxDistance) {
+          AssertJUnit.assertTrue(actual == null || actual > maxDistance);
+          continue;
+        }
+        AssertJUnit.assertNotNull(actual);
+        AssertJUnit.assertEquals(expected, actual, 1e-9);
+
+        final List<Edge> edges = finder.getPathEdges(target);
+        double length = 0d;
+        Vertex current = source;
+        for (final Edge edge : edges) {
+          AssertJUnit.assertEquals(current, edge.getFromVertex());
+          AssertJUnit.assertNotNull(this.graph.getIdForEdge(edge));
+          length += edge.getGeometry().getLength();
+          current = edge.getToVertex();
+        }
+        AssertJUnit.assertEquals(target, current);
+        AssertJUnit.assertEquals(actual, length, 1e-9);
+      }
+    }
+  }
+
+  /**
+   * A segment index over the base graph's street edges, built the way
+   * {@link OtpGraph} builds it, should agree with checking every segment.
+   */
+  @Test
+  public void testSegmentIndex() {
+    final InferenceGraph inferenceGraph =
+        Mockito.mock(InferenceGraph.class);
+    final List<InferenceGraphSegment> segments = Lists.newArrayList();
+    for (final Vertex v : this.graph.getVertices()) {
+      for (final Edge e : OtpGraph.filterForStreetEdges(v.getOutgoing())) {
+        segments.addAll(new InferenceGraphEdge(e.getGeometry(), e,
+            this.graph.getIdForEdge(e), inferenceGraph).getSegments());
+      }
+    }
+    final SegmentIndex index =
+        new SegmentIndex(segments, OtpGraph.DEFAULT_INDEX_CELL_SIZE);
+    AssertJUnit.assertEquals(segments.size(), index.getNumSegments());
+
+    final Random rng = new Random(7654321);
+    for (int i = 0; i < 200; i++) {
+      final Coordinate coord =
+          new Coordinate(rng.nextDouble() * 900d - 100d,
+              rng.nextDouble() * 900d - 100d);
+      final double radius = rng.nextDouble() * 150d;
+
+      final Set<InferenceGraphSegment> expected = Sets.newHashSet();
+      InferenceGraphSegment closest = null;
+      for (final InferenceGraphSegment segment : segments) {
+        final double distance = segment.getLine().distance(coord);
+        if (distance < radius) {
+          expected.add(segment);
+        }
+        if (closest == null
+            || distance < closest.getLine().distance(coord)) {
+          closest = segment;
+        }
+      }
+      AssertJUnit.assertEquals(expected, index.getNearby(coord, radius));
+
+      final List<InferenceGraphSegment> nearest =
+          index.getNearest(coord, 1, Double.POSITIVE_INFINITY);
+      AssertJUnit.assertEquals(closest.getLine().distance(coord),
+          Iterables.getOnlyElement(nearest).getLine().distance(coord),
+          1e-9);
+    }
+  }
+
+}